@@ -0,0 +1,278 @@
+/*-
+ * #%L
+ * hms-annotation-processor
+ * %%
+ * Copyright (C) 2019 Amazon Web Services
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.amazonaws.athena.hms.processor;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+// generates the registries of GenerateApiRegistry and GenerateHandlerRegistry, so that the APIs and their
+// handlers are looked up with plain code at cold start instead of reflecting over the API interface
+@SupportedAnnotationTypes({
+    "com.amazonaws.athena.hms.processor.GenerateApiRegistry",
+    "com.amazonaws.athena.hms.processor.GenerateHandlerRegistry"})
+public class ApiRegistryProcessor extends AbstractProcessor
+{
+  private static final String HANDLER_SUFFIX = "Handler";
+
+  @Override
+  public SourceVersion getSupportedSourceVersion()
+  {
+    return SourceVersion.latestSupported();
+  }
+
+  @Override
+  public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv)
+  {
+    for (Element element : roundEnv.getElementsAnnotatedWith(GenerateApiRegistry.class)) {
+      try {
+        generateApiRegistry((TypeElement) element);
+      }
+      catch (IOException e) {
+        error(element, "Failed to generate the API registry: " + e.getMessage());
+      }
+    }
+    for (Element element : roundEnv.getElementsAnnotatedWith(GenerateHandlerRegistry.class)) {
+      try {
+        generateHandlerRegistry((TypeElement) element);
+      }
+      catch (IOException e) {
+        error(element, "Failed to generate the handler registry: " + e.getMessage());
+      }
+    }
+    return true;
+  }
+
+  private void generateApiRegistry(TypeElement service) throws IOException
+  {
+    String packageName = getPackageName(service);
+    String className = service.getSimpleName() + "Apis";
+    List<ExecutableElement> apis = getApis(service);
+    try (PrintWriter out = new PrintWriter(
+        processingEnv.getFiler().createSourceFile(packageName + "." + className, service).openWriter())) {
+      out.println("package " + packageName + ";");
+      out.println();
+      out.println("// generated by " + getClass().getSimpleName() + " from " + service.getSimpleName() + ", do not edit");
+      out.println("final class " + className);
+      out.println("{");
+      out.println("  static final String[] API_NAMES = {");
+      for (ExecutableElement api : apis) {
+        out.println("      \"" + api.getSimpleName() + "\",");
+      }
+      out.println("  };");
+      out.println();
+      out.println("  static final Class<?>[] REQUEST_CLASSES = {");
+      for (ExecutableElement api : apis) {
+        out.println("      " + erasure(api.getParameters().get(0).asType()) + ".class,");
+      }
+      out.println("  };");
+      out.println();
+      out.println("  static final Class<?>[] RESPONSE_CLASSES = {");
+      for (ExecutableElement api : apis) {
+        out.println("      " + erasure(api.getReturnType()) + ".class,");
+      }
+      out.println("  };");
+      out.println();
+      out.println("  private " + className + "()");
+      out.println("  {");
+      out.println("  }");
+      out.println("}");
+    }
+  }
+
+  private void generateHandlerRegistry(TypeElement element) throws IOException
+  {
+    AnnotationMirror annotation = getAnnotationMirror(element, GenerateHandlerRegistry.class);
+    TypeElement service = (TypeElement) ((DeclaredType) getValue(annotation, "service")).asElement();
+    TypeElement handlerBase = (TypeElement) ((DeclaredType) getValue(annotation, "handlerBase")).asElement();
+    String handlerPackage = (String) getValue(annotation, "handlerPackage");
+    ExecutableElement baseConstructor = getConstructor(handlerBase, null);
+    if (baseConstructor == null) {
+      error(element, handlerBase + " has no public or protected constructor");
+      return;
+    }
+    List<? extends VariableElement> parameters = baseConstructor.getParameters();
+
+    // check every API has a handler that could be created the same way
+    List<String> apiNames = new ArrayList<>();
+    List<String> handlerNames = new ArrayList<>();
+    for (ExecutableElement api : getApis(service)) {
+      String apiName = api.getSimpleName().toString();
+      String handlerName = handlerPackage + "." + Character.toUpperCase(apiName.charAt(0)) + apiName.substring(1)
+          + HANDLER_SUFFIX;
+      TypeElement handler = processingEnv.getElementUtils().getTypeElement(handlerName);
+      if (handler == null) {
+        error(element, "No handler " + handlerName + " for API " + apiName);
+      }
+      else if (handler.getModifiers().contains(Modifier.ABSTRACT)
+          || !processingEnv.getTypeUtils().isAssignable(handler.asType(), erasure(handlerBase.asType()))) {
+        error(element, handlerName + " is not a concrete " + handlerBase.getSimpleName());
+      }
+      else if (getConstructor(handler, parameters) == null) {
+        error(element, handlerName + " has no public constructor with the parameters of " + baseConstructor);
+      }
+      else {
+        apiNames.add(apiName);
+        handlerNames.add(handlerName);
+      }
+    }
+
+    String packageName = getPackageName(element);
+    String className = service.getSimpleName() + "Handlers";
+    StringBuilder parameterList = new StringBuilder();
+    StringBuilder argumentList = new StringBuilder();
+    for (VariableElement parameter : parameters) {
+      if (argumentList.length() > 0) {
+        parameterList.append(", ");
+        argumentList.append(", ");
+      }
+      parameterList.append(parameter.asType()).append(' ').append(parameter.getSimpleName());
+      argumentList.append(parameter.getSimpleName());
+    }
+    try (PrintWriter out = new PrintWriter(
+        processingEnv.getFiler().createSourceFile(packageName + "." + className, element).openWriter())) {
+      out.println("package " + packageName + ";");
+      out.println();
+      out.println("// generated by " + getClass().getSimpleName() + " from " + service.getSimpleName() + ", do not edit");
+      out.println("final class " + className);
+      out.println("{");
+      out.println("  // the prefix of the handler class names");
+      out.println("  static final String HANDLER_NAME_PREFIX = \"" + handlerPackage + ".\";");
+      out.println();
+      out.println("  private " + className + "()");
+      out.println("  {");
+      out.println("  }");
+      out.println();
+      out.println("  // a handler class is only loaded when the handler of its API is created");
+      out.println("  static " + erasure(handlerBase.asType()) + " newHandler(String apiName"
+          + (parameterList.length() > 0 ? ", " + parameterList : "") + ")");
+      out.println("  {");
+      out.println("    switch (apiName) {");
+      for (int i = 0; i < apiNames.size(); i++) {
+        out.println("      case \"" + apiNames.get(i) + "\":");
+        out.println("        return new " + handlerNames.get(i) + "(" + argumentList + ");");
+      }
+      out.println("      default:");
+      out.println("        throw new IllegalArgumentException(\"No handler for API \" + apiName);");
+      out.println("    }");
+      out.println("  }");
+      out.println("}");
+    }
+  }
+
+  // the API methods have a single request parameter, sorted by name so that the generated code is stable
+  private static List<ExecutableElement> getApis(TypeElement service)
+  {
+    List<ExecutableElement> apis = new ArrayList<>();
+    for (ExecutableElement method : ElementFilter.methodsIn(service.getEnclosedElements())) {
+      if (method.getParameters().size() == 1 && !method.getModifiers().contains(Modifier.STATIC)
+          && !method.getModifiers().contains(Modifier.DEFAULT)) {
+        apis.add(method);
+      }
+    }
+    apis.sort(Comparator.comparing(method -> method.getSimpleName().toString()));
+    return apis;
+  }
+
+  // a public constructor with the given parameter types, or any public or protected constructor if they are null
+  private ExecutableElement getConstructor(TypeElement type, List<? extends VariableElement> parameters)
+  {
+    for (ExecutableElement constructor : ElementFilter.constructorsIn(type.getEnclosedElements())) {
+      if (parameters == null) {
+        if (constructor.getModifiers().contains(Modifier.PUBLIC) || constructor.getModifiers().contains(Modifier.PROTECTED)) {
+          return constructor;
+        }
+      }
+      else if (constructor.getModifiers().contains(Modifier.PUBLIC) && hasParameterTypes(constructor, parameters)) {
+        return constructor;
+      }
+    }
+    return null;
+  }
+
+  private boolean hasParameterTypes(ExecutableElement method, List<? extends VariableElement> parameters)
+  {
+    if (method.getParameters().size() != parameters.size()) {
+      return false;
+    }
+    for (int i = 0; i < parameters.size(); i++) {
+      if (!processingEnv.getTypeUtils().isSameType(method.getParameters().get(i).asType(), parameters.get(i).asType())) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private TypeMirror erasure(TypeMirror type)
+  {
+    return processingEnv.getTypeUtils().erasure(type);
+  }
+
+  private String getPackageName(Element element)
+  {
+    return processingEnv.getElementUtils().getPackageOf(element).getQualifiedName().toString();
+  }
+
+  private static AnnotationMirror getAnnotationMirror(Element element, Class<?> annotation)
+  {
+    for (AnnotationMirror mirror : element.getAnnotationMirrors()) {
+      if (((TypeElement) mirror.getAnnotationType().asElement()).getQualifiedName().contentEquals(annotation.getName())) {
+        return mirror;
+      }
+    }
+    throw new IllegalArgumentException(element + " is not annotated with " + annotation.getName());
+  }
+
+  // the class values of an annotation could only be read as type mirrors at compile time
+  private static Object getValue(AnnotationMirror annotation, String name)
+  {
+    for (Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> entry : annotation.getElementValues().entrySet()) {
+      if (entry.getKey().getSimpleName().contentEquals(name)) {
+        return entry.getValue().getValue();
+      }
+    }
+    throw new IllegalArgumentException(annotation + " has no value " + name);
+  }
+
+  private void error(Element element, String message)
+  {
+    processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, message, element);
+  }
+}
@@ -0,0 +1,41 @@
+/*-
+ * #%L
+ * hms-annotation-processor
+ * %%
+ * Copyright (C) 2019 Amazon Web Services
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.amazonaws.athena.hms.processor;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+// generate <Service>Handlers next to the annotated class, which creates the handler of an API by its name without
+// reflection. The handler of an API is <handlerPackage>.<ApiName>Handler, it must extend the handler base and have
+// a public constructor with the same parameters as the handler base
+@Retention(RetentionPolicy.SOURCE)
+@Target(ElementType.TYPE)
+public @interface GenerateHandlerRegistry
+{
+  // the API interface
+  Class<?> service();
+
+  // the base class of all the handlers
+  Class<?> handlerBase();
+
+  String handlerPackage();
+}
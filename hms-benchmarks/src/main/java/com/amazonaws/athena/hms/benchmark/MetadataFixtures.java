@@ -0,0 +1,203 @@
+/*-
+ * #%L
+ * hms-benchmarks
+ * %%
+ * Copyright (C) 2019 Amazon Web Services
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.amazonaws.athena.hms.benchmark;
+
+import org.apache.hadoop.hive.metastore.api.FieldSchema;
+import org.apache.hadoop.hive.metastore.api.Partition;
+import org.apache.hadoop.hive.metastore.api.SerDeInfo;
+import org.apache.hadoop.hive.metastore.api.StorageDescriptor;
+import org.apache.hadoop.hive.metastore.api.Table;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// synthetic metadata that looks like a partitioned Parquet table registered by a typical ETL job,
+// with a realistic column list and SerDe, so that the benchmarks measure payloads of a realistic shape
+public final class MetadataFixtures
+{
+  public static final String DB_NAME = "sales";
+  public static final String TABLE_NAME = "orders";
+  public static final String LOCATION = "s3://my-data-lake/warehouse/sales.db/orders";
+  public static final int COLUMN_COUNT = 24;
+
+  private static final List<String> PARTITION_KEYS = Arrays.asList("region", "dt", "hour");
+  private static final List<String> REGIONS = Arrays.asList("us-east-1", "us-west-2", "eu-west-1", "ap-northeast-1");
+  private static final List<String> COLUMN_TYPES =
+      Arrays.asList("bigint", "string", "decimal(18,2)", "timestamp", "int", "double", "boolean", "array<string>");
+
+  private MetadataFixtures()
+  {
+  }
+
+  public static Table createTable()
+  {
+    Table table = new Table();
+    table.setDbName(DB_NAME);
+    table.setTableName(TABLE_NAME);
+    table.setOwner("etl");
+    table.setCreateTime(1700000000);
+    table.setTableType("EXTERNAL_TABLE");
+    table.setSd(createStorageDescriptor(LOCATION));
+    List<FieldSchema> partitionKeys = new ArrayList<>();
+    for (String key : PARTITION_KEYS) {
+      partitionKeys.add(new FieldSchema(key, "string", null));
+    }
+    table.setPartitionKeys(partitionKeys);
+    Map<String, String> parameters = new HashMap<>();
+    parameters.put("EXTERNAL", "TRUE");
+    parameters.put("classification", "parquet");
+    parameters.put("parquet.compression", "SNAPPY");
+    parameters.put("transient_lastDdlTime", "1700000000");
+    table.setParameters(parameters);
+    return table;
+  }
+
+  public static List<Table> createTables(int count)
+  {
+    List<Table> tables = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) {
+      Table table = createTable();
+      table.setTableName(TABLE_NAME + "_" + i);
+      table.getSd().setLocation(LOCATION + "_" + i);
+      tables.add(table);
+    }
+    return tables;
+  }
+
+  // one partition per hour, so that every index maps to distinct values
+  public static List<String> createPartitionValues(int index)
+  {
+    int day = index / 24;
+    return Arrays.asList(REGIONS.get(index % REGIONS.size()),
+        String.format("%04d-%02d-%02d", 2000 + day / 28 / 12, day / 28 % 12 + 1, day % 28 + 1),
+        String.format("%02d", index % 24));
+  }
+
+  public static String createPartitionName(int index)
+  {
+    List<String> values = createPartitionValues(index);
+    StringBuilder name = new StringBuilder();
+    for (int i = 0; i < PARTITION_KEYS.size(); i++) {
+      if (i > 0) {
+        name.append('/');
+      }
+      name.append(PARTITION_KEYS.get(i)).append('=').append(values.get(i));
+    }
+    return name.toString();
+  }
+
+  public static List<String> createPartitionNames(int count)
+  {
+    List<String> names = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) {
+      names.add(createPartitionName(i));
+    }
+    return names;
+  }
+
+  public static Partition createPartition(int index)
+  {
+    Partition partition = new Partition();
+    partition.setDbName(DB_NAME);
+    partition.setTableName(TABLE_NAME);
+    partition.setValues(createPartitionValues(index));
+    partition.setCreateTime(1700000000 + index);
+    partition.setLastAccessTime(0);
+    partition.setSd(createStorageDescriptor(LOCATION + "/" + createPartitionName(index)));
+    Map<String, String> parameters = new HashMap<>();
+    parameters.put("numFiles", String.valueOf(index % 17 + 1));
+    parameters.put("totalSize", String.valueOf(134217728L + index));
+    parameters.put("transient_lastDdlTime", String.valueOf(1700000000 + index));
+    partition.setParameters(parameters);
+    return partition;
+  }
+
+  public static List<Partition> createPartitions(int count)
+  {
+    List<Partition> partitions = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) {
+      partitions.add(createPartition(i));
+    }
+    return partitions;
+  }
+
+  private static StorageDescriptor createStorageDescriptor(String location)
+  {
+    List<FieldSchema> columns = new ArrayList<>(COLUMN_COUNT);
+    for (int i = 0; i < COLUMN_COUNT; i++) {
+      columns.add(new FieldSchema("col_" + i, COLUMN_TYPES.get(i % COLUMN_TYPES.size()), "column " + i));
+    }
+    Map<String, String> serdeParameters = new HashMap<>();
+    serdeParameters.put("serialization.format", "1");
+    SerDeInfo serDeInfo = new SerDeInfo(null,
+        "org.apache.hadoop.hive.ql.io.parquet.serde.ParquetHiveSerDe", serdeParameters);
+    StorageDescriptor sd = new StorageDescriptor();
+    sd.setCols(columns);
+    sd.setLocation(location);
+    sd.setInputFormat("org.apache.hadoop.hive.ql.io.parquet.MapredParquetInputFormat");
+    sd.setOutputFormat("org.apache.hadoop.hive.ql.io.parquet.MapredParquetOutputFormat");
+    sd.setCompressed(false);
+    sd.setNumBuckets(-1);
+    sd.setSerdeInfo(serDeInfo);
+    sd.setBucketCols(new ArrayList<>());
+    sd.setSortCols(new ArrayList<>());
+    sd.setParameters(new HashMap<>());
+    sd.setStoredAsSubDirectories(false);
+    return sd;
+  }
+
+  // an output stream that only counts the bytes written, so that serialization is measured without the copying
+  public static class CountingOutputStream extends OutputStream
+  {
+    private long count;
+
+    @Override
+    public void write(int b)
+    {
+      count++;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len)
+    {
+      count += len;
+    }
+
+    public long getCount()
+    {
+      return count;
+    }
+
+    public void reset()
+    {
+      count = 0;
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+    }
+  }
+}
@@ -0,0 +1,100 @@
+/*-
+ * #%L
+ * hms-benchmarks
+ * %%
+ * Copyright (C) 2019 Amazon Web Services
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.amazonaws.athena.hms.benchmark;
+
+import com.amazonaws.athena.hms.PaginatedResponse;
+import com.amazonaws.athena.hms.Paginator;
+import org.apache.thrift.TException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Paginator.paginateByNames sorts all the names for every page, the entries of a page are the names
+// themselves so that only the pagination is measured and not the metastore calls
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+public class PaginatorBenchmark
+{
+  @Param({"1", "1000", "100000", "1000000"})
+  private int entries;
+
+  @Param({"100"})
+  private short pageSize;
+
+  private Paginator<String> paginator;
+  private String middleToken;
+
+  @Setup(Level.Trial)
+  public void setUp()
+  {
+    List<String> names = MetadataFixtures.createPartitionNames(entries);
+    // the metastore doesn't return the names in order
+    Collections.shuffle(names);
+    List<String> unmodifiableNames = Collections.unmodifiableList(names);
+    paginator = new Paginator<String>()
+    {
+      @Override
+      protected Collection<String> getNames()
+      {
+        return unmodifiableNames;
+      }
+
+      @Override
+      protected List<String> getEntriesByNames(List<String> names)
+      {
+        return new ArrayList<>(names);
+      }
+    };
+    List<String> sortedNames = new ArrayList<>(names);
+    Collections.sort(sortedNames);
+    middleToken = Paginator.encrypt(sortedNames.get(sortedNames.size() / 2));
+  }
+
+  @Benchmark
+  public PaginatedResponse<String> firstPage() throws TException
+  {
+    return paginator.paginateByNames(null, pageSize);
+  }
+
+  @Benchmark
+  public PaginatedResponse<String> middlePage() throws TException
+  {
+    return paginator.paginateByNames(middleToken, pageSize);
+  }
+}
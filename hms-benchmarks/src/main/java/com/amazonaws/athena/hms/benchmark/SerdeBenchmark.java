@@ -0,0 +1,114 @@
+/*-
+ * #%L
+ * hms-benchmarks
+ * %%
+ * Copyright (C) 2019 Amazon Web Services
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.amazonaws.athena.hms.benchmark;
+
+import com.amazonaws.athena.hms.ApiHelper;
+import com.amazonaws.athena.hms.GetPartitionsByNamesRequest;
+import com.amazonaws.athena.hms.GetPartitionsByNamesResponse;
+import com.amazonaws.athena.hms.MetadataRequest;
+import com.amazonaws.athena.hms.MetadataResponse;
+import com.amazonaws.athena.hms.RequestContext;
+import com.amazonaws.athena.hms.ThriftEncoding;
+import com.amazonaws.athena.hms.handler.ThriftEncoder;
+import com.amazonaws.athena.hms.io.S3Helper;
+import com.amazonaws.athena.hms.serde.ObjectMapperFactory;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.thrift.protocol.TJSONProtocol;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+// the cost of the request/response envelopes on the wire: MetadataRequestDeserializer on the Lambda side,
+// MetadataResponseSerializer and MetadataResponseDeserializer for a getPartitionsByNames round trip.
+// For 1M entries, run with -p entries=1000000 -jvmArgs -Xmx8g
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+public class SerdeBenchmark
+{
+  @Param({"1", "1000", "100000"})
+  private int entries;
+
+  @Param({"TJSON", "TCOMPACT_BASE64", "TJSON_EMBEDDED"})
+  private ThriftEncoding encoding;
+
+  private ObjectMapper mapper;
+  private byte[] requestPayload;
+  private MetadataResponse response;
+  private byte[] responsePayload;
+  private final MetadataFixtures.CountingOutputStream out = new MetadataFixtures.CountingOutputStream();
+
+  @Setup(Level.Trial)
+  public void setUp() throws Exception
+  {
+    mapper = ObjectMapperFactory.create(new ApiHelper(), new S3Helper(null));
+    GetPartitionsByNamesRequest request = new GetPartitionsByNamesRequest()
+        .withDbName(MetadataFixtures.DB_NAME)
+        .withTableName(MetadataFixtures.TABLE_NAME)
+        .withNames(MetadataFixtures.createPartitionNames(entries));
+    requestPayload = mapper.writeValueAsBytes(new MetadataRequest(
+        new RequestContext("benchmark", "user", "12345678"), "getPartitionsByNames", request, encoding));
+
+    GetPartitionsByNamesResponse apiResponse = new GetPartitionsByNamesResponse();
+    apiResponse.setPartitionDescs(new ThriftEncoder(encoding, new TJSONProtocol.Factory())
+        .encodeAll(MetadataFixtures.createPartitions(entries)));
+    response = new MetadataResponse("getPartitionsByNames", false, null, apiResponse, encoding);
+    responsePayload = mapper.writeValueAsBytes(response);
+    // the payload size decides whether a response could be inlined under the Lambda payload limit
+    System.out.println("entries: " + entries + ", encoding: " + encoding + ", request payload: "
+        + requestPayload.length + " bytes, response payload: " + responsePayload.length + " bytes");
+  }
+
+  @Benchmark
+  public MetadataRequest deserializeRequest() throws IOException
+  {
+    return mapper.readValue(requestPayload, MetadataRequest.class);
+  }
+
+  @Benchmark
+  public long serializeResponse() throws IOException
+  {
+    // with the embedded encoding the Thrift objects are written here, otherwise they are already encoded
+    out.reset();
+    mapper.writeValue(out, response);
+    return out.getCount();
+  }
+
+  @Benchmark
+  public MetadataResponse deserializeResponse() throws IOException
+  {
+    return mapper.readValue(responsePayload, MetadataResponse.class);
+  }
+}
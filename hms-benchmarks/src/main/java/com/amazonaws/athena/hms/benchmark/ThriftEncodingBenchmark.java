@@ -0,0 +1,107 @@
+/*-
+ * #%L
+ * hms-benchmarks
+ * %%
+ * Copyright (C) 2019 Amazon Web Services
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.amazonaws.athena.hms.benchmark;
+
+import com.amazonaws.athena.hms.ApiHelper;
+import com.amazonaws.athena.hms.GetTablesResponse;
+import com.amazonaws.athena.hms.ListPartitionsResponse;
+import com.amazonaws.athena.hms.ThriftEncoding;
+import com.amazonaws.athena.hms.handler.ThriftEncoder;
+import com.amazonaws.athena.hms.io.S3Helper;
+import com.amazonaws.athena.hms.serde.ObjectMapperFactory;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.hadoop.hive.metastore.api.Partition;
+import org.apache.hadoop.hive.metastore.api.Table;
+import org.apache.thrift.TException;
+import org.apache.thrift.protocol.TJSONProtocol;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// the Thrift conversion done by the handlers for list responses, from the metastore objects to the
+// bytes of the API response, the same way a handler encodes them and MetadataHandler writes them
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+public class ThriftEncodingBenchmark
+{
+  @Param({"1", "1000", "100000"})
+  private int entries;
+
+  @Param({"TJSON", "TCOMPACT_BASE64", "TJSON_EMBEDDED"})
+  private ThriftEncoding encoding;
+
+  private ObjectMapper mapper;
+  private List<Partition> partitions;
+  private List<Table> tables;
+  private final MetadataFixtures.CountingOutputStream out = new MetadataFixtures.CountingOutputStream();
+
+  @Setup(Level.Trial)
+  public void setUp() throws Exception
+  {
+    mapper = ObjectMapperFactory.create(new ApiHelper(), new S3Helper(null));
+    partitions = MetadataFixtures.createPartitions(entries);
+    tables = MetadataFixtures.createTables(Math.min(entries, 1000));
+    System.out.println("entries: " + entries + ", encoding: " + encoding
+        + ", partitions payload: " + encodePartitions() + " bytes, tables payload: " + encodeTables() + " bytes");
+  }
+
+  private ThriftEncoder newEncoder()
+  {
+    return new ThriftEncoder(encoding, new TJSONProtocol.Factory());
+  }
+
+  @Benchmark
+  public long encodePartitions() throws TException, IOException
+  {
+    ListPartitionsResponse response = new ListPartitionsResponse();
+    response.setPartitions(newEncoder().encodeAll(partitions));
+    out.reset();
+    mapper.writeValue(out, response);
+    return out.getCount();
+  }
+
+  // a database rarely has as many tables as a table has partitions, so tables are capped at 1000
+  @Benchmark
+  public long encodeTables() throws TException, IOException
+  {
+    GetTablesResponse response = new GetTablesResponse();
+    response.setTables(newEncoder().encodeAll(tables));
+    out.reset();
+    mapper.writeValue(out, response);
+    return out.getCount();
+  }
+}
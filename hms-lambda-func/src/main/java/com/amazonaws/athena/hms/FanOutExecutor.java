@@ -0,0 +1,118 @@
+/*-
+ * #%L
+ * hms-lambda-func
+ * %%
+ * Copyright (C) 2019 Amazon Web Services
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.amazonaws.athena.hms;
+
+import org.apache.thrift.TException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Runs independent metastore calls in parallel with a bounded number of threads and returns
+// the results in the same order as the inputs. The first failure in input order is rethrown,
+// which is the same exception a sequential loop would have stopped at
+public class FanOutExecutor implements AutoCloseable
+{
+  private final int concurrency;
+  private final ExecutorService executor;
+
+  // a single call for one input
+  interface Task<T, R>
+  {
+    R apply(T input) throws TException;
+  }
+
+  public FanOutExecutor(int concurrency)
+  {
+    this.concurrency = Math.max(concurrency, 1);
+    if (this.concurrency > 1) {
+      AtomicInteger threadCount = new AtomicInteger(0);
+      this.executor = Executors.newFixedThreadPool(this.concurrency, runnable -> {
+        Thread thread = new Thread(runnable, "hms-fan-out-" + threadCount.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+      });
+    }
+    else {
+      this.executor = null;
+    }
+  }
+
+  public int getConcurrency()
+  {
+    return concurrency;
+  }
+
+  public <T, R> List<R> map(List<T> inputs, Task<T, R> task) throws TException
+  {
+    List<R> results = new ArrayList<>(inputs.size());
+    if (executor == null || inputs.size() <= 1) {
+      for (T input : inputs) {
+        results.add(task.apply(input));
+      }
+      return results;
+    }
+    List<Future<R>> futures = new ArrayList<>(inputs.size());
+    for (T input : inputs) {
+      futures.add(executor.submit(() -> task.apply(input)));
+    }
+    try {
+      for (Future<R> future : futures) {
+        results.add(future.get());
+      }
+      return results;
+    }
+    catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof TException) {
+        throw (TException) cause;
+      }
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      }
+      if (cause instanceof Error) {
+        throw (Error) cause;
+      }
+      throw new TException(cause);
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new TException("Interrupted while waiting for metastore calls", e);
+    }
+    finally {
+      // stop the calls that are no longer needed once one of them failed
+      for (Future<R> future : futures) {
+        future.cancel(false);
+      }
+    }
+  }
+
+  @Override
+  public void close()
+  {
+    if (executor != null) {
+      executor.shutdownNow();
+    }
+  }
+}
@@ -26,4 +26,10 @@ public class HiveMetaStoreLambdaFunc extends MetadataHandler
   {
     super(new ThriftHiveMetaStoreClientFactory());
   }
+
+  // point the function at a given metastore, e.g., an in-process one in tests
+  HiveMetaStoreLambdaFunc(HiveMetaStoreClientFactory factory)
+  {
+    super(factory);
+  }
 }
@@ -0,0 +1,90 @@
+/*-
+ * #%L
+ * hms-lambda-func
+ * %%
+ * Copyright (C) 2019 Amazon Web Services
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.amazonaws.athena.hms;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+// the filters of getDatabaseNames and getTableNames are Java regular expressions that have to match the whole name.
+// A filter made of lower case names, ".*" wildcards and "|" alternatives is pushed down to the metastore as a Hive
+// pattern, and the names are matched with a compiled Pattern that is cached for the whole container
+final class NameFilter
+{
+  private static final int MAX_PATTERNS = 64;
+
+  // the names in the metastore are lower case, so a filter with upper case letters is left to the regex
+  private static final Pattern HIVE_PATTERN_FILTER = Pattern.compile("([a-z0-9_]|\\.\\*)+(\\|([a-z0-9_]|\\.\\*)+)*");
+
+  private static final Map<String, Pattern> patterns = new LinkedHashMap<String, Pattern>(16, 0.75f, true)
+  {
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<String, Pattern> eldest)
+    {
+      return size() > MAX_PATTERNS;
+    }
+  };
+
+  private NameFilter()
+  {
+  }
+
+  /*
+   * translate the filter to the pattern syntax of get_databases and get_tables, where "*" matches any characters
+   * and "|" separates the alternatives. The metastore matches the pattern case insensitively, which is the same
+   * as the filter for the lower case names in the metastore
+   *
+   * @return the Hive pattern, or null if the filter has to be matched as a regular expression
+   */
+  static String toHivePattern(String filter)
+  {
+    if (!HIVE_PATTERN_FILTER.matcher(filter).matches()) {
+      return null;
+    }
+    return filter.replace(".*", "*");
+  }
+
+  /*
+   * compile the filter once for all the names and all the calls with the same filter
+   *
+   * @return Pattern
+   */
+  static synchronized Pattern compile(String filter)
+  {
+    Pattern pattern = patterns.get(filter);
+    if (pattern == null) {
+      pattern = Pattern.compile(filter);
+      patterns.put(filter, pattern);
+    }
+    return pattern;
+  }
+
+  // the names returned for a Hive pattern are matched again, as the metastore ignores the case
+  static Set<String> matching(List<String> names, String filter)
+  {
+    Pattern pattern = compile(filter);
+    return names.stream()
+        .filter(n -> pattern.matcher(n).matches())
+        .collect(Collectors.toSet());
+  }
+}
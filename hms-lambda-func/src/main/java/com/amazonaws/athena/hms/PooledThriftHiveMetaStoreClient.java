@@ -0,0 +1,437 @@
+/*-
+ * #%L
+ * hms-lambda-func
+ * %%
+ * Copyright (C) 2019 Amazon Web Services
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.amazonaws.athena.hms;
+
+import com.amazonaws.services.lambda.runtime.Context;
+import com.google.common.collect.Lists;
+import org.apache.hadoop.hive.conf.HiveConf;
+import org.apache.hadoop.hive.metastore.api.Database;
+import org.apache.hadoop.hive.metastore.api.DropPartitionsResult;
+import org.apache.hadoop.hive.metastore.api.NotificationEvent;
+import org.apache.hadoop.hive.metastore.api.Partition;
+import org.apache.hadoop.hive.metastore.api.Table;
+import org.apache.thrift.TApplicationException;
+import org.apache.thrift.TException;
+import org.apache.thrift.protocol.TProtocolException;
+import org.apache.thrift.transport.TTransportException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+// A HiveMetaStoreClient that borrows a connection from ThriftHiveMetaStoreClientPool for every call,
+// so that one container could run concurrent calls against all the metastore URIs and a failed call
+// only evicts the connection that failed instead of tearing down the whole client
+public class PooledThriftHiveMetaStoreClient implements HiveMetaStoreClient, CheckpointAware
+{
+  private final ThriftHiveMetaStoreClientPool pool;
+  private final FanOutExecutor fanOutExecutor;
+  // the max number of names per get_partitions_by_names call, 0 to send all the names at once
+  private int partitionBatchSize;
+  // the non-blocking connections for the asynchronous calls, null if disabled
+  private ThriftAsyncHiveMetaStoreClient asyncClient;
+
+  // a single call against a pooled connection
+  interface ClientCall<R>
+  {
+    R call(ThriftHiveMetaStoreClient client) throws TException;
+  }
+
+  public PooledThriftHiveMetaStoreClient(ThriftHiveMetaStoreClientPool pool) throws TException
+  {
+    this(pool, 1);
+  }
+
+  public PooledThriftHiveMetaStoreClient(ThriftHiveMetaStoreClientPool pool, int fanOutConcurrency) throws TException
+  {
+    this.pool = pool;
+    this.fanOutExecutor = new FanOutExecutor(fanOutConcurrency);
+    // open the first connection eagerly so that a misconfigured metastore fails fast
+    pool.release(pool.borrow(), false);
+  }
+
+  public int getPartitionBatchSize()
+  {
+    return partitionBatchSize;
+  }
+
+  public void setPartitionBatchSize(int partitionBatchSize)
+  {
+    this.partitionBatchSize = partitionBatchSize;
+  }
+
+  public void setAsyncClient(ThriftAsyncHiveMetaStoreClient asyncClient)
+  {
+    this.asyncClient = asyncClient;
+  }
+
+  @Override
+  public AsyncHiveMetaStoreClient getAsyncClient()
+  {
+    return asyncClient;
+  }
+
+  public ThriftHiveMetaStoreClientPool getPool()
+  {
+    return pool;
+  }
+
+  <R> R execute(ClientCall<R> call) throws TException
+  {
+    ThriftHiveMetaStoreClientPool.PooledConnection connection = pool.borrow();
+    boolean broken = false;
+    try {
+      return call.call(connection.getClient());
+    }
+    catch (TException e) {
+      broken = isConnectionError(e);
+      throw e;
+    }
+    catch (RuntimeException e) {
+      broken = true;
+      throw e;
+    }
+    finally {
+      pool.release(connection, broken);
+    }
+  }
+
+  // metastore exceptions such as NoSuchObjectException leave the connection usable,
+  // while transport, protocol and application errors could leave it in a bad state
+  static boolean isConnectionError(TException e)
+  {
+    return e instanceof TTransportException || e instanceof TProtocolException || e instanceof TApplicationException;
+  }
+
+  @Override
+  public boolean dbExists(String dbName) throws TException
+  {
+    return execute(client -> client.dbExists(dbName));
+  }
+
+  @Override
+  public boolean tableExists(String dbName, String tableName) throws TException
+  {
+    return execute(client -> client.tableExists(dbName, tableName));
+  }
+
+  @Override
+  public Database getDatabase(String dbName) throws TException
+  {
+    return execute(client -> client.getDatabase(dbName));
+  }
+
+  @Override
+  public Set<String> getDatabaseNames(String filter) throws TException
+  {
+    return execute(client -> client.getDatabaseNames(filter));
+  }
+
+  // fetch all database objects with the lookups spread over the pooled connections
+  @Override
+  public List<Database> getDatabases(String filter) throws TException
+  {
+    Set<String> databaseNames = getDatabaseNames(filter);
+    if (databaseNames == null || databaseNames.isEmpty()) {
+      return new ArrayList<>();
+    }
+    return fanOutExecutor.map(new ArrayList<>(databaseNames), this::getDatabase);
+  }
+
+  @Override
+  public List<Database> getDatabasesByNames(List<String> dbNames) throws TException
+  {
+    if (dbNames == null || dbNames.isEmpty()) {
+      return new ArrayList<>();
+    }
+    return fanOutExecutor.map(dbNames, this::getDatabase);
+  }
+
+  @Override
+  public Set<String> getTableNames(String dbName, String filter) throws TException
+  {
+    return execute(client -> client.getTableNames(dbName, filter));
+  }
+
+  @Override
+  public List<Table> getTablesByNames(String dbName, List<String> tableNames) throws TException
+  {
+    return execute(client -> client.getTablesByNames(dbName, tableNames));
+  }
+
+  @Override
+  public boolean createDatabase(String name) throws TException
+  {
+    return execute(client -> client.createDatabase(name));
+  }
+
+  @Override
+  public boolean createDatabase(String name, String description, String location, Map<String, String> params)
+      throws TException
+  {
+    return execute(client -> client.createDatabase(name, description, location, params));
+  }
+
+  @Override
+  public boolean createDatabase(Database db) throws TException
+  {
+    return execute(client -> client.createDatabase(db));
+  }
+
+  @Override
+  public boolean dropDatabase(String dbName, boolean deleteData, boolean cascade) throws TException
+  {
+    return execute(client -> client.dropDatabase(dbName, deleteData, cascade));
+  }
+
+  @Override
+  public boolean createTable(Table table) throws TException
+  {
+    return execute(client -> client.createTable(table));
+  }
+
+  @Override
+  public boolean dropTable(String dbName, String tableName) throws TException
+  {
+    return execute(client -> client.dropTable(dbName, tableName));
+  }
+
+  @Override
+  public Table getTable(String dbName, String tableName) throws TException
+  {
+    return execute(client -> client.getTable(dbName, tableName));
+  }
+
+  @Override
+  public Partition createPartition(Table table, List<String> values) throws TException
+  {
+    return execute(client -> client.createPartition(table, values));
+  }
+
+  @Override
+  public Partition addPartition(Partition partition) throws TException
+  {
+    return execute(client -> client.addPartition(partition));
+  }
+
+  @Override
+  public void addPartitions(List<Partition> partitions) throws TException
+  {
+    execute(client -> {
+      client.addPartitions(partitions);
+      return null;
+    });
+  }
+
+  // the chunks are written in parallel, each in its own transaction over a pooled connection
+  @Override
+  public List<PartitionChunkResult> addPartitionsInChunks(List<Partition> partitions, int chunkSize) throws TException
+  {
+    return writeChunks(partitions, chunkSize, chunk -> execute(client -> {
+      client.addPartitionsIfNotExist(chunk);
+      return null;
+    }));
+  }
+
+  @Override
+  public Long getCurrentNotificationId() throws TException
+  {
+    return execute(ThriftHiveMetaStoreClient::getCurrentNotificationId);
+  }
+
+  @Override
+  public List<NotificationEvent> getNextNotifications(long lastEventId, int maxEvents) throws TException
+  {
+    return execute(client -> client.getNextNotifications(lastEventId, maxEvents));
+  }
+
+  @Override
+  public List<String> getPartitionNames(String dbName, String tableName, short maxSize) throws TException
+  {
+    return execute(client -> client.getPartitionNames(dbName, tableName, maxSize));
+  }
+
+  @Override
+  public boolean dropPartition(String dbName, String tableName, List<String> arguments) throws TException
+  {
+    return execute(client -> client.dropPartition(dbName, tableName, arguments));
+  }
+
+  @Override
+  public List<Partition> getPartitions(String dbName, String tableName, short maxSize) throws TException
+  {
+    return execute(client -> client.getPartitions(dbName, tableName, maxSize));
+  }
+
+  @Override
+  public List<Partition> getPartitionsByFilter(String dbName, String tableName, String partitionFilter, short maxSize) throws TException
+  {
+    return execute(client -> client.getPartitionsByFilter(dbName, tableName, partitionFilter, maxSize));
+  }
+
+  @Override
+  public DropPartitionsResult dropPartitions(String dbName, String tableName, List<String> partNames) throws TException
+  {
+    return execute(client -> client.dropPartitions(dbName, tableName, partNames));
+  }
+
+  @Override
+  public List<PartitionChunkResult> dropPartitionsInChunks(String dbName, String tableName, List<String> partNames,
+                                                           int chunkSize) throws TException
+  {
+    return writeChunks(partNames, chunkSize, chunk -> execute(client -> {
+      client.dropPartitionsIfExist(dbName, tableName, chunk);
+      return null;
+    }));
+  }
+
+  // split huge name lists into batches of the sorted names and fetch the batches in parallel. The metastore
+  // returns each batch ordered by partition name, so the merged batches are in name order like a single call
+  @Override
+  public List<Partition> getPartitionsByNames(String dbName, String tableName, List<String> names) throws TException
+  {
+    if (names != null && (partitionBatchSize <= 0 || names.size() <= partitionBatchSize)) {
+      return execute(client -> client.getPartitionsByNames(dbName, tableName, names));
+    }
+    List<String> partitionNames = names != null ? ThriftHiveMetaStoreClient.sortedCopy(names)
+        : execute(client -> client.getSortedPartitionNames(dbName, tableName));
+    if (partitionBatchSize <= 0 || partitionNames.size() <= partitionBatchSize) {
+      return execute(client -> client.getPartitionsByNames(dbName, tableName, partitionNames));
+    }
+    List<List<Partition>> batches = fanOutExecutor.map(Lists.partition(partitionNames, partitionBatchSize),
+        batch -> execute(client -> client.getPartitionsByNames(dbName, tableName, batch)));
+    List<Partition> partitions = new ArrayList<>(partitionNames.size());
+    for (List<Partition> batch : batches) {
+      partitions.addAll(batch);
+    }
+    return partitions;
+  }
+
+  @Override
+  public boolean alterDatabase(String dbName, Database database) throws TException
+  {
+    return execute(client -> client.alterDatabase(dbName, database));
+  }
+
+  @Override
+  public boolean alterTable(String dbName, String tableName, Table newTable) throws TException
+  {
+    return execute(client -> client.alterTable(dbName, tableName, newTable));
+  }
+
+  @Override
+  public void alterPartition(String dbName, String tableName, Partition partition) throws TException
+  {
+    execute(client -> {
+      client.alterPartition(dbName, tableName, partition);
+      return null;
+    });
+  }
+
+  @Override
+  public void alterPartitions(String dbName, String tableName, List<Partition> partitions) throws TException
+  {
+    execute(client -> {
+      client.alterPartitions(dbName, tableName, partitions);
+      return null;
+    });
+  }
+
+  @Override
+  public List<PartitionChunkResult> alterPartitionsInChunks(String dbName, String tableName, List<Partition> partitions,
+                                                            int chunkSize) throws TException
+  {
+    return writeChunks(partitions, chunkSize, chunk -> execute(client -> {
+      client.alterPartitions(dbName, tableName, chunk);
+      return null;
+    }));
+  }
+
+  private <T> List<PartitionChunkResult> writeChunks(List<T> items, int chunkSize, ChunkedWrites.ChunkWriter<T> writer)
+      throws TException
+  {
+    List<List<T>> chunks = ChunkedWrites.split(items, chunkSize);
+    List<Integer> chunkIndexes = IntStream.range(0, chunks.size()).boxed().collect(Collectors.toList());
+    return fanOutExecutor.map(chunkIndexes, index -> ChunkedWrites.write(chunks.get(index), index * chunkSize, writer));
+  }
+
+  @Override
+  public void appendPartition(String dbName, String tableName, List<String> partitionValues) throws TException
+  {
+    execute(client -> {
+      client.appendPartition(dbName, tableName, partitionValues);
+      return null;
+    });
+  }
+
+  @Override
+  public void renamePartition(String dbName, String tableName, List<String> partVals, Partition newPart) throws TException
+  {
+    execute(client -> {
+      client.renamePartition(dbName, tableName, partVals, newPart);
+      return null;
+    });
+  }
+
+  @Override
+  public boolean listPartitionsByExpr(String dbName, String tableName, byte[] expr, String defaultPartitionName,
+                                      short maxParts, List<Partition> partitions) throws TException
+  {
+    return execute(client -> client.listPartitionsByExpr(dbName, tableName, expr, defaultPartitionName, maxParts, partitions));
+  }
+
+  @Override
+  public void close(Context context)
+  {
+    fanOutExecutor.close();
+    pool.close();
+    if (asyncClient != null) {
+      asyncClient.close();
+    }
+    context.getLogger().log("Closed all the pooled connections to metastore");
+  }
+
+  // no call is running while a snapshot is taken, so all the connections are idle
+  @Override
+  public void beforeCheckpoint()
+  {
+    pool.closeIdleConnections();
+    if (asyncClient != null) {
+      asyncClient.beforeCheckpoint();
+    }
+  }
+
+  @Override
+  public void afterRestore()
+  {
+    // the pool opens new connections as they are borrowed
+  }
+
+  @Override
+  public void refreshClient(HiveConf hiveConf, Context context)
+  {
+    // the connection that failed has already been evicted, only drop the idle connections that are no longer usable
+    pool.validateAllIdleConnections();
+    context.getLogger().log("Validated the idle connections in the metastore client pool");
+  }
+}
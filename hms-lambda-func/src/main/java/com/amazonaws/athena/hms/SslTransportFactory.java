@@ -0,0 +1,142 @@
+/*-
+ * #%L
+ * hms-lambda-func
+ * %%
+ * Copyright (C) 2019 Amazon Web Services
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.amazonaws.athena.hms;
+
+import org.apache.thrift.transport.TSocket;
+import org.apache.thrift.transport.TTransportException;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLException;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.SSLSocketFactory;
+import javax.net.ssl.TrustManagerFactory;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// opens SSL sockets to the metastore like TSSLTransportFactory, but with one SSLContext per truststore path and
+// password for the whole container. The truststore is resolved, i.e., downloaded if it is in s3, and parsed only once,
+// and since the SSLContext keeps the client session cache, a reconnect to the same metastore resumes the TLS session
+// instead of doing a full handshake
+final class SslTransportFactory
+{
+  private static final String PROTOCOL = "TLS";
+  private static final String TRUSTSTORE_TYPE = "JKS";
+
+  private static final Map<List<String>, SSLSocketFactory> socketFactories = new HashMap<>();
+
+  // resolves the truststore path to a local file, the same file is expected for the same path
+  interface TrustStoreResolver
+  {
+    String resolve(String trustStorePath, String trustStorePassword) throws IOException;
+  }
+
+  private SslTransportFactory()
+  {
+  }
+
+  /*
+   * open an SSL socket to the given host and port that trusts the certificates in the truststore and do the
+   * handshake, so that it is part of the connect rather than of the first call. A failed handshake drops the
+   * SSLContext since the truststore could have been rotated
+   *
+   * @return TSocket
+   */
+  static TSocket getClientSocket(String host, int port, int timeout, String trustStorePath, String trustStorePassword,
+                                 TrustStoreResolver resolver) throws TTransportException
+  {
+    SSLSocketFactory socketFactory;
+    try {
+      socketFactory = getSocketFactory(trustStorePath, trustStorePassword, resolver);
+    }
+    catch (IOException | GeneralSecurityException e) {
+      throw new TTransportException(e.getMessage(), e);
+    }
+    Socket socket = null;
+    try {
+      socket = socketFactory.createSocket();
+      socket.setSoTimeout(timeout);
+      socket.connect(new InetSocketAddress(host, port), timeout);
+      ((SSLSocket) socket).startHandshake();
+      return new TSocket(socket);
+    }
+    catch (IOException e) {
+      if (socket != null) {
+        try {
+          socket.close();
+        }
+        catch (IOException ignored) {
+          // the socket isn't usable anyway
+        }
+      }
+      if (e instanceof SSLException) {
+        invalidate(trustStorePath, trustStorePassword);
+      }
+      throw new TTransportException(TTransportException.NOT_OPEN, "Could not connect to " + host + " on port " + port, e);
+    }
+  }
+
+  private static synchronized SSLSocketFactory getSocketFactory(String trustStorePath, String trustStorePassword,
+                                                                TrustStoreResolver resolver)
+      throws IOException, GeneralSecurityException
+  {
+    List<String> key = Arrays.asList(trustStorePath, trustStorePassword);
+    SSLSocketFactory socketFactory = socketFactories.get(key);
+    if (socketFactory == null) {
+      socketFactory = createSocketFactory(resolver.resolve(trustStorePath, trustStorePassword), trustStorePassword);
+      socketFactories.put(key, socketFactory);
+    }
+    return socketFactory;
+  }
+
+  private static SSLSocketFactory createSocketFactory(String trustStoreFile, String trustStorePassword)
+      throws IOException, GeneralSecurityException
+  {
+    KeyStore trustStore = KeyStore.getInstance(TRUSTSTORE_TYPE);
+    try (InputStream in = new FileInputStream(trustStoreFile)) {
+      trustStore.load(in, trustStorePassword.toCharArray());
+    }
+    TrustManagerFactory trustManagerFactory = TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
+    trustManagerFactory.init(trustStore);
+    SSLContext context = SSLContext.getInstance(PROTOCOL);
+    context.init(null, trustManagerFactory.getTrustManagers(), null);
+    return context.getSocketFactory();
+  }
+
+  // drop the SSLContext of the truststore, e.g., after a failed handshake since the truststore could have been rotated
+  static synchronized void invalidate(String trustStorePath, String trustStorePassword)
+  {
+    socketFactories.remove(Arrays.asList(trustStorePath, trustStorePassword));
+  }
+
+  static synchronized int size()
+  {
+    return socketFactories.size();
+  }
+}
@@ -0,0 +1,512 @@
+/*-
+ * #%L
+ * hms-lambda-func
+ * %%
+ * Copyright (C) 2019 Amazon Web Services
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.amazonaws.athena.hms;
+
+import com.google.common.collect.Lists;
+import org.apache.hadoop.hive.metastore.api.Database;
+import org.apache.hadoop.hive.metastore.api.NoSuchObjectException;
+import org.apache.hadoop.hive.metastore.api.Partition;
+import org.apache.hadoop.hive.metastore.api.Table;
+import org.apache.hadoop.hive.metastore.api.ThriftHiveMetastore.AsyncClient;
+import org.apache.hadoop.hive.shims.Utils;
+import org.apache.hadoop.security.UserGroupInformation;
+import org.apache.thrift.TException;
+import org.apache.thrift.async.AsyncMethodCallback;
+import org.apache.thrift.async.TAsyncClientManager;
+import org.apache.thrift.protocol.TBinaryProtocol;
+import org.apache.thrift.protocol.TCompactProtocol;
+import org.apache.thrift.protocol.TProtocolFactory;
+import org.apache.thrift.transport.TNonblockingSocket;
+import org.apache.thrift.transport.TTransportException;
+
+import javax.security.auth.login.LoginException;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// An AsyncHiveMetaStoreClient over non-blocking sockets. The single selector thread of TAsyncClientManager
+// drives up to N connections spread over the metastore URIs in a round robin way. A connection runs one call
+// at a time, so the calls beyond N wait in a queue for the next free connection instead of holding a thread.
+// Thrift only supports the framed transport without SSL and SASL on non-blocking sockets
+public class ThriftAsyncHiveMetaStoreClient implements AsyncHiveMetaStoreClient, CheckpointAware
+{
+  private static final long CALL_TIMEOUT_MS = TimeUnit.SECONDS.toMillis(600);
+
+  private final List<URI> uris;
+  private final int maxConnections;
+  private final TProtocolFactory protocolFactory;
+  private final TAsyncClientManager manager;
+  // the user sent with set_ugi on every new connection, null if the metastore doesn't expect it
+  private final UserGroupInformation ugi;
+  private final AtomicInteger nextUri = new AtomicInteger(0);
+  // the connections and the calls below are guarded by this
+  private final Deque<Connection> idle = new ArrayDeque<>();
+  private final Queue<PendingCall> pending = new ArrayDeque<>();
+  private int openConnections;
+  private boolean closed;
+  // the max number of names per get_partitions_by_names call, 0 to send all the names at once
+  private int partitionBatchSize;
+
+  // starts a call on a connection, the callback receives the completed call
+  interface CallStarter<C>
+  {
+    void start(AsyncClient client, AsyncMethodCallback<C> callback) throws TException;
+  }
+
+  // reads the result, or the exception sent by the metastore, out of a completed call
+  interface ResultReader<C, R>
+  {
+    R read(C call) throws Exception;
+  }
+
+  ThriftAsyncHiveMetaStoreClient(List<URI> uris, int maxConnections, TProtocolFactory protocolFactory,
+                                 UserGroupInformation ugi) throws IOException
+  {
+    if (uris == null || uris.isEmpty()) {
+      throw new IllegalArgumentException("At least one metastore URI is required");
+    }
+    if (maxConnections <= 0) {
+      throw new IllegalArgumentException("The number of connections must be positive: " + maxConnections);
+    }
+    this.uris = uris;
+    this.maxConnections = maxConnections;
+    this.protocolFactory = protocolFactory;
+    this.ugi = ugi;
+    this.manager = new TAsyncClientManager();
+  }
+
+  // whether the connection settings could be served by non-blocking sockets
+  public static boolean isSupported(HiveMetaStoreConf conf)
+  {
+    return conf.isUseFramedTransport() && !conf.isUseSsl() && !conf.isUseSasl() && !conf.isKerberosEnabled();
+  }
+
+  /*
+   * create a client against all the metastore URIs in the configuration
+   *
+   * @return ThriftAsyncHiveMetaStoreClient
+   */
+  public static ThriftAsyncHiveMetaStoreClient fromConf(HiveMetaStoreConf conf)
+      throws IOException, LoginException, URISyntaxException
+  {
+    if (!isSupported(conf)) {
+      throw new IllegalArgumentException("Non-blocking connections require the framed transport without SSL and SASL");
+    }
+    List<URI> uris = new ArrayList<>();
+    for (String uri : conf.getMetastoreUri().split(",")) {
+      if (!uri.trim().isEmpty()) {
+        uris.add(new URI(uri.trim()));
+      }
+    }
+    ThriftAsyncHiveMetaStoreClient client = new ThriftAsyncHiveMetaStoreClient(uris,
+        conf.getClientNonblockingConnections(),
+        conf.isUseCompactProtocol() ? new TCompactProtocol.Factory() : new TBinaryProtocol.Factory(),
+        conf.isMetastoreSetUgi() ? Utils.getUGI() : null);
+    client.setPartitionBatchSize(conf.getClientPartitionBatchSize());
+    return client;
+  }
+
+  public int getPartitionBatchSize()
+  {
+    return partitionBatchSize;
+  }
+
+  public void setPartitionBatchSize(int partitionBatchSize)
+  {
+    this.partitionBatchSize = partitionBatchSize;
+  }
+
+  public synchronized int getOpenConnections()
+  {
+    return openConnections;
+  }
+
+  @Override
+  public CompletableFuture<Boolean> dbExists(String dbName)
+  {
+    return call((client, callback) -> client.get_database(dbName, callback), (AsyncClient.get_database_call call) -> {
+      try {
+        call.getResult();
+        return true;
+      }
+      catch (NoSuchObjectException e) {
+        return false;
+      }
+    });
+  }
+
+  @Override
+  public CompletableFuture<Boolean> tableExists(String dbName, String tableName)
+  {
+    return call((client, callback) -> client.get_table(dbName, tableName, callback), (AsyncClient.get_table_call call) -> {
+      try {
+        call.getResult();
+        return true;
+      }
+      catch (NoSuchObjectException e) {
+        return false;
+      }
+    });
+  }
+
+  @Override
+  public CompletableFuture<Database> getDatabase(String dbName)
+  {
+    return call((client, callback) -> client.get_database(dbName, callback), AsyncClient.get_database_call::getResult);
+  }
+
+  @Override
+  public CompletableFuture<Set<String>> getDatabaseNames(String filter)
+  {
+    if (filter == null || filter.isEmpty()) {
+      return call((client, callback) -> client.get_all_databases(callback),
+          (AsyncClient.get_all_databases_call call) -> new HashSet<>(call.getResult()));
+    }
+    String pattern = NameFilter.toHivePattern(filter);
+    if (pattern == null) {
+      return call((client, callback) -> client.get_all_databases(callback),
+          (AsyncClient.get_all_databases_call call) -> NameFilter.matching(call.getResult(), filter));
+    }
+    return call((client, callback) -> client.get_databases(pattern, callback),
+        (AsyncClient.get_databases_call call) -> NameFilter.matching(call.getResult(), filter));
+  }
+
+  @Override
+  public CompletableFuture<Set<String>> getTableNames(String dbName, String filter)
+  {
+    if (filter == null || filter.isEmpty()) {
+      return call((client, callback) -> client.get_all_tables(dbName, callback),
+          (AsyncClient.get_all_tables_call call) -> new HashSet<>(call.getResult()));
+    }
+    String pattern = NameFilter.toHivePattern(filter);
+    if (pattern == null) {
+      return call((client, callback) -> client.get_all_tables(dbName, callback),
+          (AsyncClient.get_all_tables_call call) -> NameFilter.matching(call.getResult(), filter));
+    }
+    return call((client, callback) -> client.get_tables(dbName, pattern, callback),
+        (AsyncClient.get_tables_call call) -> NameFilter.matching(call.getResult(), filter));
+  }
+
+  @Override
+  public CompletableFuture<Table> getTable(String dbName, String tableName)
+  {
+    return call((client, callback) -> client.get_table(dbName, tableName, callback), AsyncClient.get_table_call::getResult);
+  }
+
+  @Override
+  public CompletableFuture<List<Table>> getTablesByNames(String dbName, List<String> tableNames)
+  {
+    return call((client, callback) -> client.get_table_objects_by_name(dbName, tableNames, callback),
+        AsyncClient.get_table_objects_by_name_call::getResult);
+  }
+
+  @Override
+  public CompletableFuture<List<String>> getPartitionNames(String dbName, String tableName, short maxSize)
+  {
+    return call((client, callback) -> client.get_partition_names(dbName, tableName, maxSize, callback),
+        AsyncClient.get_partition_names_call::getResult);
+  }
+
+  // the batches of a huge name list are all in flight at once and merged back in name order like a single call
+  @Override
+  public CompletableFuture<List<Partition>> getPartitionsByNames(String dbName, String tableName, List<String> names)
+  {
+    if (names == null) {
+      return getPartitionNames(dbName, tableName, (short) -1).thenCompose(allNames ->
+          getPartitionsByNames(dbName, tableName, allNames));
+    }
+    if (partitionBatchSize <= 0 || names.size() <= partitionBatchSize) {
+      return call((client, callback) -> client.get_partitions_by_names(dbName, tableName, names, callback),
+          AsyncClient.get_partitions_by_names_call::getResult);
+    }
+    // sorted so that the batches come back in name order
+    List<CompletableFuture<List<Partition>>> batches = new ArrayList<>();
+    for (List<String> batch : Lists.partition(ThriftHiveMetaStoreClient.sortedCopy(names), partitionBatchSize)) {
+      batches.add(getPartitionsByNames(dbName, tableName, batch));
+    }
+    return AsyncHiveMetaStoreClient.allOf(batches).thenApply(results -> {
+      List<Partition> partitions = new ArrayList<>(names.size());
+      for (List<Partition> batch : results) {
+        partitions.addAll(batch);
+      }
+      return partitions;
+    });
+  }
+
+  <C, R> CompletableFuture<R> call(CallStarter<C> starter, ResultReader<C, R> reader)
+  {
+    CompletableFuture<R> future = new CompletableFuture<>();
+    dispatch(new PendingCall()
+    {
+      @Override
+      void start(Connection connection)
+      {
+        try {
+          starter.start(connection.client, new AsyncMethodCallback<C>()
+          {
+            @Override
+            public void onComplete(C call)
+            {
+              // the whole frame has been read, so the connection is usable even if the result is an exception
+              R result;
+              try {
+                result = reader.read(call);
+              }
+              catch (Exception e) {
+                release(connection);
+                future.completeExceptionally(e);
+                return;
+              }
+              release(connection);
+              future.complete(result);
+            }
+
+            @Override
+            public void onError(Exception e)
+            {
+              discard(connection);
+              future.completeExceptionally(e instanceof TException ? e : new TTransportException(e));
+            }
+          });
+        }
+        catch (TException | RuntimeException e) {
+          discard(connection);
+          future.completeExceptionally(e);
+        }
+      }
+
+      @Override
+      void fail(Exception e)
+      {
+        future.completeExceptionally(e);
+      }
+    });
+    return future;
+  }
+
+  private void dispatch(PendingCall call)
+  {
+    Connection connection = null;
+    boolean open = false;
+    synchronized (this) {
+      if (!closed) {
+        connection = idle.pollFirst();
+        if (connection == null) {
+          if (openConnections >= maxConnections) {
+            pending.add(call);
+            return;
+          }
+          openConnections++;
+          open = true;
+        }
+      }
+    }
+    if (connection != null) {
+      call.start(connection);
+    }
+    else if (open) {
+      open(call);
+    }
+    else {
+      call.fail(new TException("The metastore client is closed"));
+    }
+  }
+
+  // open a new connection in the slot the call has taken, and then run the call on it
+  private void open(PendingCall call)
+  {
+    while (call != null) {
+      URI uri = uris.get(Math.floorMod(nextUri.getAndIncrement(), uris.size()));
+      Connection connection;
+      try {
+        // only starts to connect, the selector thread finishes it with the first call
+        TNonblockingSocket socket = new TNonblockingSocket(uri.getHost(), uri.getPort(), (int) CALL_TIMEOUT_MS);
+        connection = new Connection(new AsyncClient(protocolFactory, manager, socket), socket);
+        connection.client.setTimeout(CALL_TIMEOUT_MS);
+      }
+      catch (IOException | RuntimeException e) {
+        call.fail(new TTransportException("Failed to connect to metastore " + uri + ": " + e.getMessage(), e));
+        call = takeOver();
+        continue;
+      }
+      if (ugi == null) {
+        call.start(connection);
+      }
+      else {
+        setUgi(connection, call);
+      }
+      return;
+    }
+  }
+
+  private void setUgi(Connection connection, PendingCall call)
+  {
+    try {
+      connection.client.set_ugi(ugi.getUserName(), Arrays.asList(ugi.getGroupNames()),
+          new AsyncMethodCallback<AsyncClient.set_ugi_call>()
+          {
+            @Override
+            public void onComplete(AsyncClient.set_ugi_call response)
+            {
+              try {
+                response.getResult();
+              }
+              catch (Exception e) {
+                call.fail(e);
+                release(connection);
+                return;
+              }
+              call.start(connection);
+            }
+
+            @Override
+            public void onError(Exception e)
+            {
+              call.fail(e instanceof TException ? e : new TTransportException(e));
+              discard(connection);
+            }
+          });
+    }
+    catch (TException | RuntimeException e) {
+      call.fail(e);
+      discard(connection);
+    }
+  }
+
+  // a healthy connection goes to the next waiting call, or back to the idle connections
+  private void release(Connection connection)
+  {
+    PendingCall next;
+    synchronized (this) {
+      next = pending.poll();
+      if (next == null && !closed) {
+        idle.offerFirst(connection);
+        return;
+      }
+    }
+    if (next != null) {
+      next.start(connection);
+    }
+    else {
+      connection.close();
+    }
+  }
+
+  // a broken connection is closed and the next waiting call opens a new one in its place
+  private void discard(Connection connection)
+  {
+    connection.close();
+    PendingCall next = takeOver();
+    if (next != null) {
+      open(next);
+    }
+  }
+
+  // hand the slot of a connection that is gone to the next waiting call, if any
+  private synchronized PendingCall takeOver()
+  {
+    PendingCall next = pending.poll();
+    if (next == null) {
+      openConnections--;
+    }
+    return next;
+  }
+
+  // close all the idle connections, new ones are opened for the next calls
+  public void closeIdleConnections()
+  {
+    List<Connection> connections;
+    synchronized (this) {
+      connections = new ArrayList<>(idle);
+      idle.clear();
+      openConnections -= connections.size();
+    }
+    for (Connection connection : connections) {
+      connection.close();
+    }
+  }
+
+  // no call is running while a snapshot is taken, so all the connections are idle
+  @Override
+  public void beforeCheckpoint()
+  {
+    closeIdleConnections();
+  }
+
+  @Override
+  public void afterRestore()
+  {
+    // connections are opened as the calls need them
+  }
+
+  // the calls that are still waiting fail, the ones in flight are abandoned with the selector thread
+  @Override
+  public void close()
+  {
+    List<PendingCall> calls;
+    synchronized (this) {
+      closed = true;
+      calls = new ArrayList<>(pending);
+      pending.clear();
+    }
+    for (PendingCall call : calls) {
+      call.fail(new TException("The metastore client is closed"));
+    }
+    closeIdleConnections();
+    manager.stop();
+  }
+
+  // a call waiting for a connection
+  private abstract static class PendingCall
+  {
+    abstract void start(Connection connection);
+
+    abstract void fail(Exception e);
+  }
+
+  private static class Connection
+  {
+    private final AsyncClient client;
+    private final TNonblockingSocket socket;
+
+    private Connection(AsyncClient client, TNonblockingSocket socket)
+    {
+      this.client = client;
+      this.socket = socket;
+    }
+
+    private void close()
+    {
+      socket.close();
+    }
+  }
+}
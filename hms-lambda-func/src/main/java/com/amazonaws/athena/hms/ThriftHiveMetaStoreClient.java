@@ -25,13 +25,19 @@ import com.amazonaws.services.s3.AmazonS3ClientBuilder;
 import com.amazonaws.services.s3.model.AmazonS3Exception;
 import com.amazonaws.services.s3.model.GetObjectRequest;
 import com.google.common.base.Joiner;
+import com.google.common.collect.Lists;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.hive.conf.HiveConf;
 import org.apache.hadoop.hive.metastore.MetaStoreUtils;
+import org.apache.hadoop.hive.metastore.api.AddPartitionsRequest;
 import org.apache.hadoop.hive.metastore.api.Database;
 import org.apache.hadoop.hive.metastore.api.DropPartitionsRequest;
 import org.apache.hadoop.hive.metastore.api.DropPartitionsResult;
 import org.apache.hadoop.hive.metastore.api.FieldSchema;
+import org.apache.hadoop.hive.metastore.api.NoSuchObjectException;
+import org.apache.hadoop.hive.metastore.api.NotificationEvent;
+import org.apache.hadoop.hive.metastore.api.NotificationEventRequest;
+import org.apache.hadoop.hive.metastore.api.NotificationEventResponse;
 import org.apache.hadoop.hive.metastore.api.Partition;
 import org.apache.hadoop.hive.metastore.api.PartitionsByExprRequest;
 import org.apache.hadoop.hive.metastore.api.PartitionsByExprResult;
@@ -47,7 +53,6 @@ import org.apache.thrift.protocol.TBinaryProtocol;
 import org.apache.thrift.protocol.TCompactProtocol;
 import org.apache.thrift.protocol.TProtocol;
 import org.apache.thrift.transport.TFastFramedTransport;
-import org.apache.thrift.transport.TSSLTransportFactory;
 import org.apache.thrift.transport.TSocket;
 import org.apache.thrift.transport.TTransport;
 import org.apache.thrift.transport.TTransportException;
@@ -64,8 +69,10 @@ import java.nio.ByteBuffer;
 import java.security.PrivilegedExceptionAction;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -75,7 +82,7 @@ import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 
 // The thrift client to communicate with Hive Metastore via Thrift APIs
-public class ThriftHiveMetaStoreClient implements HiveMetaStoreClient
+public class ThriftHiveMetaStoreClient implements HiveMetaStoreClient, CheckpointAware
 {
   private static final String HIVE_SITE = "hive-site.xml";
   private static final String CORE_SITE = "core-site.xml";
@@ -86,12 +93,41 @@ public class ThriftHiveMetaStoreClient implements HiveMetaStoreClient
   private ThriftHiveMetastore.Iface client;
   private TTransport transport;
   private URI serverURI;
+  // the configuration the connection was opened with, to open it again after a checkpoint
+  private HiveConf conf;
+  // whether the connection was closed for a checkpoint and has to be opened again on the next call
+  private volatile boolean suspended;
+  // the max number of names per get_partitions_by_names call, 0 to send all the names at once
+  private int partitionBatchSize;
+  // the non-blocking connections for the asynchronous calls, null if disabled
+  private ThriftAsyncHiveMetaStoreClient asyncClient;
 
   public URI getServerURI()
   {
     return serverURI;
   }
 
+  public int getPartitionBatchSize()
+  {
+    return partitionBatchSize;
+  }
+
+  public void setPartitionBatchSize(int partitionBatchSize)
+  {
+    this.partitionBatchSize = partitionBatchSize;
+  }
+
+  public void setAsyncClient(ThriftAsyncHiveMetaStoreClient asyncClient)
+  {
+    this.asyncClient = asyncClient;
+  }
+
+  @Override
+  public AsyncHiveMetaStoreClient getAsyncClient()
+  {
+    return asyncClient;
+  }
+
   @Override
   public String toString()
   {
@@ -120,6 +156,7 @@ public class ThriftHiveMetaStoreClient implements HiveMetaStoreClient
   private void getClient(URI uri, HiveConf conf, boolean kerberosEnabled)
       throws TException, IOException, InterruptedException, URISyntaxException, LoginException
   {
+    this.conf = conf;
     // Pick up the first URI from the list of available URIs
     serverURI = uri != null ?
         uri :
@@ -128,7 +165,7 @@ public class ThriftHiveMetaStoreClient implements HiveMetaStoreClient
     if (kerberosEnabled) {
       String principal = conf.getVar(HiveConf.ConfVars.METASTORE_KERBEROS_PRINCIPAL);
       if (principal == null) {
-        open(conf, serverURI);
+        transport = open(conf, serverURI);
         return;
       }
 
@@ -144,14 +181,64 @@ public class ThriftHiveMetaStoreClient implements HiveMetaStoreClient
       UserGroupInformation loginUser = UserGroupInformation.getLoginUser();
       loginUser.checkTGTAndReloginFromKeytab();
 
-      loginUser.doAs((PrivilegedExceptionAction<TTransport>)
+      transport = loginUser.doAs((PrivilegedExceptionAction<TTransport>)
           () -> open(conf, serverURI));
 
       String keytab = conf.getVar(HiveConf.ConfVars.METASTORE_KERBEROS_KEYTAB_FILE);
     }
     else {
-      open(conf, serverURI);
+      transport = open(conf, serverURI);
+    }
+  }
+
+  // the Thrift client, with the connection opened again first if it was closed for a checkpoint
+  private ThriftHiveMetastore.Iface connectedClient() throws TException
+  {
+    if (suspended) {
+      reconnect();
+    }
+    return client;
+  }
+
+  private synchronized void reconnect() throws TException
+  {
+    if (!suspended) {
+      return;
+    }
+    try {
+      // the user sent with set_ugi is resolved again, it could be different after a restore
+      getClient(serverURI, conf);
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new TException("Interrupted while reconnecting to metastore " + serverURI, e);
+    }
+    catch (IOException | LoginException | URISyntaxException e) {
+      throw new TException("Failed to reconnect to metastore " + serverURI + ": " + e.getMessage(), e);
     }
+    suspended = false;
+  }
+
+  // a socket can't be carried over into a snapshot, the connection is opened again on the next call
+  @Override
+  public synchronized void beforeCheckpoint()
+  {
+    close();
+    suspended = true;
+    if (asyncClient != null) {
+      asyncClient.beforeCheckpoint();
+    }
+  }
+
+  @Override
+  public void afterRestore()
+  {
+    // reconnect lazily, the first invocation after a restore may not need the metastore at all
+  }
+
+  public boolean isSuspended()
+  {
+    return suspended;
   }
 
   private void addResource(Configuration conf, String filePath) throws MalformedURLException
@@ -168,31 +255,43 @@ public class ThriftHiveMetaStoreClient implements HiveMetaStoreClient
     conf.addResource(in);
   }
 
+  // a point lookup, so that the cost doesn't depend on the number of databases
   public boolean dbExists(String dbName) throws TException
   {
-    return getDatabaseNames(dbName).contains(dbName);
+    try {
+      connectedClient().get_database(dbName);
+      return true;
+    }
+    catch (NoSuchObjectException e) {
+      return false;
+    }
   }
 
+  // a point lookup, so that the cost doesn't depend on the number of tables in the database
   public boolean tableExists(String dbName, String tableName) throws TException
   {
-    return getTableNames(dbName, tableName).contains(tableName);
+    try {
+      connectedClient().get_table(dbName, tableName);
+      return true;
+    }
+    catch (NoSuchObjectException e) {
+      return false;
+    }
   }
 
   public Database getDatabase(String dbName) throws TException
   {
-    return client.get_database(dbName);
+    return connectedClient().get_database(dbName);
   }
 
   public Set<String> getDatabaseNames(String filter) throws TException
   {
     if (filter == null || filter.isEmpty()) {
-      return new HashSet<>(client.get_all_databases());
+      return new HashSet<>(connectedClient().get_all_databases());
     }
-    client.shutdown();
-    return client.get_all_databases()
-        .stream()
-        .filter(n -> n.matches(filter))
-        .collect(Collectors.toSet());
+    String pattern = NameFilter.toHivePattern(filter);
+    return NameFilter.matching(pattern == null ? connectedClient().get_all_databases() : connectedClient().get_databases(pattern),
+        filter);
   }
 
   // fetch all database objects in one call to avoid multiple lambda apis calls
@@ -225,18 +324,17 @@ public class ThriftHiveMetaStoreClient implements HiveMetaStoreClient
   public Set<String> getTableNames(String dbName, String filter) throws TException
   {
     if (filter == null || filter.isEmpty()) {
-      return new HashSet<>(client.get_all_tables(dbName));
+      return new HashSet<>(connectedClient().get_all_tables(dbName));
     }
-    return client.get_all_tables(dbName)
-        .stream()
-        .filter(n -> n.matches(filter))
-        .collect(Collectors.toSet());
+    String pattern = NameFilter.toHivePattern(filter);
+    return NameFilter.matching(pattern == null ? connectedClient().get_all_tables(dbName) : connectedClient().get_tables(dbName, pattern),
+        filter);
   }
 
   public List<Table> getTablesByNames(String dbName, List<String> tableNames)
       throws TException
   {
-    return client.get_table_objects_by_name(dbName, tableNames);
+    return connectedClient().get_table_objects_by_name(dbName, tableNames);
   }
 
   public boolean createDatabase(String name) throws TException
@@ -251,79 +349,112 @@ public class ThriftHiveMetaStoreClient implements HiveMetaStoreClient
       throws TException
   {
     Database db = new Database(name, description, location, params);
-    client.create_database(db);
+    connectedClient().create_database(db);
     return true;
   }
 
   public boolean createDatabase(Database db) throws TException
   {
-    client.create_database(db);
+    connectedClient().create_database(db);
     return true;
   }
 
   public boolean dropDatabase(String dbName, boolean deleteData, boolean cascade) throws TException
   {
-    client.drop_database(dbName, deleteData, cascade);
+    connectedClient().drop_database(dbName, deleteData, cascade);
     return true;
   }
 
   public boolean createTable(Table table) throws TException
   {
-    client.create_table(table);
+    connectedClient().create_table(table);
     return true;
   }
 
   public boolean dropTable(String dbName, String tableName) throws TException
   {
-    client.drop_table(dbName, tableName, false);
+    connectedClient().drop_table(dbName, tableName, false);
     return true;
   }
 
   public Table getTable(String dbName, String tableName) throws TException
   {
-    return client.get_table(dbName, tableName);
+    return connectedClient().get_table(dbName, tableName);
   }
 
   public Partition createPartition(Table table, List<String> values) throws TException
   {
-    return client.add_partition(new PartitionBuilder(table).withValues(values).build());
+    return connectedClient().add_partition(new PartitionBuilder(table).withValues(values).build());
   }
 
   public Partition addPartition(Partition partition) throws TException
   {
-    return client.add_partition(partition);
+    return connectedClient().add_partition(partition);
   }
 
   public void addPartitions(List<Partition> partitions) throws TException
   {
-    client.add_partitions(partitions);
+    connectedClient().add_partitions(partitions);
+  }
+
+  @Override
+  public List<PartitionChunkResult> addPartitionsInChunks(List<Partition> partitions, int chunkSize) throws TException
+  {
+    return ChunkedWrites.writeAll(partitions, chunkSize, this::addPartitionsIfNotExist);
+  }
+
+  // add the partitions that don't exist yet, one call per table, without the added partitions sent back
+  public void addPartitionsIfNotExist(List<Partition> partitions) throws TException
+  {
+    Map<List<String>, List<Partition>> partitionsByTable = new LinkedHashMap<>();
+    for (Partition partition : partitions) {
+      partitionsByTable.computeIfAbsent(Arrays.asList(partition.getDbName(), partition.getTableName()),
+          table -> new ArrayList<>()).add(partition);
+    }
+    for (Map.Entry<List<String>, List<Partition>> entry : partitionsByTable.entrySet()) {
+      AddPartitionsRequest request = new AddPartitionsRequest(entry.getKey().get(0), entry.getKey().get(1),
+          entry.getValue(), true);
+      request.setNeedResult(false);
+      connectedClient().add_partitions_req(request);
+    }
   }
 
   public Long getCurrentNotificationId() throws TException
   {
-    return client.get_current_notificationEventId().getEventId();
+    return connectedClient().get_current_notificationEventId().getEventId();
+  }
+
+  public List<NotificationEvent> getNextNotifications(long lastEventId, int maxEvents) throws TException
+  {
+    NotificationEventRequest request = new NotificationEventRequest(lastEventId);
+    request.setMaxEvents(maxEvents);
+    NotificationEventResponse response = connectedClient().get_next_notification(request);
+    if (response == null || response.getEvents() == null) {
+      return Collections.emptyList();
+    }
+    return response.getEvents();
   }
 
   public List<String> getPartitionNames(String dbName, String tableName, short maxSize) throws TException
   {
-    return client.get_partition_names(dbName, tableName, maxSize);
+    return connectedClient().get_partition_names(dbName, tableName, maxSize);
   }
 
   public boolean dropPartition(String dbName, String tableName,
                                List<String> arguments)
       throws TException
   {
-    return client.drop_partition(dbName, tableName, arguments, false);
+    return connectedClient().drop_partition(dbName, tableName, arguments, false);
   }
 
   public List<Partition> getPartitions(String dbName, String tableName, short maxSize) throws TException
   {
-    return client.get_partitions(dbName, tableName, maxSize);
+    return connectedClient().get_partitions(dbName, tableName, maxSize);
   }
 
   public List<Partition> getPartitionsByFilter(String dbName, String tableName, String partitionFilter, short maxSize) throws TException
   {
-    return client.get_partitions_by_filter(dbName, tableName, partitionFilter, maxSize);
+    return connectedClient().get_partitions_by_filter(dbName, tableName, partitionFilter, maxSize);
   }
 
   public DropPartitionsResult dropPartitions(String dbName, String tableName,
@@ -335,55 +466,97 @@ public class ThriftHiveMetaStoreClient implements HiveMetaStoreClient
     if (partNames.isEmpty()) {
       return null;
     }
-    return client.drop_partitions_req(new DropPartitionsRequest(dbName,
+    return connectedClient().drop_partitions_req(new DropPartitionsRequest(dbName,
         tableName, RequestPartsSpec.names(partNames)));
   }
 
+  @Override
+  public List<PartitionChunkResult> dropPartitionsInChunks(String dbName, String tableName, List<String> partNames,
+                                                           int chunkSize) throws TException
+  {
+    return ChunkedWrites.writeAll(partNames, chunkSize, chunk -> dropPartitionsIfExist(dbName, tableName, chunk));
+  }
+
+  // drop the partitions that still exist, without the dropped partitions sent back
+  public void dropPartitionsIfExist(String dbName, String tableName, List<String> partNames) throws TException
+  {
+    if (partNames.isEmpty()) {
+      return;
+    }
+    DropPartitionsRequest request = new DropPartitionsRequest(dbName, tableName, RequestPartsSpec.names(partNames));
+    request.setIfExists(true);
+    request.setNeedResult(false);
+    connectedClient().drop_partitions_req(request);
+  }
+
   public List<Partition> getPartitionsByNames(String dbName, String tableName,
                                               List<String> names) throws TException
   {
-    if (names == null) {
-      return client.get_partitions_by_names(dbName, tableName,
-          getPartitionNames(dbName, tableName, (short) -1));
+    if (names != null && (partitionBatchSize <= 0 || names.size() <= partitionBatchSize)) {
+      return connectedClient().get_partitions_by_names(dbName, tableName, names);
+    }
+    List<String> sortedNames = names == null ? getSortedPartitionNames(dbName, tableName) : sortedCopy(names);
+    if (partitionBatchSize <= 0 || sortedNames.size() <= partitionBatchSize) {
+      return connectedClient().get_partitions_by_names(dbName, tableName, sortedNames);
+    }
+    // split huge name lists so that a single call doesn't exhaust the metastore memory or hit the socket timeout
+    List<Partition> partitions = new ArrayList<>(sortedNames.size());
+    for (List<String> batch : Lists.partition(sortedNames, partitionBatchSize)) {
+      partitions.addAll(connectedClient().get_partitions_by_names(dbName, tableName, batch));
     }
-    return client.get_partitions_by_names(dbName, tableName, names);
+    return partitions;
+  }
+
+  // all the partition names of a table sorted by name, so that batches of them come back in name order
+  public List<String> getSortedPartitionNames(String dbName, String tableName) throws TException
+  {
+    return sortedCopy(getPartitionNames(dbName, tableName, (short) -1));
+  }
+
+  // the metastore returns the partitions of every batch in name order, so the batches of sorted names are
+  // appended in name order, the same as a single call would return them
+  static List<String> sortedCopy(List<String> names)
+  {
+    List<String> sortedNames = new ArrayList<>(names);
+    sortedNames.sort(null);
+    return sortedNames;
   }
 
   public boolean alterTable(String dbName, String tableName, Table newTable)
       throws TException
   {
-    client.alter_table(dbName, tableName, newTable);
+    connectedClient().alter_table(dbName, tableName, newTable);
     return true;
   }
 
   public boolean alterDatabase(String dbName, Database database)
           throws TException
   {
-    client.alter_database(dbName, database);
+    connectedClient().alter_database(dbName, database);
     return true;
   }
 
   public void alterPartition(String dbName, String tableName,
                              Partition partition) throws TException
   {
-    client.alter_partition(dbName, tableName, partition);
+    connectedClient().alter_partition(dbName, tableName, partition);
   }
 
   public void alterPartitions(String dbName, String tableName,
                               List<Partition> partitions) throws TException
   {
-    client.alter_partitions(dbName, tableName, partitions);
+    connectedClient().alter_partitions(dbName, tableName, partitions);
   }
 
   public void appendPartition(String dbName, String tableName,
                               List<String> partitionValues) throws TException
   {
-    client.append_partition_with_environment_context(dbName, tableName, partitionValues, null);
+    connectedClient().append_partition_with_environment_context(dbName, tableName, partitionValues, null);
   }
 
   public void renamePartition(final String dbName, final String tableName, final List<String> partVals, final Partition newPart) throws TException
   {
-    client.rename_partition(dbName, tableName, partVals, newPart);
+    connectedClient().rename_partition(dbName, tableName, partVals, newPart);
   }
 
   public boolean listPartitionsByExpr(String dbName, String tableName,
@@ -392,7 +565,7 @@ public class ThriftHiveMetaStoreClient implements HiveMetaStoreClient
     PartitionsByExprRequest req = buildPartitionsByExprRequest(dbName, tableName, expr, defaultPartitionName,
             maxParts);
 
-    PartitionsByExprResult r = client.get_partitions_by_expr(req);
+    PartitionsByExprResult r = connectedClient().get_partitions_by_expr(req);
     if (partitions == null) {
       partitions = new ArrayList<>();
     }
@@ -485,23 +658,9 @@ public class ThriftHiveMetaStoreClient implements HiveMetaStoreClient
                                          String tokenSig, String trustStorePath, String trustStorePassword) throws TException, IOException, LoginException
   {
     try {
-      String resolvedPath = resolveTrustStorePath(trustStorePath, trustStorePassword);
-      File truststoreFile = new File(resolvedPath);
-      if (!truststoreFile.exists()) {
-        throw new IOException("Truststore file not found at: " + resolvedPath);
-      }
-      if (!truststoreFile.canRead()) {
-        throw new IOException("Cannot read truststore file at: " + resolvedPath);
-      }
-
-      System.out.println("Using truststore at: " + resolvedPath);
-
-      // Create SSL connection with the truststore
-      TSSLTransportFactory.TSSLTransportParameters params = new TSSLTransportFactory.TSSLTransportParameters();
-      params.setTrustStore(resolvedPath, trustStorePassword);
-      params.requireClientAuth(false);
-
-      transport = TSSLTransportFactory.getClientSocket(uri.getHost(), uri.getPort(), (int) SOCKET_TIMEOUT_MS, params);
+      // the truststore is only resolved and parsed for the first connection of the container
+      transport = SslTransportFactory.getClientSocket(uri.getHost(), uri.getPort(), (int) SOCKET_TIMEOUT_MS,
+          trustStorePath, trustStorePassword, this::loadTrustStore);
 
       System.out.println("SSL connection established successfully");
     }
@@ -512,6 +671,21 @@ public class ThriftHiveMetaStoreClient implements HiveMetaStoreClient
     return setupClientConnection(conf, uri, transport, useSasl, useFramedTransport, useCompactProtocol, tokenSig, true);
   }
 
+  private String loadTrustStore(String trustStorePath, String trustStorePassword) throws IOException
+  {
+    String resolvedPath = resolveTrustStorePath(trustStorePath, trustStorePassword);
+    File truststoreFile = new File(resolvedPath);
+    if (!truststoreFile.exists()) {
+      throw new IOException("Truststore file not found at: " + resolvedPath);
+    }
+    if (!truststoreFile.canRead()) {
+      throw new IOException("Cannot read truststore file at: " + resolvedPath);
+    }
+
+    System.out.println("Using truststore at: " + resolvedPath);
+    return resolvedPath;
+  }
+
   private String resolveTrustStorePath(String trustStorePath, String trustStorePassword)
           throws IOException
   {
@@ -726,6 +900,29 @@ public class ThriftHiveMetaStoreClient implements HiveMetaStoreClient
     }
   }
 
+  // check whether the connection is still usable with a cheap round trip that doesn't hit the metastore database
+  public boolean validate()
+  {
+    if (client == null || transport == null || !transport.isOpen()) {
+      return false;
+    }
+    try {
+      client.getVersion();
+      return true;
+    }
+    catch (TException | RuntimeException e) {
+      return false;
+    }
+  }
+
+  // close the underlying transport directly, used when there is no Lambda context to log to
+  public void close()
+  {
+    if ((transport != null) && transport.isOpen()) {
+      transport.close();
+    }
+  }
+
   public void refreshClient(HiveConf conf, Context context) throws TException, LoginException, IOException, URISyntaxException, InterruptedException
   {
     close(context);
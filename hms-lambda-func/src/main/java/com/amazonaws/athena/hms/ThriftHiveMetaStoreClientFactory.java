@@ -42,21 +42,51 @@ public class ThriftHiveMetaStoreClientFactory implements HiveMetaStoreClientFact
     return conf;
   }
 
-  private ThriftHiveMetaStoreClient createClient()
+  private HiveMetaStoreClient createClient()
   {
     try {
+      if (conf.isClientPoolEnabled()) {
+        // share a pool of warm connections across all the metastore URIs
+        PooledThriftHiveMetaStoreClient client = new PooledThriftHiveMetaStoreClient(
+            ThriftHiveMetaStoreClientPool.fromConf(conf), conf.getClientFanOutConcurrency());
+        client.setPartitionBatchSize(conf.getClientPartitionBatchSize());
+        client.setAsyncClient(createAsyncClient());
+        return client;
+      }
       // create the thrift Hive Metastore client
-      return new ThriftHiveMetaStoreClient(conf.toHiveConf());
+      ThriftHiveMetaStoreClient client = new ThriftHiveMetaStoreClient(conf.toHiveConf());
+      client.setPartitionBatchSize(conf.getClientPartitionBatchSize());
+      client.setAsyncClient(createAsyncClient());
+      return client;
     }
     catch (TException | IOException | InterruptedException | LoginException | URISyntaxException e) {
       throw new RuntimeException("Failed to create HiveMetaStoreClient", e);
     }
   }
 
+  // the non-blocking connections are opened by the first asynchronous calls
+  private ThriftAsyncHiveMetaStoreClient createAsyncClient() throws IOException, LoginException, URISyntaxException
+  {
+    if (conf.getClientNonblockingConnections() <= 0) {
+      return null;
+    }
+    if (!ThriftAsyncHiveMetaStoreClient.isSupported(conf)) {
+      System.out.println("Non-blocking connections require the framed transport without SSL and SASL, "
+          + "the asynchronous calls are disabled");
+      return null;
+    }
+    return ThriftAsyncHiveMetaStoreClient.fromConf(conf);
+  }
+
   @Override
   public HiveMetaStoreClient getHiveMetaStoreClient()
   {
-    return createClient();
+    // connect in the background while MetadataHandler sets up the rest, the first call waits for it if needed
+    HiveMetaStoreClient client = conf.isClientAsyncConnectEnabled() ?
+        new DeferredHiveMetaStoreClient(this::createClient) :
+        createClient();
+    // the cache, if enabled, lives as long as the client, i.e., the Lambda container
+    return CachingHiveMetaStoreClient.wrap(client, conf);
   }
 
   @Override
@@ -0,0 +1,294 @@
+/*-
+ * #%L
+ * hms-lambda-func
+ * %%
+ * Copyright (C) 2019 Amazon Web Services
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.amazonaws.athena.hms;
+
+import org.apache.hadoop.hive.conf.HiveConf;
+import org.apache.thrift.TException;
+
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// A pool of Thrift connections to Hive Metastore. It keeps up to N warm connections per metastore URI,
+// load balances borrowers across all the URIs in a round robin way, validates idle connections in the
+// background and evicts only the broken connection when a call fails
+public class ThriftHiveMetaStoreClientPool implements AutoCloseable
+{
+  private final List<UriPool> uriPools;
+  private final AtomicInteger nextUri = new AtomicInteger(0);
+  private final ConnectionFactory connectionFactory;
+  private final long validationIntervalMillis;
+  private final long borrowTimeoutMillis;
+  private final ScheduledExecutorService validator;
+
+  // creates a single connection to the given metastore URI
+  interface ConnectionFactory
+  {
+    ThriftHiveMetaStoreClient create(URI uri) throws Exception;
+  }
+
+  ThriftHiveMetaStoreClientPool(List<URI> uris, int sizePerUri, long validationIntervalMillis,
+                                long borrowTimeoutMillis, ConnectionFactory connectionFactory)
+  {
+    if (uris == null || uris.isEmpty()) {
+      throw new IllegalArgumentException("At least one metastore URI is required");
+    }
+    if (sizePerUri <= 0) {
+      throw new IllegalArgumentException("Pool size per URI must be positive: " + sizePerUri);
+    }
+    List<UriPool> pools = new ArrayList<>();
+    for (URI uri : uris) {
+      pools.add(new UriPool(uri, sizePerUri));
+    }
+    this.uriPools = Collections.unmodifiableList(pools);
+    this.connectionFactory = connectionFactory;
+    this.validationIntervalMillis = validationIntervalMillis;
+    this.borrowTimeoutMillis = borrowTimeoutMillis;
+    if (validationIntervalMillis > 0) {
+      this.validator = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "hms-pool-validator");
+        thread.setDaemon(true);
+        return thread;
+      });
+      this.validator.scheduleWithFixedDelay(this::validateIdleConnections,
+          validationIntervalMillis, validationIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+    else {
+      this.validator = null;
+    }
+  }
+
+  /*
+   * create a pool against all the metastore URIs in the configuration
+   *
+   * @return ThriftHiveMetaStoreClientPool
+   */
+  public static ThriftHiveMetaStoreClientPool fromConf(HiveMetaStoreConf conf) throws URISyntaxException
+  {
+    HiveConf hiveConf = conf.toHiveConf();
+    List<URI> uris = new ArrayList<>();
+    for (String uri : conf.getMetastoreUri().split(",")) {
+      if (!uri.trim().isEmpty()) {
+        uris.add(new URI(uri.trim()));
+      }
+    }
+    return new ThriftHiveMetaStoreClientPool(uris, conf.getClientPoolSize(),
+        conf.getClientPoolValidationIntervalMillis(), conf.getClientPoolBorrowTimeoutMillis(),
+        uri -> new ThriftHiveMetaStoreClient(uri, hiveConf));
+  }
+
+  public PooledConnection borrow() throws TException
+  {
+    int start = Math.floorMod(nextUri.getAndIncrement(), uriPools.size());
+    TException lastError = null;
+    UriPool busyPool = null;
+    // start from the round robin position and take the first URI with a free slot,
+    // fall through to the next URI if a new connection cannot be established
+    for (int i = 0; i < uriPools.size(); i++) {
+      UriPool pool = uriPools.get((start + i) % uriPools.size());
+      if (pool.permits.tryAcquire()) {
+        try {
+          return pool.acquire();
+        }
+        catch (TException e) {
+          lastError = e;
+        }
+      }
+      else if (busyPool == null) {
+        busyPool = pool;
+      }
+    }
+    if (busyPool == null) {
+      throw lastError;
+    }
+    // all the reachable connections are in use, wait for one to be released
+    try {
+      if (!busyPool.permits.tryAcquire(borrowTimeoutMillis, TimeUnit.MILLISECONDS)) {
+        throw new TException("Timed out waiting for a connection to " + busyPool.uri);
+      }
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new TException("Interrupted while waiting for a connection to " + busyPool.uri, e);
+    }
+    return busyPool.acquire();
+  }
+
+  public void release(PooledConnection connection, boolean broken)
+  {
+    UriPool pool = connection.pool;
+    if (broken) {
+      // only evict the broken connection, the other connections to the same URI stay warm
+      connection.client.close();
+    }
+    else {
+      connection.lastUsedMillis = System.currentTimeMillis();
+      pool.idle.offerFirst(connection);
+    }
+    pool.permits.release();
+  }
+
+  // validate the connections that have been idle for longer than the validation interval and evict broken ones
+  public void validateIdleConnections()
+  {
+    validateIdleConnections(false);
+  }
+
+  // validate all the idle connections regardless of how long they have been idle, used after a call failed
+  public void validateAllIdleConnections()
+  {
+    validateIdleConnections(true);
+  }
+
+  private void validateIdleConnections(boolean force)
+  {
+    for (UriPool pool : uriPools) {
+      int idleCount = pool.idle.size();
+      for (int i = 0; i < idleCount; i++) {
+        if (!pool.permits.tryAcquire()) {
+          // all the connections are in use
+          break;
+        }
+        // the least recently used connection is at the end of the queue
+        PooledConnection connection = pool.idle.pollLast();
+        if (connection == null) {
+          pool.permits.release();
+          break;
+        }
+        if ((force || isStale(connection)) && !connection.client.validate()) {
+          connection.client.close();
+        }
+        else {
+          pool.idle.offerLast(connection);
+        }
+        pool.permits.release();
+      }
+    }
+  }
+
+  public int getIdleCount(URI uri)
+  {
+    for (UriPool pool : uriPools) {
+      if (pool.uri.equals(uri)) {
+        return pool.idle.size();
+      }
+    }
+    return 0;
+  }
+
+  // close all the idle connections, e.g., before a checkpoint, new ones are opened when they are borrowed
+  public void closeIdleConnections()
+  {
+    for (UriPool pool : uriPools) {
+      PooledConnection connection;
+      while ((connection = pool.idle.poll()) != null) {
+        connection.client.close();
+      }
+    }
+  }
+
+  public int getUriCount()
+  {
+    return uriPools.size();
+  }
+
+  @Override
+  public void close()
+  {
+    if (validator != null) {
+      validator.shutdownNow();
+    }
+    closeIdleConnections();
+  }
+
+  // a connection is never stale when the validation is turned off
+  private boolean isStale(PooledConnection connection)
+  {
+    return validationIntervalMillis > 0
+        && System.currentTimeMillis() - connection.lastUsedMillis >= validationIntervalMillis;
+  }
+
+  public static class PooledConnection
+  {
+    private final UriPool pool;
+    private final ThriftHiveMetaStoreClient client;
+    private volatile long lastUsedMillis;
+
+    private PooledConnection(UriPool pool, ThriftHiveMetaStoreClient client)
+    {
+      this.pool = pool;
+      this.client = client;
+      this.lastUsedMillis = System.currentTimeMillis();
+    }
+
+    public ThriftHiveMetaStoreClient getClient()
+    {
+      return client;
+    }
+
+    public URI getUri()
+    {
+      return pool.uri;
+    }
+  }
+
+  private class UriPool
+  {
+    private final URI uri;
+    // the number of connections that could be borrowed from this URI at the same time
+    private final Semaphore permits;
+    // idle connections, the most recently used one is at the head so that hot connections stay warm
+    private final Deque<PooledConnection> idle = new ConcurrentLinkedDeque<>();
+
+    UriPool(URI uri, int size)
+    {
+      this.uri = uri;
+      this.permits = new Semaphore(size);
+    }
+
+    // reuse an idle connection or open a new one, the caller must hold a permit
+    PooledConnection acquire() throws TException
+    {
+      PooledConnection connection;
+      while ((connection = idle.pollFirst()) != null) {
+        if (!isStale(connection) || connection.client.validate()) {
+          return connection;
+        }
+        connection.client.close();
+      }
+      try {
+        return new PooledConnection(this, connectionFactory.create(uri));
+      }
+      catch (Exception e) {
+        permits.release();
+        throw new TException("Failed to connect to metastore " + uri + ": " + e.getMessage(), e);
+      }
+    }
+  }
+}
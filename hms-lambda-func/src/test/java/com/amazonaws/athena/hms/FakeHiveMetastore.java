@@ -0,0 +1,358 @@
+/*-
+ * #%L
+ * hms-lambda-func
+ * %%
+ * Copyright (C) 2019 Amazon Web Services
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.amazonaws.athena.hms;
+
+import org.apache.hadoop.hive.metastore.api.AddPartitionsRequest;
+import org.apache.hadoop.hive.metastore.api.AddPartitionsResult;
+import org.apache.hadoop.hive.metastore.api.Database;
+import org.apache.hadoop.hive.metastore.api.DropPartitionsRequest;
+import org.apache.hadoop.hive.metastore.api.DropPartitionsResult;
+import org.apache.hadoop.hive.metastore.api.FieldSchema;
+import org.apache.hadoop.hive.metastore.api.MetaException;
+import org.apache.hadoop.hive.metastore.api.NoSuchObjectException;
+import org.apache.hadoop.hive.metastore.api.Partition;
+import org.apache.hadoop.hive.metastore.api.SerDeInfo;
+import org.apache.hadoop.hive.metastore.api.StorageDescriptor;
+import org.apache.hadoop.hive.metastore.api.Table;
+import org.apache.hadoop.hive.metastore.api.ThriftHiveMetastore;
+import org.apache.thrift.TApplicationException;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+// A Hive Metastore with a synthetic, read-only catalog of databases "db_<i>", tables "tbl_<i>" and partitions
+// "dt=<yyyy-MM-dd>/hour=<hh>". The catalog is generated on the fly, so it could be as large as needed without
+// holding it in memory. Every RPC could be slowed down by a fixed latency and fail at a given rate, and
+// the RPCs it doesn't implement fail with an UNKNOWN_METHOD error
+public class FakeHiveMetastore {
+  private static final String LOCATION = "s3://fake-hms/warehouse";
+
+  // the RPCs that set up a connection, which are neither delayed nor failed
+  private static final List<String> CONNECTION_RPCS = Arrays.asList("set_ugi", "shutdown");
+
+  private final int databaseCount;
+  private final int tableCount;
+  private final int partitionCount;
+  private final int columnCount;
+  private final Random random = new Random(42);
+  private final Map<String, AtomicLong> callCounts = new ConcurrentHashMap<>();
+  private final AtomicLong writtenPartitions = new AtomicLong();
+  private volatile long latencyMillis;
+  private volatile double failureRate;
+
+  public FakeHiveMetastore(int databaseCount, int tableCount, int partitionCount, int columnCount) {
+    this.databaseCount = databaseCount;
+    this.tableCount = tableCount;
+    this.partitionCount = partitionCount;
+    this.columnCount = columnCount;
+  }
+
+  public void setLatencyMillis(long latencyMillis) {
+    this.latencyMillis = latencyMillis;
+  }
+
+  public void setFailureRate(double failureRate) {
+    this.failureRate = failureRate;
+  }
+
+  // the number of partitions sent by the writes, which leave the synthetic catalog as it is
+  public long getWrittenPartitions() {
+    return writtenPartitions.get();
+  }
+
+  public long getCallCount(String rpc) {
+    AtomicLong count = callCounts.get(rpc);
+    return count == null ? 0 : count.get();
+  }
+
+  // dispatch the RPCs to the methods of this class with the same signature
+  public ThriftHiveMetastore.Iface asIface() {
+    return (ThriftHiveMetastore.Iface) Proxy.newProxyInstance(getClass().getClassLoader(),
+        new Class<?>[] {ThriftHiveMetastore.Iface.class}, (proxy, method, args) -> {
+          callCounts.computeIfAbsent(method.getName(), name -> new AtomicLong()).incrementAndGet();
+          Method target;
+          try {
+            target = FakeHiveMetastore.class.getMethod(method.getName(), method.getParameterTypes());
+          } catch (NoSuchMethodException e) {
+            throw new TApplicationException(TApplicationException.UNKNOWN_METHOD, method.getName() + " is not supported");
+          }
+          if (!CONNECTION_RPCS.contains(method.getName())) {
+            injectFaults(method.getName());
+          }
+          try {
+            return target.invoke(this, args);
+          } catch (InvocationTargetException e) {
+            throw e.getCause();
+          }
+        });
+  }
+
+  private void injectFaults(String rpc) throws MetaException {
+    if (latencyMillis > 0) {
+      try {
+        Thread.sleep(latencyMillis);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+    double draw;
+    synchronized (random) {
+      draw = random.nextDouble();
+    }
+    if (draw < failureRate) {
+      throw new MetaException("Injected failure in " + rpc);
+    }
+  }
+
+  public List<String> set_ugi(String userName, List<String> groupNames) {
+    return groupNames;
+  }
+
+  public void shutdown() {
+  }
+
+  public List<String> get_all_databases() {
+    return names("db_", databaseCount);
+  }
+
+  public List<String> get_databases(String pattern) {
+    return matching(get_all_databases(), pattern);
+  }
+
+  public Database get_database(String dbName) throws NoSuchObjectException {
+    checkDatabase(dbName);
+    return new Database(dbName, "synthetic database", LOCATION + "/" + dbName + ".db", new HashMap<>());
+  }
+
+  public List<String> get_all_tables(String dbName) throws MetaException {
+    checkExists(dbName, null);
+    return names("tbl_", tableCount);
+  }
+
+  public List<String> get_tables(String dbName, String pattern) throws MetaException {
+    return matching(get_all_tables(dbName), pattern);
+  }
+
+  public Table get_table(String dbName, String tableName) throws NoSuchObjectException {
+    checkTable(dbName, tableName);
+    return createTable(dbName, tableName);
+  }
+
+  public List<Table> get_table_objects_by_name(String dbName, List<String> tableNames) {
+    List<Table> tables = new ArrayList<>();
+    for (String tableName : tableNames) {
+      if (exists(dbName, tableName)) {
+        tables.add(createTable(dbName, tableName));
+      }
+    }
+    return tables;
+  }
+
+  public List<String> get_partition_names(String dbName, String tableName, short maxParts) throws MetaException {
+    checkExists(dbName, tableName);
+    int count = maxParts < 0 ? partitionCount : Math.min(maxParts, partitionCount);
+    List<String> names = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) {
+      names.add(partitionName(i));
+    }
+    return names;
+  }
+
+  public List<Partition> get_partitions(String dbName, String tableName, short maxParts) throws NoSuchObjectException {
+    checkTable(dbName, tableName);
+    int count = maxParts < 0 ? partitionCount : Math.min(maxParts, partitionCount);
+    List<Partition> partitions = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) {
+      partitions.add(createPartition(dbName, tableName, i));
+    }
+    return partitions;
+  }
+
+  public List<Partition> get_partitions_by_names(String dbName, String tableName, List<String> names)
+      throws NoSuchObjectException {
+    checkTable(dbName, tableName);
+    List<Partition> partitions = new ArrayList<>(names.size());
+    for (String name : names) {
+      int index = partitionIndex(name);
+      if (index >= 0) {
+        partitions.add(createPartition(dbName, tableName, index));
+      }
+    }
+    return partitions;
+  }
+
+  public AddPartitionsResult add_partitions_req(AddPartitionsRequest request) throws MetaException {
+    checkExists(request.getDbName(), request.getTblName());
+    writtenPartitions.addAndGet(request.getPartsSize());
+    AddPartitionsResult result = new AddPartitionsResult();
+    if (request.isNeedResult()) {
+      result.setPartitions(request.getParts());
+    }
+    return result;
+  }
+
+  public void alter_partitions(String dbName, String tableName, List<Partition> partitions) throws MetaException {
+    checkExists(dbName, tableName);
+    writtenPartitions.addAndGet(partitions.size());
+  }
+
+  public DropPartitionsResult drop_partitions_req(DropPartitionsRequest request) throws MetaException {
+    checkExists(request.getDbName(), request.getTblName());
+    writtenPartitions.addAndGet(request.getParts().getNames().size());
+    return new DropPartitionsResult();
+  }
+
+  public static String partitionName(int index) {
+    int day = index / 24;
+    return String.format("dt=%04d-%02d-%02d/hour=%02d", 2000 + day / 28 / 12, day / 28 % 12 + 1, day % 28 + 1, index % 24);
+  }
+
+  private int partitionIndex(String name) {
+    String[] parts = name.split("[=/-]");
+    if (parts.length != 6) {
+      return -1;
+    }
+    try {
+      int day = (Integer.parseInt(parts[1]) - 2000) * 12 * 28 + (Integer.parseInt(parts[2]) - 1) * 28
+          + Integer.parseInt(parts[3]) - 1;
+      int index = day * 24 + Integer.parseInt(parts[5]);
+      return index < partitionCount && partitionName(index).equals(name) ? index : -1;
+    } catch (NumberFormatException e) {
+      return -1;
+    }
+  }
+
+  private Table createTable(String dbName, String tableName) {
+    Table table = new Table();
+    table.setDbName(dbName);
+    table.setTableName(tableName);
+    table.setOwner("hadoop");
+    table.setTableType("EXTERNAL_TABLE");
+    table.setSd(createStorageDescriptor(LOCATION + "/" + dbName + ".db/" + tableName));
+    List<FieldSchema> partitionKeys = new ArrayList<>();
+    partitionKeys.add(new FieldSchema("dt", "string", null));
+    partitionKeys.add(new FieldSchema("hour", "string", null));
+    table.setPartitionKeys(partitionKeys);
+    Map<String, String> parameters = new HashMap<>();
+    parameters.put("EXTERNAL", "TRUE");
+    parameters.put("classification", "parquet");
+    table.setParameters(parameters);
+    return table;
+  }
+
+  private Partition createPartition(String dbName, String tableName, int index) {
+    String name = partitionName(index);
+    List<String> values = new ArrayList<>();
+    for (String keyValue : name.split("/")) {
+      values.add(keyValue.substring(keyValue.indexOf('=') + 1));
+    }
+    Partition partition = new Partition();
+    partition.setDbName(dbName);
+    partition.setTableName(tableName);
+    partition.setValues(values);
+    partition.setCreateTime(1700000000 + index);
+    partition.setSd(createStorageDescriptor(LOCATION + "/" + dbName + ".db/" + tableName + "/" + name));
+    partition.setParameters(Collections.singletonMap("numFiles", String.valueOf(index % 17 + 1)));
+    return partition;
+  }
+
+  private StorageDescriptor createStorageDescriptor(String location) {
+    List<FieldSchema> columns = new ArrayList<>(columnCount);
+    for (int i = 0; i < columnCount; i++) {
+      columns.add(new FieldSchema("col_" + i, i % 3 == 0 ? "bigint" : "string", "column " + i));
+    }
+    StorageDescriptor sd = new StorageDescriptor();
+    sd.setCols(columns);
+    sd.setLocation(location);
+    sd.setInputFormat("org.apache.hadoop.hive.ql.io.parquet.MapredParquetInputFormat");
+    sd.setOutputFormat("org.apache.hadoop.hive.ql.io.parquet.MapredParquetOutputFormat");
+    sd.setSerdeInfo(new SerDeInfo(null, "org.apache.hadoop.hive.ql.io.parquet.serde.ParquetHiveSerDe",
+        Collections.singletonMap("serialization.format", "1")));
+    sd.setNumBuckets(-1);
+    return sd;
+  }
+
+  private static List<String> names(String prefix, int count) {
+    List<String> names = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) {
+      names.add(prefix + i);
+    }
+    return names;
+  }
+
+  // the pattern syntax of the metastore, "*" matches any characters, "|" separates the alternatives and the case is ignored
+  private static List<String> matching(List<String> names, String pattern) {
+    List<String> matches = new ArrayList<>();
+    for (String name : names) {
+      for (String alternative : pattern.split("\\|")) {
+        if (name.matches("(?i)" + alternative.replace("*", ".*"))) {
+          matches.add(name);
+          break;
+        }
+      }
+    }
+    return matches;
+  }
+
+  private static boolean isName(String name, String prefix, int count) {
+    if (name == null || !name.startsWith(prefix)) {
+      return false;
+    }
+    try {
+      int index = Integer.parseInt(name.substring(prefix.length()));
+      return index >= 0 && index < count && name.equals(prefix + index);
+    } catch (NumberFormatException e) {
+      return false;
+    }
+  }
+
+  private boolean exists(String dbName, String tableName) {
+    return isName(dbName, "db_", databaseCount) && (tableName == null || isName(tableName, "tbl_", tableCount));
+  }
+
+  private void checkDatabase(String dbName) throws NoSuchObjectException {
+    if (!exists(dbName, null)) {
+      throw new NoSuchObjectException(dbName + " database not found");
+    }
+  }
+
+  private void checkTable(String dbName, String tableName) throws NoSuchObjectException {
+    if (!exists(dbName, tableName)) {
+      throw new NoSuchObjectException(dbName + "." + tableName + " table not found");
+    }
+  }
+
+  // for the RPCs that declare MetaException only
+  private void checkExists(String dbName, String tableName) throws MetaException {
+    if (!exists(dbName, tableName)) {
+      throw new MetaException(tableName == null ? dbName + " database not found" : dbName + "." + tableName + " table not found");
+    }
+  }
+}
@@ -0,0 +1,155 @@
+/*-
+ * #%L
+ * hms-lambda-func
+ * %%
+ * Copyright (C) 2019 Amazon Web Services
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.amazonaws.athena.hms;
+
+import org.apache.hadoop.hive.metastore.api.ThriftHiveMetastore;
+import org.apache.thrift.protocol.TBinaryProtocol;
+import org.apache.thrift.protocol.TCompactProtocol;
+import org.apache.thrift.server.TServer;
+import org.apache.thrift.server.TThreadPoolServer;
+import org.apache.thrift.transport.TFramedTransport;
+import org.apache.thrift.transport.TSSLTransportFactory;
+import org.apache.thrift.transport.TServerSocket;
+import org.apache.thrift.transport.TTransport;
+import org.apache.thrift.transport.TTransportException;
+import org.apache.thrift.transport.TTransportFactory;
+
+import javax.net.ssl.SSLServerSocket;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+// serves a FakeHiveMetastore on a local port over the real Thrift transport, i.e., a plain or SSL socket,
+// optionally framed, with the binary or compact protocol, and counts the bytes on the wire
+public class FakeHiveMetastoreServer implements AutoCloseable {
+  private final TServerSocket serverSocket;
+  private final TServer server;
+  private final Thread serveThread;
+  private final AtomicLong bytesRead = new AtomicLong();
+  private final AtomicLong bytesWritten = new AtomicLong();
+  // the input and the output transport of a connection wrap the same socket
+  private final Set<TTransport> connections = Collections.newSetFromMap(new ConcurrentHashMap<>());
+
+  public FakeHiveMetastoreServer(FakeHiveMetastore metastore, boolean framed, boolean compact, String keyStorePath,
+                                 String keyStorePassword) throws TTransportException {
+    if (keyStorePath != null) {
+      TSSLTransportFactory.TSSLTransportParameters params = new TSSLTransportFactory.TSSLTransportParameters();
+      params.setKeyStore(keyStorePath, keyStorePassword);
+      serverSocket = TSSLTransportFactory.getServerSocket(0, 0, InetAddress.getLoopbackAddress(), params);
+      // TLS 1.2, since with TLS 1.3 a resumed session doesn't keep its id
+      ((SSLServerSocket) serverSocket.getServerSocket()).setEnabledProtocols(new String[] {"TLSv1.2"});
+    } else {
+      serverSocket = new TServerSocket(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+    }
+    TTransportFactory transportFactory = framed ? new TFramedTransport.Factory() : new TTransportFactory();
+    TThreadPoolServer.Args args = new TThreadPoolServer.Args(serverSocket)
+        .processor(new ThriftHiveMetastore.Processor<>(metastore.asIface()))
+        .protocolFactory(compact ? new TCompactProtocol.Factory() : new TBinaryProtocol.Factory())
+        .transportFactory(new TTransportFactory() {
+          @Override
+          public TTransport getTransport(TTransport transport) {
+            connections.add(transport);
+            return transportFactory.getTransport(new CountingTransport(transport));
+          }
+        })
+        .minWorkerThreads(1)
+        // the connections of the function under test are never closed, don't wait for them on stop
+        .stopTimeoutVal(1);
+    server = new TThreadPoolServer(args);
+    serveThread = new Thread(server::serve, "fake-hms-" + getPort());
+    serveThread.setDaemon(true);
+    serveThread.start();
+  }
+
+  public int getPort() {
+    return serverSocket.getServerSocket().getLocalPort();
+  }
+
+  public String getUri() {
+    return "thrift://localhost:" + getPort();
+  }
+
+  public long getBytesRead() {
+    return bytesRead.get();
+  }
+
+  public long getBytesWritten() {
+    return bytesWritten.get();
+  }
+
+  // the number of connections accepted so far
+  public long getConnectionCount() {
+    return connections.size();
+  }
+
+  @Override
+  public void close() throws InterruptedException {
+    server.stop();
+    serveThread.join(5000);
+  }
+
+  // counts the bytes that go through the socket, below the framing
+  private class CountingTransport extends TTransport {
+    private final TTransport delegate;
+
+    CountingTransport(TTransport delegate) {
+      this.delegate = delegate;
+    }
+
+    @Override
+    public boolean isOpen() {
+      return delegate.isOpen();
+    }
+
+    @Override
+    public void open() throws TTransportException {
+      delegate.open();
+    }
+
+    @Override
+    public void close() {
+      delegate.close();
+    }
+
+    @Override
+    public int read(byte[] buf, int off, int len) throws TTransportException {
+      int read = delegate.read(buf, off, len);
+      if (read > 0) {
+        bytesRead.addAndGet(read);
+      }
+      return read;
+    }
+
+    @Override
+    public void write(byte[] buf, int off, int len) throws TTransportException {
+      delegate.write(buf, off, len);
+      bytesWritten.addAndGet(len);
+    }
+
+    @Override
+    public void flush() throws TTransportException {
+      delegate.flush();
+    }
+  }
+}
@@ -0,0 +1,112 @@
+/*-
+ * #%L
+ * hms-lambda-func
+ * %%
+ * Copyright (C) 2019 - 2025 Amazon Web Services
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.amazonaws.athena.hms;
+
+import org.apache.hadoop.hive.metastore.api.NoSuchObjectException;
+import org.apache.thrift.TException;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class FanOutExecutorTest {
+
+  @Test
+  public void testResultsKeepInputOrder() throws TException {
+    try (FanOutExecutor executor = new FanOutExecutor(4)) {
+      List<String> inputs = Arrays.asList("d", "c", "b", "a", "e");
+      List<String> results = executor.map(inputs, input -> {
+        // finish the earlier inputs last
+        sleep(("e".compareTo(input)) * 10L);
+        return input.toUpperCase();
+      });
+      assertEquals(Arrays.asList("D", "C", "B", "A", "E"), results);
+    }
+  }
+
+  @Test
+  public void testConcurrencyIsBounded() throws TException {
+    AtomicInteger running = new AtomicInteger(0);
+    AtomicInteger maxRunning = new AtomicInteger(0);
+    try (FanOutExecutor executor = new FanOutExecutor(2)) {
+      executor.map(Arrays.asList(1, 2, 3, 4, 5, 6), input -> {
+        maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+        sleep(20);
+        running.decrementAndGet();
+        return input;
+      });
+    }
+    assertTrue(maxRunning.get() <= 2);
+  }
+
+  @Test
+  public void testFirstFailureInInputOrderIsRethrown() throws TException {
+    CountDownLatch laterFailure = new CountDownLatch(1);
+    try (FanOutExecutor executor = new FanOutExecutor(3)) {
+      executor.map(Arrays.asList("ok", "first", "second"), input -> {
+        if (input.equals("second")) {
+          laterFailure.countDown();
+          throw new NoSuchObjectException(input);
+        }
+        if (input.equals("first")) {
+          // fail after the later input already failed
+          await(laterFailure);
+          throw new NoSuchObjectException(input);
+        }
+        return input;
+      });
+      fail("Expected NoSuchObjectException");
+    } catch (NoSuchObjectException e) {
+      assertEquals("first", e.getMessage());
+    }
+  }
+
+  @Test
+  public void testSequentialWithoutConcurrency() throws TException {
+    try (FanOutExecutor executor = new FanOutExecutor(1)) {
+      String caller = Thread.currentThread().getName();
+      List<String> threads = executor.map(Arrays.asList(1, 2), input -> Thread.currentThread().getName());
+      assertEquals(Arrays.asList(caller, caller), threads);
+    }
+  }
+
+  private static void sleep(long millis) {
+    try {
+      Thread.sleep(millis);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private static void await(CountDownLatch latch) {
+    try {
+      latch.await(5, TimeUnit.SECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+}
@@ -0,0 +1,429 @@
+/*-
+ * #%L
+ * hms-lambda-func
+ * %%
+ * Copyright (C) 2019 Amazon Web Services
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.amazonaws.athena.hms;
+
+import com.amazonaws.athena.hms.io.S3Helper;
+import com.amazonaws.athena.hms.serde.ObjectMapperFactory;
+import com.amazonaws.services.lambda.runtime.Context;
+import com.amazonaws.services.lambda.runtime.LambdaLogger;
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.AmazonS3ClientBuilder;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.hadoop.hive.metastore.api.Partition;
+import org.apache.thrift.TSerializer;
+import org.apache.thrift.protocol.TJSONProtocol;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.MockedStatic;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.mockStatic;
+import static org.mockito.Mockito.when;
+
+// drives HiveMetaStoreLambdaFunc end to end against a FakeHiveMetastore served over a local socket, so that
+// the real Thrift transport, framing and SSL paths are exercised. The load could be raised with the system
+// properties hms.e2e.invocations and hms.e2e.concurrency, and the latency and the bytes per call are reported
+public class HiveMetaStoreLambdaFuncEndToEndTest {
+  private static final String DB_NAME = "db_0";
+  private static final String TABLE_NAME = "tbl_0";
+  private static final int PARTITION_COUNT = 1000;
+  private static final short PAGE_SIZE = 100;
+  private static final String STORE_PASSWORD = "changeit";
+
+  private MockedStatic<AmazonS3ClientBuilder> s3BuilderMock;
+  private ObjectMapper objectMapper;
+  private Context context;
+  private FakeHiveMetastore metastore;
+  private FakeHiveMetastoreServer server;
+
+  @Before
+  public void setUp() {
+    AmazonS3 s3Client = mock(AmazonS3.class);
+    AmazonS3ClientBuilder builder = mock(AmazonS3ClientBuilder.class);
+    when(builder.withClientConfiguration(any())).thenReturn(builder);
+    when(builder.build()).thenReturn(s3Client);
+    s3BuilderMock = mockStatic(AmazonS3ClientBuilder.class);
+    s3BuilderMock.when(AmazonS3ClientBuilder::standard).thenReturn(builder);
+    objectMapper = ObjectMapperFactory.create(new ApiHelper(), new S3Helper(s3Client));
+    context = mock(Context.class);
+    when(context.getLogger()).thenReturn(mock(LambdaLogger.class));
+    when(context.getFunctionName()).thenReturn("hms");
+    when(context.getAwsRequestId()).thenReturn("request-1");
+    metastore = new FakeHiveMetastore(2, 10, PARTITION_COUNT, 20);
+  }
+
+  @After
+  public void tearDown() throws InterruptedException {
+    if (server != null) {
+      server.close();
+    }
+    s3BuilderMock.close();
+  }
+
+  @Test
+  public void testBinaryTransport() throws Exception {
+    server = new FakeHiveMetastoreServer(metastore, false, false, null, null);
+    runLoad("binary", conf -> { });
+  }
+
+  @Test
+  public void testFramedCompactTransport() throws Exception {
+    server = new FakeHiveMetastoreServer(metastore, true, true, null, null);
+    runLoad("framed compact", conf -> {
+      conf.setUseFramedTransport(true);
+      conf.setUseCompactProtocol(true);
+    });
+  }
+
+  @Test
+  public void testSslTransport() throws Exception {
+    server = new FakeHiveMetastoreServer(metastore, false, false, getResourcePath("ssl/keystore.jks"), STORE_PASSWORD);
+    runLoad("ssl", conf -> {
+      conf.setUseSsl(true);
+      conf.setSslTruststorePath(getResourcePath("ssl/truststore.jks"));
+      conf.setSslTruststorePassword(STORE_PASSWORD);
+    });
+  }
+
+  @Test
+  public void testPooledConnections() throws Exception {
+    server = new FakeHiveMetastoreServer(metastore, false, false, null, null);
+    runLoad("pooled", conf -> conf.setClientPoolEnabled(true));
+  }
+
+  @Test
+  public void testInjectedLatency() throws Exception {
+    server = new FakeHiveMetastoreServer(metastore, false, false, null, null);
+    metastore.setLatencyMillis(20);
+    HiveMetaStoreLambdaFunc func = createFunction(conf -> { });
+    long start = System.nanoTime();
+    invoke(func, "getTable", createGetTableRequest());
+    assertTrue(System.nanoTime() - start >= 20_000_000L);
+  }
+
+  @Test
+  public void testInjectedFailures() throws Exception {
+    server = new FakeHiveMetastoreServer(metastore, false, false, null, null);
+    HiveMetaStoreLambdaFunc func = createFunction(conf -> { });
+    metastore.setFailureRate(1.0);
+    try {
+      invoke(func, "getTable", createGetTableRequest());
+      fail("Expected the injected failure");
+    } catch (IOException e) {
+      assertTrue(String.valueOf(e.getCause()), e.getCause().getMessage().contains("Injected failure in get_table"));
+    }
+    // an application error doesn't break the connection
+    metastore.setFailureRate(0);
+    GetTableResponse response = (GetTableResponse) invoke(func, "getTable", createGetTableRequest()).getApiResponse();
+    assertTrue(response.getTableDesc().contains(TABLE_NAME));
+    assertEquals(2, metastore.getCallCount("get_table"));
+  }
+
+  @Test
+  public void testExistenceChecksArePointLookups() throws Exception {
+    server = new FakeHiveMetastoreServer(metastore, false, false, null, null);
+    HiveMetaStoreLambdaFunc func = createFunction(conf -> { });
+    TableExistsRequest tableRequest = new TableExistsRequest().withDbName(DB_NAME).withTableName(TABLE_NAME);
+    assertTrue(((TableExistsResponse) invoke(func, "tableExists", tableRequest).getApiResponse()).isExists());
+    tableRequest.setTableName("missing");
+    assertFalse(((TableExistsResponse) invoke(func, "tableExists", tableRequest).getApiResponse()).isExists());
+    DbExistsRequest dbRequest = new DbExistsRequest().withDbName(DB_NAME);
+    assertTrue(((DbExistsResponse) invoke(func, "dbExists", dbRequest).getApiResponse()).isExists());
+    dbRequest.setDbName("missing");
+    assertFalse(((DbExistsResponse) invoke(func, "dbExists", dbRequest).getApiResponse()).isExists());
+    assertEquals(2, metastore.getCallCount("get_table"));
+    assertEquals(2, metastore.getCallCount("get_database"));
+    assertEquals(0, metastore.getCallCount("get_all_tables"));
+    assertEquals(0, metastore.getCallCount("get_all_databases"));
+  }
+
+  @Test
+  public void testNameFiltersArePushedDown() throws Exception {
+    server = new FakeHiveMetastoreServer(metastore, false, false, null, null);
+    HiveMetaStoreLambdaFunc func = createFunction(conf -> { });
+    GetTableNamesRequest tableRequest = new GetTableNamesRequest().withDbName(DB_NAME).withFilter("tbl_1.*|tbl_2");
+    assertEquals(new HashSet<>(Arrays.asList("tbl_1", "tbl_2")),
+        ((GetTableNamesResponse) invoke(func, "getTableNames", tableRequest).getApiResponse()).getTables());
+    GetDatabaseNamesRequest dbRequest = new GetDatabaseNamesRequest().withFilter("db_.*");
+    assertEquals(new HashSet<>(Arrays.asList("db_0", "db_1")),
+        ((GetDatabaseNamesResponse) invoke(func, "getDatabaseNames", dbRequest).getApiResponse()).getDatabases());
+    assertEquals(1, metastore.getCallCount("get_tables"));
+    assertEquals(1, metastore.getCallCount("get_databases"));
+    assertEquals(0, metastore.getCallCount("get_all_tables"));
+    assertEquals(0, metastore.getCallCount("get_all_databases"));
+    assertEquals(0, metastore.getCallCount("shutdown"));
+    // a regular expression is matched by the function
+    tableRequest.setFilter("tbl_[1-3]");
+    assertEquals(new HashSet<>(Arrays.asList("tbl_1", "tbl_2", "tbl_3")),
+        ((GetTableNamesResponse) invoke(func, "getTableNames", tableRequest).getApiResponse()).getTables());
+    tableRequest.setFilter("TBL_1");
+    assertTrue(((GetTableNamesResponse) invoke(func, "getTableNames", tableRequest).getApiResponse()).getTables().isEmpty());
+    assertEquals(2, metastore.getCallCount("get_all_tables"));
+  }
+
+  @Test
+  public void testNonblockingConnections() throws Exception {
+    server = new FakeHiveMetastoreServer(metastore, true, false, null, null);
+    HiveMetaStoreLambdaFunc func = createFunction(conf -> {
+      conf.setUseFramedTransport(true);
+      conf.setClientNonblockingConnections(2);
+    });
+    GetDatabasesResponse response = (GetDatabasesResponse) invoke(func, "getDatabases", new GetDatabasesRequest())
+        .getApiResponse();
+    assertEquals(2, response.getDatabaseObjects().size());
+    assertEquals(2, metastore.getCallCount("get_database"));
+    // the lookups went over the non-blocking connections next to the blocking one
+    assertTrue(server.getConnectionCount() > 1);
+  }
+
+  @Test
+  public void testChunkedBulkWrites() throws Exception {
+    server = new FakeHiveMetastoreServer(metastore, false, false, null, null);
+    HiveMetaStoreLambdaFunc func = createFunction(conf -> {
+      conf.setClientPoolEnabled(true);
+      conf.setClientFanOutConcurrency(3);
+      conf.setClientWriteChunkSize(10);
+    });
+    TSerializer serializer = new TSerializer(new TJSONProtocol.Factory());
+    List<String> partitionDescs = new ArrayList<>();
+    for (int i = 0; i < 25; i++) {
+      Partition partition = new Partition(Collections.singletonList("new-" + i), DB_NAME, TABLE_NAME, 0, 0, null, null);
+      partitionDescs.add(serializer.toString(partition, "UTF-8"));
+    }
+    AddPartitionsResponse response = (AddPartitionsResponse) invoke(func, "addPartitions",
+        new AddPartitionsRequest().withPartitionDescs(partitionDescs)).getApiResponse();
+    assertEquals(Arrays.asList(0, 10, 20),
+        response.getChunks().stream().map(PartitionChunkResult::getOffset).collect(Collectors.toList()));
+    assertEquals(Arrays.asList(10, 10, 5),
+        response.getChunks().stream().map(PartitionChunkResult::getCount).collect(Collectors.toList()));
+    assertTrue(response.getChunks().stream().allMatch(PartitionChunkResult::isSuccess));
+    assertEquals(3, metastore.getCallCount("add_partitions_req"));
+    assertEquals(25, metastore.getWrittenPartitions());
+
+    // a failed chunk is reported instead of failing the whole request
+    metastore.setFailureRate(1.0);
+    AlterPartitionsResponse alterResponse = (AlterPartitionsResponse) invoke(func, "alterPartitions",
+        new AlterPartitionsRequest().withDbName(DB_NAME).withTableName(TABLE_NAME).withPartitionDescs(partitionDescs))
+        .getApiResponse();
+    assertEquals(3, alterResponse.getChunks().size());
+    for (PartitionChunkResult chunk : alterResponse.getChunks()) {
+      assertFalse(chunk.isSuccess());
+      assertTrue(chunk.getErrorMessage().contains("Injected failure in alter_partitions"));
+    }
+  }
+
+  @Test
+  public void testChunkedDropIsResumed() throws Exception {
+    server = new FakeHiveMetastoreServer(metastore, false, false, null, null);
+    HiveMetaStoreLambdaFunc func = createFunction(conf -> {
+      conf.setClientPoolEnabled(true);
+      conf.setClientFanOutConcurrency(3);
+      conf.setClientWriteChunkSize(100);
+    });
+    // the mocked context has no time left, so every invocation drops a single batch of 3 chunks
+    List<Integer> droppedPerInvocation = new ArrayList<>();
+    String nextToken = null;
+    do {
+      DropPartitionsResponse response = (DropPartitionsResponse) invoke(func, "dropPartitions",
+          new DropPartitionsRequest().withDbName(DB_NAME).withTableName(TABLE_NAME).withNextToken(nextToken))
+          .getApiResponse();
+      assertTrue(response.getChunks().stream().allMatch(PartitionChunkResult::isSuccess));
+      droppedPerInvocation.add(response.getChunks().stream().mapToInt(PartitionChunkResult::getCount).sum());
+      nextToken = response.getNextToken();
+    } while (nextToken != null);
+    assertEquals(Arrays.asList(300, 300, 300, 100), droppedPerInvocation);
+    assertEquals(10, metastore.getCallCount("drop_partitions_req"));
+    assertEquals(PARTITION_COUNT, metastore.getWrittenPartitions());
+  }
+
+  @Test
+  public void testCheckpointAndRestore() throws Exception {
+    server = new FakeHiveMetastoreServer(metastore, false, false, null, null);
+    runCheckpointAndRestore(conf -> { });
+  }
+
+  @Test
+  public void testPooledCheckpointAndRestore() throws Exception {
+    server = new FakeHiveMetastoreServer(metastore, false, false, null, null);
+    runCheckpointAndRestore(conf -> conf.setClientPoolEnabled(true));
+  }
+
+  // the connection is closed before the checkpoint and opened again by the first call after the restore
+  private void runCheckpointAndRestore(ConfCustomizer customizer) throws Exception {
+    HiveMetaStoreLambdaFunc func = createFunction(customizer);
+    invoke(func, "getTable", createGetTableRequest());
+    assertEquals(1, server.getConnectionCount());
+    func.beforeCheckpoint();
+    func.afterRestore();
+    assertEquals(1, server.getConnectionCount());
+    GetTableResponse response = (GetTableResponse) invoke(func, "getTable", createGetTableRequest()).getApiResponse();
+    assertTrue(response.getTableDesc().contains(TABLE_NAME));
+    assertEquals(2, server.getConnectionCount());
+    // the cache is dropped on restore, the metastore could have changed in the meantime
+    assertEquals(2, metastore.getCallCount("get_table"));
+  }
+
+  private interface ConfCustomizer {
+    void customize(HiveMetaStoreConf conf);
+  }
+
+  private HiveMetaStoreLambdaFunc createFunction(ConfCustomizer customizer) {
+    ThriftHiveMetaStoreClientFactory factory = new ThriftHiveMetaStoreClientFactory();
+    factory.getConf().setMetastoreUri(server.getUri());
+    customizer.customize(factory.getConf());
+    return new HiveMetaStoreLambdaFunc(factory);
+  }
+
+  // every worker is a separate Lambda container with its own connection, and runs the metadata calls of a query.
+  // The functions are created on the test thread, where the S3 client builder is mocked
+  private void runLoad(String name, ConfCustomizer customizer) throws Exception {
+    int invocations = Integer.getInteger("hms.e2e.invocations", 10);
+    int concurrency = Integer.getInteger("hms.e2e.concurrency", 2);
+    List<Sample> samples = Collections.synchronizedList(new ArrayList<>());
+    ExecutorService executor = Executors.newFixedThreadPool(concurrency);
+    try {
+      List<Future<?>> futures = new ArrayList<>();
+      for (int i = 0; i < concurrency; i++) {
+        HiveMetaStoreLambdaFunc func = createFunction(customizer);
+        futures.add(executor.submit(() -> {
+          for (int j = 0; j < invocations; j++) {
+            runQuery(func, samples);
+          }
+          return null;
+        }));
+      }
+      for (Future<?> future : futures) {
+        future.get();
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+    assertEquals(invocations * concurrency * 3, samples.size());
+    report(name, samples);
+  }
+
+  private void runQuery(HiveMetaStoreLambdaFunc func, List<Sample> samples) throws IOException {
+    GetTableResponse table = (GetTableResponse) record(func, "getTable", createGetTableRequest(), samples);
+    assertTrue(table.getTableDesc().contains(TABLE_NAME));
+
+    GetPartitionNamesRequest namesRequest = new GetPartitionNamesRequest();
+    namesRequest.setDbName(DB_NAME);
+    namesRequest.setTableName(TABLE_NAME);
+    namesRequest.setMaxSize((short) -1);
+    List<String> names =
+        ((GetPartitionNamesResponse) record(func, "getPartitionNames", namesRequest, samples)).getPartitionNames();
+    assertEquals(PARTITION_COUNT, names.size());
+
+    GetPartitionsByNamesRequest partitionsRequest = new GetPartitionsByNamesRequest()
+        .withDbName(DB_NAME)
+        .withTableName(TABLE_NAME)
+        .withNames(names.subList(0, PAGE_SIZE));
+    GetPartitionsByNamesResponse partitions =
+        (GetPartitionsByNamesResponse) record(func, "getPartitionsByNames", partitionsRequest, samples);
+    assertEquals(PAGE_SIZE, partitions.getPartitionDescs().size());
+  }
+
+  private ApiResponse record(HiveMetaStoreLambdaFunc func, String apiName, ApiRequest request, List<Sample> samples)
+      throws IOException {
+    long start = System.nanoTime();
+    ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+    invoke(func, apiName, request, outputStream);
+    samples.add(new Sample(apiName, System.nanoTime() - start, outputStream.size()));
+    return objectMapper.readValue(outputStream.toByteArray(), MetadataResponse.class).getApiResponse();
+  }
+
+  private MetadataResponse invoke(HiveMetaStoreLambdaFunc func, String apiName, ApiRequest request) throws IOException {
+    ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+    invoke(func, apiName, request, outputStream);
+    return objectMapper.readValue(outputStream.toByteArray(), MetadataResponse.class);
+  }
+
+  private void invoke(HiveMetaStoreLambdaFunc func, String apiName, ApiRequest request, ByteArrayOutputStream outputStream)
+      throws IOException {
+    MetadataRequest metadataRequest = new MetadataRequest(new RequestContext("e2e", "user", "12345678"), apiName, request);
+    func.handleRequest(new ByteArrayInputStream(objectMapper.writeValueAsBytes(metadataRequest)), outputStream, context);
+  }
+
+  private void report(String name, List<Sample> samples) {
+    System.out.println("End to end load over " + name + " transport, calls: " + samples.size()
+        + ", metastore bytes per call: " + (server.getBytesRead() + server.getBytesWritten()) / samples.size());
+    for (String apiName : new String[] {"getTable", "getPartitionNames", "getPartitionsByNames"}) {
+      List<Long> latencies = new ArrayList<>();
+      long responseBytes = 0;
+      for (Sample sample : samples) {
+        if (sample.apiName.equals(apiName)) {
+          latencies.add(sample.latencyNanos);
+          responseBytes += sample.responseBytes;
+        }
+      }
+      Collections.sort(latencies);
+      System.out.println(String.format("  %-20s p50: %6.2f ms, p99: %6.2f ms, response bytes per call: %d", apiName,
+          percentile(latencies, 50) / 1e6, percentile(latencies, 99) / 1e6, responseBytes / latencies.size()));
+    }
+  }
+
+  private static long percentile(List<Long> sortedLatencies, int percentile) {
+    int index = (int) Math.ceil(percentile / 100.0 * sortedLatencies.size()) - 1;
+    return sortedLatencies.get(Math.max(index, 0));
+  }
+
+  private GetTableRequest createGetTableRequest() {
+    GetTableRequest request = new GetTableRequest();
+    request.setDbName(DB_NAME);
+    request.setTableName(TABLE_NAME);
+    return request;
+  }
+
+  private String getResourcePath(String resource) {
+    return new File(getClass().getClassLoader().getResource(resource).getFile()).getAbsolutePath();
+  }
+
+  private static class Sample {
+    private final String apiName;
+    private final long latencyNanos;
+    private final int responseBytes;
+
+    Sample(String apiName, long latencyNanos, int responseBytes) {
+      this.apiName = apiName;
+      this.latencyNanos = latencyNanos;
+      this.responseBytes = responseBytes;
+    }
+  }
+}
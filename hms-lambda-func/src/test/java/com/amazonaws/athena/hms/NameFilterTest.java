@@ -0,0 +1,52 @@
+/*-
+ * #%L
+ * hms-lambda-func
+ * %%
+ * Copyright (C) 2019 Amazon Web Services
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.amazonaws.athena.hms;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class NameFilterTest {
+  @Test
+  public void testToHivePattern() {
+    assertEquals("sales", NameFilter.toHivePattern("sales"));
+    assertEquals("sales_*", NameFilter.toHivePattern("sales_.*"));
+    assertEquals("*_2020|orders", NameFilter.toHivePattern(".*_2020|orders"));
+    assertEquals("*", NameFilter.toHivePattern(".*"));
+  }
+
+  @Test
+  public void testRegexIsNotPushedDown() {
+    assertNull(NameFilter.toHivePattern(""));
+    assertNull(NameFilter.toHivePattern("Sales"));
+    assertNull(NameFilter.toHivePattern("sales."));
+    assertNull(NameFilter.toHivePattern("sales_[0-9]+"));
+    assertNull(NameFilter.toHivePattern("sales|"));
+    assertNull(NameFilter.toHivePattern("(sales|orders)"));
+    assertNull(NameFilter.toHivePattern("^sales$"));
+  }
+
+  @Test
+  public void testCompiledPatternIsReused() {
+    assertSame(NameFilter.compile("tbl_[0-9]+"), NameFilter.compile("tbl_[0-9]+"));
+  }
+}
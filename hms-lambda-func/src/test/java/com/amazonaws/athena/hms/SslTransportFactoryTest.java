@@ -0,0 +1,156 @@
+/*-
+ * #%L
+ * hms-lambda-func
+ * %%
+ * Copyright (C) 2019 Amazon Web Services
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.amazonaws.athena.hms;
+
+import org.apache.thrift.transport.TSocket;
+import org.apache.thrift.transport.TTransportException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.net.ssl.SSLException;
+import javax.net.ssl.SSLSession;
+import javax.net.ssl.SSLSocket;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.security.KeyStore;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class SslTransportFactoryTest {
+  private static final String STORE_PASSWORD = "changeit";
+
+  private FakeHiveMetastoreServer server;
+  private String trustStorePath;
+  private final AtomicInteger resolveCount = new AtomicInteger();
+
+  @Before
+  public void setUp() throws TTransportException {
+    server = new FakeHiveMetastoreServer(new FakeHiveMetastore(1, 1, 1, 1), false, false,
+        getResourcePath("ssl/keystore.jks"), STORE_PASSWORD);
+    trustStorePath = getResourcePath("ssl/truststore.jks");
+    SslTransportFactory.invalidate(trustStorePath, STORE_PASSWORD);
+  }
+
+  @After
+  public void tearDown() throws InterruptedException {
+    server.close();
+  }
+
+  @Test
+  public void testReconnectResumesSession() throws Exception {
+    SSLSession first = handshake(connect());
+    SSLSession second = handshake(connect());
+    // the truststore is resolved and parsed once, and the second connection resumes the session of the first one
+    assertEquals(1, resolveCount.get());
+    assertTrue(Arrays.equals(first.getId(), second.getId()));
+  }
+
+  @Test
+  public void testFailedResolveIsNotCached() throws Exception {
+    try {
+      SslTransportFactory.getClientSocket("localhost", server.getPort(), 10000, trustStorePath, STORE_PASSWORD,
+          (path, password) -> {
+            throw new IOException("Truststore not found in S3");
+          });
+      fail("Expected the truststore failure");
+    } catch (TTransportException e) {
+      assertEquals("Truststore not found in S3", e.getMessage());
+    }
+    handshake(connect());
+    assertEquals(1, resolveCount.get());
+  }
+
+  @Test
+  public void testInvalidate() throws Exception {
+    handshake(connect());
+    SslTransportFactory.invalidate(trustStorePath, STORE_PASSWORD);
+    handshake(connect());
+    assertEquals(2, resolveCount.get());
+  }
+
+  @Test
+  public void testFailedHandshakeDropsTheContext() throws Exception {
+    // a truststore without the certificate of the server
+    File emptyTrustStore = File.createTempFile("empty", ".jks");
+    emptyTrustStore.deleteOnExit();
+    KeyStore keyStore = KeyStore.getInstance("JKS");
+    keyStore.load(null, null);
+    try (OutputStream out = new FileOutputStream(emptyTrustStore)) {
+      keyStore.store(out, STORE_PASSWORD.toCharArray());
+    }
+    for (int i = 0; i < 2; i++) {
+      try {
+        SslTransportFactory.getClientSocket("localhost", server.getPort(), 10000, trustStorePath, STORE_PASSWORD,
+            (path, password) -> {
+              resolveCount.incrementAndGet();
+              return emptyTrustStore.getAbsolutePath();
+            });
+        fail("Expected the handshake failure");
+      } catch (TTransportException e) {
+        assertTrue(String.valueOf(e.getCause()), e.getCause() instanceof SSLException);
+      }
+    }
+    // the truststore is resolved again after every failed handshake
+    assertEquals(2, resolveCount.get());
+    handshake(connect());
+    assertEquals(3, resolveCount.get());
+  }
+
+  @Test
+  public void testConnectionRefused() throws Exception {
+    int port = server.getPort();
+    server.close();
+    try {
+      SslTransportFactory.getClientSocket("localhost", port, 10000, trustStorePath, STORE_PASSWORD, (path, password) -> path);
+      fail("Expected the connection failure");
+    } catch (TTransportException e) {
+      assertEquals("Could not connect to localhost on port " + port, e.getMessage());
+    }
+  }
+
+  private TSocket connect() throws TTransportException {
+    return SslTransportFactory.getClientSocket("localhost", server.getPort(), 10000, trustStorePath, STORE_PASSWORD,
+        (path, password) -> {
+          resolveCount.incrementAndGet();
+          return path;
+        });
+  }
+
+  // the factory has done the handshake already
+  private SSLSession handshake(TSocket socket) {
+    SSLSocket sslSocket = (SSLSocket) socket.getSocket();
+    assertTrue(sslSocket.getSession().isValid());
+    SSLSession session = sslSocket.getSession();
+    socket.close();
+    return session;
+  }
+
+  private String getResourcePath(String resource) {
+    return new File(getClass().getClassLoader().getResource(resource).getFile()).getAbsolutePath();
+  }
+}
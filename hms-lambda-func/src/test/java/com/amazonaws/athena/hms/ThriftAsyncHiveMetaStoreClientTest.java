@@ -0,0 +1,203 @@
+/*-
+ * #%L
+ * hms-lambda-func
+ * %%
+ * Copyright (C) 2019 Amazon Web Services
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.amazonaws.athena.hms;
+
+import org.apache.hadoop.hive.metastore.api.Database;
+import org.apache.hadoop.hive.metastore.api.NoSuchObjectException;
+import org.apache.hadoop.hive.metastore.api.Partition;
+import org.apache.hadoop.security.UserGroupInformation;
+import org.apache.thrift.TException;
+import org.apache.thrift.protocol.TBinaryProtocol;
+import org.apache.thrift.protocol.TCompactProtocol;
+import org.apache.thrift.transport.TTransportException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ThriftAsyncHiveMetaStoreClientTest {
+  private FakeHiveMetastore metastore;
+  private FakeHiveMetastoreServer server;
+  private ThriftAsyncHiveMetaStoreClient client;
+
+  @Before
+  public void setUp() throws Exception {
+    metastore = new FakeHiveMetastore(50, 10, 100, 5);
+    server = new FakeHiveMetastoreServer(metastore, true, false, null, null);
+    client = new ThriftAsyncHiveMetaStoreClient(Collections.singletonList(URI.create(server.getUri())), 2,
+        new TBinaryProtocol.Factory(), null);
+  }
+
+  @After
+  public void tearDown() throws InterruptedException {
+    client.close();
+    server.close();
+  }
+
+  @Test
+  public void testManyCallsInFlightOverFewConnections() throws TException {
+    metastore.setLatencyMillis(10);
+    List<CompletableFuture<Database>> futures = new ArrayList<>();
+    for (int i = 0; i < 50; i++) {
+      futures.add(client.getDatabase("db_" + i));
+    }
+    List<Database> databases = AsyncHiveMetaStoreClient.join(AsyncHiveMetaStoreClient.allOf(futures));
+    for (int i = 0; i < 50; i++) {
+      assertEquals("db_" + i, databases.get(i).getName());
+    }
+    assertEquals(50, metastore.getCallCount("get_database"));
+    assertEquals(2, server.getConnectionCount());
+    assertEquals(2, client.getOpenConnections());
+  }
+
+  @Test
+  public void testMetastoreExceptionsKeepTheConnection() throws TException {
+    try {
+      AsyncHiveMetaStoreClient.join(client.getTable("db_0", "missing"));
+      fail("Expected NoSuchObjectException");
+    } catch (NoSuchObjectException e) {
+      assertTrue(e.getMessage().contains("missing"));
+    }
+    assertFalse(AsyncHiveMetaStoreClient.join(client.tableExists("db_0", "missing")));
+    assertTrue(AsyncHiveMetaStoreClient.join(client.tableExists("db_0", "tbl_1")));
+    assertFalse(AsyncHiveMetaStoreClient.join(client.dbExists("missing")));
+    assertEquals(1, server.getConnectionCount());
+  }
+
+  @Test
+  public void testNameFilters() throws TException {
+    assertEquals(new HashSet<>(Arrays.asList("tbl_1", "tbl_2")),
+        AsyncHiveMetaStoreClient.join(client.getTableNames("db_0", "tbl_1|tbl_2")));
+    assertEquals(new HashSet<>(Arrays.asList("db_1", "db_10")),
+        AsyncHiveMetaStoreClient.join(client.getDatabaseNames("db_1[0]?")));
+    assertEquals(10, AsyncHiveMetaStoreClient.join(client.getTableNames("db_0", null)).size());
+    assertEquals(1, metastore.getCallCount("get_tables"));
+    assertEquals(1, metastore.getCallCount("get_all_databases"));
+  }
+
+  @Test
+  public void testPartitionBatchesAreMergedInNameOrder() throws TException {
+    client.setPartitionBatchSize(7);
+    List<Partition> partitions = AsyncHiveMetaStoreClient.join(client.getPartitionsByNames("db_0", "tbl_0", null));
+    assertEquals(100, partitions.size());
+    for (int i = 0; i < partitions.size(); i++) {
+      assertEquals(FakeHiveMetastore.partitionName(i),
+          "dt=" + partitions.get(i).getValues().get(0) + "/hour=" + partitions.get(i).getValues().get(1));
+    }
+    assertEquals(15, metastore.getCallCount("get_partitions_by_names"));
+  }
+
+  @Test
+  public void testPartitionBatchesOfUnsortedNamesAreMergedInNameOrder() throws TException {
+    client.setPartitionBatchSize(7);
+    List<String> names = new ArrayList<>();
+    for (int i = 0; i < 20; i++) {
+      names.add(FakeHiveMetastore.partitionName(i));
+    }
+    Collections.reverse(names);
+    List<Partition> partitions = AsyncHiveMetaStoreClient.join(client.getPartitionsByNames("db_0", "tbl_0", names));
+    assertEquals(20, partitions.size());
+    for (int i = 0; i < partitions.size(); i++) {
+      assertEquals(FakeHiveMetastore.partitionName(i),
+          "dt=" + partitions.get(i).getValues().get(0) + "/hour=" + partitions.get(i).getValues().get(1));
+    }
+  }
+
+  @Test
+  public void testCompactProtocolAndSetUgi() throws Exception {
+    FakeHiveMetastoreServer compactServer = new FakeHiveMetastoreServer(metastore, true, true, null, null);
+    ThriftAsyncHiveMetaStoreClient compactClient = new ThriftAsyncHiveMetaStoreClient(
+        Collections.singletonList(URI.create(compactServer.getUri())), 1, new TCompactProtocol.Factory(),
+        UserGroupInformation.createRemoteUser("hive"));
+    try {
+      assertEquals("db_3", AsyncHiveMetaStoreClient.join(compactClient.getDatabase("db_3")).getName());
+      assertEquals("db_4", AsyncHiveMetaStoreClient.join(compactClient.getDatabase("db_4")).getName());
+      // set_ugi is only sent once per connection
+      assertEquals(1, metastore.getCallCount("set_ugi"));
+    } finally {
+      compactClient.close();
+      compactServer.close();
+    }
+  }
+
+  @Test
+  public void testBrokenConnectionsAreReplaced() throws Exception {
+    // a metastore that drops every connection right away
+    try (ServerSocket brokenServer = new ServerSocket(0, 50, InetAddress.getLoopbackAddress())) {
+      Thread acceptor = new Thread(() -> {
+        try {
+          while (true) {
+            brokenServer.accept().close();
+          }
+        } catch (IOException e) {
+          // the server socket is closed
+        }
+      });
+      acceptor.setDaemon(true);
+      acceptor.start();
+      ThriftAsyncHiveMetaStoreClient brokenClient = new ThriftAsyncHiveMetaStoreClient(
+          Collections.singletonList(URI.create("thrift://localhost:" + brokenServer.getLocalPort())), 1,
+          new TBinaryProtocol.Factory(), null);
+      try {
+        // the second call waits for the only connection and then opens a new one once the first is broken
+        CompletableFuture<Database> first = brokenClient.getDatabase("db_0");
+        CompletableFuture<Database> second = brokenClient.getDatabase("db_1");
+        for (CompletableFuture<Database> future : Arrays.asList(first, second)) {
+          try {
+            AsyncHiveMetaStoreClient.join(future);
+            fail("Expected a transport error");
+          } catch (TTransportException e) {
+            // the connection was dropped
+          }
+        }
+        assertEquals(0, brokenClient.getOpenConnections());
+      } finally {
+        brokenClient.close();
+      }
+    }
+  }
+
+  @Test
+  public void testCloseFailsWaitingCalls() {
+    client.close();
+    try {
+      client.getDatabase("db_0").join();
+      fail("Expected the client to be closed");
+    } catch (CompletionException e) {
+      assertTrue(e.getCause().getMessage().contains("closed"));
+    }
+  }
+}
@@ -65,6 +65,8 @@ public class ThriftHiveMetaStoreClientFactoryTest {
     try (MockedConstruction<ThriftHiveMetaStoreClient> mockedConstruction =
          mockConstruction(ThriftHiveMetaStoreClient.class)) {
       ThriftHiveMetaStoreClientFactory factory = new ThriftHiveMetaStoreClientFactory();
+      // the construction is only mocked on this thread
+      factory.getConf().setClientAsyncConnectEnabled(false);
       HiveMetaStoreClient client = factory.getHiveMetaStoreClient();
       assertNotNull(client);
       assertTrue(client instanceof ThriftHiveMetaStoreClient);
@@ -72,6 +74,15 @@ public class ThriftHiveMetaStoreClientFactoryTest {
     }
   }
 
+  @Test
+  public void testGetHiveMetaStoreClientAsync() {
+    ThriftHiveMetaStoreClientFactory factory = new ThriftHiveMetaStoreClientFactory();
+    assertTrue(factory.getConf().isClientAsyncConnectEnabled());
+    // there is no metastore to connect to, which only fails the first call
+    HiveMetaStoreClient client = factory.getHiveMetaStoreClient();
+    assertTrue(client instanceof DeferredHiveMetaStoreClient);
+  }
+
   @Test
   public void testGetHandlerProvider() {
     ThriftHiveMetaStoreClientFactory factory = new ThriftHiveMetaStoreClientFactory();
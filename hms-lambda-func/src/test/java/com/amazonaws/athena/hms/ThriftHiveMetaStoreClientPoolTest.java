@@ -0,0 +1,260 @@
+/*-
+ * #%L
+ * hms-lambda-func
+ * %%
+ * Copyright (C) 2019 - 2025 Amazon Web Services
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.amazonaws.athena.hms;
+
+import org.apache.hadoop.hive.metastore.api.Database;
+import org.apache.hadoop.hive.metastore.api.NoSuchObjectException;
+import org.apache.hadoop.hive.metastore.api.Partition;
+import org.apache.thrift.TException;
+import org.apache.thrift.transport.TTransportException;
+import org.junit.Test;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.mockingDetails;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class ThriftHiveMetaStoreClientPoolTest {
+  private static final URI URI_1 = URI.create("thrift://hms1:9083");
+  private static final URI URI_2 = URI.create("thrift://hms2:9083");
+
+  private final List<URI> connectedUris = new ArrayList<>();
+  private final List<ThriftHiveMetaStoreClient> clients = new ArrayList<>();
+
+  private synchronized ThriftHiveMetaStoreClient connect(URI uri) throws TException {
+    connectedUris.add(uri);
+    ThriftHiveMetaStoreClient client = mock(ThriftHiveMetaStoreClient.class);
+    when(client.validate()).thenReturn(true);
+    when(client.getDatabase(anyString()))
+        .thenAnswer(invocation -> new Database(invocation.getArgument(0), null, null, null));
+    when(client.getSortedPartitionNames("db", "tbl")).thenReturn(Arrays.asList("p=1", "p=2", "p=3", "p=4", "p=5"));
+    // like the metastore, a single call returns its partitions ordered by name
+    when(client.getPartitionsByNames(eq("db"), eq("tbl"), anyList())).thenAnswer(invocation -> {
+      List<String> names = invocation.getArgument(2);
+      return names.stream().sorted()
+          .map(name -> new Partition(Collections.singletonList(name), "db", "tbl", 0, 0, null, null))
+          .collect(Collectors.toList());
+    });
+    clients.add(client);
+    return client;
+  }
+
+  private ThriftHiveMetaStoreClientPool createPool(int size, long validationIntervalMillis, long borrowTimeoutMillis) {
+    return new ThriftHiveMetaStoreClientPool(Arrays.asList(URI_1, URI_2), size, validationIntervalMillis,
+        borrowTimeoutMillis, this::connect);
+  }
+
+  @Test
+  public void testRoundRobinAcrossUris() throws TException {
+    try (ThriftHiveMetaStoreClientPool pool = createPool(2, 0, 100)) {
+      ThriftHiveMetaStoreClientPool.PooledConnection first = pool.borrow();
+      ThriftHiveMetaStoreClientPool.PooledConnection second = pool.borrow();
+      assertEquals(URI_1, first.getUri());
+      assertEquals(URI_2, second.getUri());
+      pool.release(first, false);
+      pool.release(second, false);
+      assertEquals(1, pool.getIdleCount(URI_1));
+      assertEquals(1, pool.getIdleCount(URI_2));
+    }
+  }
+
+  @Test
+  public void testIdleConnectionIsReused() throws TException {
+    try (ThriftHiveMetaStoreClientPool pool = createPool(1, 60000, 100)) {
+      ThriftHiveMetaStoreClientPool.PooledConnection first = pool.borrow();
+      pool.release(first, false);
+      pool.borrow();
+      ThriftHiveMetaStoreClientPool.PooledConnection third = pool.borrow();
+      assertSame(first.getClient(), third.getClient());
+      assertEquals(2, connectedUris.size());
+      // a fresh connection is not validated
+      verify(first.getClient(), never()).validate();
+    }
+  }
+
+  @Test
+  public void testOnlyBrokenConnectionIsEvicted() throws TException {
+    try (ThriftHiveMetaStoreClientPool pool = new ThriftHiveMetaStoreClientPool(Arrays.asList(URI_1), 2, 0, 100, this::connect)) {
+      ThriftHiveMetaStoreClientPool.PooledConnection first = pool.borrow();
+      ThriftHiveMetaStoreClientPool.PooledConnection second = pool.borrow();
+      pool.release(first, true);
+      pool.release(second, false);
+      verify(first.getClient()).close();
+      verify(second.getClient(), never()).close();
+      assertEquals(1, pool.getIdleCount(URI_1));
+    }
+  }
+
+  @Test
+  public void testStaleConnectionFailingValidationIsReplaced() throws Exception {
+    try (ThriftHiveMetaStoreClientPool pool = new ThriftHiveMetaStoreClientPool(Arrays.asList(URI_1), 1, 1, 100, this::connect)) {
+      ThriftHiveMetaStoreClientPool.PooledConnection first = pool.borrow();
+      when(first.getClient().validate()).thenReturn(false);
+      pool.release(first, false);
+      Thread.sleep(10);
+      ThriftHiveMetaStoreClientPool.PooledConnection second = pool.borrow();
+      assertTrue(first.getClient() != second.getClient());
+      verify(first.getClient()).close();
+    }
+  }
+
+  @Test
+  public void testZeroIntervalTurnsValidationOff() throws TException {
+    try (ThriftHiveMetaStoreClientPool pool = new ThriftHiveMetaStoreClientPool(Arrays.asList(URI_1), 1, 0, 100, this::connect)) {
+      ThriftHiveMetaStoreClientPool.PooledConnection first = pool.borrow();
+      pool.release(first, false);
+      ThriftHiveMetaStoreClientPool.PooledConnection second = pool.borrow();
+      assertSame(first.getClient(), second.getClient());
+      pool.release(second, false);
+      pool.validateIdleConnections();
+      assertEquals(1, pool.getIdleCount(URI_1));
+      verify(first.getClient(), never()).validate();
+    }
+  }
+
+  @Test
+  public void testValidateAllIdleConnections() throws TException {
+    try (ThriftHiveMetaStoreClientPool pool = new ThriftHiveMetaStoreClientPool(Arrays.asList(URI_1), 2, 60000, 100, this::connect)) {
+      ThriftHiveMetaStoreClientPool.PooledConnection first = pool.borrow();
+      ThriftHiveMetaStoreClientPool.PooledConnection second = pool.borrow();
+      when(first.getClient().validate()).thenReturn(false);
+      pool.release(first, false);
+      pool.release(second, false);
+      pool.validateIdleConnections();
+      assertEquals(2, pool.getIdleCount(URI_1));
+      pool.validateAllIdleConnections();
+      assertEquals(1, pool.getIdleCount(URI_1));
+      verify(first.getClient()).close();
+    }
+  }
+
+  @Test
+  public void testBorrowTimeout() throws TException {
+    try (ThriftHiveMetaStoreClientPool pool = createPool(1, 0, 10)) {
+      pool.borrow();
+      pool.borrow();
+      try {
+        pool.borrow();
+        fail("Expected the borrow to time out");
+      } catch (TException e) {
+        assertTrue(e.getMessage().contains("Timed out"));
+      }
+    }
+  }
+
+  @Test
+  public void testFallbackToNextUriOnConnectFailure() throws TException {
+    try (ThriftHiveMetaStoreClientPool pool = new ThriftHiveMetaStoreClientPool(Arrays.asList(URI_1, URI_2), 1, 0, 10, uri -> {
+      if (uri.equals(URI_1)) {
+        throw new TTransportException("connection refused");
+      }
+      return connect(uri);
+    })) {
+      assertEquals(URI_2, pool.borrow().getUri());
+    }
+  }
+
+  @Test
+  public void testPooledClientEvictsOnTransportError() throws TException {
+    ThriftHiveMetaStoreClientPool pool = new ThriftHiveMetaStoreClientPool(Arrays.asList(URI_1), 1, 0, 100, this::connect);
+    PooledThriftHiveMetaStoreClient pooledClient = new PooledThriftHiveMetaStoreClient(pool);
+    ThriftHiveMetaStoreClient client = clients.get(0);
+    when(client.getDatabase("missing")).thenThrow(new NoSuchObjectException("missing"));
+    when(client.getDatabase("broken")).thenThrow(new TTransportException("broken pipe"));
+    try {
+      pooledClient.getDatabase("missing");
+      fail("Expected NoSuchObjectException");
+    } catch (NoSuchObjectException e) {
+      // the connection is still usable
+    }
+    verify(client, never()).close();
+    assertEquals(1, pool.getIdleCount(URI_1));
+    try {
+      pooledClient.getDatabase("broken");
+      fail("Expected TTransportException");
+    } catch (TTransportException e) {
+      // the connection is evicted
+    }
+    verify(client, times(1)).close();
+    assertEquals(0, pool.getIdleCount(URI_1));
+    pool.close();
+  }
+
+  @Test
+  public void testPooledClientFansOutDatabaseLookups() throws TException {
+    ThriftHiveMetaStoreClientPool pool = createPool(2, 0, 1000);
+    PooledThriftHiveMetaStoreClient pooledClient = new PooledThriftHiveMetaStoreClient(pool, 4);
+    List<String> names = Arrays.asList("db5", "db1", "db4", "db2", "db3", "db0");
+    List<Database> databases = pooledClient.getDatabasesByNames(names);
+    assertEquals(names.size(), databases.size());
+    for (int i = 0; i < names.size(); i++) {
+      assertEquals(names.get(i), databases.get(i).getName());
+    }
+    assertTrue(connectedUris.contains(URI_1));
+    assertTrue(connectedUris.contains(URI_2));
+    pool.close();
+  }
+
+  @Test
+  public void testPooledClientFetchesPartitionBatchesInParallel() throws TException {
+    ThriftHiveMetaStoreClientPool pool = createPool(2, 0, 1000);
+    PooledThriftHiveMetaStoreClient pooledClient = new PooledThriftHiveMetaStoreClient(pool, 3);
+    pooledClient.setPartitionBatchSize(2);
+    List<Partition> partitions = pooledClient.getPartitionsByNames("db", "tbl", null);
+    assertEquals(Arrays.asList("p=1", "p=2", "p=3", "p=4", "p=5"),
+        partitions.stream().map(p -> p.getValues().get(0)).collect(Collectors.toList()));
+    int batchCalls = 0;
+    for (ThriftHiveMetaStoreClient client : clients) {
+      batchCalls += mockingDetails(client).getInvocations().stream()
+          .filter(invocation -> invocation.getMethod().getName().equals("getPartitionsByNames"))
+          .count();
+    }
+    assertEquals(3, batchCalls);
+    pool.close();
+  }
+
+  @Test
+  public void testPooledClientMergesBatchesOfUnsortedNamesInNameOrder() throws TException {
+    ThriftHiveMetaStoreClientPool pool = createPool(2, 0, 1000);
+    PooledThriftHiveMetaStoreClient pooledClient = new PooledThriftHiveMetaStoreClient(pool, 3);
+    pooledClient.setPartitionBatchSize(2);
+    List<Partition> partitions = pooledClient.getPartitionsByNames("db", "tbl",
+        Arrays.asList("p=4", "p=2", "p=5", "p=1", "p=3"));
+    assertEquals(Arrays.asList("p=1", "p=2", "p=3", "p=4", "p=5"),
+        partitions.stream().map(p -> p.getValues().get(0)).collect(Collectors.toList()));
+    pool.close();
+  }
+}
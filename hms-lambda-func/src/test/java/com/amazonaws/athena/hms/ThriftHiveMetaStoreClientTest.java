@@ -20,12 +20,16 @@
 package com.amazonaws.athena.hms;
 
 import org.apache.hadoop.hive.conf.HiveConf;
+import org.apache.hadoop.hive.metastore.api.AddPartitionsRequest;
+import org.apache.hadoop.hive.metastore.api.AddPartitionsResult;
+import org.apache.hadoop.hive.metastore.api.MetaException;
+import org.apache.hadoop.hive.metastore.api.Partition;
+import org.apache.hadoop.hive.metastore.api.ThriftHiveMetastore;
 import org.apache.hadoop.hive.shims.Utils;
 import org.apache.hadoop.hive.thrift.HadoopThriftAuthBridge;
 import org.apache.hadoop.hive.shims.ShimLoader;
 import org.apache.hadoop.security.UserGroupInformation;
 import org.apache.thrift.TException;
-import org.apache.thrift.transport.TSSLTransportFactory;
 import org.apache.thrift.transport.TSocket;
 import org.apache.thrift.transport.TTransport;
 import org.junit.Before;
@@ -41,6 +45,11 @@ import java.io.File;
 import java.io.FileOutputStream;
 import java.net.URI;
 import java.security.KeyStore;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
 
 import static org.junit.Assert.*;
 import static org.mockito.ArgumentMatchers.*;
@@ -133,6 +142,120 @@ public class ThriftHiveMetaStoreClientTest {
     }
   }
 
+  @Test
+  public void testGetPartitionsByNamesInBatches() throws Exception {
+    HiveConf conf = new HiveConf();
+    conf.setBoolVar(HiveConf.ConfVars.METASTORE_USE_THRIFT_SASL, false);
+    conf.setBoolVar(HiveConf.ConfVars.METASTORE_EXECUTE_SET_UGI, false);
+    conf.setBoolean("hive.metastore.use.SSL", false);
+    URI uri = new URI("thrift://localhost:9083");
+    try (MockedConstruction<TSocket> socketMock = mockConstruction(TSocket.class, (mock, context) -> {
+      when(mock.isOpen()).thenReturn(false).thenReturn(true);
+    });
+    MockedConstruction<ThriftHiveMetastore.Client> clientMock = mockConstruction(ThriftHiveMetastore.Client.class,
+        (mock, context) -> {
+          when(mock.get_partition_names("db", "tbl", (short) -1)).thenReturn(Arrays.asList("p=3", "p=1", "p=4", "p=2", "p=5"));
+          when(mock.get_partitions_by_names(eq("db"), eq("tbl"), anyList())).thenAnswer(invocation -> {
+            List<String> names = invocation.getArgument(2);
+            return names.stream()
+                .map(name -> new Partition(Collections.singletonList(name.substring(2)), "db", "tbl", 0, 0, null, null))
+                .collect(Collectors.toList());
+          });
+        })) {
+      ThriftHiveMetaStoreClient client = new ThriftHiveMetaStoreClient(uri, conf);
+      client.setPartitionBatchSize(2);
+      List<Partition> partitions = client.getPartitionsByNames("db", "tbl", null);
+      assertEquals(Arrays.asList("1", "2", "3", "4", "5"),
+          partitions.stream().map(p -> p.getValues().get(0)).collect(Collectors.toList()));
+      ThriftHiveMetastore.Client thriftClient = clientMock.constructed().get(0);
+      verify(thriftClient).get_partitions_by_names("db", "tbl", Arrays.asList("p=1", "p=2"));
+      verify(thriftClient).get_partitions_by_names("db", "tbl", Arrays.asList("p=3", "p=4"));
+      verify(thriftClient).get_partitions_by_names("db", "tbl", Collections.singletonList("p=5"));
+    }
+  }
+
+  @Test
+  public void testPartitionBatchesOfUnsortedNamesAreInNameOrder() throws Exception {
+    HiveConf conf = new HiveConf();
+    conf.setBoolVar(HiveConf.ConfVars.METASTORE_USE_THRIFT_SASL, false);
+    conf.setBoolVar(HiveConf.ConfVars.METASTORE_EXECUTE_SET_UGI, false);
+    conf.setBoolean("hive.metastore.use.SSL", false);
+    URI uri = new URI("thrift://localhost:9083");
+    try (MockedConstruction<TSocket> socketMock = mockConstruction(TSocket.class, (mock, context) -> {
+      when(mock.isOpen()).thenReturn(false).thenReturn(true);
+    });
+    MockedConstruction<ThriftHiveMetastore.Client> clientMock = mockConstruction(ThriftHiveMetastore.Client.class,
+        (mock, context) -> {
+          // the metastore returns the partitions of a call ordered by name
+          when(mock.get_partitions_by_names(eq("db"), eq("tbl"), anyList())).thenAnswer(invocation -> {
+            List<String> names = invocation.getArgument(2);
+            return names.stream().sorted()
+                .map(name -> new Partition(Collections.singletonList(name.substring(2)), "db", "tbl", 0, 0, null, null))
+                .collect(Collectors.toList());
+          });
+        })) {
+      ThriftHiveMetaStoreClient client = new ThriftHiveMetaStoreClient(uri, conf);
+      client.setPartitionBatchSize(2);
+      List<String> names = Arrays.asList("p=3", "p=1", "p=4", "p=2", "p=5");
+      List<Partition> partitions = client.getPartitionsByNames("db", "tbl", names);
+      assertEquals(Arrays.asList("1", "2", "3", "4", "5"),
+          partitions.stream().map(p -> p.getValues().get(0)).collect(Collectors.toList()));
+      assertEquals(Arrays.asList("p=3", "p=1", "p=4", "p=2", "p=5"), names);
+      ThriftHiveMetastore.Client thriftClient = clientMock.constructed().get(0);
+      verify(thriftClient).get_partitions_by_names("db", "tbl", Arrays.asList("p=1", "p=2"));
+      verify(thriftClient).get_partitions_by_names("db", "tbl", Arrays.asList("p=3", "p=4"));
+      verify(thriftClient).get_partitions_by_names("db", "tbl", Collections.singletonList("p=5"));
+    }
+  }
+
+  @Test
+  public void testAddPartitionsInChunks() throws Exception {
+    HiveConf conf = new HiveConf();
+    conf.setBoolVar(HiveConf.ConfVars.METASTORE_USE_THRIFT_SASL, false);
+    conf.setBoolVar(HiveConf.ConfVars.METASTORE_EXECUTE_SET_UGI, false);
+    conf.setBoolean("hive.metastore.use.SSL", false);
+    URI uri = new URI("thrift://localhost:9083");
+    List<AddPartitionsRequest> requests = new ArrayList<>();
+    try (MockedConstruction<TSocket> socketMock = mockConstruction(TSocket.class, (mock, context) -> {
+      when(mock.isOpen()).thenReturn(false).thenReturn(true);
+    });
+    MockedConstruction<ThriftHiveMetastore.Client> clientMock = mockConstruction(ThriftHiveMetastore.Client.class,
+        (mock, context) -> {
+          when(mock.add_partitions_req(any())).thenAnswer(invocation -> {
+            AddPartitionsRequest request = invocation.getArgument(0);
+            requests.add(request);
+            if (request.getParts().get(0).getValues().get(0).equals("3")) {
+              throw new MetaException("Lock wait timeout");
+            }
+            return new AddPartitionsResult();
+          });
+        })) {
+      ThriftHiveMetaStoreClient client = new ThriftHiveMetaStoreClient(uri, conf);
+      List<Partition> partitions = new ArrayList<>();
+      for (int i = 1; i <= 5; i++) {
+        partitions.add(new Partition(Collections.singletonList(String.valueOf(i)), "db", i < 5 ? "tbl" : "other",
+            0, 0, null, null));
+      }
+      partitions.add(new Partition(Collections.singletonList("6"), "db", "tbl", 0, 0, null, null));
+      List<PartitionChunkResult> chunks = client.addPartitionsInChunks(partitions, 2);
+      assertEquals(3, chunks.size());
+      assertTrue(chunks.get(0).isSuccess());
+      assertFalse(chunks.get(1).isSuccess());
+      assertEquals(2, chunks.get(1).getOffset());
+      assertEquals(2, chunks.get(1).getCount());
+      assertEquals("Lock wait timeout", chunks.get(1).getErrorMessage());
+      assertTrue(chunks.get(2).isSuccess());
+      // the last chunk has partitions of two tables, which are added in one call per table
+      assertEquals(4, requests.size());
+      assertEquals("other", requests.get(2).getTblName());
+      assertEquals("tbl", requests.get(3).getTblName());
+      for (AddPartitionsRequest request : requests) {
+        assertTrue(request.isIfNotExists());
+        assertFalse(request.isNeedResult());
+      }
+    }
+  }
+
   @Test
   public void testOpenSSLEnabledButNoEnvVars() throws Exception {
     HiveConf conf = new HiveConf();
@@ -226,13 +349,13 @@ public class ThriftHiveMetaStoreClientTest {
     conf.set("hive.metastore.ssl.truststore.password", "password");
     URI uri = new URI("thrift://localhost:9083");
 
-    try (MockedStatic<TSSLTransportFactory> sslMock = mockStatic(TSSLTransportFactory.class)) {
+    try (MockedStatic<SslTransportFactory> sslMock = mockStatic(SslTransportFactory.class)) {
       TSocket mockSSLSocket = mock(TSocket.class);
       when(mockSSLSocket.isOpen()).thenReturn(false, true);
       doNothing().when(mockSSLSocket).open();
 
-      sslMock.when(() -> TSSLTransportFactory.getClientSocket(
-              anyString(), anyInt(), anyInt(), any()
+      sslMock.when(() -> SslTransportFactory.getClientSocket(
+              anyString(), anyInt(), anyInt(), anyString(), anyString(), any()
       )).thenReturn(mockSSLSocket);
 
       try {
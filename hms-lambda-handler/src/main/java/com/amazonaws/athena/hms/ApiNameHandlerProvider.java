@@ -20,6 +20,7 @@
 package com.amazonaws.athena.hms;
 
 import com.amazonaws.athena.hms.handler.BaseHMSHandler;
+import com.amazonaws.athena.hms.processor.GenerateHandlerRegistry;
 
 import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
@@ -27,6 +28,10 @@ import java.util.HashMap;
 import java.util.Map;
 import java.util.Set;
 
+// the handlers in the default handler package are listed in the generated HiveMetaStoreServiceHandlers at build
+// time, handlers with another name prefix are looked up by reflection
+@GenerateHandlerRegistry(service = HiveMetaStoreService.class, handlerBase = BaseHMSHandler.class,
+    handlerPackage = "com.amazonaws.athena.hms.handler")
 public class ApiNameHandlerProvider implements HandlerProvider
 {
   private final ApiHelper apiHelper;
@@ -41,6 +46,15 @@ public class ApiNameHandlerProvider implements HandlerProvider
   {
     Map<String, HandlerContext> map = new HashMap<>();
     Set<String> apiNames = apiHelper.getApiNames();
+    if (HiveMetaStoreServiceHandlers.HANDLER_NAME_PREFIX.equals(conf.getHandlerNamePrefix())) {
+      for (String name : apiNames) {
+        // created on first use without reflection
+        HandlerContext context = new HandlerContext(() -> HiveMetaStoreServiceHandlers.newHandler(name, conf, metaStoreClient),
+            apiHelper.getRequestClass(name), apiHelper.getResponseClass(name));
+        map.put(name, context);
+      }
+      return map;
+    }
     for (String name : apiNames) {
       // the handler name convention is the camel case of the API name + "Handler"
       String handlerName = conf.getHandlerNamePrefix() + name.substring(0, 1).toUpperCase() + name.substring(1) + "Handler";
@@ -0,0 +1,98 @@
+/*-
+ * #%L
+ * hms-lambda-handler
+ * %%
+ * Copyright (C) 2019 Amazon Web Services
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.amazonaws.athena.hms;
+
+import org.apache.hadoop.hive.metastore.api.Database;
+import org.apache.hadoop.hive.metastore.api.Partition;
+import org.apache.hadoop.hive.metastore.api.Table;
+import org.apache.thrift.TException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+// The read calls of HiveMetaStoreClient without blocking the caller, so that a handler could keep many calls
+// in flight on a few threads. The futures complete on the thread that does the I/O, so the dependent stages
+// must not block, e.g., on join() of another call
+public interface AsyncHiveMetaStoreClient
+{
+  CompletableFuture<Boolean> dbExists(String dbName);
+
+  CompletableFuture<Boolean> tableExists(String dbName, String tableName);
+
+  CompletableFuture<Database> getDatabase(String dbName);
+
+  CompletableFuture<Set<String>> getDatabaseNames(String filter);
+
+  CompletableFuture<Set<String>> getTableNames(String dbName, String filter);
+
+  CompletableFuture<Table> getTable(String dbName, String tableName);
+
+  CompletableFuture<List<Table>> getTablesByNames(String dbName, List<String> tableNames);
+
+  CompletableFuture<List<String>> getPartitionNames(String dbName, String tableName, short maxSize);
+
+  CompletableFuture<List<Partition>> getPartitionsByNames(String dbName, String tableName, List<String> names);
+
+  void close();
+
+  /*
+   * combine the calls into one future that completes once all of them have, the results are in the same order
+   *
+   * @return CompletableFuture of all the results
+   */
+  static <T> CompletableFuture<List<T>> allOf(List<CompletableFuture<T>> futures)
+  {
+    return CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).thenApply(ignored -> {
+      List<T> results = new ArrayList<>(futures.size());
+      for (CompletableFuture<T> future : futures) {
+        results.add(future.join());
+      }
+      return results;
+    });
+  }
+
+  /*
+   * wait for the call and rethrow its failure as the blocking call would have
+   *
+   * @return the result of the call
+   */
+  static <T> T join(CompletableFuture<T> future) throws TException
+  {
+    try {
+      return future.join();
+    }
+    catch (CompletionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof TException) {
+        throw (TException) cause;
+      }
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      }
+      if (cause instanceof Error) {
+        throw (Error) cause;
+      }
+      throw new TException(cause);
+    }
+  }
+}
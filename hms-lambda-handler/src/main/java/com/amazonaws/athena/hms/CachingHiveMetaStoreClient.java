@@ -0,0 +1,775 @@
+/*-
+ * #%L
+ * hms-lambda-handler
+ * %%
+ * Copyright (C) 2019 Amazon Web Services
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.amazonaws.athena.hms;
+
+import com.amazonaws.services.lambda.runtime.Context;
+import org.apache.hadoop.hive.conf.HiveConf;
+import org.apache.hadoop.hive.metastore.api.Database;
+import org.apache.hadoop.hive.metastore.api.DropPartitionsResult;
+import org.apache.hadoop.hive.metastore.api.NotificationEvent;
+import org.apache.hadoop.hive.metastore.api.Partition;
+import org.apache.hadoop.hive.metastore.api.Table;
+import org.apache.thrift.TException;
+
+import javax.security.auth.login.LoginException;
+
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+// a HiveMetaStoreClient decorator that caches the hot lookups, i.e., getDatabase, getTable and getPartitionNames,
+// for as long as the Lambda container lives. Every cache is a bounded LRU with a TTL, and the writes that go through
+// this client invalidate the entries they could change. Writes from outside of this container are only picked up
+// after the TTL expires, unless the cache follows the metastore notification log. dbExists and tableExists answer
+// from the cached objects, and their "not found" answers are kept in a separate, short-lived negative cache
+public class CachingHiveMetaStoreClient implements HiveMetaStoreClient, CheckpointAware
+{
+  // the id of the last notification event that has been applied, -1 if there is no baseline yet
+  private static final long NO_EVENT_ID = -1;
+
+  private final HiveMetaStoreClient delegate;
+  private final LruCache<Database> databases;
+  private final LruCache<Table> tables;
+  private final LruCache<List<String>> partitionNames;
+  // the databases and tables that dbExists and tableExists didn't find, keyed like databases and tables
+  private final LruCache<Boolean> missing;
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+  // the max number of notification events to pull in one call, 0 if the cache doesn't follow the notification log
+  private final int maxNotificationEvents;
+  private long lastEventId = NO_EVENT_ID;
+  // false once the delegate turned out not to support the notification log, only the TTL applies from then on
+  private boolean notificationLogSupported = true;
+
+  public CachingHiveMetaStoreClient(HiveMetaStoreClient delegate, int maxEntries, long ttlMillis)
+  {
+    this(delegate, maxEntries, ttlMillis, 0);
+  }
+
+  public CachingHiveMetaStoreClient(HiveMetaStoreClient delegate, int maxEntries, long ttlMillis,
+                                    int maxNotificationEvents)
+  {
+    this(delegate, maxEntries, ttlMillis, maxNotificationEvents, 0, 0);
+  }
+
+  public CachingHiveMetaStoreClient(HiveMetaStoreClient delegate, int maxEntries, long ttlMillis,
+                                    int maxNotificationEvents, int maxMissingEntries, long missingTtlMillis)
+  {
+    this.delegate = delegate;
+    this.maxNotificationEvents = maxNotificationEvents;
+    this.databases = new LruCache<>(maxEntries, ttlMillis);
+    this.tables = new LruCache<>(maxEntries, ttlMillis);
+    this.partitionNames = new LruCache<>(maxEntries, ttlMillis);
+    this.missing = new LruCache<>(maxMissingEntries, missingTtlMillis);
+  }
+
+  /*
+   * wrap the client with a cache based on the configuration
+   *
+   * @return HiveMetaStoreClient, the given client itself if both the cache and the negative cache are disabled
+   */
+  public static HiveMetaStoreClient wrap(HiveMetaStoreClient client, HiveMetaStoreConf conf)
+  {
+    if (conf.getClientCacheSize() <= 0 && conf.getClientCacheNegativeSize() <= 0) {
+      return client;
+    }
+    return new CachingHiveMetaStoreClient(client, conf.getClientCacheSize(), conf.getClientCacheTtlMillis(),
+        conf.isClientCacheNotificationEnabled() ? conf.getClientCacheNotificationMaxEvents() : 0,
+        conf.getClientCacheNegativeSize(), conf.getClientCacheNegativeTtlMillis());
+  }
+
+  public HiveMetaStoreClient getDelegate()
+  {
+    return delegate;
+  }
+
+  public long getHitCount()
+  {
+    return hits.get();
+  }
+
+  public long getMissCount()
+  {
+    return misses.get();
+  }
+
+  // reset the hit and miss counters, called after they are logged for an invocation
+  public void resetStats()
+  {
+    hits.set(0);
+    misses.set(0);
+  }
+
+  public void invalidateAll()
+  {
+    databases.clear();
+    tables.clear();
+    partitionNames.clear();
+    missing.clear();
+  }
+
+  public synchronized boolean isNotificationLogEnabled()
+  {
+    return maxNotificationEvents > 0 && notificationLogSupported;
+  }
+
+  /*
+   * pull the notification events since the last call in one metastore call and evict only the databases,
+   * tables and partition names that they touched. It is called once per invocation before any lookup, so
+   * the writes from outside of this container are seen without relying on a short TTL
+   *
+   * @return the number of events applied
+   */
+  public synchronized int syncWithNotificationLog() throws TException
+  {
+    if (!isNotificationLogEnabled()) {
+      return 0;
+    }
+    try {
+      if (lastEventId == NO_EVENT_ID) {
+        takeBaseline();
+        return 0;
+      }
+      List<NotificationEvent> events = delegate.getNextNotifications(lastEventId, maxNotificationEvents);
+      if (events.size() >= maxNotificationEvents) {
+        // there could be more events than what we pulled, start over from the current event id
+        takeBaseline();
+        return events.size();
+      }
+      for (NotificationEvent event : events) {
+        invalidate(event);
+        lastEventId = Math.max(lastEventId, event.getEventId());
+      }
+      return events.size();
+    }
+    catch (TException | RuntimeException e) {
+      // the events could be lost, drop everything and take a new baseline next time
+      invalidateAll();
+      lastEventId = NO_EVENT_ID;
+      throw e;
+    }
+  }
+
+  // nothing is known about what happened before the baseline
+  private void takeBaseline() throws TException
+  {
+    invalidateAll();
+    Long eventId = delegate.getCurrentNotificationId();
+    if (eventId == null) {
+      notificationLogSupported = false;
+      lastEventId = NO_EVENT_ID;
+      return;
+    }
+    lastEventId = eventId;
+  }
+
+  public synchronized long getLastEventId()
+  {
+    return lastEventId;
+  }
+
+  @Override
+  public boolean dbExists(String dbName) throws TException
+  {
+    return exists(databaseKey(dbName), databases, () -> delegate.dbExists(dbName));
+  }
+
+  @Override
+  public boolean tableExists(String dbName, String tableName) throws TException
+  {
+    return exists(tableKey(dbName, tableName), tables, () -> delegate.tableExists(dbName, tableName));
+  }
+
+  // a single metastore lookup
+  private interface ExistenceCheck
+  {
+    boolean exists() throws TException;
+  }
+
+  // a cached object exists, and a "not found" answer is cached for a short time
+  private boolean exists(String key, LruCache<?> objects, ExistenceCheck check) throws TException
+  {
+    if (objects.get(key) != null) {
+      hits.incrementAndGet();
+      return true;
+    }
+    if (missing.get(key) != null) {
+      hits.incrementAndGet();
+      return false;
+    }
+    misses.incrementAndGet();
+    long generation = missing.generation();
+    boolean exists = check.exists();
+    if (!exists) {
+      missing.putIfUnchanged(key, Boolean.TRUE, generation);
+    }
+    return exists;
+  }
+
+  @Override
+  public Database getDatabase(String dbName) throws TException
+  {
+    String key = databaseKey(dbName);
+    Database database = databases.get(key);
+    if (database == null) {
+      misses.incrementAndGet();
+      long generation = databases.generation();
+      database = delegate.getDatabase(dbName);
+      if (database == null) {
+        return null;
+      }
+      databases.putIfUnchanged(key, database.deepCopy(), generation);
+    }
+    else {
+      hits.incrementAndGet();
+    }
+    // the callers own the returned Thrift object and could modify it
+    return database.deepCopy();
+  }
+
+  @Override
+  public Set<String> getDatabaseNames(String filter) throws TException
+  {
+    return delegate.getDatabaseNames(filter);
+  }
+
+  @Override
+  public List<Database> getDatabases(String filter) throws TException
+  {
+    return delegate.getDatabases(filter);
+  }
+
+  @Override
+  public List<Database> getDatabasesByNames(List<String> dbNames) throws TException
+  {
+    return delegate.getDatabasesByNames(dbNames);
+  }
+
+  @Override
+  public Set<String> getTableNames(String dbName, String filter) throws TException
+  {
+    return delegate.getTableNames(dbName, filter);
+  }
+
+  @Override
+  public List<Table> getTablesByNames(String dbName, List<String> tableNames) throws TException
+  {
+    return delegate.getTablesByNames(dbName, tableNames);
+  }
+
+  @Override
+  public boolean createDatabase(String name) throws TException
+  {
+    try {
+      return delegate.createDatabase(name);
+    }
+    finally {
+      invalidateDatabase(name);
+    }
+  }
+
+  @Override
+  public boolean createDatabase(String name, String description, String location, Map<String, String> params)
+      throws TException
+  {
+    try {
+      return delegate.createDatabase(name, description, location, params);
+    }
+    finally {
+      invalidateDatabase(name);
+    }
+  }
+
+  @Override
+  public boolean createDatabase(Database db) throws TException
+  {
+    try {
+      return delegate.createDatabase(db);
+    }
+    finally {
+      invalidateDatabase(db.getName());
+    }
+  }
+
+  @Override
+  public boolean dropDatabase(String dbName, boolean deleteData, boolean cascade) throws TException
+  {
+    try {
+      return delegate.dropDatabase(dbName, deleteData, cascade);
+    }
+    finally {
+      invalidateDatabase(dbName);
+    }
+  }
+
+  @Override
+  public boolean createTable(Table table) throws TException
+  {
+    try {
+      return delegate.createTable(table);
+    }
+    finally {
+      invalidateTable(table.getDbName(), table.getTableName());
+    }
+  }
+
+  @Override
+  public boolean dropTable(String dbName, String tableName) throws TException
+  {
+    try {
+      return delegate.dropTable(dbName, tableName);
+    }
+    finally {
+      invalidateTable(dbName, tableName);
+    }
+  }
+
+  @Override
+  public Table getTable(String dbName, String tableName) throws TException
+  {
+    String key = tableKey(dbName, tableName);
+    Table table = tables.get(key);
+    if (table == null) {
+      misses.incrementAndGet();
+      long generation = tables.generation();
+      table = delegate.getTable(dbName, tableName);
+      if (table == null) {
+        return null;
+      }
+      tables.putIfUnchanged(key, table.deepCopy(), generation);
+    }
+    else {
+      hits.incrementAndGet();
+    }
+    // the callers own the returned Thrift object and could modify it
+    return table.deepCopy();
+  }
+
+  @Override
+  public Partition createPartition(Table table, List<String> values) throws TException
+  {
+    try {
+      return delegate.createPartition(table, values);
+    }
+    finally {
+      invalidatePartitions(table.getDbName(), table.getTableName());
+    }
+  }
+
+  @Override
+  public Partition addPartition(Partition partition) throws TException
+  {
+    try {
+      return delegate.addPartition(partition);
+    }
+    finally {
+      invalidatePartitions(partition.getDbName(), partition.getTableName());
+    }
+  }
+
+  @Override
+  public void addPartitions(List<Partition> partitions) throws TException
+  {
+    try {
+      delegate.addPartitions(partitions);
+    }
+    finally {
+      for (Partition partition : partitions) {
+        invalidatePartitions(partition.getDbName(), partition.getTableName());
+      }
+    }
+  }
+
+  @Override
+  public List<PartitionChunkResult> addPartitionsInChunks(List<Partition> partitions, int chunkSize) throws TException
+  {
+    try {
+      return delegate.addPartitionsInChunks(partitions, chunkSize);
+    }
+    finally {
+      // a bulk write is usually for a single table, don't scan the cache once per partition
+      Set<String> tables = new HashSet<>();
+      for (Partition partition : partitions) {
+        if (tables.add(tableKey(partition.getDbName(), partition.getTableName()))) {
+          invalidatePartitions(partition.getDbName(), partition.getTableName());
+        }
+      }
+    }
+  }
+
+  @Override
+  public List<String> getPartitionNames(String dbName, String tableName, short maxSize) throws TException
+  {
+    String key = tableKey(dbName, tableName) + "/" + maxSize;
+    List<String> names = partitionNames.get(key);
+    if (names == null) {
+      misses.incrementAndGet();
+      long generation = partitionNames.generation();
+      names = delegate.getPartitionNames(dbName, tableName, maxSize);
+      if (names == null) {
+        return null;
+      }
+      partitionNames.putIfUnchanged(key, new ArrayList<>(names), generation);
+    }
+    else {
+      hits.incrementAndGet();
+    }
+    return new ArrayList<>(names);
+  }
+
+  @Override
+  public boolean dropPartition(String dbName, String tableName, List<String> arguments) throws TException
+  {
+    try {
+      return delegate.dropPartition(dbName, tableName, arguments);
+    }
+    finally {
+      invalidatePartitions(dbName, tableName);
+    }
+  }
+
+  @Override
+  public List<Partition> getPartitions(String dbName, String tableName, short maxSize) throws TException
+  {
+    return delegate.getPartitions(dbName, tableName, maxSize);
+  }
+
+  @Override
+  public List<Partition> getPartitionsByFilter(String dbName, String tableName, String partitionFilter, short maxSize)
+      throws TException
+  {
+    return delegate.getPartitionsByFilter(dbName, tableName, partitionFilter, maxSize);
+  }
+
+  @Override
+  public DropPartitionsResult dropPartitions(String dbName, String tableName, List<String> partNames) throws TException
+  {
+    try {
+      return delegate.dropPartitions(dbName, tableName, partNames);
+    }
+    finally {
+      invalidatePartitions(dbName, tableName);
+    }
+  }
+
+  @Override
+  public List<PartitionChunkResult> dropPartitionsInChunks(String dbName, String tableName, List<String> partNames,
+                                                           int chunkSize) throws TException
+  {
+    try {
+      return delegate.dropPartitionsInChunks(dbName, tableName, partNames, chunkSize);
+    }
+    finally {
+      invalidatePartitions(dbName, tableName);
+    }
+  }
+
+  @Override
+  public List<Partition> getPartitionsByNames(String dbName, String tableName, List<String> names) throws TException
+  {
+    return delegate.getPartitionsByNames(dbName, tableName, names);
+  }
+
+  @Override
+  public boolean alterDatabase(String dbName, Database database) throws TException
+  {
+    try {
+      return delegate.alterDatabase(dbName, database);
+    }
+    finally {
+      databases.remove(databaseKey(dbName));
+    }
+  }
+
+  @Override
+  public boolean alterTable(String dbName, String tableName, Table newTable) throws TException
+  {
+    try {
+      return delegate.alterTable(dbName, tableName, newTable);
+    }
+    finally {
+      invalidateTable(dbName, tableName);
+      // the table could have been renamed
+      if (newTable != null && newTable.getTableName() != null) {
+        invalidateTable(newTable.getDbName() != null ? newTable.getDbName() : dbName, newTable.getTableName());
+      }
+    }
+  }
+
+  @Override
+  public void alterPartition(String dbName, String tableName, Partition partition) throws TException
+  {
+    try {
+      delegate.alterPartition(dbName, tableName, partition);
+    }
+    finally {
+      invalidatePartitions(dbName, tableName);
+    }
+  }
+
+  @Override
+  public void alterPartitions(String dbName, String tableName, List<Partition> partitions) throws TException
+  {
+    try {
+      delegate.alterPartitions(dbName, tableName, partitions);
+    }
+    finally {
+      invalidatePartitions(dbName, tableName);
+    }
+  }
+
+  @Override
+  public List<PartitionChunkResult> alterPartitionsInChunks(String dbName, String tableName, List<Partition> partitions,
+                                                            int chunkSize) throws TException
+  {
+    try {
+      return delegate.alterPartitionsInChunks(dbName, tableName, partitions, chunkSize);
+    }
+    finally {
+      invalidatePartitions(dbName, tableName);
+    }
+  }
+
+  @Override
+  public void appendPartition(String dbName, String tableName, List<String> partitionValues) throws TException
+  {
+    try {
+      delegate.appendPartition(dbName, tableName, partitionValues);
+    }
+    finally {
+      invalidatePartitions(dbName, tableName);
+    }
+  }
+
+  @Override
+  public void renamePartition(String dbName, String tableName, List<String> partVals, Partition newPart)
+      throws TException
+  {
+    try {
+      delegate.renamePartition(dbName, tableName, partVals, newPart);
+    }
+    finally {
+      invalidatePartitions(dbName, tableName);
+    }
+  }
+
+  @Override
+  public boolean listPartitionsByExpr(String dbName, String tableName, byte[] expr, String defaultPartitionName,
+                                      short maxParts, List<Partition> partitions) throws TException
+  {
+    return delegate.listPartitionsByExpr(dbName, tableName, expr, defaultPartitionName, maxParts, partitions);
+  }
+
+  @Override
+  public Long getCurrentNotificationId() throws TException
+  {
+    return delegate.getCurrentNotificationId();
+  }
+
+  @Override
+  public List<NotificationEvent> getNextNotifications(long lastEventId, int maxEvents) throws TException
+  {
+    return delegate.getNextNotifications(lastEventId, maxEvents);
+  }
+
+  // the lookups are served by the blocking calls so that they go through the cache
+  @Override
+  public AsyncHiveMetaStoreClient getAsyncClient()
+  {
+    return null;
+  }
+
+  @Override
+  public void close(Context context)
+  {
+    invalidateAll();
+    delegate.close(context);
+  }
+
+  @Override
+  public void beforeCheckpoint() throws Exception
+  {
+    if (delegate instanceof CheckpointAware) {
+      ((CheckpointAware) delegate).beforeCheckpoint();
+    }
+  }
+
+  // the metastore could have changed in any way while the snapshot was stored
+  @Override
+  public void afterRestore() throws Exception
+  {
+    synchronized (this) {
+      invalidateAll();
+      lastEventId = NO_EVENT_ID;
+    }
+    if (delegate instanceof CheckpointAware) {
+      ((CheckpointAware) delegate).afterRestore();
+    }
+  }
+
+  @Override
+  public void refreshClient(HiveConf hiveConf, Context context)
+      throws TException, LoginException, IOException, URISyntaxException, InterruptedException
+  {
+    delegate.refreshClient(hiveConf, context);
+  }
+
+  // hive metastore names are case insensitive
+  private static String databaseKey(String dbName)
+  {
+    return dbName == null ? "" : dbName.toLowerCase(Locale.ROOT);
+  }
+
+  private static String tableKey(String dbName, String tableName)
+  {
+    return databaseKey(dbName) + "." + (tableName == null ? "" : tableName.toLowerCase(Locale.ROOT));
+  }
+
+  private void invalidate(NotificationEvent event)
+  {
+    String eventType = event.getEventType() == null ? "" : event.getEventType();
+    if (event.getDbName() == null) {
+      // an event we cannot attribute to a database, e.g., a function, is not cached anyway
+      return;
+    }
+    if (eventType.endsWith("_DATABASE")) {
+      invalidateDatabase(event.getDbName());
+    }
+    else if (event.getTableName() == null) {
+      databases.remove(databaseKey(event.getDbName()));
+    }
+    else if (eventType.endsWith("_PARTITION")) {
+      // ADD_PARTITION, ALTER_PARTITION and DROP_PARTITION don't change the table itself
+      invalidatePartitions(event.getDbName(), event.getTableName());
+    }
+    else {
+      invalidateTable(event.getDbName(), event.getTableName());
+    }
+  }
+
+  private void invalidateDatabase(String dbName)
+  {
+    String prefix = databaseKey(dbName) + ".";
+    databases.remove(databaseKey(dbName));
+    missing.remove(databaseKey(dbName));
+    // dropping a database with cascade drops all its tables
+    tables.removeByPrefix(prefix);
+    partitionNames.removeByPrefix(prefix);
+    missing.removeByPrefix(prefix);
+  }
+
+  private void invalidateTable(String dbName, String tableName)
+  {
+    tables.remove(tableKey(dbName, tableName));
+    missing.remove(tableKey(dbName, tableName));
+    invalidatePartitions(dbName, tableName);
+  }
+
+  private void invalidatePartitions(String dbName, String tableName)
+  {
+    // the partition names are cached per max size
+    partitionNames.removeByPrefix(tableKey(dbName, tableName) + "/");
+  }
+
+  private static class LruCache<V>
+  {
+    private final long ttlMillis;
+    private final Map<String, Entry<V>> entries;
+    // bumped by every invalidation, the key being loaded isn't cached yet so it cannot be removed instead
+    private long generation;
+
+    LruCache(int maxEntries, long ttlMillis)
+    {
+      this.ttlMillis = ttlMillis;
+      // access order to evict the least recently used entry first
+      this.entries = new LinkedHashMap<String, Entry<V>>(16, 0.75f, true)
+      {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Entry<V>> eldest)
+        {
+          return size() > maxEntries;
+        }
+      };
+    }
+
+    synchronized V get(String key)
+    {
+      Entry<V> entry = entries.get(key);
+      if (entry == null) {
+        return null;
+      }
+      if (System.currentTimeMillis() - entry.createdAt > ttlMillis) {
+        entries.remove(key);
+        return null;
+      }
+      return entry.value;
+    }
+
+    synchronized long generation()
+    {
+      return generation;
+    }
+
+    // a value loaded from the metastore while the cache was invalidated could be stale, it isn't cached then
+    synchronized void putIfUnchanged(String key, V value, long loadGeneration)
+    {
+      if (generation == loadGeneration) {
+        entries.put(key, new Entry<>(value, System.currentTimeMillis()));
+      }
+    }
+
+    synchronized void remove(String key)
+    {
+      generation++;
+      entries.remove(key);
+    }
+
+    synchronized void removeByPrefix(String prefix)
+    {
+      generation++;
+      entries.keySet().removeIf(key -> key.startsWith(prefix));
+    }
+
+    synchronized void clear()
+    {
+      generation++;
+      entries.clear();
+    }
+  }
+
+  private static class Entry<V>
+  {
+    private final V value;
+    private final long createdAt;
+
+    Entry(V value, long createdAt)
+    {
+      this.value = value;
+      this.createdAt = createdAt;
+    }
+  }
+}
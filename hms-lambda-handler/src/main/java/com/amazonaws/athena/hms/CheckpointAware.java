@@ -0,0 +1,31 @@
+/*-
+ * #%L
+ * hms-lambda-handler
+ * %%
+ * Copyright (C) 2019 Amazon Web Services
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.amazonaws.athena.hms;
+
+// the hooks around a checkpoint of the function, e.g., a Lambda SnapStart snapshot. They mirror org.crac.Resource
+// and are driven by MetadataHandler, which is registered with CRaC through CracRegistration
+public interface CheckpointAware
+{
+  // release what can't be carried over into a snapshot, e.g., open sockets
+  void beforeCheckpoint() throws Exception;
+
+  // set up again what was released or what could have gone stale while the snapshot was stored
+  void afterRestore() throws Exception;
+}
@@ -0,0 +1,89 @@
+/*-
+ * #%L
+ * hms-lambda-handler
+ * %%
+ * Copyright (C) 2019 Amazon Web Services
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.amazonaws.athena.hms;
+
+import com.google.common.collect.Lists;
+import org.apache.thrift.TException;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+// Writes a huge list of partitions, or drops a huge list of partition names, in chunks, one metastore call and
+// transaction per chunk, so that no single call runs into the socket timeout. The outcome of every chunk is
+// reported, so the caller could retry only the chunks that failed
+public final class ChunkedWrites
+{
+  // writes a single chunk
+  public interface ChunkWriter<T>
+  {
+    void write(List<T> chunk) throws TException;
+  }
+
+  private ChunkedWrites()
+  {
+  }
+
+  /*
+   * split the items into chunks of at most chunkSize items, a chunk starts at the index of the
+   * chunk times chunkSize
+   *
+   * @return List of chunks
+   */
+  public static <T> List<List<T>> split(List<T> items, int chunkSize)
+  {
+    if (chunkSize <= 0 || items.size() <= chunkSize) {
+      return Collections.singletonList(items);
+    }
+    return Lists.partition(items, chunkSize);
+  }
+
+  /*
+   * write one chunk, a metastore failure is reported in the result instead of being thrown
+   *
+   * @return PartitionChunkResult
+   */
+  public static <T> PartitionChunkResult write(List<T> chunk, int offset, ChunkWriter<T> writer)
+  {
+    PartitionChunkResult result = new PartitionChunkResult().withOffset(offset).withCount(chunk.size());
+    try {
+      writer.write(chunk);
+      return result.withSuccess(true);
+    }
+    catch (TException e) {
+      return result.withSuccess(false).withErrorMessage(e.getMessage() != null ? e.getMessage() : e.toString());
+    }
+  }
+
+  /*
+   * write all the chunks one after another
+   *
+   * @return the result of every chunk in order
+   */
+  public static <T> List<PartitionChunkResult> writeAll(List<T> items, int chunkSize, ChunkWriter<T> writer)
+  {
+    List<List<T>> chunks = split(items, chunkSize);
+    List<PartitionChunkResult> results = new ArrayList<>(chunks.size());
+    for (int i = 0; i < chunks.size(); i++) {
+      results.add(write(chunks.get(i), i * chunkSize, writer));
+    }
+    return results;
+  }
+}
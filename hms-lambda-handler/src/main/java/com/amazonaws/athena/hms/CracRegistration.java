@@ -0,0 +1,83 @@
+/*-
+ * #%L
+ * hms-lambda-handler
+ * %%
+ * Copyright (C) 2019 Amazon Web Services
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.amazonaws.athena.hms;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+
+// registers a CheckpointAware with the global CRaC context when org.crac is on the classpath. The org.crac API
+// is bound by reflection, so a function that doesn't bundle it, or doesn't run with SnapStart, is unaffected
+public final class CracRegistration
+{
+  private static final String RESOURCE_CLASS = "org.crac.Resource";
+  private static final String CONTEXT_CLASS = "org.crac.Context";
+  private static final String CORE_CLASS = "org.crac.Core";
+
+  private CracRegistration()
+  {
+  }
+
+  /*
+   * register the hooks as an org.crac.Resource. The CRaC context only holds a weak reference to the resource,
+   * so the caller has to keep the returned object for as long as the hooks should run
+   *
+   * @return the registered resource, or null if org.crac is not on the classpath
+   */
+  public static Object register(CheckpointAware hooks)
+  {
+    Class<?> resourceClass;
+    try {
+      resourceClass = Class.forName(RESOURCE_CLASS);
+    }
+    catch (ClassNotFoundException e) {
+      return null;
+    }
+    try {
+      Object resource = Proxy.newProxyInstance(resourceClass.getClassLoader(), new Class<?>[] {resourceClass},
+          (proxy, method, args) -> invoke(hooks, proxy, method, args));
+      Object context = Class.forName(CORE_CLASS).getMethod("getGlobalContext").invoke(null);
+      Class.forName(CONTEXT_CLASS).getMethod("register", resourceClass).invoke(context, resource);
+      return resource;
+    }
+    catch (ReflectiveOperationException e) {
+      throw new RuntimeException("Failed to register with CRaC", e);
+    }
+  }
+
+  private static Object invoke(CheckpointAware hooks, Object proxy, Method method, Object[] args) throws Exception
+  {
+    switch (method.getName()) {
+      case "beforeCheckpoint":
+        hooks.beforeCheckpoint();
+        return null;
+      case "afterRestore":
+        hooks.afterRestore();
+        return null;
+      case "equals":
+        return proxy == args[0];
+      case "hashCode":
+        return System.identityHashCode(proxy);
+      case "toString":
+        return "CRaC resource for " + hooks;
+      default:
+        throw new UnsupportedOperationException(method.getName());
+    }
+  }
+}
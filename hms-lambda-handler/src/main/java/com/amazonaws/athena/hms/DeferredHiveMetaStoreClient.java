@@ -0,0 +1,407 @@
+/*-
+ * #%L
+ * hms-lambda-handler
+ * %%
+ * Copyright (C) 2019 Amazon Web Services
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.amazonaws.athena.hms;
+
+import com.amazonaws.services.lambda.runtime.Context;
+import org.apache.hadoop.hive.conf.HiveConf;
+import org.apache.hadoop.hive.metastore.api.Database;
+import org.apache.hadoop.hive.metastore.api.DropPartitionsResult;
+import org.apache.hadoop.hive.metastore.api.NotificationEvent;
+import org.apache.hadoop.hive.metastore.api.Partition;
+import org.apache.hadoop.hive.metastore.api.Table;
+import org.apache.thrift.TException;
+
+import javax.security.auth.login.LoginException;
+
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+
+// a HiveMetaStoreClient that connects in the background, so that the Thrift, SSL and SASL handshakes overlap
+// with the rest of the handler initialization and with reading the first request. A call only waits for the
+// connection if it isn't ready yet, and if connecting failed, the call fails and the next one connects again
+public class DeferredHiveMetaStoreClient implements HiveMetaStoreClient, CheckpointAware
+{
+  private final Callable<HiveMetaStoreClient> connector;
+  private volatile Future<HiveMetaStoreClient> connection;
+
+  public DeferredHiveMetaStoreClient(Callable<HiveMetaStoreClient> connector)
+  {
+    this.connector = connector;
+    this.connection = connect();
+  }
+
+  private Future<HiveMetaStoreClient> connect()
+  {
+    FutureTask<HiveMetaStoreClient> task = new FutureTask<>(connector);
+    Thread thread = new Thread(task, "hms-connect");
+    thread.setDaemon(true);
+    thread.start();
+    return task;
+  }
+
+  // only the first of the callers that saw the failed connection starts connecting again
+  private synchronized void reconnect(Future<HiveMetaStoreClient> failed)
+  {
+    if (connection == failed) {
+      connection = connect();
+    }
+  }
+
+  // whether the connection has been established, i.e., a call wouldn't wait for it
+  public boolean isConnected()
+  {
+    Future<HiveMetaStoreClient> current = connection;
+    if (!current.isDone()) {
+      return false;
+    }
+    try {
+      current.get();
+      return true;
+    }
+    catch (ExecutionException | InterruptedException e) {
+      return false;
+    }
+  }
+
+  /*
+   * wait for the connection if it isn't ready yet
+   *
+   * @return HiveMetaStoreClient, the connected client
+   */
+  public HiveMetaStoreClient getDelegate() throws TException
+  {
+    Future<HiveMetaStoreClient> current = connection;
+    try {
+      return current.get();
+    }
+    catch (ExecutionException e) {
+      reconnect(current);
+      Throwable cause = e.getCause();
+      // the factory of the client wraps what went wrong in a RuntimeException
+      if (cause instanceof RuntimeException && cause.getCause() != null) {
+        cause = cause.getCause();
+      }
+      throw new TException("Failed to connect to metastore: " + cause.getMessage(), cause);
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new TException("Interrupted while connecting to metastore", e);
+    }
+  }
+
+  @Override
+  public boolean dbExists(String dbName) throws TException
+  {
+    return getDelegate().dbExists(dbName);
+  }
+
+  @Override
+  public boolean tableExists(String dbName, String tableName) throws TException
+  {
+    return getDelegate().tableExists(dbName, tableName);
+  }
+
+  @Override
+  public Database getDatabase(String dbName) throws TException
+  {
+    return getDelegate().getDatabase(dbName);
+  }
+
+  @Override
+  public Set<String> getDatabaseNames(String filter) throws TException
+  {
+    return getDelegate().getDatabaseNames(filter);
+  }
+
+  @Override
+  public List<Database> getDatabases(String filter) throws TException
+  {
+    return getDelegate().getDatabases(filter);
+  }
+
+  @Override
+  public List<Database> getDatabasesByNames(List<String> dbNames) throws TException
+  {
+    return getDelegate().getDatabasesByNames(dbNames);
+  }
+
+  @Override
+  public Set<String> getTableNames(String dbName, String filter) throws TException
+  {
+    return getDelegate().getTableNames(dbName, filter);
+  }
+
+  @Override
+  public List<Table> getTablesByNames(String dbName, List<String> tableNames) throws TException
+  {
+    return getDelegate().getTablesByNames(dbName, tableNames);
+  }
+
+  @Override
+  public boolean createDatabase(String name) throws TException
+  {
+    return getDelegate().createDatabase(name);
+  }
+
+  @Override
+  public boolean createDatabase(String name, String description, String location, Map<String, String> params)
+      throws TException
+  {
+    return getDelegate().createDatabase(name, description, location, params);
+  }
+
+  @Override
+  public boolean createDatabase(Database db) throws TException
+  {
+    return getDelegate().createDatabase(db);
+  }
+
+  @Override
+  public boolean dropDatabase(String dbName, boolean deleteData, boolean cascade) throws TException
+  {
+    return getDelegate().dropDatabase(dbName, deleteData, cascade);
+  }
+
+  @Override
+  public boolean createTable(Table table) throws TException
+  {
+    return getDelegate().createTable(table);
+  }
+
+  @Override
+  public boolean dropTable(String dbName, String tableName) throws TException
+  {
+    return getDelegate().dropTable(dbName, tableName);
+  }
+
+  @Override
+  public Table getTable(String dbName, String tableName) throws TException
+  {
+    return getDelegate().getTable(dbName, tableName);
+  }
+
+  @Override
+  public Partition createPartition(Table table, List<String> values) throws TException
+  {
+    return getDelegate().createPartition(table, values);
+  }
+
+  @Override
+  public Partition addPartition(Partition partition) throws TException
+  {
+    return getDelegate().addPartition(partition);
+  }
+
+  @Override
+  public void addPartitions(List<Partition> partitions) throws TException
+  {
+    getDelegate().addPartitions(partitions);
+  }
+
+  @Override
+  public List<PartitionChunkResult> addPartitionsInChunks(List<Partition> partitions, int chunkSize) throws TException
+  {
+    return getDelegate().addPartitionsInChunks(partitions, chunkSize);
+  }
+
+  @Override
+  public List<String> getPartitionNames(String dbName, String tableName, short maxSize) throws TException
+  {
+    return getDelegate().getPartitionNames(dbName, tableName, maxSize);
+  }
+
+  @Override
+  public boolean dropPartition(String dbName, String tableName, List<String> arguments) throws TException
+  {
+    return getDelegate().dropPartition(dbName, tableName, arguments);
+  }
+
+  @Override
+  public List<Partition> getPartitions(String dbName, String tableName, short maxSize) throws TException
+  {
+    return getDelegate().getPartitions(dbName, tableName, maxSize);
+  }
+
+  @Override
+  public List<Partition> getPartitionsByFilter(String dbName, String tableName, String partitionFilter, short maxSize)
+      throws TException
+  {
+    return getDelegate().getPartitionsByFilter(dbName, tableName, partitionFilter, maxSize);
+  }
+
+  @Override
+  public DropPartitionsResult dropPartitions(String dbName, String tableName, List<String> partNames) throws TException
+  {
+    return getDelegate().dropPartitions(dbName, tableName, partNames);
+  }
+
+  @Override
+  public List<PartitionChunkResult> dropPartitionsInChunks(String dbName, String tableName, List<String> partNames,
+                                                           int chunkSize) throws TException
+  {
+    return getDelegate().dropPartitionsInChunks(dbName, tableName, partNames, chunkSize);
+  }
+
+  @Override
+  public List<Partition> getPartitionsByNames(String dbName, String tableName, List<String> names) throws TException
+  {
+    return getDelegate().getPartitionsByNames(dbName, tableName, names);
+  }
+
+  @Override
+  public boolean alterDatabase(String dbName, Database database) throws TException
+  {
+    return getDelegate().alterDatabase(dbName, database);
+  }
+
+  @Override
+  public boolean alterTable(String dbName, String tableName, Table newTable) throws TException
+  {
+    return getDelegate().alterTable(dbName, tableName, newTable);
+  }
+
+  @Override
+  public void alterPartition(String dbName, String tableName, Partition partition) throws TException
+  {
+    getDelegate().alterPartition(dbName, tableName, partition);
+  }
+
+  @Override
+  public void alterPartitions(String dbName, String tableName, List<Partition> partitions) throws TException
+  {
+    getDelegate().alterPartitions(dbName, tableName, partitions);
+  }
+
+  @Override
+  public List<PartitionChunkResult> alterPartitionsInChunks(String dbName, String tableName, List<Partition> partitions,
+                                                            int chunkSize) throws TException
+  {
+    return getDelegate().alterPartitionsInChunks(dbName, tableName, partitions, chunkSize);
+  }
+
+  @Override
+  public void appendPartition(String dbName, String tableName, List<String> partitionValues) throws TException
+  {
+    getDelegate().appendPartition(dbName, tableName, partitionValues);
+  }
+
+  @Override
+  public void renamePartition(String dbName, String tableName, List<String> partVals, Partition newPart)
+      throws TException
+  {
+    getDelegate().renamePartition(dbName, tableName, partVals, newPart);
+  }
+
+  @Override
+  public boolean listPartitionsByExpr(String dbName, String tableName, byte[] expr, String defaultPartitionName,
+                                      short maxParts, List<Partition> partitions) throws TException
+  {
+    return getDelegate().listPartitionsByExpr(dbName, tableName, expr, defaultPartitionName, maxParts, partitions);
+  }
+
+  @Override
+  public Long getCurrentNotificationId() throws TException
+  {
+    return getDelegate().getCurrentNotificationId();
+  }
+
+  @Override
+  public List<NotificationEvent> getNextNotifications(long lastEventId, int maxEvents) throws TException
+  {
+    return getDelegate().getNextNotifications(lastEventId, maxEvents);
+  }
+
+  // the caller falls back to the blocking calls, which report why there is no connection. The failed connection
+  // is left to them, so that they fail right away instead of waiting for a connection started here
+  @Override
+  public AsyncHiveMetaStoreClient getAsyncClient()
+  {
+    try {
+      return connection.get().getAsyncClient();
+    }
+    catch (ExecutionException e) {
+      return null;
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return null;
+    }
+  }
+
+  // a snapshot mustn't be taken in the middle of a handshake, so wait for it before the connection is closed
+  @Override
+  public void beforeCheckpoint() throws Exception
+  {
+    HiveMetaStoreClient delegate;
+    try {
+      delegate = connection.get();
+    }
+    catch (ExecutionException e) {
+      // there is no connection to close, it is set up again after the restore
+      return;
+    }
+    if (delegate instanceof CheckpointAware) {
+      ((CheckpointAware) delegate).beforeCheckpoint();
+    }
+  }
+
+  @Override
+  public void afterRestore() throws Exception
+  {
+    Future<HiveMetaStoreClient> current = connection;
+    HiveMetaStoreClient delegate;
+    try {
+      delegate = current.get();
+    }
+    catch (ExecutionException e) {
+      // connect in the background again, overlapped with the first invocation after the restore
+      reconnect(current);
+      return;
+    }
+    if (delegate instanceof CheckpointAware) {
+      ((CheckpointAware) delegate).afterRestore();
+    }
+  }
+
+  @Override
+  public void close(Context context)
+  {
+    try {
+      getDelegate().close(context);
+    }
+    catch (TException e) {
+      context.getLogger().log("No connection to metastore to close: " + e.getMessage());
+    }
+  }
+
+  @Override
+  public void refreshClient(HiveConf hiveConf, Context context)
+      throws TException, LoginException, IOException, URISyntaxException, InterruptedException
+  {
+    getDelegate().refreshClient(hiveConf, context);
+  }
+}
@@ -21,10 +21,13 @@ package com.amazonaws.athena.hms;
 
 import com.amazonaws.athena.hms.handler.BaseHMSHandler;
 
+import java.util.function.Supplier;
+
 public class HandlerContext
 {
-  // the request handler
-  private final BaseHMSHandler handler;
+  // the request handler, created on first use if it is not given upfront
+  private volatile BaseHMSHandler handler;
+  private final Supplier<BaseHMSHandler> handlerFactory;
   // the request class, we need this for deserialization
   private final Class<? extends ApiRequest> requestClass;
   // the response class, we need this for serialization
@@ -33,6 +36,16 @@ public class HandlerContext
   public HandlerContext(BaseHMSHandler handler, Class<? extends ApiRequest> requestClass, Class<? extends ApiResponse> responseClass)
   {
     this.handler = handler;
+    this.handlerFactory = null;
+    this.requestClass = requestClass;
+    this.responseClass = responseClass;
+  }
+
+  // the handler is created when it is first used, so a container only creates the handlers of the APIs it serves
+  public HandlerContext(Supplier<BaseHMSHandler> handlerFactory, Class<? extends ApiRequest> requestClass,
+                        Class<? extends ApiResponse> responseClass)
+  {
+    this.handlerFactory = handlerFactory;
     this.requestClass = requestClass;
     this.responseClass = responseClass;
   }
@@ -49,6 +62,15 @@ public class HandlerContext
 
   public BaseHMSHandler getHandler()
   {
-    return handler;
+    BaseHMSHandler result = handler;
+    if (result == null) {
+      synchronized (this) {
+        if (handler == null) {
+          handler = handlerFactory.get();
+        }
+        result = handler;
+      }
+    }
+    return result;
   }
 }
@@ -23,6 +23,7 @@ import com.amazonaws.services.lambda.runtime.Context;
 import org.apache.hadoop.hive.conf.HiveConf;
 import org.apache.hadoop.hive.metastore.api.Database;
 import org.apache.hadoop.hive.metastore.api.DropPartitionsResult;
+import org.apache.hadoop.hive.metastore.api.NotificationEvent;
 import org.apache.hadoop.hive.metastore.api.Partition;
 import org.apache.hadoop.hive.metastore.api.Table;
 import org.apache.thrift.TException;
@@ -31,6 +32,7 @@ import javax.security.auth.login.LoginException;
 
 import java.io.IOException;
 import java.net.URISyntaxException;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -79,8 +81,21 @@ public interface HiveMetaStoreClient
 
   void addPartitions(List<Partition> partitions) throws TException;
 
+  // add the partitions in chunks of at most chunkSize partitions and report the outcome of every chunk
+  default List<PartitionChunkResult> addPartitionsInChunks(List<Partition> partitions, int chunkSize) throws TException
+  {
+    return ChunkedWrites.writeAll(partitions, chunkSize, this::addPartitions);
+  }
+
   List<String> getPartitionNames(String dbName, String tableName, short maxSize) throws TException;
 
+  // drop the partitions in chunks of at most chunkSize names and report the outcome of every chunk
+  default List<PartitionChunkResult> dropPartitionsInChunks(String dbName, String tableName, List<String> partNames,
+                                                            int chunkSize) throws TException
+  {
+    return ChunkedWrites.writeAll(partNames, chunkSize, chunk -> dropPartitions(dbName, tableName, chunk));
+  }
+
   boolean dropPartition(String dbName, String tableName,
                         List<String> arguments) throws TException;
 
@@ -105,6 +120,13 @@ public interface HiveMetaStoreClient
   void alterPartitions(String dbName, String tableName,
                        List<Partition> partitions) throws TException;
 
+  // alter the partitions in chunks of at most chunkSize partitions and report the outcome of every chunk
+  default List<PartitionChunkResult> alterPartitionsInChunks(String dbName, String tableName, List<Partition> partitions,
+                                                             int chunkSize) throws TException
+  {
+    return ChunkedWrites.writeAll(partitions, chunkSize, chunk -> alterPartitions(dbName, tableName, chunk));
+  }
+
   void appendPartition(String dbName, String tableName,
                        List<String> partitionValues) throws TException;
 
@@ -113,6 +135,24 @@ public interface HiveMetaStoreClient
   boolean listPartitionsByExpr(String dbName, String tableName,
                                byte[] expr, String defaultPartitionName, short maxParts, List<Partition> partitions) throws TException;
 
+  // the id of the last notification event, null if the client doesn't support the notification log
+  default Long getCurrentNotificationId() throws TException
+  {
+    return null;
+  }
+
+  // the notification events after the given event id, at most maxEvents of them
+  default List<NotificationEvent> getNextNotifications(long lastEventId, int maxEvents) throws TException
+  {
+    return Collections.emptyList();
+  }
+
+  // the read calls without blocking the caller, null if the client only supports blocking calls
+  default AsyncHiveMetaStoreClient getAsyncClient()
+  {
+    return null;
+  }
+
   void close(Context context);
   void refreshClient(HiveConf hiveConf, Context context) throws TException, LoginException, IOException, URISyntaxException, InterruptedException;
 }
@@ -29,9 +29,42 @@ public class HiveMetaStoreConf
   public static final String HMS_KERBEROS_ENABLED = "hive.metastore.kerberos.enabled";
   public static final String HMS_RESPONSE_SPILL_LOCATION = "hive.metastore.response.spill.location";
   public static final String HMS_RESPONSE_SPILL_THRESHOLD = "hive.metastore.response.spill.threshold";
+  public static final String HMS_RESPONSE_SPILL_ENCODING = "hive.metastore.response.spill.encoding";
+  public static final String HMS_RESPONSE_SPILL_ADAPTIVE = "hive.metastore.response.spill.adaptive";
+  public static final String HMS_RESPONSE_MAX_PAYLOAD_SIZE = "hive.metastore.response.max.payload.size";
   public static final String HMS_HANDLER_NAME_PREFIX = "hive.metastore.handler.name.prefix";
   public static final String DEFAULT_HMS_HANDLER_NAME_PREFIX = "com.amazonaws.athena.hms.handler.";
   public static final long DEFAULT_HMS_RESPONSE_SPILL_THRESHOLD = 4 * 1024 * 1024; // 4MB
+  public static final long DEFAULT_HMS_RESPONSE_MAX_PAYLOAD_SIZE = 6 * 1024 * 1024; // 6MB, the Lambda response limit
+  public static final String HMS_PAGINATION_CURSOR_ENABLED = "hive.metastore.pagination.cursor.enabled";
+  public static final String HMS_PAGINATION_NAMES_CACHE_SIZE = "hive.metastore.pagination.names.cache.size";
+  public static final String HMS_PAGINATION_NAMES_CACHE_TTL_MS = "hive.metastore.pagination.names.cache.ttl.ms";
+  public static final long DEFAULT_HMS_PAGINATION_NAMES_CACHE_TTL_MS = 5 * 60 * 1000; // 5 minutes
+  public static final String HMS_CLIENT_ASYNC_CONNECT_ENABLED = "hive.metastore.client.async.connect.enabled";
+  public static final String HMS_CLIENT_NONBLOCKING_CONNECTIONS = "hive.metastore.client.nonblocking.connections";
+  public static final String HMS_CLIENT_POOL_ENABLED = "hive.metastore.client.pool.enabled";
+  public static final String HMS_CLIENT_POOL_SIZE = "hive.metastore.client.pool.size";
+  public static final String HMS_CLIENT_POOL_VALIDATION_INTERVAL_MS = "hive.metastore.client.pool.validation.interval.ms";
+  public static final String HMS_CLIENT_POOL_BORROW_TIMEOUT_MS = "hive.metastore.client.pool.borrow.timeout.ms";
+  public static final String HMS_CLIENT_FAN_OUT_CONCURRENCY = "hive.metastore.client.fanout.concurrency";
+  public static final String HMS_CLIENT_PARTITION_BATCH_SIZE = "hive.metastore.client.partition.batch.size";
+  public static final String HMS_CLIENT_WRITE_CHUNK_SIZE = "hive.metastore.client.write.chunk.size";
+  public static final String HMS_CLIENT_CACHE_SIZE = "hive.metastore.client.cache.size";
+  public static final String HMS_CLIENT_CACHE_TTL_MS = "hive.metastore.client.cache.ttl.ms";
+  public static final String HMS_CLIENT_CACHE_NEGATIVE_SIZE = "hive.metastore.client.cache.negative.size";
+  public static final String HMS_CLIENT_CACHE_NEGATIVE_TTL_MS = "hive.metastore.client.cache.negative.ttl.ms";
+  public static final String HMS_CLIENT_CACHE_NOTIFICATION_ENABLED = "hive.metastore.client.cache.notification.enabled";
+  public static final String HMS_CLIENT_CACHE_NOTIFICATION_MAX_EVENTS = "hive.metastore.client.cache.notification.max.events";
+  public static final int DEFAULT_HMS_CLIENT_POOL_SIZE = 2;
+  public static final long DEFAULT_HMS_CLIENT_POOL_VALIDATION_INTERVAL_MS = 30 * 1000; // 30 seconds
+  public static final long DEFAULT_HMS_CLIENT_POOL_BORROW_TIMEOUT_MS = 60 * 1000; // 1 minute
+  public static final long DEFAULT_HMS_CLIENT_CACHE_TTL_MS = 60 * 1000; // 1 minute
+  public static final long DEFAULT_HMS_CLIENT_CACHE_NEGATIVE_TTL_MS = 5 * 1000; // 5 seconds
+  public static final int DEFAULT_HMS_CLIENT_CACHE_NOTIFICATION_MAX_EVENTS = 1000;
+  public static final String HMS_BATCH_CONCURRENCY = "hive.metastore.batch.concurrency";
+  public static final String HMS_METRICS_ENABLED = "hive.metastore.metrics.enabled";
+  public static final String HMS_METRICS_NAMESPACE = "hive.metastore.metrics.namespace";
+  public static final String DEFAULT_HMS_METRICS_NAMESPACE = "AthenaHiveMetastore";
   public static final String ENV_HMS_URIS = "HMS_URIS";
   public static final String ENV_SPILL_LOCATION = "SPILL_LOCATION";
   public static final String ENV_USE_SSL = "HMS_USE_SSL";
@@ -71,6 +104,16 @@ public class HiveMetaStoreConf
   // the root s3 path to store the spilled response file
   private String responseSpillLocation;
 
+  // how the spilled response is encoded in s3, clients must understand the encoding before it is changed
+  private SpillEncoding responseSpillEncoding = SpillEncoding.IDENTITY;
+
+  // whether to spill only if the whole response envelope exceeds the max payload size
+  // instead of comparing the API response against the spill threshold
+  private boolean responseSpillAdaptive;
+
+  // the max size of the response envelope that could be returned inline, used by the adaptive spill
+  private long responseMaxPayloadSize = DEFAULT_HMS_RESPONSE_MAX_PAYLOAD_SIZE;
+
   // the handler name prefix
   private String handlerNamePrefix;
 
@@ -80,6 +123,73 @@ public class HiveMetaStoreConf
   // SSL truststore password
   private String sslTruststorePassword;
 
+  // whether to paginate with cursor tokens instead of name based tokens
+  private boolean paginationCursorEnabled;
+
+  // the max number of sorted name snapshots cached per handler for pagination, 0 to disable the cache
+  private int paginationNamesCacheSize;
+
+  // how long a cached sorted name snapshot stays valid
+  private long paginationNamesCacheTtlMillis;
+
+  // whether to connect to the metastore in the background while the rest of the handler is set up
+  private boolean clientAsyncConnectEnabled;
+
+  // the number of non-blocking connections that serve the asynchronous calls from a single selector thread,
+  // 0 to disable, requires the framed transport without SSL and SASL
+  private int clientNonblockingConnections;
+
+  // whether to keep a pool of warm connections across all the metastore URIs
+  private boolean clientPoolEnabled;
+
+  // the max number of connections per metastore URI in the pool
+  private int clientPoolSize;
+
+  // how long a connection could stay idle in the pool before it is validated again
+  private long clientPoolValidationIntervalMillis;
+
+  // how long to wait for a connection when all the connections in the pool are in use
+  private long clientPoolBorrowTimeoutMillis;
+
+  // the max number of metastore calls issued in parallel over the pooled connections for one request, 1 to disable
+  private int clientFanOutConcurrency;
+
+  // the max number of partition names sent in one get_partitions_by_names call, 0 to send all the names at once
+  private int clientPartitionBatchSize;
+
+  // the max number of partitions written in one metastore transaction by addPartitions and alterPartitions,
+  // the chunks are written in parallel over the pooled connections and the response reports the outcome of
+  // every chunk instead of failing the whole request, 0 to write all the partitions in a single call
+  private int clientWriteChunkSize;
+
+  // the max number of entries per cached lookup (database, table, partition names), 0 to disable the cache
+  private int clientCacheSize;
+
+  // how long a cached lookup stays valid, writes from outside of the container are seen after that
+  private long clientCacheTtlMillis;
+
+  // the max number of cached "not found" answers of dbExists and tableExists, 0 to disable the negative cache
+  private int clientCacheNegativeSize;
+
+  // how long a cached "not found" answer stays valid, kept short since it hides objects created elsewhere
+  private long clientCacheNegativeTtlMillis;
+
+  // whether the cache follows the metastore notification log to evict what was changed outside of the container,
+  // requires the DbNotificationListener on the metastore
+  private boolean clientCacheNotificationEnabled;
+
+  // the max number of notification events pulled per invocation, the whole cache is dropped if there are more
+  private int clientCacheNotificationMaxEvents;
+
+  // the max number of API requests of a batch served in parallel, only applies with the client pool, 1 to disable
+  private int batchConcurrency;
+
+  // whether to log the per-phase timings of every invocation in the CloudWatch embedded metric format
+  private boolean metricsEnabled;
+
+  // the CloudWatch namespace of the metrics
+  private String metricsNamespace = DEFAULT_HMS_METRICS_NAMESPACE;
+
   public boolean isKerberosEnabled()
   {
     return kerberosEnabled;
@@ -110,6 +220,16 @@ public class HiveMetaStoreConf
     this.useSasl = useSasl;
   }
 
+  public boolean isUseSsl()
+  {
+    return useSsl;
+  }
+
+  public void setUseSsl(boolean useSsl)
+  {
+    this.useSsl = useSsl;
+  }
+
   public boolean isUseFramedTransport()
   {
     return useFramedTransport;
@@ -190,6 +310,36 @@ public class HiveMetaStoreConf
     this.responseSpillThreshold = responseSpillThreshold;
   }
 
+  public SpillEncoding getResponseSpillEncoding()
+  {
+    return responseSpillEncoding;
+  }
+
+  public void setResponseSpillEncoding(SpillEncoding responseSpillEncoding)
+  {
+    this.responseSpillEncoding = responseSpillEncoding;
+  }
+
+  public boolean isResponseSpillAdaptive()
+  {
+    return responseSpillAdaptive;
+  }
+
+  public void setResponseSpillAdaptive(boolean responseSpillAdaptive)
+  {
+    this.responseSpillAdaptive = responseSpillAdaptive;
+  }
+
+  public long getResponseMaxPayloadSize()
+  {
+    return responseMaxPayloadSize;
+  }
+
+  public void setResponseMaxPayloadSize(long responseMaxPayloadSize)
+  {
+    this.responseMaxPayloadSize = responseMaxPayloadSize;
+  }
+
   public String getHandlerNamePrefix()
   {
     return handlerNamePrefix;
@@ -220,6 +370,216 @@ public class HiveMetaStoreConf
     this.sslTruststorePassword = sslTruststorePassword;
   }
 
+  public boolean isPaginationCursorEnabled()
+  {
+    return paginationCursorEnabled;
+  }
+
+  public void setPaginationCursorEnabled(boolean paginationCursorEnabled)
+  {
+    this.paginationCursorEnabled = paginationCursorEnabled;
+  }
+
+  public int getPaginationNamesCacheSize()
+  {
+    return paginationNamesCacheSize;
+  }
+
+  public void setPaginationNamesCacheSize(int paginationNamesCacheSize)
+  {
+    this.paginationNamesCacheSize = paginationNamesCacheSize;
+  }
+
+  public long getPaginationNamesCacheTtlMillis()
+  {
+    return paginationNamesCacheTtlMillis;
+  }
+
+  public void setPaginationNamesCacheTtlMillis(long paginationNamesCacheTtlMillis)
+  {
+    this.paginationNamesCacheTtlMillis = paginationNamesCacheTtlMillis;
+  }
+
+  public boolean isClientAsyncConnectEnabled()
+  {
+    return clientAsyncConnectEnabled;
+  }
+
+  public void setClientAsyncConnectEnabled(boolean clientAsyncConnectEnabled)
+  {
+    this.clientAsyncConnectEnabled = clientAsyncConnectEnabled;
+  }
+
+  public int getClientNonblockingConnections()
+  {
+    return clientNonblockingConnections;
+  }
+
+  public void setClientNonblockingConnections(int clientNonblockingConnections)
+  {
+    this.clientNonblockingConnections = clientNonblockingConnections;
+  }
+
+  public boolean isClientPoolEnabled()
+  {
+    return clientPoolEnabled;
+  }
+
+  public void setClientPoolEnabled(boolean clientPoolEnabled)
+  {
+    this.clientPoolEnabled = clientPoolEnabled;
+  }
+
+  public int getClientPoolSize()
+  {
+    return clientPoolSize;
+  }
+
+  public void setClientPoolSize(int clientPoolSize)
+  {
+    this.clientPoolSize = clientPoolSize;
+  }
+
+  public long getClientPoolValidationIntervalMillis()
+  {
+    return clientPoolValidationIntervalMillis;
+  }
+
+  public void setClientPoolValidationIntervalMillis(long clientPoolValidationIntervalMillis)
+  {
+    this.clientPoolValidationIntervalMillis = clientPoolValidationIntervalMillis;
+  }
+
+  public long getClientPoolBorrowTimeoutMillis()
+  {
+    return clientPoolBorrowTimeoutMillis;
+  }
+
+  public void setClientPoolBorrowTimeoutMillis(long clientPoolBorrowTimeoutMillis)
+  {
+    this.clientPoolBorrowTimeoutMillis = clientPoolBorrowTimeoutMillis;
+  }
+
+  public int getClientFanOutConcurrency()
+  {
+    return clientFanOutConcurrency;
+  }
+
+  public void setClientFanOutConcurrency(int clientFanOutConcurrency)
+  {
+    this.clientFanOutConcurrency = clientFanOutConcurrency;
+  }
+
+  public int getClientPartitionBatchSize()
+  {
+    return clientPartitionBatchSize;
+  }
+
+  public void setClientPartitionBatchSize(int clientPartitionBatchSize)
+  {
+    this.clientPartitionBatchSize = clientPartitionBatchSize;
+  }
+
+  public int getClientWriteChunkSize()
+  {
+    return clientWriteChunkSize;
+  }
+
+  public void setClientWriteChunkSize(int clientWriteChunkSize)
+  {
+    this.clientWriteChunkSize = clientWriteChunkSize;
+  }
+
+  public int getClientCacheSize()
+  {
+    return clientCacheSize;
+  }
+
+  public void setClientCacheSize(int clientCacheSize)
+  {
+    this.clientCacheSize = clientCacheSize;
+  }
+
+  public long getClientCacheTtlMillis()
+  {
+    return clientCacheTtlMillis;
+  }
+
+  public void setClientCacheTtlMillis(long clientCacheTtlMillis)
+  {
+    this.clientCacheTtlMillis = clientCacheTtlMillis;
+  }
+
+  public int getClientCacheNegativeSize()
+  {
+    return clientCacheNegativeSize;
+  }
+
+  public void setClientCacheNegativeSize(int clientCacheNegativeSize)
+  {
+    this.clientCacheNegativeSize = clientCacheNegativeSize;
+  }
+
+  public long getClientCacheNegativeTtlMillis()
+  {
+    return clientCacheNegativeTtlMillis;
+  }
+
+  public void setClientCacheNegativeTtlMillis(long clientCacheNegativeTtlMillis)
+  {
+    this.clientCacheNegativeTtlMillis = clientCacheNegativeTtlMillis;
+  }
+
+  public boolean isClientCacheNotificationEnabled()
+  {
+    return clientCacheNotificationEnabled;
+  }
+
+  public void setClientCacheNotificationEnabled(boolean clientCacheNotificationEnabled)
+  {
+    this.clientCacheNotificationEnabled = clientCacheNotificationEnabled;
+  }
+
+  public int getClientCacheNotificationMaxEvents()
+  {
+    return clientCacheNotificationMaxEvents;
+  }
+
+  public void setClientCacheNotificationMaxEvents(int clientCacheNotificationMaxEvents)
+  {
+    this.clientCacheNotificationMaxEvents = clientCacheNotificationMaxEvents;
+  }
+
+  public int getBatchConcurrency()
+  {
+    return batchConcurrency;
+  }
+
+  public void setBatchConcurrency(int batchConcurrency)
+  {
+    this.batchConcurrency = batchConcurrency;
+  }
+
+  public boolean isMetricsEnabled()
+  {
+    return metricsEnabled;
+  }
+
+  public void setMetricsEnabled(boolean metricsEnabled)
+  {
+    this.metricsEnabled = metricsEnabled;
+  }
+
+  public String getMetricsNamespace()
+  {
+    return metricsNamespace;
+  }
+
+  public void setMetricsNamespace(String metricsNamespace)
+  {
+    this.metricsNamespace = metricsNamespace;
+  }
+
   /*
    * convert this configuration class to an HiveConf object
    *
@@ -259,6 +619,16 @@ public class HiveMetaStoreConf
         conf.set("hive.metastore.ssl.truststore.password", trustStorePassword);
       }
     }
+    else if (useSsl) {
+      // SSL enabled without the environment variables, e.g., against an in-process metastore in tests
+      conf.setBoolean("hive.metastore.use.SSL", true);
+      if (sslTruststorePath != null) {
+        conf.set("hive.metastore.ssl.truststore.path", sslTruststorePath);
+      }
+      if (sslTruststorePassword != null) {
+        conf.set("hive.metastore.ssl.truststore.password", sslTruststorePassword);
+      }
+    }
     return conf;
   }
 
@@ -283,9 +653,33 @@ public class HiveMetaStoreConf
     conf.setMetastoreSetUgi(hmsConf.getBoolean(HiveConf.ConfVars.METASTORE_EXECUTE_SET_UGI.varname, true));
     conf.setResponseSpillLocation(hmsConf.getProperty(HMS_RESPONSE_SPILL_LOCATION));
     conf.setResponseSpillThreshold(hmsConf.getLong(HMS_RESPONSE_SPILL_THRESHOLD, DEFAULT_HMS_RESPONSE_SPILL_THRESHOLD));
+    conf.setResponseSpillEncoding(SpillEncoding.valueOf(hmsConf.getString(HMS_RESPONSE_SPILL_ENCODING, SpillEncoding.IDENTITY.name())));
+    conf.setResponseSpillAdaptive(hmsConf.getBoolean(HMS_RESPONSE_SPILL_ADAPTIVE, false));
+    conf.setResponseMaxPayloadSize(hmsConf.getLong(HMS_RESPONSE_MAX_PAYLOAD_SIZE, DEFAULT_HMS_RESPONSE_MAX_PAYLOAD_SIZE));
     conf.setHandlerNamePrefix(hmsConf.getString(HMS_HANDLER_NAME_PREFIX, DEFAULT_HMS_HANDLER_NAME_PREFIX));
     conf.setSslTruststorePath(hmsConf.getProperty("hive.metastore.ssl.truststore.path"));
     conf.setSslTruststorePassword(hmsConf.getProperty("hive.metastore.ssl.truststore.password"));
+    conf.setPaginationCursorEnabled(hmsConf.getBoolean(HMS_PAGINATION_CURSOR_ENABLED, false));
+    conf.setPaginationNamesCacheSize(hmsConf.getInt(HMS_PAGINATION_NAMES_CACHE_SIZE, 0));
+    conf.setPaginationNamesCacheTtlMillis(hmsConf.getLong(HMS_PAGINATION_NAMES_CACHE_TTL_MS, DEFAULT_HMS_PAGINATION_NAMES_CACHE_TTL_MS));
+    conf.setClientAsyncConnectEnabled(hmsConf.getBoolean(HMS_CLIENT_ASYNC_CONNECT_ENABLED, true));
+    conf.setClientNonblockingConnections(hmsConf.getInt(HMS_CLIENT_NONBLOCKING_CONNECTIONS, 0));
+    conf.setClientPoolEnabled(hmsConf.getBoolean(HMS_CLIENT_POOL_ENABLED, false));
+    conf.setClientPoolSize(hmsConf.getInt(HMS_CLIENT_POOL_SIZE, DEFAULT_HMS_CLIENT_POOL_SIZE));
+    conf.setClientPoolValidationIntervalMillis(hmsConf.getLong(HMS_CLIENT_POOL_VALIDATION_INTERVAL_MS, DEFAULT_HMS_CLIENT_POOL_VALIDATION_INTERVAL_MS));
+    conf.setClientPoolBorrowTimeoutMillis(hmsConf.getLong(HMS_CLIENT_POOL_BORROW_TIMEOUT_MS, DEFAULT_HMS_CLIENT_POOL_BORROW_TIMEOUT_MS));
+    conf.setClientFanOutConcurrency(hmsConf.getInt(HMS_CLIENT_FAN_OUT_CONCURRENCY, 1));
+    conf.setClientPartitionBatchSize(hmsConf.getInt(HMS_CLIENT_PARTITION_BATCH_SIZE, 0));
+    conf.setClientWriteChunkSize(hmsConf.getInt(HMS_CLIENT_WRITE_CHUNK_SIZE, 0));
+    conf.setClientCacheSize(hmsConf.getInt(HMS_CLIENT_CACHE_SIZE, 0));
+    conf.setClientCacheTtlMillis(hmsConf.getLong(HMS_CLIENT_CACHE_TTL_MS, DEFAULT_HMS_CLIENT_CACHE_TTL_MS));
+    conf.setClientCacheNegativeSize(hmsConf.getInt(HMS_CLIENT_CACHE_NEGATIVE_SIZE, 0));
+    conf.setClientCacheNegativeTtlMillis(hmsConf.getLong(HMS_CLIENT_CACHE_NEGATIVE_TTL_MS, DEFAULT_HMS_CLIENT_CACHE_NEGATIVE_TTL_MS));
+    conf.setClientCacheNotificationEnabled(hmsConf.getBoolean(HMS_CLIENT_CACHE_NOTIFICATION_ENABLED, false));
+    conf.setClientCacheNotificationMaxEvents(hmsConf.getInt(HMS_CLIENT_CACHE_NOTIFICATION_MAX_EVENTS, DEFAULT_HMS_CLIENT_CACHE_NOTIFICATION_MAX_EVENTS));
+    conf.setBatchConcurrency(hmsConf.getInt(HMS_BATCH_CONCURRENCY, 1));
+    conf.setMetricsEnabled(hmsConf.getBoolean(HMS_METRICS_ENABLED, true));
+    conf.setMetricsNamespace(hmsConf.getString(HMS_METRICS_NAMESPACE, DEFAULT_HMS_METRICS_NAMESPACE));
     return conf;
   }
 
@@ -328,7 +722,31 @@ public class HiveMetaStoreConf
         ", keytabFile: '" + keytabFile + '\'' +
         ", responseSpillThreshold: " + responseSpillThreshold +
         ", responseSpillLocation: '" + responseSpillLocation + '\'' +
+        ", responseSpillEncoding: " + responseSpillEncoding +
+        ", responseSpillAdaptive: " + responseSpillAdaptive +
+        ", responseMaxPayloadSize: " + responseMaxPayloadSize +
         ", handlerNamePrefix: '" + handlerNamePrefix + '\'' +
+        ", paginationCursorEnabled: " + paginationCursorEnabled +
+        ", paginationNamesCacheSize: " + paginationNamesCacheSize +
+        ", paginationNamesCacheTtlMillis: " + paginationNamesCacheTtlMillis +
+        ", clientAsyncConnectEnabled: " + clientAsyncConnectEnabled +
+        ", clientNonblockingConnections: " + clientNonblockingConnections +
+        ", clientPoolEnabled: " + clientPoolEnabled +
+        ", clientPoolSize: " + clientPoolSize +
+        ", clientPoolValidationIntervalMillis: " + clientPoolValidationIntervalMillis +
+        ", clientPoolBorrowTimeoutMillis: " + clientPoolBorrowTimeoutMillis +
+        ", clientFanOutConcurrency: " + clientFanOutConcurrency +
+        ", clientPartitionBatchSize: " + clientPartitionBatchSize +
+        ", clientWriteChunkSize: " + clientWriteChunkSize +
+        ", clientCacheSize: " + clientCacheSize +
+        ", clientCacheTtlMillis: " + clientCacheTtlMillis +
+        ", clientCacheNegativeSize: " + clientCacheNegativeSize +
+        ", clientCacheNegativeTtlMillis: " + clientCacheNegativeTtlMillis +
+        ", clientCacheNotificationEnabled: " + clientCacheNotificationEnabled +
+        ", clientCacheNotificationMaxEvents: " + clientCacheNotificationMaxEvents +
+        ", batchConcurrency: " + batchConcurrency +
+        ", metricsEnabled: " + metricsEnabled +
+        ", metricsNamespace: '" + metricsNamespace + '\'' +
         '}';
   }
 }
@@ -0,0 +1,256 @@
+/*-
+ * #%L
+ * hms-lambda-handler
+ * %%
+ * Copyright (C) 2019 Amazon Web Services
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.amazonaws.athena.hms;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+// the timings, sizes and object counts of one invocation split by phase, so that a slow call could be told
+// apart as a slow metastore call, Thrift encoding, JSON serialization or s3 spill. They are logged as a
+// single CloudWatch embedded metric format (EMF) line, from which CloudWatch extracts the metrics without
+// any PutMetricData call. The handlers of a batch could record into the same metrics concurrently
+public class InvocationMetrics
+{
+  public static final String API_NAME = "ApiName";
+  public static final String COLD_START = "ColdStart";
+  public static final String REQUEST_ID = "RequestId";
+  public static final String DB_NAME = "DbName";
+  public static final String TABLE_NAME = "TableName";
+
+  private static final String MILLISECONDS = "Milliseconds";
+  private static final String BYTES = "Bytes";
+  private static final String COUNT = "Count";
+
+  private static final ObjectMapper MAPPER = new ObjectMapper();
+
+  // the metrics of the invocation served by the current thread, so that a ThriftEncoder could record into it
+  private static final ThreadLocal<InvocationMetrics> CURRENT = new ThreadLocal<>();
+
+  private final boolean coldStart;
+  private final long startNanos = System.nanoTime();
+  // the values that are not metrics, such as the request id or the table, to look up what drives a slow call
+  private final Map<String, String> properties = new LinkedHashMap<>();
+  private String apiName;
+  private long initNanos;
+  private long requestReadNanos;
+  private long cacheSyncNanos;
+  // the time in the handlers, which includes the Thrift encoding done by the handlers
+  private final AtomicLong handlerNanos = new AtomicLong();
+  private final AtomicLong handlerEncodeNanos = new AtomicLong();
+  // the wall-clock time of the handlers of a parallel batch, whose handler times overlap
+  private long handlerWallNanos = -1;
+  // the time to write the response, which includes the embedded Thrift encoding and the s3 upload
+  private long responseWriteNanos;
+  private final AtomicLong responseEncodeNanos = new AtomicLong();
+  private final AtomicLong thriftObjects = new AtomicLong();
+  private long spillUploadNanos;
+  private long responseBytes;
+  private long spilledBytes;
+  private boolean spilled;
+  private int batchSize = -1;
+  // the failed invocation or the failed API requests of a batch
+  private final AtomicInteger failures = new AtomicInteger();
+  private long totalNanos;
+
+  public InvocationMetrics(boolean coldStart)
+  {
+    this.coldStart = coldStart;
+  }
+
+  public static InvocationMetrics current()
+  {
+    return CURRENT.get();
+  }
+
+  // make these metrics the current ones of this thread until detach() is called
+  public void attach()
+  {
+    CURRENT.set(this);
+  }
+
+  public static void detach()
+  {
+    CURRENT.remove();
+  }
+
+  public boolean isColdStart()
+  {
+    return coldStart;
+  }
+
+  public String getApiName()
+  {
+    return apiName;
+  }
+
+  public void setApiName(String apiName)
+  {
+    this.apiName = apiName;
+  }
+
+  public void setProperty(String name, String value)
+  {
+    if (value != null) {
+      properties.put(name, value);
+    }
+  }
+
+  public void setInitNanos(long initNanos)
+  {
+    this.initNanos = initNanos;
+  }
+
+  public void addRequestReadNanos(long nanos)
+  {
+    requestReadNanos += nanos;
+  }
+
+  public void addCacheSyncNanos(long nanos)
+  {
+    cacheSyncNanos += nanos;
+  }
+
+  public void addHandlerNanos(long nanos)
+  {
+    handlerNanos.addAndGet(nanos);
+  }
+
+  public void setHandlerWallNanos(long handlerWallNanos)
+  {
+    this.handlerWallNanos = handlerWallNanos;
+  }
+
+  // the Thrift encoding of objects by a handler, or while the response is written if they are embedded
+  public void addThriftEncoding(long nanos, int objects, boolean whileWriting)
+  {
+    (whileWriting ? responseEncodeNanos : handlerEncodeNanos).addAndGet(nanos);
+    thriftObjects.addAndGet(objects);
+  }
+
+  public void addResponseWriteNanos(long nanos)
+  {
+    responseWriteNanos += nanos;
+  }
+
+  public void setResponseBytes(long responseBytes)
+  {
+    this.responseBytes = responseBytes;
+  }
+
+  public void setSpill(long spilledBytes, long uploadNanos)
+  {
+    this.spilled = true;
+    this.spilledBytes = spilledBytes;
+    this.spillUploadNanos = uploadNanos;
+  }
+
+  public void setBatchSize(int batchSize)
+  {
+    this.batchSize = batchSize;
+  }
+
+  public void addFailure()
+  {
+    failures.incrementAndGet();
+  }
+
+  public void finish()
+  {
+    totalNanos = System.nanoTime() - startNanos;
+  }
+
+  public long getTotalNanos()
+  {
+    return totalNanos;
+  }
+
+  /*
+   * the metrics as a CloudWatch embedded metric format log line, with the API name and whether it was
+   * a cold start as dimensions. The time of each phase is exclusive of the other phases
+   *
+   * @return the EMF JSON document
+   */
+  public String toEmf(String namespace, long timestamp)
+  {
+    ObjectNode root = MAPPER.createObjectNode();
+    ObjectNode aws = root.putObject("_aws");
+    aws.put("Timestamp", timestamp);
+    ObjectNode directive = aws.putArray("CloudWatchMetrics").addObject();
+    directive.put("Namespace", namespace);
+    directive.putArray("Dimensions").addArray().add(API_NAME).add(COLD_START);
+    ArrayNode definitions = directive.putArray("Metrics");
+    root.put(API_NAME, apiName == null ? "unknown" : apiName);
+    root.put(COLD_START, String.valueOf(coldStart));
+    if (coldStart) {
+      putTime(root, definitions, "InitTime", initNanos);
+    }
+    putTime(root, definitions, "TotalTime", totalNanos);
+    putTime(root, definitions, "RequestReadTime", requestReadNanos);
+    putTime(root, definitions, "CacheSyncTime", cacheSyncNanos);
+    long handler = handlerNanos.get();
+    long handlerEncode = handlerEncodeNanos.get();
+    if (handlerWallNanos >= 0 && handler > handlerWallNanos) {
+      // the handlers of a parallel batch overlap, so their phases are scaled down to the wall-clock time
+      handlerEncode = (long) (handlerEncode * (handlerWallNanos / (double) handler));
+      handler = handlerWallNanos;
+    }
+    // what is left of the handlers after the Thrift encoding is mostly the metastore calls
+    putTime(root, definitions, "MetastoreTime", Math.max(handler - handlerEncode, 0));
+    putTime(root, definitions, "ThriftEncodeTime", handlerEncode + responseEncodeNanos.get());
+    putTime(root, definitions, "ResponseWriteTime",
+        Math.max(responseWriteNanos - responseEncodeNanos.get() - spillUploadNanos, 0));
+    put(root, definitions, "ThriftObjects", COUNT, thriftObjects.get());
+    put(root, definitions, "ResponseBytes", BYTES, responseBytes);
+    if (spilled) {
+      putTime(root, definitions, "SpillUploadTime", spillUploadNanos);
+      put(root, definitions, "SpilledBytes", BYTES, spilledBytes);
+    }
+    if (batchSize >= 0) {
+      put(root, definitions, "BatchSize", COUNT, batchSize);
+      // the sum of the handler times of the batch, which is more than its wall-clock time when run in parallel
+      putTime(root, definitions, "BatchEntryTime", handlerNanos.get());
+    }
+    put(root, definitions, "Failures", COUNT, failures.get());
+    root.put("Spilled", spilled);
+    for (Map.Entry<String, String> property : properties.entrySet()) {
+      root.put(property.getKey(), property.getValue());
+    }
+    return root.toString();
+  }
+
+  private static void putTime(ObjectNode root, ArrayNode definitions, String name, long nanos)
+  {
+    definitions.addObject().put("Name", name).put("Unit", MILLISECONDS);
+    root.put(name, nanos / (double) TimeUnit.MILLISECONDS.toNanos(1));
+  }
+
+  private static void put(ObjectNode root, ArrayNode definitions, String name, String unit, long value)
+  {
+    definitions.addObject().put("Name", name).put("Unit", unit);
+    root.put(name, value);
+  }
+}
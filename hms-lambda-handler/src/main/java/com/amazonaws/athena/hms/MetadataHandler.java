@@ -20,32 +20,64 @@
 package com.amazonaws.athena.hms;
 
 import com.amazonaws.ClientConfiguration;
+import com.amazonaws.athena.hms.handler.ThriftEncoder;
 import com.amazonaws.athena.hms.io.S3Helper;
+import com.amazonaws.athena.hms.io.SpillOutputStream;
+import com.amazonaws.athena.hms.io.SpillableResponseBuffer;
+import com.amazonaws.athena.hms.serde.MetadataResponseSerializer;
 import com.amazonaws.athena.hms.serde.ObjectMapperFactory;
+import com.amazonaws.auth.AWSCredentialsProvider;
+import com.amazonaws.auth.DefaultAWSCredentialsProviderChain;
 import com.amazonaws.services.lambda.runtime.Context;
 import com.amazonaws.services.lambda.runtime.RequestStreamHandler;
 import com.amazonaws.services.s3.AmazonS3;
 import com.amazonaws.services.s3.AmazonS3ClientBuilder;
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.hadoop.hive.metastore.api.Partition;
+import org.apache.hadoop.hive.metastore.api.StorageDescriptor;
+import org.apache.hadoop.hive.metastore.api.Table;
+import org.apache.thrift.TDeserializer;
+import org.apache.thrift.protocol.TJSONProtocol;
 
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 // a delegator to dispatch requests to different handlers based on the ApiName in the request object
 // a single Lambda function that supports all Hive Metastore calls should extend this class
-public class MetadataHandler implements RequestStreamHandler
+public class MetadataHandler implements RequestStreamHandler, CheckpointAware
 {
   // the s3 path to spill response object to if the response size exceeds a limit
   private final String responseSpillLocation;
 
-  // the threshold that we use to decide whether to spill to s3
-  // Please be aware that it is difficult to get the exact size of the response object due
-  // to the way how a Java object is represented in memory, we should set this limit much less than the
-  // Lambda hard limit 6MB, for example, we could set it as 4MB
+  // the closing '}' of the response envelope that is written after the API response
+  private static final int ENVELOPE_END_SIZE = 1;
+
+  // the threshold on the size of the API response that we use to decide whether to spill to s3
+  // it leaves room for the envelope, so it should be set less than the Lambda hard limit 6MB, for example 4MB
   private final long responseSpillThreshold;
 
+  // whether to spill only if the whole response envelope wouldn't fit in responseMaxPayloadSize
+  private final boolean responseSpillAdaptive;
+
+  // the max size of the inline response envelope, i.e., the Lambda response payload limit
+  private final long responseMaxPayloadSize;
+
+  // how the spilled response is encoded in s3
+  private final SpillEncoding responseSpillEncoding;
+
   // the mapping between API name and a HandlerContext, which includes the handler and request/response class types
   private final Map<String, HandlerContext> handlers;
 
@@ -54,24 +86,63 @@ public class MetadataHandler implements RequestStreamHandler
   // hive metastore client
   private final HiveMetaStoreClient client;
 
-  private final ApiHelper apiHelper;
+  private final ApiHelper<?, ?> apiHelper;
+  // resolves the credentials of the s3 client, refreshed when the function is restored from a snapshot
+  private final AWSCredentialsProvider credentialsProvider;
   private final AmazonS3 s3Client;
   private final S3Helper s3Helper;
   private final ObjectMapper objectMapper;
   private final HandlerProvider handlerProvider;
 
+  // serves the API requests of a batch in parallel over the pooled connections, null to serve them one by one
+  private final ExecutorService batchExecutor;
+
+  // the CloudWatch namespace to log the invocation metrics to, null if they are disabled
+  private final String metricsNamespace;
+
+  // the time it took to create this handler, or to restore it from a snapshot, reported by the first invocation after that
+  private volatile long initNanos;
+
+  private final AtomicBoolean coldStart = new AtomicBoolean(true);
+
+  // the CRaC resource that runs the checkpoint hooks, kept here since CRaC only holds a weak reference to it
+  private final Object cracResource;
+
   public MetadataHandler(HiveMetaStoreClientFactory factory)
   {
+    long start = System.nanoTime();
     this.conf = factory.getConf();
     this.client = factory.getHiveMetaStoreClient();
     this.handlerProvider = factory.getHandlerProvider();
     this.responseSpillLocation = conf.getResponseSpillLocation();
     this.responseSpillThreshold = conf.getResponseSpillThreshold();
-    this.apiHelper = new ApiHelper();
+    this.responseSpillEncoding = conf.getResponseSpillEncoding();
+    this.responseSpillAdaptive = conf.isResponseSpillAdaptive();
+    this.responseMaxPayloadSize = conf.getResponseMaxPayloadSize();
+    this.apiHelper = new ApiHelper<>();
+    this.credentialsProvider = new DefaultAWSCredentialsProviderChain();
     this.s3Client = buildS3Client();
     this.s3Helper = new S3Helper(s3Client);
     this.objectMapper = ObjectMapperFactory.create(apiHelper, s3Helper);
     this.handlers = handlerProvider.provide(conf, client);
+    this.batchExecutor = createBatchExecutor(conf);
+    this.metricsNamespace = conf.isMetricsEnabled() ? conf.getMetricsNamespace() : null;
+    this.initNanos = System.nanoTime() - start;
+    this.cracResource = CracRegistration.register(this);
+  }
+
+  // a single connection can only serve one call at a time, so the batch runs in parallel only with the client pool
+  private static ExecutorService createBatchExecutor(HiveMetaStoreConf conf)
+  {
+    if (!conf.isClientPoolEnabled() || conf.getBatchConcurrency() <= 1) {
+      return null;
+    }
+    AtomicInteger threadCount = new AtomicInteger(0);
+    return Executors.newFixedThreadPool(conf.getBatchConcurrency(), runnable -> {
+      Thread thread = new Thread(runnable, "hms-batch-" + threadCount.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    });
   }
 
   private AmazonS3 buildS3Client()
@@ -83,53 +154,331 @@ public class MetadataHandler implements RequestStreamHandler
             .withSocketTimeout(60000)
             .withMaxErrorRetry(10);
 
-    return AmazonS3ClientBuilder.standard()
+    AmazonS3ClientBuilder builder = AmazonS3ClientBuilder.standard()
         // For S3 VPCE endpoint, we still need to use the regular s3 endpoint since it is a gateway
-        .withClientConfiguration(configuration)
-        .build();
+        .withClientConfiguration(configuration);
+    builder.setCredentials(credentialsProvider);
+    return builder.build();
+  }
+
+  // prime the function before a snapshot is taken, and close the metastore connections, which can't be restored
+  @Override
+  public void beforeCheckpoint() throws Exception
+  {
+    long start = System.nanoTime();
+    try {
+      prime();
+    }
+    catch (Exception e) {
+      // a snapshot that isn't fully primed is still safe to take
+      System.out.println("Failed to prime the handler before the checkpoint: " + e);
+    }
+    System.out.println("Primed the handler before the checkpoint in " + (System.nanoTime() - start) / 1000000 + " ms");
+    if (client instanceof CheckpointAware) {
+      ((CheckpointAware) client).beforeCheckpoint();
+    }
+  }
+
+  // the metastore connections are opened again on first use
+  @Override
+  public void afterRestore() throws Exception
+  {
+    long start = System.nanoTime();
+    // the credentials in the snapshot could have expired or belong to another execution environment
+    credentialsProvider.refresh();
+    if (client instanceof CheckpointAware) {
+      ((CheckpointAware) client).afterRestore();
+    }
+    initNanos = System.nanoTime() - start;
+    coldStart.set(true);
+  }
+
+  // run what every invocation runs short of the metastore calls, i.e., the request and response serde of every API,
+  // the Thrift codecs of every encoding and the creation of the handlers and the HiveConf, so that the classes are
+  // loaded and initialized in the snapshot instead of on the first invocation after a restore
+  void prime() throws Exception
+  {
+    RequestContext requestContext = new RequestContext("priming", "priming", "priming");
+    for (String apiName : apiHelper.getApiNames()) {
+      ApiRequest apiRequest = objectMapper.readValue("{}", apiHelper.getRequestClass(apiName));
+      byte[] request = objectMapper.writeValueAsBytes(new MetadataRequest(requestContext, apiName, apiRequest));
+      objectMapper.readValue(request, MetadataRequest.class).close();
+      ApiResponse apiResponse = objectMapper.readValue("{}", apiHelper.getResponseClass(apiName));
+      byte[] response = objectMapper.writeValueAsBytes(new MetadataResponse(apiName, false, null, apiResponse));
+      objectMapper.readValue(response, MetadataResponse.class).close();
+    }
+    Table table = new Table();
+    table.setDbName("priming");
+    table.setTableName("priming");
+    table.setSd(new StorageDescriptor());
+    Partition partition = new Partition();
+    partition.setDbName("priming");
+    partition.setTableName("priming");
+    partition.setValues(Collections.singletonList("priming"));
+    partition.setSd(new StorageDescriptor());
+    for (ThriftEncoding encoding : ThriftEncoding.values()) {
+      ThriftEncoder encoder = new ThriftEncoder(encoding, new TJSONProtocol.Factory());
+      GetTablesResponse tables = new GetTablesResponse();
+      tables.setTables(encoder.encodeAll(Collections.singletonList(table)));
+      ListPartitionsResponse partitions = new ListPartitionsResponse();
+      partitions.setPartitions(encoder.encodeAll(Collections.singletonList(partition)));
+      objectMapper.writeValueAsBytes(tables);
+      objectMapper.writeValueAsBytes(partitions);
+    }
+    // the handlers decode the Thrift objects in the requests as TJSON
+    TDeserializer deserializer = new TDeserializer(new TJSONProtocol.Factory());
+    ThriftEncoder encoder = new ThriftEncoder(ThriftEncoding.TJSON, new TJSONProtocol.Factory());
+    deserializer.fromString(new Table(), encoder.encode(table));
+    deserializer.fromString(new Partition(), encoder.encode(partition));
+    for (HandlerContext handlerContext : handlers.values()) {
+      handlerContext.getHandler();
+    }
+    conf.toHiveConf();
+  }
+
+  private String getSpillPath(Context context)
+  {
+    return responseSpillLocation + "/" + context.getFunctionName() + "/" + context.getAwsRequestId();
   }
 
-  private String spillToS3(Context context, String responseAsString)
+  private SpillOutputStream openSpillStream(Context context) throws IOException
   {
     // get the actual s3 path
-    String s3Path = responseSpillLocation + "/" + context.getFunctionName() + "/" + context.getAwsRequestId();
+    String s3Path = getSpillPath(context);
     // log the s3 path in case invalid s3 path causes exceptions
-    context.getLogger().log("Saving response to s3: " + s3Path);
-    s3Helper.saveResponseToS3(s3Path, responseAsString);
-    return s3Path;
+    context.getLogger().log("Saving response to s3: " + s3Path + ", encoding: " + responseSpillEncoding);
+    return s3Helper.openResponseStream(s3Path, responseSpillEncoding);
+  }
+
+  // evict what was changed outside of this container since the last invocation
+  private void syncCache(Context context, InvocationMetrics metrics)
+  {
+    if (!(client instanceof CachingHiveMetaStoreClient)) {
+      return;
+    }
+    CachingHiveMetaStoreClient cachingClient = (CachingHiveMetaStoreClient) client;
+    long start = System.nanoTime();
+    try {
+      int events = cachingClient.syncWithNotificationLog();
+      if (cachingClient.isNotificationLogEnabled()) {
+        context.getLogger().log("Metadata cache applied " + events + " notification events up to "
+            + cachingClient.getLastEventId());
+      }
+    }
+    catch (Exception e) {
+      // the cache has been dropped, the request could still be served from the metastore
+      context.getLogger().log("Failed to read the notification log: " + e.getMessage());
+    }
+    finally {
+      metrics.addCacheSyncNanos(System.nanoTime() - start);
+    }
+  }
+
+  // the smallest API response size that would push the envelope over the max payload size
+  private long getAdaptiveSpillThreshold(int sliceOffset)
+  {
+    return Math.max(responseMaxPayloadSize - sliceOffset - ENVELOPE_END_SIZE + 1, 0);
+  }
+
+  private HandlerContext getHandlerContext(String apiName)
+  {
+    HandlerContext handlerContext = handlers.get(apiName);
+    if (handlerContext == null) {
+      throw new RuntimeException("Cannot find handler for API " + apiName);
+    }
+    return handlerContext;
+  }
+
+  private ApiResponse invokeHandler(HandlerContext handlerContext, ApiRequest apiRequest, ThriftEncoding thriftEncoding,
+                                    Context context, InvocationMetrics metrics)
+  {
+    // the response encoding is kept per thread, so that the API requests of a batch could run in parallel
+    handlerContext.getHandler().setResponseEncoding(thriftEncoding);
+    long start = System.nanoTime();
+    try {
+      return (ApiResponse) handlerContext.getHandler().handleRequest(apiRequest, context);
+    }
+    finally {
+      metrics.addHandlerNanos(System.nanoTime() - start);
+      handlerContext.getHandler().setResponseEncoding(null);
+    }
+  }
+
+  // serve one API request of a batch, a failure is reported in its own result and doesn't fail the other requests
+  private BatchMetadataResponse.Result handleBatchEntry(MetadataRequest request, Context context,
+                                                        InvocationMetrics metrics)
+  {
+    String apiName = request.getApiName();
+    // the request could be served by a batch thread, which records into the metrics of the invocation too
+    metrics.attach();
+    try {
+      HandlerContext handlerContext = getHandlerContext(apiName);
+      return BatchMetadataResponse.Result.success(apiName,
+          invokeHandler(handlerContext, request.getApiRequest(), request.getAcceptEncoding(), context, metrics));
+    }
+    catch (Exception e) {
+      context.getLogger().log("Batch API " + apiName + " failed: " + e);
+      metrics.addFailure();
+      return BatchMetadataResponse.Result.failure(apiName, e.toString());
+    }
+  }
+
+  private BatchMetadataResponse handleBatch(BatchMetadataRequest batchRequest, Context context,
+                                            InvocationMetrics metrics) throws IOException
+  {
+    List<MetadataRequest> requests = batchRequest.getRequests();
+    context.getLogger().log("Batch APIs: " + requests.size());
+    metrics.setBatchSize(requests.size());
+    List<BatchMetadataResponse.Result> results = new ArrayList<>(requests.size());
+    if (batchExecutor == null || requests.size() <= 1) {
+      for (MetadataRequest request : requests) {
+        results.add(handleBatchEntry(request, context, metrics));
+      }
+      return new BatchMetadataResponse(results);
+    }
+    long start = System.nanoTime();
+    List<Future<BatchMetadataResponse.Result>> futures = new ArrayList<>(requests.size());
+    for (MetadataRequest request : requests) {
+      futures.add(batchExecutor.submit(() -> {
+        try {
+          return handleBatchEntry(request, context, metrics);
+        }
+        finally {
+          InvocationMetrics.detach();
+        }
+      }));
+    }
+    try {
+      for (Future<BatchMetadataResponse.Result> future : futures) {
+        results.add(future.get());
+      }
+      return new BatchMetadataResponse(results);
+    }
+    catch (ExecutionException e) {
+      throw new IOException(e.getCause());
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while serving the batch", e);
+    }
+    finally {
+      for (Future<BatchMetadataResponse.Result> future : futures) {
+        future.cancel(false);
+      }
+      metrics.setHandlerWallNanos(System.nanoTime() - start);
+    }
   }
 
   @Override
   public void handleRequest(InputStream inputStream, OutputStream outputStream, Context context) throws IOException
   {
+    InvocationMetrics metrics = new InvocationMetrics(coldStart.getAndSet(false));
+    if (metrics.isColdStart()) {
+      metrics.setInitNanos(initNanos);
+    }
+    metrics.setProperty(InvocationMetrics.REQUEST_ID, context.getAwsRequestId());
+    metrics.attach();
+    try {
+      handleRequest(inputStream, outputStream, context, metrics);
+    }
+    catch (IOException e) {
+      metrics.addFailure();
+      throw e;
+    }
+    finally {
+      InvocationMetrics.detach();
+      metrics.finish();
+      if (metricsNamespace != null) {
+        // an EMF line has to be logged on its own, CloudWatch picks up the metrics from the function logs
+        System.out.println(metrics.toEmf(metricsNamespace, System.currentTimeMillis()));
+      }
+    }
+  }
+
+  private void handleRequest(InputStream inputStream, OutputStream outputStream, Context context,
+                             InvocationMetrics metrics) throws IOException
+  {
+    long readStart = System.nanoTime();
     try (MetadataRequest metadataRequest = objectMapper.readValue(inputStream, MetadataRequest.class)) {
+      metrics.addRequestReadNanos(System.nanoTime() - readStart);
       // cloud watch logs, we need them for monitoring and debugging
       context.getLogger().log("HMS configuration: " + conf.toString());
       context.getLogger().log("RequestContext: " + metadataRequest.getContext());
       String apiName = metadataRequest.getApiName();
       context.getLogger().log("API: " + apiName);
-      HandlerContext handlerContext = handlers.get(apiName);
-      if (handlerContext == null) {
-        throw new RuntimeException("Cannot find handler for API " + apiName);
+      metrics.setApiName(apiName);
+      if (metadataRequest.getApiRequest() instanceof TableRequest) {
+        TableRequest tableRequest = (TableRequest) metadataRequest.getApiRequest();
+        metrics.setProperty(InvocationMetrics.DB_NAME, tableRequest.getDbName());
+        metrics.setProperty(InvocationMetrics.TABLE_NAME, tableRequest.getTableName());
+      }
+      // encode the Thrift objects in the response the way the client asked for
+      ThriftEncoding thriftEncoding = metadataRequest.getAcceptEncoding();
+      ApiResponse apiResponse;
+      Class<? extends ApiResponse> responseClass;
+      if (metadataRequest instanceof BatchMetadataRequest) {
+        syncCache(context, metrics);
+        // all the API responses of the batch go into one response envelope and share one spill decision
+        apiResponse = handleBatch((BatchMetadataRequest) metadataRequest, context, metrics);
+        responseClass = BatchMetadataResponse.class;
+      }
+      else {
+        HandlerContext handlerContext = getHandlerContext(apiName);
+        syncCache(context, metrics);
+        apiResponse = invokeHandler(handlerContext, metadataRequest.getApiRequest(), thriftEncoding, context, metrics);
+        responseClass = handlerContext.getResponseClass();
+      }
+      long writeStart = System.nanoTime();
+      // serialize the inline response envelope exactly once into a size-counting buffer. The ApiResponse
+      // is written in place as the value of the apiResponse field. As soon as it reaches the spill threshold,
+      // what has been written so far and everything after that is streamed to s3 instead of the buffer
+      SpillableResponseBuffer buffer = new SpillableResponseBuffer(responseSpillThreshold, () -> openSpillStream(context));
+      try (JsonGenerator generator = objectMapper.getFactory().createGenerator(buffer, JsonEncoding.UTF8)) {
+        MetadataResponseSerializer.writeEnvelopeStart(new MetadataResponse(apiName, false, null, null, thriftEncoding),
+            generator);
+        generator.flush();
+        if (responseSpillAdaptive) {
+          // the exact size of the envelope is known once the API response starts, except for the API response
+          // itself, spill as soon as the API response wouldn't fit in what is left of the payload limit
+          buffer.startSliceAtNextValue(this::getAdaptiveSpillThreshold);
+        }
+        else {
+          buffer.startSliceAtNextValue(sliceOffset -> responseSpillThreshold);
+        }
+        objectMapper.writerFor(responseClass).writeValue(generator, apiResponse);
+        generator.flush();
+        buffer.endSlice();
+        generator.writeEndObject();
+      }
+      catch (Exception e) {
+        buffer.abortSpill();
+        throw e;
+      }
+      if (client instanceof CachingHiveMetaStoreClient) {
+        CachingHiveMetaStoreClient cachingClient = (CachingHiveMetaStoreClient) client;
+        context.getLogger().log("Metadata cache hits: " + cachingClient.getHitCount()
+            + ", misses: " + cachingClient.getMissCount());
+        cachingClient.resetStats();
       }
-      ApiRequest apiRequest = metadataRequest.getApiRequest();
-      ApiResponse apiResponse = (ApiResponse) handlerContext.getHandler().handleRequest(apiRequest, context);
-      // serialize ApiResponse to String to get its size. Please be aware this isn't accurate
-      String responseAsString = objectMapper.writerFor(handlerContext.getResponseClass()).writeValueAsString(apiResponse);
-      // get the response String size
-      long responseSize = responseAsString.getBytes().length;
+      // get the response size without materializing it as a String
+      long responseSize = buffer.getSliceSize();
       context.getLogger().log("Response size: " + responseSize);
-      MetadataResponse response;
-      if (responseSize >= responseSpillThreshold) {
-        String spillPath = spillToS3(context, responseAsString);
-        context.getLogger().log("Response size " + responseAsString.length() + " exceeded threshold "
-            + responseSpillThreshold + ", is saved to s3: " + spillPath);
-        response = new MetadataResponse(apiName, true, spillPath, null);
+      metrics.setResponseBytes(responseSize);
+      if (buffer.isSpilled()) {
+        metrics.setSpill(buffer.getSpillStream().getBytesUploaded(), buffer.getSpillStream().getUploadNanos());
+        String spillPath = getSpillPath(context);
+        context.getLogger().log("Response size " + responseSize + " exceeded "
+            + (responseSpillAdaptive ? "max payload size " + responseMaxPayloadSize : "threshold " + responseSpillThreshold)
+            + ", is saved to s3: " + spillPath + ", uploaded size: "
+            + buffer.getSpillStream().getBytesUploaded());
+        objectMapper.writeValue(outputStream,
+            new MetadataResponse(apiName, true, spillPath, null, thriftEncoding, responseSpillEncoding));
       }
       else {
-        response = new MetadataResponse(apiName, false, null, apiResponse);
+        // the buffer already holds the complete inline response
+        buffer.writeTo(outputStream);
       }
-      objectMapper.writeValue(outputStream, response);
+      metrics.addResponseWriteNanos(System.nanoTime() - writeStart);
     }
     catch (Exception e) {
       throw new IOException(e);
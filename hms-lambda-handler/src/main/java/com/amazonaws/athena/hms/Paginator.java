@@ -25,89 +25,111 @@ import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Base64;
 import java.util.Collection;
-import java.util.Collections;
 import java.util.List;
 
 public abstract class Paginator<T>
 {
+  // cursor tokens start with a prefix that is not part of the Base64 alphabet, so that
+  // they could always be told apart from the name based tokens
+  private static final String CURSOR_PREFIX = "c.";
+  private static final String CURSOR_SEPARATOR = ".";
+
+  // optional container level cache for the sorted names, could be null
+  private final SortedNamesCache namesCache;
+
+  protected Paginator()
+  {
+    this(null);
+  }
+
+  protected Paginator(SortedNamesCache namesCache)
+  {
+    this.namesCache = namesCache;
+  }
+
   protected abstract Collection<String> getNames() throws TException;
   protected abstract List<T> getEntriesByNames(List<String> names) throws TException;
 
+  // the key to cache the sorted names in the SortedNamesCache, null means not to cache them
+  protected String getNamesCacheKey()
+  {
+    return null;
+  }
+
   public PaginatedResponse<T> paginateByNames(String token, short maxSize) throws TException
   {
-    Collection<String> names = getNames();
-    String nextToken;
-    List<T> list;
-    if (names != null && !names.isEmpty()) {
-      // sort names by nature order
-      List<String> sortedNames = new ArrayList<String>(names);
-      Collections.sort(sortedNames);
-      if (maxSize == 0) {
-        list = new ArrayList<>();
-        // point to the same next position
-        nextToken = token;
-      }
-      else if (maxSize > 0) {
-        // first check the start index
-        int startIndex;
-        // normal page size
-        if (token == null) {
-          // first page
-          startIndex = 0;
-        }
-        else {
-          // not first page
-          // check the index of the token, i.e., the first entry in the new page
-          startIndex = sortedNames.indexOf(decrypt(token));
-          if (startIndex == -1) {
-            throw new RuntimeException("Failed to find token " + token);
-          }
-        }
-
-        // number of entries left
-        int num = sortedNames.size() - startIndex;
-        if (num <= maxSize) {
-          // only one page left
-          List<String> pageNames = sortedNames.subList(startIndex, sortedNames.size());
-          list = getEntriesByNames(pageNames);
-          // no more entries
-          nextToken = null;
-        }
-        else {
-          // more than one pages left
-          List<String> pageNames = sortedNames.subList(startIndex, startIndex + maxSize);
-          list = getEntriesByNames(pageNames);
-          // use the first name in the next page as the nextToken
-          nextToken = encrypt(sortedNames.get(startIndex + maxSize));
-        }
-      }
-      else {
-        // -1 or negative page size means to fetch all data without actual pagination
-        if (token == null) {
-          list = getEntriesByNames(sortedNames);
-        }
-        else {
-          // check the index of the token, i.e., the first entry in the new page
-          int index = sortedNames.indexOf(decrypt(token));
-          if (index == -1) {
-            throw new RuntimeException("Failed to find token " + token);
-          }
-          // fetch all remaining entries
-          List<String> pageNames = sortedNames.subList(index, sortedNames.size());
-          list = getEntriesByNames(pageNames);
-        }
-        // fetched all and no more entry left
-        nextToken = null;
-      }
+    // sort names by nature order
+    SortedNames sortedNames = SortedNames.of(getNames());
+    if (sortedNames.isEmpty()) {
+      return new PaginatedResponse<T>(new ArrayList<>(), null);
+    }
+    if (maxSize == 0) {
+      // point to the same next position
+      return new PaginatedResponse<T>(new ArrayList<>(), token);
     }
-    else {
-      list = new ArrayList<>();
-      nextToken = null;
+    int startIndex = 0;
+    if (token != null) {
+      // not first page
+      // check the index of the token, i.e., the first entry in the new page
+      startIndex = sortedNames.indexOf(decrypt(token));
+      if (startIndex == -1) {
+        throw new RuntimeException("Failed to find token " + token);
+      }
     }
+    // -1 or negative page size means to fetch all data without actual pagination
+    int endIndex = maxSize > 0 ? Math.min(startIndex + maxSize, sortedNames.size()) : sortedNames.size();
+    List<T> list = getEntriesByNames(sortedNames.subList(startIndex, endIndex));
+    // use the first name in the next page as the nextToken
+    String nextToken = endIndex < sortedNames.size() ? encrypt(sortedNames.get(endIndex)) : null;
+    return new PaginatedResponse<T>(list, nextToken);
+  }
 
+  // paginate with a cursor token, which consists of the last name in the previous page and the hash of the
+  // sorted names snapshot that the page was cut from. The start position is located by binary search, and
+  // if the snapshot is still in the container level cache, it is reused without fetching the names again.
+  // Name based tokens from paginateByNames() are accepted as well
+  public PaginatedResponse<T> paginateByCursor(String token, short maxSize) throws TException
+  {
+    Cursor cursor = Cursor.decode(token);
+    SortedNames sortedNames = loadSortedNames(cursor);
+    if (sortedNames.isEmpty()) {
+      return new PaginatedResponse<T>(new ArrayList<>(), null);
+    }
+    if (maxSize == 0) {
+      // point to the same next position
+      return new PaginatedResponse<T>(new ArrayList<>(), token);
+    }
+    int startIndex = 0;
+    if (cursor != null) {
+      startIndex = cursor.isInclusive() ? sortedNames.indexFrom(cursor.getKey()) : sortedNames.indexAfter(cursor.getKey());
+    }
+    int endIndex = maxSize > 0 ? Math.min(startIndex + maxSize, sortedNames.size()) : sortedNames.size();
+    List<T> list = startIndex < endIndex ? getEntriesByNames(sortedNames.subList(startIndex, endIndex)) : new ArrayList<>();
+    // use the last name in this page as the nextToken
+    String nextToken = endIndex < sortedNames.size() ?
+        new Cursor(sortedNames.get(endIndex - 1), sortedNames.getSnapshotHash(), false).encode() : null;
     return new PaginatedResponse<T>(list, nextToken);
   }
 
+  private SortedNames loadSortedNames(Cursor cursor) throws TException
+  {
+    String cacheKey = namesCache == null ? null : getNamesCacheKey();
+    if (cacheKey == null) {
+      return SortedNames.of(getNames());
+    }
+    // the first page always fetches the latest names, while the following pages stick to
+    // the snapshot that the cursor was cut from as long as it is still cached
+    if (cursor != null && cursor.hasSnapshotHash()) {
+      SortedNames cached = namesCache.get(cacheKey);
+      if (cached != null && cached.getSnapshotHash() == cursor.getSnapshotHash()) {
+        return cached;
+      }
+    }
+    SortedNames sortedNames = SortedNames.of(getNames());
+    namesCache.put(cacheKey, sortedNames);
+    return sortedNames;
+  }
+
   public static String encrypt(String original)
   {
     if (original == null) {
@@ -125,4 +147,66 @@ public abstract class Paginator<T>
 
     return new String(Base64.getDecoder().decode(original), StandardCharsets.UTF_8);
   }
+
+  private static class Cursor
+  {
+    private final String key;
+    private final Long snapshotHash;
+    // whether the key is the first entry of the next page, i.e., a name based token,
+    // or the last entry of the previous page
+    private final boolean inclusive;
+
+    Cursor(String key, Long snapshotHash, boolean inclusive)
+    {
+      this.key = key;
+      this.snapshotHash = snapshotHash;
+      this.inclusive = inclusive;
+    }
+
+    static Cursor decode(String token)
+    {
+      if (token == null) {
+        return null;
+      }
+      if (!token.startsWith(CURSOR_PREFIX)) {
+        return new Cursor(decrypt(token), null, true);
+      }
+      int separator = token.indexOf(CURSOR_SEPARATOR, CURSOR_PREFIX.length());
+      if (separator == -1) {
+        throw new RuntimeException("Invalid cursor " + token);
+      }
+      try {
+        long hash = Long.parseUnsignedLong(token.substring(CURSOR_PREFIX.length(), separator), 16);
+        return new Cursor(decrypt(token.substring(separator + 1)), hash, false);
+      }
+      catch (IllegalArgumentException e) {
+        throw new RuntimeException("Invalid cursor " + token, e);
+      }
+    }
+
+    String encode()
+    {
+      return CURSOR_PREFIX + Long.toHexString(snapshotHash) + CURSOR_SEPARATOR + encrypt(key);
+    }
+
+    String getKey()
+    {
+      return key;
+    }
+
+    boolean hasSnapshotHash()
+    {
+      return snapshotHash != null;
+    }
+
+    long getSnapshotHash()
+    {
+      return snapshotHash;
+    }
+
+    boolean isInclusive()
+    {
+      return inclusive;
+    }
+  }
 }
@@ -0,0 +1,100 @@
+/*-
+ * #%L
+ * hms-lambda-handler
+ * %%
+ * Copyright (C) 2019 Amazon Web Services
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.amazonaws.athena.hms;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+// an immutable snapshot of names sorted by nature order, together with a hash that identifies
+// the snapshot so that a pagination cursor could tell whether it was cut from the same snapshot
+public class SortedNames
+{
+  private static final SortedNames EMPTY = new SortedNames(new String[0]);
+
+  private final String[] names;
+  private final long snapshotHash;
+
+  private SortedNames(String[] names)
+  {
+    this.names = names;
+    long hash = 1;
+    for (String name : names) {
+      hash = 31 * hash + name.hashCode();
+    }
+    this.snapshotHash = hash;
+  }
+
+  public static SortedNames of(Collection<String> names)
+  {
+    if (names == null || names.isEmpty()) {
+      return EMPTY;
+    }
+    String[] sortedNames = names.toArray(new String[0]);
+    Arrays.sort(sortedNames);
+    return new SortedNames(sortedNames);
+  }
+
+  public int size()
+  {
+    return names.length;
+  }
+
+  public boolean isEmpty()
+  {
+    return names.length == 0;
+  }
+
+  public String get(int index)
+  {
+    return names[index];
+  }
+
+  public long getSnapshotHash()
+  {
+    return snapshotHash;
+  }
+
+  public List<String> subList(int fromIndex, int toIndex)
+  {
+    return Arrays.asList(names).subList(fromIndex, toIndex);
+  }
+
+  // the index of the given name, or -1 if it doesn't exist
+  public int indexOf(String name)
+  {
+    int index = Arrays.binarySearch(names, name);
+    return index >= 0 ? index : -1;
+  }
+
+  // the index of the first name that is equal to or greater than the given name
+  public int indexFrom(String name)
+  {
+    int index = Arrays.binarySearch(names, name);
+    return index >= 0 ? index : -index - 1;
+  }
+
+  // the index of the first name that is strictly greater than the given name
+  public int indexAfter(String name)
+  {
+    int index = Arrays.binarySearch(names, name);
+    return index >= 0 ? index + 1 : -index - 1;
+  }
+}
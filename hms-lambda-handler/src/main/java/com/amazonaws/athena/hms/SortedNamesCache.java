@@ -0,0 +1,95 @@
+/*-
+ * #%L
+ * hms-lambda-handler
+ * %%
+ * Copyright (C) 2019 Amazon Web Services
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.amazonaws.athena.hms;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// a small LRU cache of sorted name snapshots that lives as long as the Lambda container, so that
+// paging through a large listing doesn't need to refetch and resort all the names for every page
+public class SortedNamesCache
+{
+  private final int maxEntries;
+  private final long ttlMillis;
+  private final Map<String, Entry> entries;
+
+  public SortedNamesCache(int maxEntries, long ttlMillis)
+  {
+    this.maxEntries = maxEntries;
+    this.ttlMillis = ttlMillis;
+    // access order to evict the least recently used snapshot first
+    this.entries = new LinkedHashMap<String, Entry>(16, 0.75f, true)
+    {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest)
+      {
+        return size() > SortedNamesCache.this.maxEntries;
+      }
+    };
+  }
+
+  /*
+   * create a cache based on the pagination configuration
+   *
+   * @return SortedNamesCache or null if the cache is disabled
+   */
+  public static SortedNamesCache fromConf(HiveMetaStoreConf conf)
+  {
+    if (conf.getPaginationNamesCacheSize() <= 0) {
+      return null;
+    }
+    return new SortedNamesCache(conf.getPaginationNamesCacheSize(), conf.getPaginationNamesCacheTtlMillis());
+  }
+
+  public synchronized SortedNames get(String key)
+  {
+    Entry entry = entries.get(key);
+    if (entry == null) {
+      return null;
+    }
+    if (System.currentTimeMillis() - entry.createdAt > ttlMillis) {
+      entries.remove(key);
+      return null;
+    }
+    return entry.names;
+  }
+
+  public synchronized void put(String key, SortedNames names)
+  {
+    entries.put(key, new Entry(names, System.currentTimeMillis()));
+  }
+
+  public synchronized int size()
+  {
+    return entries.size();
+  }
+
+  private static class Entry
+  {
+    private final SortedNames names;
+    private final long createdAt;
+
+    Entry(SortedNames names, long createdAt)
+    {
+      this.names = names;
+      this.createdAt = createdAt;
+    }
+  }
+}
@@ -26,9 +26,6 @@ import com.amazonaws.athena.hms.HiveMetaStoreConf;
 import com.amazonaws.services.lambda.runtime.Context;
 import org.apache.hadoop.hive.metastore.api.Partition;
 import org.apache.thrift.TDeserializer;
-import org.apache.thrift.TSerializer;
-
-import java.nio.charset.StandardCharsets;
 
 public class AddPartitionHandler extends BaseHMSHandler<AddPartitionRequest, AddPartitionResponse>
 {
@@ -53,8 +50,8 @@ public class AddPartitionHandler extends BaseHMSHandler<AddPartitionRequest, Add
       context.getLogger().log("Created partition: " + resultingPartition);
       AddPartitionResponse response = new AddPartitionResponse();
       if (resultingPartition != null) {
-        TSerializer serializer = new TSerializer(getTProtocolFactory());
-        response.setPartitionDesc(serializer.toString(resultingPartition, StandardCharsets.UTF_8.name()));
+        ThriftEncoder encoder = newThriftEncoder();
+        response.setPartitionDesc(encoder.encode(resultingPartition));
       }
       return response;
     }
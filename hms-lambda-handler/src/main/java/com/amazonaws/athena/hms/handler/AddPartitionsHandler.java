@@ -23,11 +23,10 @@ import com.amazonaws.athena.hms.AddPartitionsRequest;
 import com.amazonaws.athena.hms.AddPartitionsResponse;
 import com.amazonaws.athena.hms.HiveMetaStoreClient;
 import com.amazonaws.athena.hms.HiveMetaStoreConf;
+import com.amazonaws.athena.hms.PartitionChunkResult;
 import com.amazonaws.services.lambda.runtime.Context;
 import org.apache.hadoop.hive.metastore.api.Partition;
-import org.apache.thrift.TDeserializer;
 
-import java.util.ArrayList;
 import java.util.List;
 
 public class AddPartitionsHandler extends BaseHMSHandler<AddPartitionsRequest, AddPartitionsResponse>
@@ -48,18 +47,22 @@ public class AddPartitionsHandler extends BaseHMSHandler<AddPartitionsRequest, A
       boolean isEmpty = request.getPartitionDescs() == null || request.getPartitionDescs().isEmpty();
       context.getLogger().log("Adding partitions: " +
           (isEmpty ? 0 : request.getPartitionDescs().size()));
+      AddPartitionsResponse response = new AddPartitionsResponse();
       if (!isEmpty) {
-        TDeserializer deserializer = new TDeserializer(getTProtocolFactory());
-        List<Partition> partitionList = new ArrayList<>();
-        for (String partitionDesc : request.getPartitionDescs()) {
-          Partition partition = new Partition();
-          deserializer.fromString(partition, partitionDesc);
-          partitionList.add(partition);
+        List<Partition> partitionList = newThriftDecoder().decodeAll(request.getPartitionDescs(), Partition::new);
+        if (conf.getClientWriteChunkSize() > 0) {
+          // the partitions that already exist are skipped, so that the failed chunks could be sent again
+          List<PartitionChunkResult> chunks = client.addPartitionsInChunks(partitionList, conf.getClientWriteChunkSize());
+          response.setChunks(chunks);
+          context.getLogger().log("Added partitions in chunks: " + chunks.size() + ", failed chunks: "
+              + chunks.stream().filter(chunk -> !chunk.isSuccess()).count());
+        }
+        else {
+          client.addPartitions(partitionList);
+          context.getLogger().log("Added partitions: " + partitionList.size());
         }
-        client.addPartitions(partitionList);
-        context.getLogger().log("Added partitions: " + partitionList.size());
       }
-      return new AddPartitionsResponse();
+      return response;
     }
     catch (Exception e) {
       throw handleException(context, e);
@@ -23,11 +23,10 @@ import com.amazonaws.athena.hms.AlterPartitionsRequest;
 import com.amazonaws.athena.hms.AlterPartitionsResponse;
 import com.amazonaws.athena.hms.HiveMetaStoreClient;
 import com.amazonaws.athena.hms.HiveMetaStoreConf;
+import com.amazonaws.athena.hms.PartitionChunkResult;
 import com.amazonaws.services.lambda.runtime.Context;
 import org.apache.hadoop.hive.metastore.api.Partition;
-import org.apache.thrift.TDeserializer;
 
-import java.util.ArrayList;
 import java.util.List;
 
 public class AlterPartitionsHandler extends BaseHMSHandler<AlterPartitionsRequest, AlterPartitionsResponse>
@@ -48,18 +47,22 @@ public class AlterPartitionsHandler extends BaseHMSHandler<AlterPartitionsReques
       boolean isEmpty = request.getPartitionDescs() == null || request.getPartitionDescs().isEmpty();
       context.getLogger().log("Altering partitions: " +
           (isEmpty ? 0 : request.getPartitionDescs().size()));
+      AlterPartitionsResponse response = new AlterPartitionsResponse();
       if (!isEmpty) {
-        TDeserializer deserializer = new TDeserializer(getTProtocolFactory());
-        List<Partition> partitionList = new ArrayList<>();
-        for (String partitionDesc : request.getPartitionDescs()) {
-          Partition partition = new Partition();
-          deserializer.fromString(partition, partitionDesc);
-          partitionList.add(partition);
+        List<Partition> partitionList = newThriftDecoder().decodeAll(request.getPartitionDescs(), Partition::new);
+        if (conf.getClientWriteChunkSize() > 0) {
+          List<PartitionChunkResult> chunks = client.alterPartitionsInChunks(request.getDbName(), request.getTableName(),
+              partitionList, conf.getClientWriteChunkSize());
+          response.setChunks(chunks);
+          context.getLogger().log("Altered partitions in chunks: " + chunks.size() + ", failed chunks: "
+              + chunks.stream().filter(chunk -> !chunk.isSuccess()).count());
+        }
+        else {
+          client.alterPartitions(request.getDbName(), request.getTableName(), partitionList);
+          context.getLogger().log("Altered partitions: " + partitionList.size());
         }
-        client.alterPartitions(request.getDbName(), request.getTableName(), partitionList);
-        context.getLogger().log("Altered partitions: " + partitionList.size());
       }
-      return new AlterPartitionsResponse();
+      return response;
     }
     catch (Exception e) {
       throw handleException(context, e);
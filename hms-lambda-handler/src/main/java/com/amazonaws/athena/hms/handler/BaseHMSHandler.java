@@ -21,6 +21,7 @@ package com.amazonaws.athena.hms.handler;
 
 import com.amazonaws.athena.hms.HiveMetaStoreClient;
 import com.amazonaws.athena.hms.HiveMetaStoreConf;
+import com.amazonaws.athena.hms.ThriftEncoding;
 import com.amazonaws.services.lambda.runtime.Context;
 import com.amazonaws.services.lambda.runtime.RequestHandler;
 import org.apache.thrift.protocol.TJSONProtocol;
@@ -32,6 +33,8 @@ public abstract class BaseHMSHandler<REQUEST, RESPONSE> implements RequestHandle
   private final HiveMetaStoreConf conf;
   // hive metastore client
   private final HiveMetaStoreClient client;
+  // the encoding of Thrift objects negotiated for the request that is being handled by the current thread
+  private final ThreadLocal<ThriftEncoding> responseEncoding = ThreadLocal.withInitial(() -> ThriftEncoding.TJSON);
 
   public BaseHMSHandler(HiveMetaStoreConf conf, HiveMetaStoreClient client)
   {
@@ -54,6 +57,33 @@ public abstract class BaseHMSHandler<REQUEST, RESPONSE> implements RequestHandle
     return new TJSONProtocol.Factory();
   }
 
+  public ThriftEncoding getResponseEncoding()
+  {
+    return responseEncoding.get();
+  }
+
+  public void setResponseEncoding(ThriftEncoding encoding)
+  {
+    if (encoding == null) {
+      responseEncoding.remove();
+    }
+    else {
+      responseEncoding.set(encoding);
+    }
+  }
+
+  // an encoder for the Thrift objects in the response of the current request
+  public ThriftEncoder newThriftEncoder()
+  {
+    return new ThriftEncoder(getResponseEncoding(), getTProtocolFactory());
+  }
+
+  // a decoder for the Thrift objects in a request
+  public ThriftDecoder newThriftDecoder()
+  {
+    return new ThriftDecoder(getTProtocolFactory());
+  }
+
   @Override
   public abstract RESPONSE handleRequest(REQUEST request, Context context);
 
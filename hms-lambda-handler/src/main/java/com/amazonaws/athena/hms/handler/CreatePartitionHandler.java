@@ -27,9 +27,6 @@ import com.amazonaws.services.lambda.runtime.Context;
 import org.apache.hadoop.hive.metastore.api.Partition;
 import org.apache.hadoop.hive.metastore.api.Table;
 import org.apache.thrift.TDeserializer;
-import org.apache.thrift.TSerializer;
-
-import java.nio.charset.StandardCharsets;
 
 public class CreatePartitionHandler extends BaseHMSHandler<CreatePartitionRequest, CreatePartitionResponse>
 {
@@ -54,8 +51,8 @@ public class CreatePartitionHandler extends BaseHMSHandler<CreatePartitionReques
       context.getLogger().log("Created partition: " + partition);
       CreatePartitionResponse response = new CreatePartitionResponse();
       if (partition != null) {
-        TSerializer serializer = new TSerializer(getTProtocolFactory());
-        response.setPartitionDesc(serializer.toString(partition, StandardCharsets.UTF_8.name()));
+        ThriftEncoder encoder = newThriftEncoder();
+        response.setPartitionDesc(encoder.encode(partition));
       }
       return response;
     }
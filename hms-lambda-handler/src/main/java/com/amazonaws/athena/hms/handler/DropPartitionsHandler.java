@@ -23,14 +23,21 @@ import com.amazonaws.athena.hms.DropPartitionsRequest;
 import com.amazonaws.athena.hms.DropPartitionsResponse;
 import com.amazonaws.athena.hms.HiveMetaStoreClient;
 import com.amazonaws.athena.hms.HiveMetaStoreConf;
+import com.amazonaws.athena.hms.Paginator;
+import com.amazonaws.athena.hms.PartitionChunkResult;
 import com.amazonaws.services.lambda.runtime.Context;
 import org.apache.hadoop.hive.metastore.api.DropPartitionsResult;
-import org.apache.thrift.TSerializer;
+import org.apache.thrift.TException;
 
-import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 
 public class DropPartitionsHandler extends BaseHMSHandler<DropPartitionsRequest, DropPartitionsResponse>
 {
+  // the time kept for the response before the duration of a batch is known
+  private static final long MIN_TIME_RESERVE_MILLIS = 10_000L;
+
   public DropPartitionsHandler(HiveMetaStoreConf conf, HiveMetaStoreClient client)
   {
     super(conf, client);
@@ -45,12 +52,15 @@ public class DropPartitionsHandler extends BaseHMSHandler<DropPartitionsRequest,
       context.getLogger().log("Connecting to HMS: " + conf.getMetastoreUri());
       client = getClient();
       context.getLogger().log("Dropping partitions for DB " + request.getDbName() + " table " + request.getTableName());
+      if (conf.getClientWriteChunkSize() > 0) {
+        return dropPartitionsInChunks(client, request, context);
+      }
       DropPartitionsResult result = client.dropPartitions(request.getDbName(), request.getTableName(), request.getPartNames());
       context.getLogger().log("Dropped partitions: " + result);
       DropPartitionsResponse response = new DropPartitionsResponse();
       if (result != null) {
-        TSerializer serializer = new TSerializer(getTProtocolFactory());
-        response.setResult(serializer.toString(result, StandardCharsets.UTF_8.name()));
+        ThriftEncoder encoder = newThriftEncoder();
+        response.setResult(encoder.encode(result));
       }
       return response;
     }
@@ -58,4 +68,48 @@ public class DropPartitionsHandler extends BaseHMSHandler<DropPartitionsRequest,
       throw handleException(context, e);
     }
   }
+
+  // drops the partitions in batches of chunks until the invocation runs short of time, then returns a token
+  // so that the next invocation picks up after the last partition dropped
+  private DropPartitionsResponse dropPartitionsInChunks(HiveMetaStoreClient client, DropPartitionsRequest request,
+                                                        Context context) throws TException
+  {
+    HiveMetaStoreConf conf = getConf();
+    int chunkSize = conf.getClientWriteChunkSize();
+    // the pooled client drops the chunks of a batch concurrently
+    int batchSize = chunkSize * (conf.isClientPoolEnabled() ? Math.max(1, conf.getClientFanOutConcurrency()) : 1);
+    List<String> names = new ArrayList<>(request.getPartNames() != null ? request.getPartNames()
+        : client.getPartitionNames(request.getDbName(), request.getTableName(), (short) -1));
+    names.sort(null);
+    int start = 0;
+    String lastName = Paginator.decrypt(request.getNextToken());
+    if (lastName != null) {
+      int index = Collections.binarySearch(names, lastName);
+      start = index >= 0 ? index + 1 : -index - 1;
+    }
+    DropPartitionsResponse response = new DropPartitionsResponse();
+    List<PartitionChunkResult> chunks = new ArrayList<>();
+    long longestBatchMillis = 0;
+    int end = start;
+    while (end < names.size()) {
+      // a batch always runs, so that every invocation makes progress
+      if (end > start && context.getRemainingTimeInMillis() < Math.max(MIN_TIME_RESERVE_MILLIS, 2 * longestBatchMillis)) {
+        response.setNextToken(Paginator.encrypt(names.get(end - 1)));
+        break;
+      }
+      int batchStart = end;
+      end = Math.min(names.size(), batchStart + batchSize);
+      long startTime = System.currentTimeMillis();
+      for (PartitionChunkResult chunk : client.dropPartitionsInChunks(request.getDbName(), request.getTableName(),
+          names.subList(batchStart, end), chunkSize)) {
+        chunks.add(chunk.withOffset(batchStart + chunk.getOffset()));
+      }
+      longestBatchMillis = Math.max(longestBatchMillis, System.currentTimeMillis() - startTime);
+    }
+    response.setChunks(chunks);
+    context.getLogger().log("Dropped partitions in chunks: " + chunks.size() + ", failed chunks: "
+        + chunks.stream().filter(chunk -> !chunk.isSuccess()).count()
+        + (response.getNextToken() != null ? ", remaining partitions: " + (names.size() - end) : ""));
+    return response;
+  }
 }
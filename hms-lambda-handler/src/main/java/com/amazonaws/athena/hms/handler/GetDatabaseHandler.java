@@ -25,9 +25,6 @@ import com.amazonaws.athena.hms.HiveMetaStoreClient;
 import com.amazonaws.athena.hms.HiveMetaStoreConf;
 import com.amazonaws.services.lambda.runtime.Context;
 import org.apache.hadoop.hive.metastore.api.Database;
-import org.apache.thrift.TSerializer;
-
-import java.nio.charset.StandardCharsets;
 
 public class GetDatabaseHandler extends BaseHMSHandler<GetDatabaseRequest, GetDatabaseResponse>
 {
@@ -49,8 +46,8 @@ public class GetDatabaseHandler extends BaseHMSHandler<GetDatabaseRequest, GetDa
       context.getLogger().log("Fetched DB: " + database);
       GetDatabaseResponse response = new GetDatabaseResponse();
       if (database != null) {
-        TSerializer serializer = new TSerializer(getTProtocolFactory());
-        response.setDatabase(serializer.toString(database, StandardCharsets.UTF_8.name()));
+        ThriftEncoder encoder = newThriftEncoder();
+        response.setDatabase(encoder.encode(database));
       }
       return response;
     }
@@ -19,17 +19,17 @@
  */
 package com.amazonaws.athena.hms.handler;
 
+import com.amazonaws.athena.hms.AsyncHiveMetaStoreClient;
 import com.amazonaws.athena.hms.GetDatabasesRequest;
 import com.amazonaws.athena.hms.GetDatabasesResponse;
 import com.amazonaws.athena.hms.HiveMetaStoreClient;
 import com.amazonaws.athena.hms.HiveMetaStoreConf;
 import com.amazonaws.services.lambda.runtime.Context;
 import org.apache.hadoop.hive.metastore.api.Database;
-import org.apache.thrift.TSerializer;
+import org.apache.thrift.TException;
 
-import java.nio.charset.StandardCharsets;
-import java.util.ArrayList;
 import java.util.List;
+import java.util.stream.Collectors;
 
 public class GetDatabasesHandler extends BaseHMSHandler<GetDatabasesRequest, GetDatabasesResponse>
 {
@@ -47,15 +47,15 @@ public class GetDatabasesHandler extends BaseHMSHandler<GetDatabasesRequest, Get
       context.getLogger().log("Connecting to HMS: " + conf.getMetastoreUri());
       client = getClient();
       context.getLogger().log("Fetching all database objects with filter: " + request.getFilter());
-      List<Database> databases = client.getDatabases(request.getFilter());
+      AsyncHiveMetaStoreClient asyncClient = client.getAsyncClient();
+      List<Database> databases = asyncClient != null ?
+          getDatabases(asyncClient, request.getFilter()) :
+          client.getDatabases(request.getFilter());
       context.getLogger().log("Fetched databases: " + (databases == null || databases.isEmpty() ? 0 : databases.size()));
       GetDatabasesResponse response = new GetDatabasesResponse();
       if (databases != null && !databases.isEmpty()) {
-        TSerializer serializer = new TSerializer(getTProtocolFactory());
-        List<String> jsonDatabaseList = new ArrayList<>();
-        for (Database database : databases) {
-          jsonDatabaseList.add(serializer.toString(database, StandardCharsets.UTF_8.name()));
-        }
+        ThriftEncoder encoder = newThriftEncoder();
+        List<String> jsonDatabaseList = encoder.encodeAll(databases);
         response.setDatabaseObjects(jsonDatabaseList);
       }
       return response;
@@ -64,4 +64,11 @@ public class GetDatabasesHandler extends BaseHMSHandler<GetDatabasesRequest, Get
       throw handleException(context, e);
     }
   }
+
+  // keep all the database lookups in flight at once instead of one after another
+  private static List<Database> getDatabases(AsyncHiveMetaStoreClient client, String filter) throws TException
+  {
+    return AsyncHiveMetaStoreClient.join(client.getDatabaseNames(filter).thenCompose(names ->
+        AsyncHiveMetaStoreClient.allOf(names.stream().map(client::getDatabase).collect(Collectors.toList()))));
+  }
 }
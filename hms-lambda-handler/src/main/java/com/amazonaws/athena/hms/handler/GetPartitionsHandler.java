@@ -25,10 +25,7 @@ import com.amazonaws.athena.hms.HiveMetaStoreClient;
 import com.amazonaws.athena.hms.HiveMetaStoreConf;
 import com.amazonaws.services.lambda.runtime.Context;
 import org.apache.hadoop.hive.metastore.api.Partition;
-import org.apache.thrift.TSerializer;
 
-import java.nio.charset.StandardCharsets;
-import java.util.ArrayList;
 import java.util.List;
 
 public class GetPartitionsHandler extends BaseHMSHandler<GetPartitionsRequest, GetPartitionsResponse>
@@ -58,11 +55,8 @@ public class GetPartitionsHandler extends BaseHMSHandler<GetPartitionsRequest, G
       context.getLogger().log("Fetched partitions: " + (partitionList == null || partitionList.isEmpty() ? 0 : partitionList.size()));
       GetPartitionsResponse response = new GetPartitionsResponse();
       if (partitionList != null && !partitionList.isEmpty()) {
-        TSerializer serializer = new TSerializer(getTProtocolFactory());
-        List<String> jsonPartitionList = new ArrayList<>();
-        for (Partition partition : partitionList) {
-          jsonPartitionList.add(serializer.toString(partition, StandardCharsets.UTF_8.name()));
-        }
+        ThriftEncoder encoder = newThriftEncoder();
+        List<String> jsonPartitionList = encoder.encodeAll(partitionList);
         response.setPartitions(jsonPartitionList);
       }
       return response;
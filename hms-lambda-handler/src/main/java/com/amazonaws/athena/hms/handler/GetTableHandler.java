@@ -25,9 +25,6 @@ import com.amazonaws.athena.hms.HiveMetaStoreClient;
 import com.amazonaws.athena.hms.HiveMetaStoreConf;
 import com.amazonaws.services.lambda.runtime.Context;
 import org.apache.hadoop.hive.metastore.api.Table;
-import org.apache.thrift.TSerializer;
-
-import java.nio.charset.StandardCharsets;
 
 public class GetTableHandler extends BaseHMSHandler<GetTableRequest, GetTableResponse>
 {
@@ -49,8 +46,8 @@ public class GetTableHandler extends BaseHMSHandler<GetTableRequest, GetTableRes
       context.getLogger().log("Fetched table: " + request.getTableName());
       GetTableResponse response = new GetTableResponse();
       if (table != null) {
-        TSerializer serializer = new TSerializer(getTProtocolFactory());
-        response.setTableDesc(serializer.toString(table, StandardCharsets.UTF_8.name()));
+        ThriftEncoder encoder = newThriftEncoder();
+        response.setTableDesc(encoder.encode(table));
       }
       return response;
     }
@@ -25,10 +25,7 @@ import com.amazonaws.athena.hms.HiveMetaStoreClient;
 import com.amazonaws.athena.hms.HiveMetaStoreConf;
 import com.amazonaws.services.lambda.runtime.Context;
 import org.apache.hadoop.hive.metastore.api.Table;
-import org.apache.thrift.TSerializer;
 
-import java.nio.charset.StandardCharsets;
-import java.util.ArrayList;
 import java.util.List;
 
 public class GetTablesHandler extends BaseHMSHandler<GetTablesRequest, GetTablesResponse>
@@ -51,11 +48,8 @@ public class GetTablesHandler extends BaseHMSHandler<GetTablesRequest, GetTables
       context.getLogger().log("Fetched tables: " + (tables == null || tables.isEmpty() ? 0 : tables.size()));
       GetTablesResponse response = new GetTablesResponse();
       if (tables != null && !tables.isEmpty()) {
-        TSerializer serializer = new TSerializer(getTProtocolFactory());
-        List<String> jsonTableList = new ArrayList<>();
-        for (Table table : tables) {
-          jsonTableList.add(serializer.toString(table, StandardCharsets.UTF_8.name()));
-        }
+        ThriftEncoder encoder = newThriftEncoder();
+        List<String> jsonTableList = encoder.encodeAll(tables);
         response.setTables(jsonTableList);
       }
       return response;
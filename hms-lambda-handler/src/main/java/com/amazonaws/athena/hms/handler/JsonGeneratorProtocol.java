@@ -0,0 +1,477 @@
+/*-
+ * #%L
+ * hms-lambda-handler
+ * %%
+ * Copyright (C) 2019 Amazon Web Services
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.amazonaws.athena.hms.handler;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import org.apache.thrift.TException;
+import org.apache.thrift.protocol.TField;
+import org.apache.thrift.protocol.TList;
+import org.apache.thrift.protocol.TMap;
+import org.apache.thrift.protocol.TMessage;
+import org.apache.thrift.protocol.TProtocol;
+import org.apache.thrift.protocol.TProtocolException;
+import org.apache.thrift.protocol.TSet;
+import org.apache.thrift.protocol.TStruct;
+import org.apache.thrift.protocol.TType;
+import org.apache.thrift.transport.TTransportException;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Base64;
+import java.util.Deque;
+
+// a write-only Thrift protocol that writes the same structure as TJSONProtocol token by token into a Jackson
+// JsonGenerator, so that a Thrift object is embedded in the response without an intermediate TJSON string.
+// A struct is an object keyed by field id with each value wrapped in {"<type>": value}, a list or set is
+// ["<type>", size, values...] and a map is ["<key type>", "<value type>", size, {key: value...}]
+public class JsonGeneratorProtocol extends TProtocol
+{
+  private final JsonGenerator generator;
+  // one entry per open struct, list, set or map, to know whether the next value is a map key
+  private final Deque<Container> containers = new ArrayDeque<>();
+
+  public JsonGeneratorProtocol(JsonGenerator generator)
+  {
+    super(null);
+    this.generator = generator;
+  }
+
+  @Override
+  public void writeStructBegin(TStruct struct) throws TException
+  {
+    beginContainer(false);
+    try {
+      generator.writeStartObject();
+    }
+    catch (IOException e) {
+      throw new TTransportException(e);
+    }
+  }
+
+  @Override
+  public void writeStructEnd() throws TException
+  {
+    containers.pop();
+    try {
+      generator.writeEndObject();
+    }
+    catch (IOException e) {
+      throw new TTransportException(e);
+    }
+  }
+
+  @Override
+  public void writeFieldBegin(TField field) throws TException
+  {
+    try {
+      generator.writeFieldName(Short.toString(field.id));
+      generator.writeStartObject();
+      generator.writeFieldName(getTypeName(field.type));
+    }
+    catch (IOException e) {
+      throw new TTransportException(e);
+    }
+  }
+
+  @Override
+  public void writeFieldEnd() throws TException
+  {
+    try {
+      generator.writeEndObject();
+    }
+    catch (IOException e) {
+      throw new TTransportException(e);
+    }
+  }
+
+  @Override
+  public void writeFieldStop()
+  {
+  }
+
+  @Override
+  public void writeMapBegin(TMap map) throws TException
+  {
+    beginContainer(true);
+    try {
+      generator.writeStartArray();
+      generator.writeString(getTypeName(map.keyType));
+      generator.writeString(getTypeName(map.valueType));
+      generator.writeNumber(map.size);
+      generator.writeStartObject();
+    }
+    catch (IOException e) {
+      throw new TTransportException(e);
+    }
+  }
+
+  @Override
+  public void writeMapEnd() throws TException
+  {
+    containers.pop();
+    try {
+      generator.writeEndObject();
+      generator.writeEndArray();
+    }
+    catch (IOException e) {
+      throw new TTransportException(e);
+    }
+  }
+
+  @Override
+  public void writeListBegin(TList list) throws TException
+  {
+    writeCollectionBegin(list.elemType, list.size);
+  }
+
+  @Override
+  public void writeListEnd() throws TException
+  {
+    writeCollectionEnd();
+  }
+
+  @Override
+  public void writeSetBegin(TSet set) throws TException
+  {
+    writeCollectionBegin(set.elemType, set.size);
+  }
+
+  @Override
+  public void writeSetEnd() throws TException
+  {
+    writeCollectionEnd();
+  }
+
+  @Override
+  public void writeBool(boolean b) throws TException
+  {
+    writeLong(b ? 1 : 0);
+  }
+
+  @Override
+  public void writeByte(byte b) throws TException
+  {
+    writeLong(b);
+  }
+
+  @Override
+  public void writeI16(short i16) throws TException
+  {
+    writeLong(i16);
+  }
+
+  @Override
+  public void writeI32(int i32) throws TException
+  {
+    writeLong(i32);
+  }
+
+  @Override
+  public void writeI64(long i64) throws TException
+  {
+    writeLong(i64);
+  }
+
+  @Override
+  public void writeDouble(double dub) throws TException
+  {
+    try {
+      if (isMapKey()) {
+        generator.writeFieldName(Double.toString(dub));
+      }
+      else if (Double.isNaN(dub) || Double.isInfinite(dub)) {
+        // TJSON quotes the special values
+        generator.writeString(Double.toString(dub));
+      }
+      else {
+        generator.writeNumber(dub);
+      }
+    }
+    catch (IOException e) {
+      throw new TTransportException(e);
+    }
+  }
+
+  @Override
+  public void writeString(String str) throws TException
+  {
+    try {
+      if (isMapKey()) {
+        generator.writeFieldName(str);
+      }
+      else {
+        generator.writeString(str);
+      }
+    }
+    catch (IOException e) {
+      throw new TTransportException(e);
+    }
+  }
+
+  @Override
+  public void writeBinary(ByteBuffer bin) throws TException
+  {
+    // TJSON writes base64 without padding, don't move the position of the buffer
+    ByteBuffer bytes = bin.duplicate();
+    byte[] data = new byte[bytes.remaining()];
+    bytes.get(data);
+    writeString(Base64.getEncoder().withoutPadding().encodeToString(data));
+  }
+
+  @Override
+  public void writeMessageBegin(TMessage message) throws TException
+  {
+    throw new TProtocolException(TProtocolException.NOT_IMPLEMENTED, "Only Thrift objects could be embedded");
+  }
+
+  @Override
+  public void writeMessageEnd() throws TException
+  {
+    throw new TProtocolException(TProtocolException.NOT_IMPLEMENTED, "Only Thrift objects could be embedded");
+  }
+
+  @Override
+  public TMessage readMessageBegin() throws TException
+  {
+    throw writeOnly();
+  }
+
+  @Override
+  public void readMessageEnd() throws TException
+  {
+    throw writeOnly();
+  }
+
+  @Override
+  public TStruct readStructBegin() throws TException
+  {
+    throw writeOnly();
+  }
+
+  @Override
+  public void readStructEnd() throws TException
+  {
+    throw writeOnly();
+  }
+
+  @Override
+  public TField readFieldBegin() throws TException
+  {
+    throw writeOnly();
+  }
+
+  @Override
+  public void readFieldEnd() throws TException
+  {
+    throw writeOnly();
+  }
+
+  @Override
+  public TMap readMapBegin() throws TException
+  {
+    throw writeOnly();
+  }
+
+  @Override
+  public void readMapEnd() throws TException
+  {
+    throw writeOnly();
+  }
+
+  @Override
+  public TList readListBegin() throws TException
+  {
+    throw writeOnly();
+  }
+
+  @Override
+  public void readListEnd() throws TException
+  {
+    throw writeOnly();
+  }
+
+  @Override
+  public TSet readSetBegin() throws TException
+  {
+    throw writeOnly();
+  }
+
+  @Override
+  public void readSetEnd() throws TException
+  {
+    throw writeOnly();
+  }
+
+  @Override
+  public boolean readBool() throws TException
+  {
+    throw writeOnly();
+  }
+
+  @Override
+  public byte readByte() throws TException
+  {
+    throw writeOnly();
+  }
+
+  @Override
+  public short readI16() throws TException
+  {
+    throw writeOnly();
+  }
+
+  @Override
+  public int readI32() throws TException
+  {
+    throw writeOnly();
+  }
+
+  @Override
+  public long readI64() throws TException
+  {
+    throw writeOnly();
+  }
+
+  @Override
+  public double readDouble() throws TException
+  {
+    throw writeOnly();
+  }
+
+  @Override
+  public String readString() throws TException
+  {
+    throw writeOnly();
+  }
+
+  @Override
+  public ByteBuffer readBinary() throws TException
+  {
+    throw writeOnly();
+  }
+
+  private static TProtocolException writeOnly()
+  {
+    return new TProtocolException(TProtocolException.NOT_IMPLEMENTED, "JsonGeneratorProtocol is write only");
+  }
+
+  private void writeCollectionBegin(byte elemType, int size) throws TException
+  {
+    beginContainer(false);
+    try {
+      generator.writeStartArray();
+      generator.writeString(getTypeName(elemType));
+      generator.writeNumber(size);
+    }
+    catch (IOException e) {
+      throw new TTransportException(e);
+    }
+  }
+
+  private void writeCollectionEnd() throws TException
+  {
+    containers.pop();
+    try {
+      generator.writeEndArray();
+    }
+    catch (IOException e) {
+      throw new TTransportException(e);
+    }
+  }
+
+  private void writeLong(long value) throws TException
+  {
+    try {
+      if (isMapKey()) {
+        // JSON object keys are always strings
+        generator.writeFieldName(Long.toString(value));
+      }
+      else {
+        generator.writeNumber(value);
+      }
+    }
+    catch (IOException e) {
+      throw new TTransportException(e);
+    }
+  }
+
+  private void beginContainer(boolean map) throws TException
+  {
+    if (isMapKey()) {
+      throw new TProtocolException(TProtocolException.INVALID_DATA, "Map keys must be primitive types");
+    }
+    containers.push(new Container(map));
+  }
+
+  // whether the value about to be written is a map key, map keys and values alternate
+  private boolean isMapKey()
+  {
+    Container container = containers.peek();
+    if (container == null || !container.map) {
+      return false;
+    }
+    container.nextIsKey = !container.nextIsKey;
+    return !container.nextIsKey;
+  }
+
+  // the same type names as TJSONProtocol
+  private static String getTypeName(byte type) throws TException
+  {
+    switch (type) {
+      case TType.BOOL:
+        return "tf";
+      case TType.BYTE:
+        return "i8";
+      case TType.I16:
+        return "i16";
+      case TType.I32:
+        return "i32";
+      case TType.I64:
+        return "i64";
+      case TType.DOUBLE:
+        return "dbl";
+      case TType.STRING:
+        return "str";
+      case TType.STRUCT:
+        return "rec";
+      case TType.MAP:
+        return "map";
+      case TType.LIST:
+        return "lst";
+      case TType.SET:
+        return "set";
+      default:
+        throw new TProtocolException(TProtocolException.NOT_IMPLEMENTED, "Unrecognized type " + type);
+    }
+  }
+
+  private static class Container
+  {
+    private final boolean map;
+    private boolean nextIsKey;
+
+    Container(boolean map)
+    {
+      this.map = map;
+      this.nextIsKey = map;
+    }
+  }
+}
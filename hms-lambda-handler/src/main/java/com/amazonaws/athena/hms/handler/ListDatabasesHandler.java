@@ -19,27 +19,31 @@
  */
 package com.amazonaws.athena.hms.handler;
 
+import com.amazonaws.athena.hms.AsyncHiveMetaStoreClient;
 import com.amazonaws.athena.hms.HiveMetaStoreClient;
 import com.amazonaws.athena.hms.HiveMetaStoreConf;
 import com.amazonaws.athena.hms.ListDatabasesRequest;
 import com.amazonaws.athena.hms.ListDatabasesResponse;
 import com.amazonaws.athena.hms.PaginatedResponse;
 import com.amazonaws.athena.hms.Paginator;
+import com.amazonaws.athena.hms.SortedNamesCache;
 import com.amazonaws.services.lambda.runtime.Context;
 import org.apache.hadoop.hive.metastore.api.Database;
 import org.apache.thrift.TException;
-import org.apache.thrift.TSerializer;
 
-import java.nio.charset.StandardCharsets;
-import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
+import java.util.stream.Collectors;
 
 public class ListDatabasesHandler extends BaseHMSHandler<ListDatabasesRequest, ListDatabasesResponse>
 {
+  // container level cache of the sorted names for cursor based pagination, null if disabled
+  private final SortedNamesCache namesCache;
+
   public ListDatabasesHandler(HiveMetaStoreConf conf, HiveMetaStoreClient client)
   {
     super(conf, client);
+    this.namesCache = SortedNamesCache.fromConf(conf);
   }
 
   private static class DatabasePaginator extends Paginator<Database>
@@ -48,8 +52,9 @@ public class ListDatabasesHandler extends BaseHMSHandler<ListDatabasesRequest, L
     private final ListDatabasesRequest request;
     private final HiveMetaStoreClient client;
 
-    private DatabasePaginator(Context context, ListDatabasesRequest request, HiveMetaStoreClient client)
+    private DatabasePaginator(Context context, ListDatabasesRequest request, HiveMetaStoreClient client, SortedNamesCache namesCache)
     {
+      super(namesCache);
       this.context = context;
       this.request = request;
       this.client = client;
@@ -62,10 +67,22 @@ public class ListDatabasesHandler extends BaseHMSHandler<ListDatabasesRequest, L
       return client.getDatabaseNames(request.getFilter());
     }
 
+    @Override
+    protected String getNamesCacheKey()
+    {
+      return String.valueOf(request.getFilter());
+    }
+
     @Override
     protected List<Database> getEntriesByNames(List<String> names) throws TException
     {
-      return client.getDatabasesByNames(names);
+      AsyncHiveMetaStoreClient asyncClient = client.getAsyncClient();
+      if (asyncClient == null) {
+        return client.getDatabasesByNames(names);
+      }
+      // keep the lookups of the whole page in flight at once
+      return AsyncHiveMetaStoreClient.join(
+          AsyncHiveMetaStoreClient.allOf(names.stream().map(asyncClient::getDatabase).collect(Collectors.toList())));
     }
   }
 
@@ -78,17 +95,16 @@ public class ListDatabasesHandler extends BaseHMSHandler<ListDatabasesRequest, L
       context.getLogger().log("Connecting to HMS: " + conf.getMetastoreUri());
       client = getClient();
       ListDatabasesResponse response = new ListDatabasesResponse();
-      DatabasePaginator paginator = new DatabasePaginator(context, request, client);
-      PaginatedResponse<Database> paginatedResponse = paginator.paginateByNames(request.getNextToken(), request.getMaxSize());
+      DatabasePaginator paginator = new DatabasePaginator(context, request, client, namesCache);
+      PaginatedResponse<Database> paginatedResponse = conf.isPaginationCursorEnabled() ?
+          paginator.paginateByCursor(request.getNextToken(), request.getMaxSize()) :
+          paginator.paginateByNames(request.getNextToken(), request.getMaxSize());
       if (paginatedResponse != null) {
         response.setNextToken(paginatedResponse.getNextToken());
         List<Database> databases = paginatedResponse.getEntries();
         if (databases != null && !databases.isEmpty()) {
-          TSerializer serializer = new TSerializer(getTProtocolFactory());
-          List<String> jsonDatabaseList = new ArrayList<>();
-          for (Database database : databases) {
-            jsonDatabaseList.add(serializer.toString(database, StandardCharsets.UTF_8.name()));
-          }
+          ThriftEncoder encoder = newThriftEncoder();
+          List<String> jsonDatabaseList = encoder.encodeAll(databases);
           response.setDatabases(jsonDatabaseList);
           context.getLogger().log("Paginated response: entry size: " + jsonDatabaseList.size()
               + ", nextToken: " + response.getNextToken());
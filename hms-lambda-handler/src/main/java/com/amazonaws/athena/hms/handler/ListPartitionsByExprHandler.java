@@ -25,9 +25,7 @@ import com.amazonaws.athena.hms.PartitionsByExprRequest;
 import com.amazonaws.athena.hms.PartitionsByExprResponse;
 import com.amazonaws.services.lambda.runtime.Context;
 import org.apache.hadoop.hive.metastore.api.Partition;
-import org.apache.thrift.TSerializer;
 
-import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -58,14 +56,8 @@ public class ListPartitionsByExprHandler extends BaseHMSHandler<PartitionsByExpr
             response.setSuccessful(true);
             response.setHasUnKnownPartitions(hasUnKnownPartitions);
 
-            List<String> jsonPartitionList = new ArrayList<>();
-            if (!partitions.isEmpty()) {
-                TSerializer serializer = new TSerializer(getTProtocolFactory());
-                for (Partition partition : partitions) {
-                    jsonPartitionList.add(serializer.toString(partition, StandardCharsets.UTF_8.name()));
-                }
-            }
-            response.setPartitionDescs(jsonPartitionList);
+            ThriftEncoder encoder = newThriftEncoder();
+            response.setPartitionDescs(encoder.encodeAll(partitions));
 
             return response;
         }
@@ -25,21 +25,23 @@ import com.amazonaws.athena.hms.ListPartitionsRequest;
 import com.amazonaws.athena.hms.ListPartitionsResponse;
 import com.amazonaws.athena.hms.PaginatedResponse;
 import com.amazonaws.athena.hms.Paginator;
+import com.amazonaws.athena.hms.SortedNamesCache;
 import com.amazonaws.services.lambda.runtime.Context;
 import org.apache.hadoop.hive.metastore.api.Partition;
 import org.apache.thrift.TException;
-import org.apache.thrift.TSerializer;
 
-import java.nio.charset.StandardCharsets;
-import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
 
 public class ListPartitionsHandler extends BaseHMSHandler<ListPartitionsRequest, ListPartitionsResponse>
 {
+  // container level cache of the sorted names for cursor based pagination, null if disabled
+  private final SortedNamesCache namesCache;
+
   public ListPartitionsHandler(HiveMetaStoreConf conf, HiveMetaStoreClient client)
   {
     super(conf, client);
+    this.namesCache = SortedNamesCache.fromConf(conf);
   }
 
   private static class PartitionPaginator extends Paginator<Partition>
@@ -48,8 +50,9 @@ public class ListPartitionsHandler extends BaseHMSHandler<ListPartitionsRequest,
     private final ListPartitionsRequest request;
     private final HiveMetaStoreClient client;
 
-    private PartitionPaginator(Context context, ListPartitionsRequest request, HiveMetaStoreClient client)
+    private PartitionPaginator(Context context, ListPartitionsRequest request, HiveMetaStoreClient client, SortedNamesCache namesCache)
     {
+      super(namesCache);
       this.context = context;
       this.request = request;
       this.client = client;
@@ -63,6 +66,12 @@ public class ListPartitionsHandler extends BaseHMSHandler<ListPartitionsRequest,
       return client.getPartitionNames(request.getDbName(), request.getTableName(), (short) -1);
     }
 
+    @Override
+    protected String getNamesCacheKey()
+    {
+      return request.getDbName() + "." + request.getTableName();
+    }
+
     @Override
     protected List<Partition> getEntriesByNames(List<String> names) throws TException
     {
@@ -79,17 +88,16 @@ public class ListPartitionsHandler extends BaseHMSHandler<ListPartitionsRequest,
       context.getLogger().log("Connecting to HMS: " + conf.getMetastoreUri());
       client = getClient();
       ListPartitionsResponse response = new ListPartitionsResponse();
-      PartitionPaginator paginator = new PartitionPaginator(context, request, client);
-      PaginatedResponse<Partition> paginatedResponse = paginator.paginateByNames(request.getNextToken(), request.getMaxSize());
+      PartitionPaginator paginator = new PartitionPaginator(context, request, client, namesCache);
+      PaginatedResponse<Partition> paginatedResponse = conf.isPaginationCursorEnabled() ?
+          paginator.paginateByCursor(request.getNextToken(), request.getMaxSize()) :
+          paginator.paginateByNames(request.getNextToken(), request.getMaxSize());
       if (paginatedResponse != null) {
         response.setNextToken(paginatedResponse.getNextToken());
         List<Partition> partitions = paginatedResponse.getEntries();
         if (partitions != null && !partitions.isEmpty()) {
-          TSerializer serializer = new TSerializer(getTProtocolFactory());
-          List<String> jsonPartitionList = new ArrayList<>();
-          for (Partition partition : partitions) {
-            jsonPartitionList.add(serializer.toString(partition, StandardCharsets.UTF_8.name()));
-          }
+          ThriftEncoder encoder = newThriftEncoder();
+          List<String> jsonPartitionList = encoder.encodeAll(partitions);
           response.setPartitions(jsonPartitionList);
           context.getLogger().log("Paginated response: entry size: " + jsonPartitionList.size()
               + ", nextToken: " + response.getNextToken());
@@ -25,21 +25,23 @@ import com.amazonaws.athena.hms.ListTablesRequest;
 import com.amazonaws.athena.hms.ListTablesResponse;
 import com.amazonaws.athena.hms.PaginatedResponse;
 import com.amazonaws.athena.hms.Paginator;
+import com.amazonaws.athena.hms.SortedNamesCache;
 import com.amazonaws.services.lambda.runtime.Context;
 import org.apache.hadoop.hive.metastore.api.Table;
 import org.apache.thrift.TException;
-import org.apache.thrift.TSerializer;
 
-import java.nio.charset.StandardCharsets;
-import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
 
 public class ListTablesHandler extends BaseHMSHandler<ListTablesRequest, ListTablesResponse>
 {
+  // container level cache of the sorted names for cursor based pagination, null if disabled
+  private final SortedNamesCache namesCache;
+
   public ListTablesHandler(HiveMetaStoreConf conf, HiveMetaStoreClient client)
   {
     super(conf, client);
+    this.namesCache = SortedNamesCache.fromConf(conf);
   }
 
   private static class TablePaginator extends Paginator<Table>
@@ -48,8 +50,9 @@ public class ListTablesHandler extends BaseHMSHandler<ListTablesRequest, ListTab
     private final ListTablesRequest request;
     private final HiveMetaStoreClient client;
 
-    private TablePaginator(Context context, ListTablesRequest request, HiveMetaStoreClient client)
+    private TablePaginator(Context context, ListTablesRequest request, HiveMetaStoreClient client, SortedNamesCache namesCache)
     {
+      super(namesCache);
       this.context = context;
       this.request = request;
       this.client = client;
@@ -63,6 +66,12 @@ public class ListTablesHandler extends BaseHMSHandler<ListTablesRequest, ListTab
       return client.getTableNames(request.getDbName(), request.getFilter());
     }
 
+    @Override
+    protected String getNamesCacheKey()
+    {
+      return request.getDbName() + "/" + request.getFilter();
+    }
+
     @Override
     protected List<Table> getEntriesByNames(List<String> names) throws TException
     {
@@ -79,17 +88,16 @@ public class ListTablesHandler extends BaseHMSHandler<ListTablesRequest, ListTab
       context.getLogger().log("Connecting to HMS: " + conf.getMetastoreUri());
       client = getClient();
       ListTablesResponse response = new ListTablesResponse();
-      TablePaginator paginator = new TablePaginator(context, request, client);
-      PaginatedResponse<Table> paginatedResponse = paginator.paginateByNames(request.getNextToken(), request.getMaxSize());
+      TablePaginator paginator = new TablePaginator(context, request, client, namesCache);
+      PaginatedResponse<Table> paginatedResponse = conf.isPaginationCursorEnabled() ?
+          paginator.paginateByCursor(request.getNextToken(), request.getMaxSize()) :
+          paginator.paginateByNames(request.getNextToken(), request.getMaxSize());
       if (paginatedResponse != null) {
         response.setNextToken(paginatedResponse.getNextToken());
         List<Table> tables = paginatedResponse.getEntries();
         if (tables != null && !tables.isEmpty()) {
-          TSerializer serializer = new TSerializer(getTProtocolFactory());
-          List<String> jsonTableList = new ArrayList<>();
-          for (Table table : tables) {
-            jsonTableList.add(serializer.toString(table, StandardCharsets.UTF_8.name()));
-          }
+          ThriftEncoder encoder = newThriftEncoder();
+          List<String> jsonTableList = encoder.encodeAll(tables);
           response.setTables(jsonTableList);
           context.getLogger().log("Paginated response: entry size: " + jsonTableList.size()
               + ", nextToken: " + response.getNextToken());
@@ -0,0 +1,84 @@
+/*-
+ * #%L
+ * hms-lambda-handler
+ * %%
+ * Copyright (C) 2019 Amazon Web Services
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.amazonaws.athena.hms.handler;
+
+import org.apache.thrift.TBase;
+import org.apache.thrift.TDeserializer;
+import org.apache.thrift.TException;
+import org.apache.thrift.protocol.TProtocolFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletionException;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+// decode the Thrift objects of API requests, the objects of a large list are decoded on all the cores
+public class ThriftDecoder
+{
+  // smaller lists are decoded on the calling thread, where splitting the work costs more than it saves
+  private static final int PARALLEL_THRESHOLD = 1000;
+
+  // a deserializer is not thread safe, every thread decoding a list gets its own
+  private final ThreadLocal<TDeserializer> deserializer;
+
+  public ThriftDecoder(TProtocolFactory protocolFactory)
+  {
+    this.deserializer = ThreadLocal.withInitial(() -> new TDeserializer(protocolFactory));
+  }
+
+  public <T extends TBase<?, ?>> T decode(String encoded, Supplier<T> factory) throws TException
+  {
+    T object = factory.get();
+    deserializer.get().fromString(object, encoded);
+    return object;
+  }
+
+  /*
+   * decode the objects of a list request in the same order
+   *
+   * @return List of decoded objects
+   */
+  public <T extends TBase<?, ?>> List<T> decodeAll(List<String> encoded, Supplier<T> factory) throws TException
+  {
+    if (encoded.size() < PARALLEL_THRESHOLD) {
+      List<T> objects = new ArrayList<>(encoded.size());
+      for (String object : encoded) {
+        objects.add(decode(object, factory));
+      }
+      return objects;
+    }
+    try {
+      return encoded.parallelStream()
+          .map(object -> {
+            try {
+              return decode(object, factory);
+            }
+            catch (TException e) {
+              throw new CompletionException(e);
+            }
+          })
+          .collect(Collectors.toList());
+    }
+    catch (CompletionException e) {
+      throw (TException) e.getCause();
+    }
+  }
+}
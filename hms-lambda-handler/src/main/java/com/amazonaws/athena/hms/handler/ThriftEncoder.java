@@ -0,0 +1,150 @@
+/*-
+ * #%L
+ * hms-lambda-handler
+ * %%
+ * Copyright (C) 2019 Amazon Web Services
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.amazonaws.athena.hms.handler;
+
+import com.amazonaws.athena.hms.InvocationMetrics;
+import com.amazonaws.athena.hms.ThriftEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
+import org.apache.hadoop.hive.metastore.api.Partition;
+import org.apache.hadoop.hive.metastore.api.StorageDescriptor;
+import org.apache.hadoop.hive.metastore.api.Table;
+import org.apache.thrift.TBase;
+import org.apache.thrift.TException;
+import org.apache.thrift.TSerializer;
+import org.apache.thrift.protocol.TCompactProtocol;
+import org.apache.thrift.protocol.TJSONProtocol;
+import org.apache.thrift.protocol.TProtocolFactory;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+
+// encode Thrift objects in API responses as strings based on the negotiated ThriftEncoding,
+// an encoder is not thread safe and should be used for a single response
+public class ThriftEncoder
+{
+  private final ThriftEncoding encoding;
+  private final TSerializer serializer;
+  // the metrics of the invocation the encoder was created for, null if there are none
+  private final InvocationMetrics metrics = InvocationMetrics.current();
+
+  // the text protocol factory is used for the default TJSON encoding
+  public ThriftEncoder(ThriftEncoding encoding, TProtocolFactory textProtocolFactory)
+  {
+    this.encoding = encoding;
+    if (encoding == ThriftEncoding.TCOMPACT_BASE64) {
+      this.serializer = new TSerializer(new TCompactProtocol.Factory());
+    }
+    else if (encoding == ThriftEncoding.TJSON_EMBEDDED) {
+      // the embedded objects are decoded as TJSON, so a single object encoded as a string must be TJSON too
+      this.serializer = new TSerializer(new TJSONProtocol.Factory());
+    }
+    else {
+      this.serializer = new TSerializer(textProtocolFactory);
+    }
+  }
+
+  public ThriftEncoding getEncoding()
+  {
+    return encoding;
+  }
+
+  public String encode(TBase<?, ?> object) throws TException
+  {
+    long start = System.nanoTime();
+    String encoded = serialize(object);
+    recordEncoding(start, 1, false);
+    return encoded;
+  }
+
+  private String serialize(TBase<?, ?> object) throws TException
+  {
+    if (encoding == ThriftEncoding.TCOMPACT_BASE64) {
+      return Base64.getEncoder().encodeToString(serializer.serialize(object));
+    }
+    return serializer.toString(object, StandardCharsets.UTF_8.name());
+  }
+
+  /*
+   * encode the objects of a list response, with the embedded encoding they are only written when the
+   * response is serialized
+   *
+   * @return List of encoded objects
+   */
+  public List<String> encodeAll(List<? extends TBase<?, ?>> objects) throws TException
+  {
+    if (encoding == ThriftEncoding.TJSON_EMBEDDED) {
+      return new ThriftObjectList(objects, this);
+    }
+    long start = System.nanoTime();
+    List<String> encoded = new ArrayList<>(objects.size());
+    for (TBase<?, ?> object : objects) {
+      encoded.add(serialize(object));
+    }
+    recordEncoding(start, objects.size(), false);
+    return encoded;
+  }
+
+  // write the object as a value of the generator, as an embedded TJSON structure or as an encoded string
+  public void encodeTo(TBase<?, ?> object, JsonGenerator generator) throws IOException
+  {
+    long start = System.nanoTime();
+    try {
+      if (encoding == ThriftEncoding.TJSON_EMBEDDED && canEmbed(object)) {
+        object.write(new JsonGeneratorProtocol(generator));
+      }
+      else {
+        generator.writeString(serialize(object));
+      }
+    }
+    catch (TException e) {
+      throw new IOException("Failed to encode " + object.getClass().getSimpleName(), e);
+    }
+    recordEncoding(start, 1, true);
+  }
+
+  // objects encoded while the response is written are told apart from those encoded by the handler
+  private void recordEncoding(long start, int objects, boolean whileWriting)
+  {
+    if (metrics != null) {
+      metrics.addThriftEncoding(System.nanoTime() - start, objects, whileWriting);
+    }
+  }
+
+  // TJSON writes a list used as a map key, i.e., the skewed column values of a StorageDescriptor, as a raw
+  // array in the key position, which is not valid JSON, such an object is sent as a TJSON string instead
+  private static boolean canEmbed(TBase<?, ?> object)
+  {
+    if (object instanceof Table) {
+      return !hasSkewedLocations(((Table) object).getSd());
+    }
+    if (object instanceof Partition) {
+      return !hasSkewedLocations(((Partition) object).getSd());
+    }
+    return true;
+  }
+
+  private static boolean hasSkewedLocations(StorageDescriptor sd)
+  {
+    return sd != null && sd.getSkewedInfo() != null && sd.getSkewedInfo().getSkewedColValueLocationMapsSize() > 0;
+  }
+}
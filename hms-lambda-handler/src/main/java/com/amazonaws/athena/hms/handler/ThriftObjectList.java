@@ -0,0 +1,82 @@
+/*-
+ * #%L
+ * hms-lambda-handler
+ * %%
+ * Copyright (C) 2019 Amazon Web Services
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.amazonaws.athena.hms.handler;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+import org.apache.thrift.TBase;
+import org.apache.thrift.TException;
+
+import java.io.IOException;
+import java.util.AbstractList;
+import java.util.List;
+
+// a list of Thrift objects that looks like the list of their encoded strings in an API response, but is
+// written to the response by encoding each object straight into the JsonGenerator when it is serialized.
+// An element is only encoded as a string if someone actually gets it from the list
+@JsonSerialize(using = ThriftObjectList.Serializer.class)
+public class ThriftObjectList extends AbstractList<String>
+{
+  private final List<? extends TBase<?, ?>> objects;
+  private final ThriftEncoder encoder;
+
+  public ThriftObjectList(List<? extends TBase<?, ?>> objects, ThriftEncoder encoder)
+  {
+    this.objects = objects;
+    this.encoder = encoder;
+  }
+
+  @Override
+  public String get(int index)
+  {
+    try {
+      return encoder.encode(objects.get(index));
+    }
+    catch (TException e) {
+      throw new RuntimeException("Failed to encode " + objects.get(index).getClass().getSimpleName(), e);
+    }
+  }
+
+  @Override
+  public int size()
+  {
+    return objects.size();
+  }
+
+  public static class Serializer extends StdSerializer<ThriftObjectList>
+  {
+    public Serializer()
+    {
+      super(ThriftObjectList.class);
+    }
+
+    @Override
+    public void serialize(ThriftObjectList list, JsonGenerator generator, SerializerProvider provider) throws IOException
+    {
+      generator.writeStartArray(list.size());
+      for (TBase<?, ?> object : list.objects) {
+        list.encoder.encodeTo(object, generator);
+      }
+      generator.writeEndArray();
+    }
+  }
+}
@@ -0,0 +1,120 @@
+/*-
+ * #%L
+ * hms-lambda-handler
+ * %%
+ * Copyright (C) 2019 Amazon Web Services
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.amazonaws.athena.hms;
+
+import com.amazonaws.athena.hms.handler.AddPartitionsHandler;
+import com.amazonaws.athena.hms.handler.ThriftDecoder;
+import com.amazonaws.services.lambda.runtime.Context;
+import com.amazonaws.services.lambda.runtime.LambdaLogger;
+
+import org.apache.hadoop.hive.metastore.api.MetaException;
+import org.apache.hadoop.hive.metastore.api.Partition;
+import org.apache.thrift.TException;
+import org.apache.thrift.TSerializer;
+import org.apache.thrift.protocol.TJSONProtocol;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class TestAddPartitionsHandler {
+
+  private static Context createContext() {
+    Context context = mock(Context.class);
+    when(context.getLogger()).thenReturn(mock(LambdaLogger.class));
+    return context;
+  }
+
+  private static List<String> createPartitionDescs(int count) throws TException {
+    TSerializer serializer = new TSerializer(new TJSONProtocol.Factory());
+    List<String> partitionDescs = new ArrayList<>();
+    for (int i = 0; i < count; i++) {
+      Partition partition = new Partition(Collections.singletonList(String.valueOf(i)), "db", "tbl", 0, 0, null, null);
+      partitionDescs.add(serializer.toString(partition, "UTF-8"));
+    }
+    return partitionDescs;
+  }
+
+  @Test
+  public void testHandleRequest() throws TException {
+    HiveMetaStoreClient client = mock(HiveMetaStoreClient.class);
+    AddPartitionsHandler handler = new AddPartitionsHandler(HiveMetaStoreConf.load(), client);
+    AddPartitionsResponse response = handler.handleRequest(
+        new AddPartitionsRequest().withPartitionDescs(createPartitionDescs(5)), createContext());
+    assertNull(response.getChunks());
+    verify(client).addPartitions(anyList());
+    verify(client, never()).addPartitionsInChunks(anyList(), anyInt());
+  }
+
+  @Test
+  public void testHandleRequestInChunks() throws TException {
+    HiveMetaStoreClient client = mock(HiveMetaStoreClient.class);
+    when(client.addPartitionsInChunks(anyList(), anyInt())).thenCallRealMethod();
+    doAnswer(invocation -> {
+      List<Partition> chunk = invocation.getArgument(0);
+      if (chunk.get(0).getValues().get(0).equals("2")) {
+        throw new MetaException("Lock wait timeout");
+      }
+      return null;
+    }).when(client).addPartitions(anyList());
+    HiveMetaStoreConf conf = HiveMetaStoreConf.load();
+    conf.setClientWriteChunkSize(2);
+    AddPartitionsHandler handler = new AddPartitionsHandler(conf, client);
+    AddPartitionsResponse response = handler.handleRequest(
+        new AddPartitionsRequest().withPartitionDescs(createPartitionDescs(5)), createContext());
+    List<PartitionChunkResult> chunks = response.getChunks();
+    assertEquals(3, chunks.size());
+    assertTrue(chunks.get(0).isSuccess());
+    assertFalse(chunks.get(1).isSuccess());
+    assertEquals(2, chunks.get(1).getOffset());
+    assertEquals(2, chunks.get(1).getCount());
+    assertTrue(chunks.get(1).getErrorMessage().contains("Lock wait timeout"));
+    assertTrue(chunks.get(2).isSuccess());
+    assertEquals(1, chunks.get(2).getCount());
+    verify(client, times(3)).addPartitions(anyList());
+  }
+
+  @Test
+  public void testDecodeAllKeepsOrder() throws TException {
+    // above the threshold the descriptors are decoded in parallel
+    List<Partition> partitions = new ThriftDecoder(new TJSONProtocol.Factory())
+        .decodeAll(createPartitionDescs(2500), Partition::new);
+    assertEquals(2500, partitions.size());
+    for (int i = 0; i < partitions.size(); i++) {
+      assertEquals(String.valueOf(i), partitions.get(i).getValues().get(0));
+    }
+  }
+}
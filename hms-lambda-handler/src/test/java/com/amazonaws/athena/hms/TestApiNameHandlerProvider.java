@@ -28,6 +28,7 @@ import java.util.Map;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Mockito.mock;
 
@@ -51,4 +52,19 @@ public class TestApiNameHandlerProvider {
     assertTrue(allDbOjectsContext.getResponseClass().isAssignableFrom(GetDatabasesResponse.class));
     assertTrue(allDbOjectsContext.getHandler() instanceof GetDatabasesHandler);
   }
+
+  @Test
+  public void testHandlersAreCreatedOnFirstUse() {
+    HiveMetaStoreConf conf = HiveMetaStoreConf.load();
+    HiveMetaStoreClient client = mock(HiveMetaStoreClient.class);
+    Map<String, HandlerContext> map = new ApiNameHandlerProvider(new ApiHelper()).provide(conf, client);
+    for (Map.Entry<String, HandlerContext> entry : map.entrySet()) {
+      String apiName = entry.getKey();
+      HandlerContext context = entry.getValue();
+      assertEquals(conf.getHandlerNamePrefix() + apiName.substring(0, 1).toUpperCase() + apiName.substring(1) + "Handler",
+          context.getHandler().getClass().getName());
+      assertSame(context.getHandler(), context.getHandler());
+      assertSame(client, context.getHandler().getClient());
+    }
+  }
 }
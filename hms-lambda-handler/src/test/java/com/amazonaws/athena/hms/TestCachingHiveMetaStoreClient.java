@@ -0,0 +1,339 @@
+/*-
+ * #%L
+ * hms-lambda-handler
+ * %%
+ * Copyright (C) 2019 Amazon Web Services
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.amazonaws.athena.hms;
+
+import org.apache.hadoop.hive.metastore.api.Database;
+import org.apache.hadoop.hive.metastore.api.NotificationEvent;
+import org.apache.hadoop.hive.metastore.api.Partition;
+import org.apache.hadoop.hive.metastore.api.Table;
+import org.apache.thrift.TException;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class TestCachingHiveMetaStoreClient {
+  private HiveMetaStoreClient delegate;
+  private CachingHiveMetaStoreClient client;
+
+  @Before
+  public void setUp() throws TException {
+    delegate = mock(HiveMetaStoreClient.class);
+    when(delegate.getTable("mydb", "mytbl")).thenReturn(createTable("mydb", "mytbl"));
+    when(delegate.getDatabase("mydb")).thenReturn(new Database("mydb", null, null, null));
+    when(delegate.getPartitionNames("mydb", "mytbl", (short) -1)).thenReturn(Arrays.asList("p=1", "p=2"));
+    client = new CachingHiveMetaStoreClient(delegate, 10, 60000);
+  }
+
+  @Test
+  public void testRepeatedLookupsAreServedFromCache() throws TException {
+    Table first = client.getTable("mydb", "mytbl");
+    Table second = client.getTable("MyDb", "MyTbl");
+    assertEquals(first, second);
+    // every caller gets its own copy
+    assertNotSame(first, second);
+    assertEquals("mydb", client.getDatabase("mydb").getName());
+    assertEquals("mydb", client.getDatabase("mydb").getName());
+    assertEquals(Arrays.asList("p=1", "p=2"), client.getPartitionNames("mydb", "mytbl", (short) -1));
+    assertEquals(Arrays.asList("p=1", "p=2"), client.getPartitionNames("mydb", "mytbl", (short) -1));
+    verify(delegate, times(1)).getTable("mydb", "mytbl");
+    verify(delegate, times(1)).getDatabase("mydb");
+    verify(delegate, times(1)).getPartitionNames("mydb", "mytbl", (short) -1);
+    assertEquals(3, client.getHitCount());
+    assertEquals(3, client.getMissCount());
+
+    client.resetStats();
+    assertEquals(0, client.getHitCount());
+    assertEquals(0, client.getMissCount());
+  }
+
+  @Test
+  public void testAlterTableInvalidatesTableAndPartitionNames() throws TException {
+    client.getTable("mydb", "mytbl");
+    client.getPartitionNames("mydb", "mytbl", (short) -1);
+    client.alterTable("mydb", "mytbl", createTable("mydb", "mytbl"));
+    client.getTable("mydb", "mytbl");
+    client.getPartitionNames("mydb", "mytbl", (short) -1);
+    verify(delegate, times(2)).getTable("mydb", "mytbl");
+    verify(delegate, times(2)).getPartitionNames("mydb", "mytbl", (short) -1);
+  }
+
+  @Test
+  public void testPartitionWritesInvalidatePartitionNamesOnly() throws TException {
+    client.getTable("mydb", "mytbl");
+    client.getPartitionNames("mydb", "mytbl", (short) -1);
+    client.addPartitions(Collections.singletonList(createPartition("mydb", "mytbl")));
+    client.getPartitionNames("mydb", "mytbl", (short) -1);
+    client.dropPartitions("mydb", "mytbl", Collections.singletonList("p=1"));
+    client.getPartitionNames("mydb", "mytbl", (short) -1);
+    client.getTable("mydb", "mytbl");
+    verify(delegate, times(3)).getPartitionNames("mydb", "mytbl", (short) -1);
+    verify(delegate, times(1)).getTable("mydb", "mytbl");
+  }
+
+  @Test
+  public void testDropDatabaseInvalidatesItsTables() throws TException {
+    client.getDatabase("mydb");
+    client.getTable("mydb", "mytbl");
+    client.dropDatabase("mydb", true, true);
+    client.getDatabase("mydb");
+    client.getTable("mydb", "mytbl");
+    verify(delegate, times(2)).getDatabase("mydb");
+    verify(delegate, times(2)).getTable("mydb", "mytbl");
+  }
+
+  @Test
+  public void testLookupRacingAWriteIsNotCached() throws TException {
+    // the write lands while the lookups are waiting for the metastore, so what they read could be stale
+    when(delegate.getTable("mydb", "mytbl")).thenAnswer(invocation -> {
+      client.alterTable("mydb", "mytbl", createTable("mydb", "mytbl"));
+      return createTable("mydb", "mytbl");
+    }).thenReturn(createTable("mydb", "mytbl"));
+    when(delegate.getDatabase("mydb")).thenAnswer(invocation -> {
+      client.dropDatabase("otherdb", false, false);
+      return new Database("mydb", null, null, null);
+    }).thenReturn(new Database("mydb", null, null, null));
+    when(delegate.getPartitionNames("mydb", "mytbl", (short) -1)).thenAnswer(invocation -> {
+      client.addPartition(createPartition("mydb", "mytbl"));
+      return Collections.singletonList("p=1");
+    }).thenReturn(Arrays.asList("p=1", "p=2"));
+    when(delegate.tableExists("mydb", "newtbl")).thenAnswer(invocation -> {
+      client.createTable(createTable("mydb", "newtbl"));
+      return false;
+    }).thenReturn(true);
+    for (int i = 0; i < 3; i++) {
+      client.getTable("mydb", "mytbl");
+      client.getDatabase("mydb");
+      client.getPartitionNames("mydb", "mytbl", (short) -1);
+    }
+    assertEquals(Arrays.asList("p=1", "p=2"), client.getPartitionNames("mydb", "mytbl", (short) -1));
+    assertFalse(client.tableExists("mydb", "newtbl"));
+    assertTrue(client.tableExists("mydb", "newtbl"));
+    // only the lookups that raced a write went to the metastore again
+    verify(delegate, times(2)).getTable("mydb", "mytbl");
+    verify(delegate, times(2)).getDatabase("mydb");
+    verify(delegate, times(2)).getPartitionNames("mydb", "mytbl", (short) -1);
+    verify(delegate, times(2)).tableExists("mydb", "newtbl");
+  }
+
+  @Test
+  public void testFailedWriteStillInvalidates() throws TException {
+    when(delegate.dropTable("mydb", "mytbl")).thenThrow(new TException("failed"));
+    client.getTable("mydb", "mytbl");
+    try {
+      client.dropTable("mydb", "mytbl");
+    } catch (TException e) {
+      // expected
+    }
+    client.getTable("mydb", "mytbl");
+    verify(delegate, times(2)).getTable("mydb", "mytbl");
+  }
+
+  @Test
+  public void testEvictionAndExpiration() throws TException {
+    when(delegate.getTable("mydb", "other")).thenReturn(createTable("mydb", "other"));
+    CachingHiveMetaStoreClient smallClient = new CachingHiveMetaStoreClient(delegate, 1, 60000);
+    smallClient.getTable("mydb", "mytbl");
+    smallClient.getTable("mydb", "other");
+    smallClient.getTable("mydb", "mytbl");
+    verify(delegate, times(2)).getTable("mydb", "mytbl");
+
+    CachingHiveMetaStoreClient expiringClient = new CachingHiveMetaStoreClient(delegate, 10, -1);
+    expiringClient.getTable("mydb", "other");
+    expiringClient.getTable("mydb", "other");
+    verify(delegate, times(3)).getTable("mydb", "other");
+  }
+
+  @Test
+  public void testExistenceChecksUseCachedObjects() throws TException {
+    client.getTable("mydb", "mytbl");
+    client.getDatabase("mydb");
+    assertTrue(client.tableExists("MyDb", "MyTbl"));
+    assertTrue(client.dbExists("mydb"));
+    verify(delegate, never()).tableExists(anyString(), anyString());
+    verify(delegate, never()).dbExists(anyString());
+  }
+
+  @Test
+  public void testNotFoundAnswersAreCachedUntilCreated() throws TException {
+    CachingHiveMetaStoreClient negativeClient = new CachingHiveMetaStoreClient(delegate, 10, 60000, 0, 10, 60000);
+    assertFalse(negativeClient.tableExists("mydb", "newtbl"));
+    assertFalse(negativeClient.tableExists("mydb", "newtbl"));
+    assertFalse(negativeClient.dbExists("newdb"));
+    assertFalse(negativeClient.dbExists("newdb"));
+    verify(delegate, times(1)).tableExists("mydb", "newtbl");
+    verify(delegate, times(1)).dbExists("newdb");
+
+    negativeClient.createTable(createTable("mydb", "newtbl"));
+    negativeClient.createDatabase("newdb");
+    when(delegate.tableExists("mydb", "newtbl")).thenReturn(true);
+    when(delegate.dbExists("newdb")).thenReturn(true);
+    assertTrue(negativeClient.tableExists("mydb", "newtbl"));
+    assertTrue(negativeClient.dbExists("newdb"));
+  }
+
+  @Test
+  public void testNotFoundAnswersExpire() throws TException {
+    CachingHiveMetaStoreClient negativeClient = new CachingHiveMetaStoreClient(delegate, 10, 60000, 0, 10, -1);
+    assertFalse(negativeClient.tableExists("mydb", "newtbl"));
+    assertFalse(negativeClient.tableExists("mydb", "newtbl"));
+    verify(delegate, times(2)).tableExists("mydb", "newtbl");
+    // the negative cache is disabled unless it is configured
+    assertFalse(client.dbExists("newdb"));
+    assertFalse(client.dbExists("newdb"));
+    verify(delegate, times(2)).dbExists("newdb");
+  }
+
+  @Test
+  public void testNegativeCacheAloneWrapsTheClient() {
+    HiveMetaStoreConf conf = HiveMetaStoreConf.load();
+    conf.setClientCacheNegativeSize(100);
+    HiveMetaStoreClient wrapped = CachingHiveMetaStoreClient.wrap(delegate, conf);
+    assertSame(delegate, ((CachingHiveMetaStoreClient) wrapped).getDelegate());
+  }
+
+  @Test
+  public void testCacheIsDisabledByDefault() {
+    HiveMetaStoreConf conf = HiveMetaStoreConf.load();
+    assertSame(delegate, CachingHiveMetaStoreClient.wrap(delegate, conf));
+    conf.setClientCacheSize(100);
+    HiveMetaStoreClient wrapped = CachingHiveMetaStoreClient.wrap(delegate, conf);
+    assertSame(delegate, ((CachingHiveMetaStoreClient) wrapped).getDelegate());
+  }
+
+  @Test
+  public void testNotificationEventsEvictOnlyTouchedEntries() throws TException {
+    when(delegate.getTable("mydb", "other")).thenReturn(createTable("mydb", "other"));
+    when(delegate.getCurrentNotificationId()).thenReturn(100L);
+    when(delegate.getNextNotifications(100L, 10)).thenReturn(Arrays.asList(
+        createEvent(101, "ALTER_TABLE", "mydb", "mytbl"),
+        createEvent(102, "ADD_PARTITION", "mydb", "other")));
+    CachingHiveMetaStoreClient notifiedClient = new CachingHiveMetaStoreClient(delegate, 10, Long.MAX_VALUE, 10);
+    // the first sync only takes the baseline
+    assertEquals(0, notifiedClient.syncWithNotificationLog());
+    assertEquals(100, notifiedClient.getLastEventId());
+    notifiedClient.getTable("mydb", "mytbl");
+    notifiedClient.getTable("mydb", "other");
+    notifiedClient.getDatabase("mydb");
+
+    assertEquals(2, notifiedClient.syncWithNotificationLog());
+    assertEquals(102, notifiedClient.getLastEventId());
+    notifiedClient.getTable("mydb", "mytbl");
+    notifiedClient.getTable("mydb", "other");
+    notifiedClient.getDatabase("mydb");
+    verify(delegate, times(2)).getTable("mydb", "mytbl");
+    verify(delegate, times(1)).getTable("mydb", "other");
+    verify(delegate, times(1)).getDatabase("mydb");
+  }
+
+  @Test
+  public void testTooManyNotificationEventsDropTheCache() throws TException {
+    when(delegate.getCurrentNotificationId()).thenReturn(100L, 500L);
+    when(delegate.getNextNotifications(100L, 2)).thenReturn(Arrays.asList(
+        createEvent(101, "CREATE_TABLE", "otherdb", "t1"),
+        createEvent(102, "CREATE_TABLE", "otherdb", "t2")));
+    CachingHiveMetaStoreClient notifiedClient = new CachingHiveMetaStoreClient(delegate, 10, Long.MAX_VALUE, 2);
+    notifiedClient.syncWithNotificationLog();
+    notifiedClient.getTable("mydb", "mytbl");
+    notifiedClient.syncWithNotificationLog();
+    assertEquals(500, notifiedClient.getLastEventId());
+    notifiedClient.getTable("mydb", "mytbl");
+    verify(delegate, times(2)).getTable("mydb", "mytbl");
+  }
+
+  @Test
+  public void testFailedNotificationPullDropsTheCache() throws TException {
+    when(delegate.getCurrentNotificationId()).thenReturn(100L);
+    when(delegate.getNextNotifications(100L, 10)).thenThrow(new TException("failed"));
+    CachingHiveMetaStoreClient notifiedClient = new CachingHiveMetaStoreClient(delegate, 10, Long.MAX_VALUE, 10);
+    notifiedClient.syncWithNotificationLog();
+    notifiedClient.getTable("mydb", "mytbl");
+    try {
+      notifiedClient.syncWithNotificationLog();
+      fail("Expected the notification pull to fail");
+    } catch (TException e) {
+      assertEquals(-1, notifiedClient.getLastEventId());
+    }
+    notifiedClient.getTable("mydb", "mytbl");
+    verify(delegate, times(2)).getTable("mydb", "mytbl");
+  }
+
+  @Test
+  public void testUnsupportedNotificationLogFallsBackToTtl() throws TException {
+    // the delegate doesn't support the notification log, its current event id is null
+    when(delegate.getCurrentNotificationId()).thenReturn(null);
+    CachingHiveMetaStoreClient notifiedClient = new CachingHiveMetaStoreClient(delegate, 10, Long.MAX_VALUE, 10);
+    assertTrue(notifiedClient.isNotificationLogEnabled());
+    assertEquals(0, notifiedClient.syncWithNotificationLog());
+    assertFalse(notifiedClient.isNotificationLogEnabled());
+    notifiedClient.getTable("mydb", "mytbl");
+    assertEquals(0, notifiedClient.syncWithNotificationLog());
+    notifiedClient.getTable("mydb", "mytbl");
+    verify(delegate, times(1)).getTable("mydb", "mytbl");
+    verify(delegate, times(1)).getCurrentNotificationId();
+    verify(delegate, never()).getNextNotifications(anyLong(), anyInt());
+  }
+
+  @Test
+  public void testNotificationLogIsNotReadByDefault() throws TException {
+    assertFalse(client.isNotificationLogEnabled());
+    assertEquals(0, client.syncWithNotificationLog());
+    verify(delegate, never()).getCurrentNotificationId();
+    verify(delegate, never()).getNextNotifications(anyLong(), anyInt());
+  }
+
+  private static NotificationEvent createEvent(long eventId, String eventType, String dbName, String tableName) {
+    NotificationEvent event = new NotificationEvent(eventId, 0, eventType, "");
+    event.setDbName(dbName);
+    event.setTableName(tableName);
+    return event;
+  }
+
+  private static Table createTable(String dbName, String tableName) {
+    Table table = new Table();
+    table.setDbName(dbName);
+    table.setTableName(tableName);
+    return table;
+  }
+
+  private static Partition createPartition(String dbName, String tableName) {
+    Partition partition = new Partition();
+    partition.setDbName(dbName);
+    partition.setTableName(tableName);
+    return partition;
+  }
+}
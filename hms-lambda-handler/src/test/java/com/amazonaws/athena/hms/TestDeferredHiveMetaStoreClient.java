@@ -0,0 +1,127 @@
+/*-
+ * #%L
+ * hms-lambda-handler
+ * %%
+ * Copyright (C) 2019 Amazon Web Services
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.amazonaws.athena.hms;
+
+import org.apache.thrift.TException;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.net.ConnectException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
+
+public class TestDeferredHiveMetaStoreClient {
+  private HiveMetaStoreClient delegate;
+
+  @Before
+  public void setUp() throws TException {
+    delegate = mock(HiveMetaStoreClient.class, withSettings().extraInterfaces(CheckpointAware.class));
+    when(delegate.dbExists("mydb")).thenReturn(true);
+  }
+
+  @Test
+  public void testCallWaitsForConnection() throws Exception {
+    CountDownLatch connected = new CountDownLatch(1);
+    DeferredHiveMetaStoreClient client = new DeferredHiveMetaStoreClient(() -> {
+      connected.await();
+      return delegate;
+    });
+    assertFalse(client.isConnected());
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    try {
+      Future<Boolean> exists = executor.submit(() -> client.dbExists("mydb"));
+      try {
+        exists.get(100, TimeUnit.MILLISECONDS);
+        fail("Expected the call to wait for the connection");
+      } catch (TimeoutException e) {
+        // still connecting
+      }
+      connected.countDown();
+      assertTrue(exists.get(5, TimeUnit.SECONDS));
+      assertTrue(client.isConnected());
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @Test
+  public void testFailedConnectionIsRetried() throws Exception {
+    AtomicInteger attempts = new AtomicInteger();
+    DeferredHiveMetaStoreClient client = new DeferredHiveMetaStoreClient(() -> {
+      if (attempts.incrementAndGet() == 1) {
+        throw new RuntimeException("Failed to create HiveMetaStoreClient", new ConnectException("Connection refused"));
+      }
+      return delegate;
+    });
+    try {
+      client.dbExists("mydb");
+      fail("Expected the connection failure");
+    } catch (TException e) {
+      assertEquals("Failed to connect to metastore: Connection refused", e.getMessage());
+    }
+    // the failed call started connecting again
+    assertTrue(client.dbExists("mydb"));
+    assertEquals(2, attempts.get());
+  }
+
+  @Test
+  public void testNoAsyncClientWithoutConnection() throws Exception {
+    AtomicInteger attempts = new AtomicInteger();
+    DeferredHiveMetaStoreClient client = new DeferredHiveMetaStoreClient(() -> {
+      if (attempts.incrementAndGet() == 1) {
+        throw new RuntimeException("Failed to create HiveMetaStoreClient", new ConnectException("Connection refused"));
+      }
+      return delegate;
+    });
+    assertNull(client.getAsyncClient());
+    // the blocking call the caller falls back to reports the original error instead of waiting for a new connection
+    try {
+      client.dbExists("mydb");
+      fail("Expected the connection failure");
+    } catch (TException e) {
+      assertEquals("Failed to connect to metastore: Connection refused", e.getMessage());
+    }
+  }
+
+  @Test
+  public void testCheckpointHooks() throws Exception {
+    DeferredHiveMetaStoreClient client = new DeferredHiveMetaStoreClient(() -> delegate);
+    client.beforeCheckpoint();
+    verify((CheckpointAware) delegate).beforeCheckpoint();
+    client.afterRestore();
+    verify((CheckpointAware) delegate).afterRestore();
+  }
+}
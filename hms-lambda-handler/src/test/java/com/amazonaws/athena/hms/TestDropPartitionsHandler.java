@@ -0,0 +1,142 @@
+/*-
+ * #%L
+ * hms-lambda-handler
+ * %%
+ * Copyright (C) 2019 Amazon Web Services
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.amazonaws.athena.hms;
+
+import com.amazonaws.athena.hms.handler.DropPartitionsHandler;
+import com.amazonaws.services.lambda.runtime.Context;
+import com.amazonaws.services.lambda.runtime.LambdaLogger;
+
+import org.apache.hadoop.hive.metastore.api.MetaException;
+import org.apache.thrift.TException;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class TestDropPartitionsHandler {
+
+  private static Context createContext(int remainingTimeInMillis) {
+    Context context = mock(Context.class);
+    when(context.getLogger()).thenReturn(mock(LambdaLogger.class));
+    when(context.getRemainingTimeInMillis()).thenReturn(remainingTimeInMillis);
+    return context;
+  }
+
+  private static HiveMetaStoreClient createClient(List<String> dropped) throws TException {
+    HiveMetaStoreClient client = mock(HiveMetaStoreClient.class);
+    List<String> names = new ArrayList<>();
+    for (int i = 0; i < 25; i++) {
+      names.add(String.format("p=%02d", i));
+    }
+    // the metastore doesn't return the names in order
+    Collections.shuffle(names);
+    when(client.getPartitionNames("db", "tbl", (short) -1)).thenReturn(names);
+    when(client.dropPartitionsInChunks(eq("db"), eq("tbl"), anyList(), anyInt())).thenCallRealMethod();
+    doAnswer(invocation -> {
+      List<String> chunk = invocation.getArgument(2);
+      if (chunk.contains("p=12")) {
+        throw new MetaException("Lock wait timeout");
+      }
+      dropped.addAll(chunk);
+      return null;
+    }).when(client).dropPartitions(eq("db"), eq("tbl"), anyList());
+    return client;
+  }
+
+  @Test
+  public void testHandleRequest() throws TException {
+    HiveMetaStoreClient client = mock(HiveMetaStoreClient.class);
+    DropPartitionsHandler handler = new DropPartitionsHandler(HiveMetaStoreConf.load(), client);
+    DropPartitionsResponse response = handler.handleRequest(
+        new DropPartitionsRequest().withDbName("db").withTableName("tbl"), createContext(0));
+    assertNull(response.getChunks());
+    verify(client).dropPartitions("db", "tbl", null);
+    verify(client, never()).dropPartitionsInChunks(anyString(), anyString(), anyList(), anyInt());
+  }
+
+  @Test
+  public void testDropInChunks() throws TException {
+    List<String> dropped = new ArrayList<>();
+    HiveMetaStoreConf conf = HiveMetaStoreConf.load();
+    conf.setClientWriteChunkSize(10);
+    DropPartitionsHandler handler = new DropPartitionsHandler(conf, createClient(dropped));
+    DropPartitionsResponse response = handler.handleRequest(
+        new DropPartitionsRequest().withDbName("db").withTableName("tbl"), createContext(600_000));
+    assertNull(response.getNextToken());
+    List<PartitionChunkResult> chunks = response.getChunks();
+    assertEquals(3, chunks.size());
+    assertTrue(chunks.get(0).isSuccess());
+    assertFalse(chunks.get(1).isSuccess());
+    assertEquals(10, chunks.get(1).getOffset());
+    assertTrue(chunks.get(1).getErrorMessage().contains("Lock wait timeout"));
+    assertTrue(chunks.get(2).isSuccess());
+    assertEquals(20, chunks.get(2).getOffset());
+    assertEquals(5, chunks.get(2).getCount());
+    assertEquals(15, dropped.size());
+  }
+
+  @Test
+  public void testDropIsResumedWhenOutOfTime() throws TException {
+    List<String> dropped = new ArrayList<>();
+    HiveMetaStoreConf conf = HiveMetaStoreConf.load();
+    conf.setClientWriteChunkSize(5);
+    conf.setClientPoolEnabled(true);
+    conf.setClientFanOutConcurrency(2);
+    DropPartitionsHandler handler = new DropPartitionsHandler(conf, createClient(dropped));
+    // a batch of 2 chunks always runs, then the time left is too short for another one
+    DropPartitionsResponse response = handler.handleRequest(
+        new DropPartitionsRequest().withDbName("db").withTableName("tbl"), createContext(0));
+    assertNotNull(response.getNextToken());
+    assertEquals(2, response.getChunks().size());
+    assertEquals("p=00", dropped.get(0));
+    assertEquals("p=09", dropped.get(9));
+
+    response = handler.handleRequest(new DropPartitionsRequest().withDbName("db").withTableName("tbl")
+        .withNextToken(response.getNextToken()), createContext(0));
+    assertNotNull(response.getNextToken());
+    assertEquals(10, response.getChunks().get(0).getOffset());
+    assertFalse(response.getChunks().get(0).isSuccess());
+    assertEquals("p=15", dropped.get(10));
+
+    response = handler.handleRequest(new DropPartitionsRequest().withDbName("db").withTableName("tbl")
+        .withNextToken(response.getNextToken()), createContext(0));
+    assertNull(response.getNextToken());
+    assertEquals(1, response.getChunks().size());
+    assertEquals(20, dropped.size());
+  }
+}
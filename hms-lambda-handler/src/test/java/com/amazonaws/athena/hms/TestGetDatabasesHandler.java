@@ -0,0 +1,95 @@
+/*-
+ * #%L
+ * hms-lambda-handler
+ * %%
+ * Copyright (C) 2019 Amazon Web Services
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.amazonaws.athena.hms;
+
+import com.amazonaws.athena.hms.handler.GetDatabasesHandler;
+import com.amazonaws.services.lambda.runtime.Context;
+import com.amazonaws.services.lambda.runtime.LambdaLogger;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import org.apache.hadoop.hive.metastore.api.Database;
+import org.apache.hadoop.hive.metastore.api.NoSuchObjectException;
+import org.apache.thrift.TException;
+
+import org.junit.Test;
+
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class TestGetDatabasesHandler {
+
+  private static Context createContext() {
+    Context context = mock(Context.class);
+    when(context.getLogger()).thenReturn(mock(LambdaLogger.class));
+    return context;
+  }
+
+  @Test
+  public void testHandleRequest() throws TException {
+    HiveMetaStoreClient client = mock(HiveMetaStoreClient.class);
+    when(client.getDatabases("db.*")).thenReturn(Lists.newArrayList(new Database("db1", null, null, null)));
+    GetDatabasesHandler handler = new GetDatabasesHandler(HiveMetaStoreConf.load(), client);
+    GetDatabasesResponse response = handler.handleRequest(new GetDatabasesRequest().withFilter("db.*"), createContext());
+    assertEquals(1, response.getDatabaseObjects().size());
+  }
+
+  @Test
+  public void testHandleRequestWithAsyncClient() throws TException {
+    HiveMetaStoreClient client = mock(HiveMetaStoreClient.class);
+    AsyncHiveMetaStoreClient asyncClient = mock(AsyncHiveMetaStoreClient.class);
+    when(client.getAsyncClient()).thenReturn(asyncClient);
+    when(asyncClient.getDatabaseNames("db.*"))
+        .thenReturn(CompletableFuture.completedFuture(Sets.newHashSet("db1", "db2", "db3")));
+    when(asyncClient.getDatabase(anyString())).thenAnswer(invocation ->
+        CompletableFuture.completedFuture(new Database(invocation.getArgument(0), null, null, null)));
+    GetDatabasesHandler handler = new GetDatabasesHandler(HiveMetaStoreConf.load(), client);
+    GetDatabasesResponse response = handler.handleRequest(new GetDatabasesRequest().withFilter("db.*"), createContext());
+    assertEquals(3, response.getDatabaseObjects().size());
+    verify(client, never()).getDatabases(anyString());
+  }
+
+  @Test
+  public void testAsyncFailureIsReported() throws TException {
+    HiveMetaStoreClient client = mock(HiveMetaStoreClient.class);
+    AsyncHiveMetaStoreClient asyncClient = mock(AsyncHiveMetaStoreClient.class);
+    when(client.getAsyncClient()).thenReturn(asyncClient);
+    when(asyncClient.getDatabaseNames(null)).thenReturn(CompletableFuture.completedFuture(Sets.newHashSet("db1")));
+    CompletableFuture<Database> failed = new CompletableFuture<>();
+    failed.completeExceptionally(new NoSuchObjectException("db1 database not found"));
+    when(asyncClient.getDatabase("db1")).thenReturn(failed);
+    GetDatabasesHandler handler = new GetDatabasesHandler(HiveMetaStoreConf.load(), client);
+    try {
+      handler.handleRequest(new GetDatabasesRequest(), createContext());
+      fail("Expected NoSuchObjectException");
+    } catch (RuntimeException e) {
+      assertTrue(e.getCause() instanceof NoSuchObjectException);
+    }
+  }
+}
@@ -20,17 +20,30 @@
 package com.amazonaws.athena.hms;
 
 import com.amazonaws.athena.hms.handler.GetPartitionsHandler;
+import com.amazonaws.athena.hms.io.S3Helper;
+import com.amazonaws.athena.hms.serde.ObjectMapperFactory;
 import com.amazonaws.services.lambda.runtime.Context;
 import com.amazonaws.services.lambda.runtime.LambdaLogger;
 
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.common.collect.Lists;
 import org.apache.hadoop.hive.metastore.api.Partition;
+import org.apache.thrift.TDeserializer;
 import org.apache.thrift.TException;
+import org.apache.thrift.TSerializer;
+import org.apache.thrift.protocol.TCompactProtocol;
+import org.apache.thrift.protocol.TJSONProtocol;
 
 import org.junit.Test;
 
+import java.io.IOException;
+import java.util.Base64;
+
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
 
 import static org.mockito.ArgumentMatchers.anyShort;
 import static org.mockito.ArgumentMatchers.anyString;
@@ -57,4 +70,66 @@ public class TestGetPartitionsHandler {
     assertNotNull(response.getPartitions());
     assertEquals(1, response.getPartitions().size());
   }
+
+  @Test
+  public void testHandleRequestWithCompactEncoding() throws TException {
+    HiveMetaStoreClient client = mock(HiveMetaStoreClient.class);
+    Partition partition = new Partition();
+    partition.setTableName("test");
+    partition.setDbName("default");
+    partition.setValues(Lists.newArrayList("1"));
+    when(client.getPartitions(anyString(), anyString(), anyShort())).thenReturn(Lists.newArrayList(partition));
+    GetPartitionsHandler handler = new GetPartitionsHandler(HiveMetaStoreConf.load(), client);
+    GetPartitionsRequest request = new GetPartitionsRequest();
+    request.setDbName("default");
+    request.setTableName("test");
+    Context context = mock(Context.class);
+    when(context.getLogger()).thenReturn(mock(LambdaLogger.class));
+    String json = handler.handleRequest(request, context).getPartitions().get(0);
+    handler.setResponseEncoding(ThriftEncoding.TCOMPACT_BASE64);
+    String compact = handler.handleRequest(request, context).getPartitions().get(0);
+    handler.setResponseEncoding(null);
+    assertTrue(compact.length() < json.length());
+    Partition result = new Partition();
+    new TDeserializer(new TCompactProtocol.Factory()).deserialize(result, Base64.getDecoder().decode(compact));
+    assertEquals(partition, result);
+    assertEquals(ThriftEncoding.TJSON, handler.getResponseEncoding());
+  }
+
+  @Test
+  public void testHandleRequestWithEmbeddedEncoding() throws TException, IOException {
+    HiveMetaStoreClient client = mock(HiveMetaStoreClient.class);
+    Partition partition = new Partition();
+    partition.setTableName("test");
+    partition.setDbName("default");
+    partition.setValues(Lists.newArrayList("1", "a\"b"));
+    partition.putToParameters("k", "v");
+    when(client.getPartitions(anyString(), anyString(), anyShort())).thenReturn(Lists.newArrayList(partition));
+    GetPartitionsHandler handler = new GetPartitionsHandler(HiveMetaStoreConf.load(), client);
+    GetPartitionsRequest request = new GetPartitionsRequest();
+    request.setDbName("default");
+    request.setTableName("test");
+    Context context = mock(Context.class);
+    when(context.getLogger()).thenReturn(mock(LambdaLogger.class));
+    handler.setResponseEncoding(ThriftEncoding.TJSON_EMBEDDED);
+    GetPartitionsResponse response = handler.handleRequest(request, context);
+    handler.setResponseEncoding(null);
+
+    ObjectMapper objectMapper = ObjectMapperFactory.create(new ApiHelper(), mock(S3Helper.class));
+    String json = objectMapper.writeValueAsString(
+        new MetadataResponse("getPartitions", false, null, response, ThriftEncoding.TJSON_EMBEDDED, SpillEncoding.IDENTITY));
+    // the partition is embedded as the TJSON structure rather than an escaped string
+    JsonNode embedded = objectMapper.readTree(json).get(MetadataResponse.API_RESPONSE).get("partitions").get(0);
+    assertTrue(embedded.isObject());
+    String tjson = new TSerializer(new TJSONProtocol.Factory()).toString(partition, "UTF-8");
+    assertEquals(objectMapper.readTree(tjson), embedded);
+
+    MetadataResponse metadataResponse = objectMapper.readValue(json, MetadataResponse.class);
+    assertEquals(ThriftEncoding.TJSON, metadataResponse.getThriftEncoding());
+    String decoded = ((GetPartitionsResponse) metadataResponse.getApiResponse()).getPartitions().get(0);
+    assertFalse(decoded.isEmpty());
+    Partition result = new Partition();
+    new TDeserializer(new TJSONProtocol.Factory()).deserialize(result, decoded, "UTF-8");
+    assertEquals(partition, result);
+  }
 }
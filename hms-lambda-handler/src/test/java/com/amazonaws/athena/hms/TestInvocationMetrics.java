@@ -0,0 +1,154 @@
+/*-
+ * #%L
+ * hms-lambda-handler
+ * %%
+ * Copyright (C) 2019 Amazon Web Services
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.amazonaws.athena.hms;
+
+import com.amazonaws.athena.hms.handler.ThriftEncoder;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.hadoop.hive.metastore.api.Table;
+import org.apache.thrift.protocol.TJSONProtocol;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TestInvocationMetrics {
+  private final ObjectMapper mapper = new ObjectMapper();
+
+  @After
+  public void tearDown() {
+    InvocationMetrics.detach();
+  }
+
+  @Test
+  public void testEmf() throws Exception {
+    InvocationMetrics metrics = new InvocationMetrics(true);
+    metrics.setApiName("getTable");
+    metrics.setProperty(InvocationMetrics.DB_NAME, "mydb");
+    metrics.setProperty(InvocationMetrics.TABLE_NAME, "mytable");
+    metrics.setInitNanos(millis(100));
+    metrics.addHandlerNanos(millis(10));
+    metrics.addThriftEncoding(millis(4), 2, false);
+    metrics.addThriftEncoding(millis(2), 1, true);
+    metrics.addResponseWriteNanos(millis(5));
+    metrics.setResponseBytes(1024);
+    metrics.setSpill(512, millis(1));
+    metrics.finish();
+
+    JsonNode emf = mapper.readTree(metrics.toEmf("HMS", 1234L));
+    JsonNode directive = emf.get("_aws").get("CloudWatchMetrics").get(0);
+    assertEquals(1234L, emf.get("_aws").get("Timestamp").asLong());
+    assertEquals("HMS", directive.get("Namespace").asText());
+    assertEquals("[[\"ApiName\",\"ColdStart\"]]", directive.get("Dimensions").toString());
+    assertEquals("getTable", emf.get("ApiName").asText());
+    assertEquals("true", emf.get("ColdStart").asText());
+    assertEquals("mydb", emf.get("DbName").asText());
+    assertEquals("mytable", emf.get("TableName").asText());
+    assertEquals(100.0, emf.get("InitTime").asDouble(), 0.001);
+    // the phases don't overlap
+    assertEquals(6.0, emf.get("MetastoreTime").asDouble(), 0.001);
+    assertEquals(6.0, emf.get("ThriftEncodeTime").asDouble(), 0.001);
+    assertEquals(2.0, emf.get("ResponseWriteTime").asDouble(), 0.001);
+    assertEquals(1.0, emf.get("SpillUploadTime").asDouble(), 0.001);
+    assertEquals(3, emf.get("ThriftObjects").asLong());
+    assertEquals(1024, emf.get("ResponseBytes").asLong());
+    assertEquals(512, emf.get("SpilledBytes").asLong());
+    assertEquals(0, emf.get("Failures").asLong());
+    assertFalse(emf.has("BatchSize"));
+
+    // every metric is defined in the directive and has a value
+    Set<String> names = new HashSet<>();
+    for (JsonNode definition : directive.get("Metrics")) {
+      names.add(definition.get("Name").asText());
+      assertTrue(definition.get("Name").asText(), emf.get(definition.get("Name").asText()).isNumber());
+    }
+    assertTrue(names.containsAll(Arrays.asList("TotalTime", "RequestReadTime", "CacheSyncTime", "MetastoreTime",
+        "ThriftEncodeTime", "ResponseWriteTime", "SpillUploadTime", "ThriftObjects", "ResponseBytes", "Failures")));
+  }
+
+  @Test
+  public void testWarmInvocation() throws Exception {
+    InvocationMetrics metrics = new InvocationMetrics(false);
+    metrics.setApiName("dbExists");
+    metrics.addFailure();
+    metrics.finish();
+    JsonNode emf = mapper.readTree(metrics.toEmf("HMS", 1234L));
+    assertEquals("false", emf.get("ColdStart").asText());
+    assertFalse(emf.has("InitTime"));
+    assertFalse(emf.has("SpilledBytes"));
+    assertEquals(1, emf.get("Failures").asLong());
+  }
+
+  @Test
+  public void testParallelBatchIsTimedByWallClock() throws Exception {
+    InvocationMetrics metrics = new InvocationMetrics(false);
+    metrics.setApiName(BatchMetadataRequest.BATCH_API_NAME);
+    metrics.setBatchSize(4);
+    for (int i = 0; i < 4; i++) {
+      metrics.addHandlerNanos(millis(10));
+      metrics.addThriftEncoding(millis(2), 1, false);
+    }
+    metrics.setHandlerWallNanos(millis(10));
+    metrics.addFailure();
+    metrics.addFailure();
+    metrics.finish();
+    JsonNode emf = mapper.readTree(metrics.toEmf("HMS", 1234L));
+    // the overlapping handler phases add up to the wall-clock time of the batch
+    assertEquals(8.0, emf.get("MetastoreTime").asDouble(), 0.001);
+    assertEquals(2.0, emf.get("ThriftEncodeTime").asDouble(), 0.001);
+    assertEquals(40.0, emf.get("BatchEntryTime").asDouble(), 0.001);
+    assertEquals(4, emf.get("BatchSize").asLong());
+    assertEquals(2, emf.get("Failures").asLong());
+  }
+
+  @Test
+  public void testThriftEncoderRecordsIntoCurrentMetrics() throws Exception {
+    InvocationMetrics metrics = new InvocationMetrics(false);
+    metrics.attach();
+    ThriftEncoder encoder = new ThriftEncoder(ThriftEncoding.TJSON, new TJSONProtocol.Factory());
+    encoder.encodeAll(Arrays.asList(createTable("t1"), createTable("t2")));
+    encoder.encode(createTable("t3"));
+    InvocationMetrics.detach();
+    // an encoder created without current metrics doesn't record
+    new ThriftEncoder(ThriftEncoding.TJSON, new TJSONProtocol.Factory()).encode(createTable("t4"));
+    metrics.finish();
+    JsonNode emf = mapper.readTree(metrics.toEmf("HMS", 1234L));
+    assertEquals(3, emf.get("ThriftObjects").asLong());
+    assertTrue(emf.get("ThriftEncodeTime").asDouble() > 0);
+  }
+
+  private static long millis(long millis) {
+    return TimeUnit.MILLISECONDS.toNanos(millis);
+  }
+
+  private static Table createTable(String name) {
+    Table table = new Table();
+    table.setDbName("mydb");
+    table.setTableName(name);
+    return table;
+  }
+}
@@ -0,0 +1,109 @@
+/*-
+ * #%L
+ * hms-lambda-handler
+ * %%
+ * Copyright (C) 2019 Amazon Web Services
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.amazonaws.athena.hms;
+
+import com.amazonaws.athena.hms.handler.JsonGeneratorProtocol;
+import com.amazonaws.athena.hms.handler.ThriftEncoder;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.collect.Lists;
+import org.apache.hadoop.hive.metastore.api.BooleanColumnStatsData;
+import org.apache.hadoop.hive.metastore.api.ColumnStatisticsData;
+import org.apache.hadoop.hive.metastore.api.DoubleColumnStatsData;
+import org.apache.hadoop.hive.metastore.api.FieldSchema;
+import org.apache.hadoop.hive.metastore.api.SkewedInfo;
+import org.apache.hadoop.hive.metastore.api.StorageDescriptor;
+import org.apache.hadoop.hive.metastore.api.Table;
+import org.apache.thrift.TBase;
+import org.apache.thrift.TException;
+import org.apache.thrift.TSerializer;
+import org.apache.thrift.protocol.TJSONProtocol;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TestJsonGeneratorProtocol {
+  private final ObjectMapper objectMapper = new ObjectMapper();
+
+  @Test
+  public void testTableMatchesTJson() throws TException, IOException {
+    Table table = createTable();
+    assertMatchesTJson(table);
+  }
+
+  @Test
+  public void testNumbersAndNestedStructsMatchTJson() throws TException, IOException {
+    DoubleColumnStatsData doubleStats = new DoubleColumnStatsData(3, 5);
+    doubleStats.setLowValue(-1.5);
+    doubleStats.setHighValue(Double.POSITIVE_INFINITY);
+    assertMatchesTJson(ColumnStatisticsData.doubleStats(doubleStats));
+    assertMatchesTJson(ColumnStatisticsData.booleanStats(new BooleanColumnStatsData(10L, 20L, 1L)));
+  }
+
+  @Test
+  public void testTableWithSkewedLocationsIsSentAsString() throws TException, IOException {
+    Table table = createTable();
+    SkewedInfo skewedInfo = new SkewedInfo();
+    skewedInfo.setSkewedColNames(Lists.newArrayList("c1"));
+    skewedInfo.setSkewedColValues(Collections.singletonList(Lists.newArrayList("x")));
+    skewedInfo.setSkewedColValueLocationMaps(Collections.singletonMap(Lists.newArrayList("x"), "s3://bucket/x"));
+    table.getSd().setSkewedInfo(skewedInfo);
+    ThriftEncoder encoder = new ThriftEncoder(ThriftEncoding.TJSON_EMBEDDED, new TJSONProtocol.Factory());
+    StringWriter writer = new StringWriter();
+    try (JsonGenerator generator = objectMapper.getFactory().createGenerator(writer)) {
+      encoder.encodeTo(table, generator);
+    }
+    assertTrue(objectMapper.readTree(writer.toString()).isTextual());
+    assertEquals(encoder.encode(table), objectMapper.readTree(writer.toString()).asText());
+  }
+
+  private void assertMatchesTJson(TBase<?, ?> object) throws TException, IOException {
+    StringWriter writer = new StringWriter();
+    try (JsonGenerator generator = objectMapper.getFactory().createGenerator(writer)) {
+      object.write(new JsonGeneratorProtocol(generator));
+    }
+    String tjson = new TSerializer(new TJSONProtocol.Factory()).toString(object, "UTF-8");
+    assertEquals(objectMapper.readTree(tjson), objectMapper.readTree(writer.toString()));
+  }
+
+  private static Table createTable() {
+    StorageDescriptor sd = new StorageDescriptor();
+    sd.setCols(Lists.newArrayList(new FieldSchema("c1", "string", "a \"quoted\" comment"),
+        new FieldSchema("c2", "int", null)));
+    sd.setLocation("s3://bucket/table");
+    sd.setNumBuckets(-1);
+    sd.setCompressed(true);
+    Table table = new Table();
+    table.setDbName("default");
+    table.setTableName("test");
+    table.setCreateTime(1234);
+    table.setSd(sd);
+    table.setPartitionKeys(Lists.newArrayList(new FieldSchema("dt", "string", null)));
+    table.putToParameters("EXTERNAL", "TRUE");
+    table.putToParameters("numFiles", "12");
+    return table;
+  }
+}
@@ -0,0 +1,344 @@
+/*-
+ * #%L
+ * hms-lambda-handler
+ * %%
+ * Copyright (C) 2019 Amazon Web Services
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.amazonaws.athena.hms;
+
+import com.amazonaws.athena.hms.io.S3Helper;
+import com.amazonaws.athena.hms.serde.ObjectMapperFactory;
+import com.amazonaws.services.lambda.runtime.Context;
+import com.amazonaws.services.lambda.runtime.LambdaLogger;
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.AmazonS3ClientBuilder;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.commons.io.IOUtils;
+import org.apache.thrift.TException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.MockedStatic;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.mockStatic;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
+
+public class TestMetadataHandler {
+  private MockedStatic<AmazonS3ClientBuilder> s3BuilderMock;
+  private AmazonS3 s3Client;
+  private HiveMetaStoreClient client;
+  private ObjectMapper objectMapper;
+  private Context context;
+
+  @Before
+  public void setUp() throws TException {
+    s3Client = mock(AmazonS3.class);
+    AmazonS3ClientBuilder builder = mock(AmazonS3ClientBuilder.class);
+    when(builder.withClientConfiguration(any())).thenReturn(builder);
+    when(builder.build()).thenReturn(s3Client);
+    s3BuilderMock = mockStatic(AmazonS3ClientBuilder.class);
+    s3BuilderMock.when(AmazonS3ClientBuilder::standard).thenReturn(builder);
+    client = mock(HiveMetaStoreClient.class);
+    when(client.dbExists("mydb")).thenReturn(true);
+    objectMapper = ObjectMapperFactory.create(new ApiHelper(), mock(S3Helper.class));
+    context = mock(Context.class);
+    when(context.getLogger()).thenReturn(mock(LambdaLogger.class));
+    when(context.getFunctionName()).thenReturn("hms");
+    when(context.getAwsRequestId()).thenReturn("request-1");
+  }
+
+  @After
+  public void tearDown() {
+    s3BuilderMock.close();
+  }
+
+  @Test
+  public void testInlineResponse() throws Exception {
+    MetadataHandler handler = new MetadataHandler(createFactory(HiveMetaStoreConf.DEFAULT_HMS_RESPONSE_SPILL_THRESHOLD));
+    ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+    handler.handleRequest(createDbExistsRequest(), outputStream, context);
+    MetadataResponse response = objectMapper.readValue(outputStream.toByteArray(), MetadataResponse.class);
+    assertEquals("dbExists", response.getApiName());
+    assertFalse(response.isSpilled());
+    assertTrue(((DbExistsResponse) response.getApiResponse()).isExists());
+    verify(s3Client, never()).putObject(anyString(), anyString(), any(InputStream.class), any(ObjectMetadata.class));
+  }
+
+  @Test
+  public void testSpilledResponse() throws Exception {
+    MetadataHandler handler = new MetadataHandler(createFactory(0));
+    ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+    handler.handleRequest(createDbExistsRequest(), outputStream, context);
+    MetadataResponse response = objectMapper.readValue(outputStream.toByteArray(), MetadataResponse.class);
+    assertTrue(response.isSpilled());
+    assertEquals("s3://my-hms/lambda/functions/spill/hms/request-1", response.getSpillPath());
+
+    ArgumentCaptor<InputStream> content = ArgumentCaptor.forClass(InputStream.class);
+    ArgumentCaptor<ObjectMetadata> metadata = ArgumentCaptor.forClass(ObjectMetadata.class);
+    verify(s3Client).putObject(eq("my-hms"), eq("lambda/functions/spill/hms/request-1"), content.capture(), metadata.capture());
+    byte[] spilled = IOUtils.toByteArray(content.getValue());
+    // only the ApiResponse itself is spilled, not the envelope
+    assertEquals("{\"exists\":true}", new String(spilled, StandardCharsets.UTF_8));
+    assertEquals(spilled.length, metadata.getValue().getContentLength());
+  }
+
+  @Test
+  public void testCompressedSpilledResponse() throws Exception {
+    HiveMetaStoreClientFactory factory = createFactory(0);
+    factory.getConf().setResponseSpillEncoding(SpillEncoding.GZIP);
+    MetadataHandler handler = new MetadataHandler(factory);
+    ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+    handler.handleRequest(createDbExistsRequest(), outputStream, context);
+    MetadataResponse response = objectMapper.readValue(outputStream.toByteArray(), MetadataResponse.class);
+    assertTrue(response.isSpilled());
+    assertEquals(SpillEncoding.GZIP, response.getSpillEncoding());
+
+    ArgumentCaptor<InputStream> content = ArgumentCaptor.forClass(InputStream.class);
+    verify(s3Client).putObject(eq("my-hms"), eq("lambda/functions/spill/hms/request-1"), content.capture(), any(ObjectMetadata.class));
+    byte[] spilled = IOUtils.toByteArray(new GZIPInputStream(content.getValue()));
+    assertEquals("{\"exists\":true}", new String(spilled, StandardCharsets.UTF_8));
+  }
+
+  @Test
+  public void testAdaptiveSpillInlinesResponseThatFitsPayloadLimit() throws Exception {
+    ByteArrayOutputStream inline = new ByteArrayOutputStream();
+    new MetadataHandler(createFactory(HiveMetaStoreConf.DEFAULT_HMS_RESPONSE_SPILL_THRESHOLD))
+        .handleRequest(createDbExistsRequest(), inline, context);
+    int envelopeSize = inline.size();
+
+    // a spill threshold below the API response size is ignored in the adaptive mode
+    HiveMetaStoreClientFactory factory = createFactory(1);
+    factory.getConf().setResponseSpillAdaptive(true);
+    factory.getConf().setResponseMaxPayloadSize(envelopeSize);
+    ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+    new MetadataHandler(factory).handleRequest(createDbExistsRequest(), outputStream, context);
+    assertEquals(envelopeSize, outputStream.size());
+    MetadataResponse response = objectMapper.readValue(outputStream.toByteArray(), MetadataResponse.class);
+    assertFalse(response.isSpilled());
+    verify(s3Client, never()).putObject(anyString(), anyString(), any(InputStream.class), any(ObjectMetadata.class));
+  }
+
+  @Test
+  public void testAdaptiveSpillSpillsResponseOverPayloadLimit() throws Exception {
+    ByteArrayOutputStream inline = new ByteArrayOutputStream();
+    new MetadataHandler(createFactory(HiveMetaStoreConf.DEFAULT_HMS_RESPONSE_SPILL_THRESHOLD))
+        .handleRequest(createDbExistsRequest(), inline, context);
+
+    HiveMetaStoreClientFactory factory = createFactory(HiveMetaStoreConf.DEFAULT_HMS_RESPONSE_SPILL_THRESHOLD);
+    factory.getConf().setResponseSpillAdaptive(true);
+    factory.getConf().setResponseMaxPayloadSize(inline.size() - 1);
+    ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+    new MetadataHandler(factory).handleRequest(createDbExistsRequest(), outputStream, context);
+    MetadataResponse response = objectMapper.readValue(outputStream.toByteArray(), MetadataResponse.class);
+    assertTrue(response.isSpilled());
+
+    ArgumentCaptor<InputStream> content = ArgumentCaptor.forClass(InputStream.class);
+    verify(s3Client).putObject(eq("my-hms"), eq("lambda/functions/spill/hms/request-1"), content.capture(), any(ObjectMetadata.class));
+    assertEquals("{\"exists\":true}", new String(IOUtils.toByteArray(content.getValue()), StandardCharsets.UTF_8));
+  }
+
+  @Test
+  public void testBatchRequest() throws Exception {
+    ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+    new MetadataHandler(createFactory(HiveMetaStoreConf.DEFAULT_HMS_RESPONSE_SPILL_THRESHOLD))
+        .handleRequest(createBatchRequest(), outputStream, context);
+    assertBatchResponse(objectMapper.readValue(outputStream.toByteArray(), MetadataResponse.class));
+  }
+
+  @Test
+  public void testConcurrentBatchRequest() throws Exception {
+    HiveMetaStoreClientFactory factory = createFactory(HiveMetaStoreConf.DEFAULT_HMS_RESPONSE_SPILL_THRESHOLD);
+    factory.getConf().setClientPoolEnabled(true);
+    factory.getConf().setBatchConcurrency(4);
+    ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+    new MetadataHandler(factory).handleRequest(createBatchRequest(), outputStream, context);
+    assertBatchResponse(objectMapper.readValue(outputStream.toByteArray(), MetadataResponse.class));
+  }
+
+  @Test
+  public void testBatchMetricsCountFailedRequests() throws Exception {
+    HiveMetaStoreClientFactory factory = createFactory(HiveMetaStoreConf.DEFAULT_HMS_RESPONSE_SPILL_THRESHOLD);
+    factory.getConf().setClientPoolEnabled(true);
+    factory.getConf().setBatchConcurrency(4);
+    MetadataHandler handler = new MetadataHandler(factory);
+    ByteArrayOutputStream stdout = new ByteArrayOutputStream();
+    PrintStream systemOut = System.out;
+    System.setOut(new PrintStream(stdout, true, StandardCharsets.UTF_8.name()));
+    try {
+      handler.handleRequest(createBatchRequest(), new ByteArrayOutputStream(), context);
+    }
+    finally {
+      System.setOut(systemOut);
+    }
+    JsonNode metrics = objectMapper.readTree(new String(stdout.toByteArray(), StandardCharsets.UTF_8).trim());
+    assertEquals(3, metrics.get("BatchSize").asLong());
+    assertEquals(1, metrics.get("Failures").asLong());
+    assertTrue(metrics.get("MetastoreTime").asDouble() <= metrics.get("TotalTime").asDouble());
+  }
+
+  @Test
+  public void testSpilledBatchRequest() throws Exception {
+    MetadataHandler handler = new MetadataHandler(createFactory(0));
+    ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+    handler.handleRequest(createBatchRequest(), outputStream, context);
+    MetadataResponse response = objectMapper.readValue(outputStream.toByteArray(), MetadataResponse.class);
+    assertEquals(BatchMetadataRequest.BATCH_API_NAME, response.getApiName());
+    assertTrue(response.isSpilled());
+
+    // all the API responses of the batch are spilled together
+    ArgumentCaptor<InputStream> content = ArgumentCaptor.forClass(InputStream.class);
+    verify(s3Client).putObject(eq("my-hms"), eq("lambda/functions/spill/hms/request-1"), content.capture(), any(ObjectMetadata.class));
+    BatchMetadataResponse spilled = objectMapper.readValue(IOUtils.toByteArray(content.getValue()), BatchMetadataResponse.class);
+    assertEquals(3, spilled.getResults().size());
+  }
+
+  @Test
+  public void testInvocationMetrics() throws Exception {
+    MetadataHandler handler = new MetadataHandler(createFactory(HiveMetaStoreConf.DEFAULT_HMS_RESPONSE_SPILL_THRESHOLD));
+    ByteArrayOutputStream stdout = new ByteArrayOutputStream();
+    PrintStream systemOut = System.out;
+    System.setOut(new PrintStream(stdout, true, StandardCharsets.UTF_8.name()));
+    try {
+      handler.handleRequest(createDbExistsRequest(), new ByteArrayOutputStream(), context);
+      handler.handleRequest(createDbExistsRequest(), new ByteArrayOutputStream(), context);
+    }
+    finally {
+      System.setOut(systemOut);
+    }
+    String[] lines = new String(stdout.toByteArray(), StandardCharsets.UTF_8).trim().split("\n");
+    assertEquals(2, lines.length);
+    JsonNode cold = objectMapper.readTree(lines[0]);
+    JsonNode warm = objectMapper.readTree(lines[1]);
+    assertEquals(HiveMetaStoreConf.DEFAULT_HMS_METRICS_NAMESPACE,
+        cold.get("_aws").get("CloudWatchMetrics").get(0).get("Namespace").asText());
+    assertEquals("dbExists", cold.get("ApiName").asText());
+    assertEquals("request-1", cold.get("RequestId").asText());
+    assertEquals("true", cold.get("ColdStart").asText());
+    assertTrue(cold.has("InitTime"));
+    assertEquals("false", warm.get("ColdStart").asText());
+    assertFalse(warm.has("InitTime"));
+    assertEquals("{\"exists\":true}".length(), warm.get("ResponseBytes").asLong());
+    assertEquals(0, warm.get("Failures").asLong());
+  }
+
+  @Test
+  public void testCheckpointHooks() throws Exception {
+    client = mock(HiveMetaStoreClient.class, withSettings().extraInterfaces(CheckpointAware.class));
+    when(client.dbExists("mydb")).thenReturn(true);
+    MetadataHandler handler = new MetadataHandler(createFactory(HiveMetaStoreConf.DEFAULT_HMS_RESPONSE_SPILL_THRESHOLD));
+    // the priming pass fails the test here instead of only being logged
+    handler.prime();
+    ByteArrayOutputStream stdout = new ByteArrayOutputStream();
+    PrintStream systemOut = System.out;
+    System.setOut(new PrintStream(stdout, true, StandardCharsets.UTF_8.name()));
+    try {
+      handler.handleRequest(createDbExistsRequest(), new ByteArrayOutputStream(), context);
+      handler.beforeCheckpoint();
+      verify((CheckpointAware) client).beforeCheckpoint();
+      handler.afterRestore();
+      verify((CheckpointAware) client).afterRestore();
+      handler.handleRequest(createDbExistsRequest(), new ByteArrayOutputStream(), context);
+    }
+    finally {
+      System.setOut(systemOut);
+    }
+    List<JsonNode> metrics = new ArrayList<>();
+    for (String line : new String(stdout.toByteArray(), StandardCharsets.UTF_8).trim().split("\n")) {
+      if (line.startsWith("{")) {
+        metrics.add(objectMapper.readTree(line));
+      }
+    }
+    assertEquals(2, metrics.size());
+    assertEquals("true", metrics.get(0).get("ColdStart").asText());
+    // the first invocation after a restore is a cold start too
+    assertEquals("true", metrics.get(1).get("ColdStart").asText());
+    assertTrue(metrics.get(1).has("InitTime"));
+  }
+
+  private void assertBatchResponse(MetadataResponse response) {
+    assertEquals(BatchMetadataRequest.BATCH_API_NAME, response.getApiName());
+    assertFalse(response.isSpilled());
+    List<BatchMetadataResponse.Result> results = ((BatchMetadataResponse) response.getApiResponse()).getResults();
+    assertEquals(3, results.size());
+    assertEquals("dbExists", results.get(0).getApiName());
+    assertTrue(((DbExistsResponse) results.get(0).getApiResponse()).isExists());
+    assertEquals("dbExists", results.get(1).getApiName());
+    assertFalse(((DbExistsResponse) results.get(1).getApiResponse()).isExists());
+    // a failed API request doesn't fail the rest of the batch
+    assertEquals("dbExists", results.get(2).getApiName());
+    assertFalse(results.get(2).isSuccessful());
+    assertTrue(results.get(2).getErrorMessage().contains("metastore is down"));
+  }
+
+  private HiveMetaStoreClientFactory createFactory(long spillThreshold) {
+    HiveMetaStoreConf conf = HiveMetaStoreConf.load();
+    conf.setResponseSpillThreshold(spillThreshold);
+    HiveMetaStoreClientFactory factory = mock(HiveMetaStoreClientFactory.class);
+    when(factory.getConf()).thenReturn(conf);
+    when(factory.getHiveMetaStoreClient()).thenReturn(client);
+    when(factory.getHandlerProvider()).thenReturn(new ApiNameHandlerProvider(new ApiHelper()));
+    return factory;
+  }
+
+  private InputStream createDbExistsRequest() throws IOException {
+    DbExistsRequest request = new DbExistsRequest();
+    request.setDbName("mydb");
+    MetadataRequest metadataRequest = new MetadataRequest(new RequestContext("test", "user", "12345678"), "dbExists", request);
+    return new ByteArrayInputStream(objectMapper.writeValueAsBytes(metadataRequest));
+  }
+
+  private InputStream createBatchRequest() throws Exception {
+    when(client.dbExists("otherdb")).thenReturn(false);
+    when(client.dbExists("baddb")).thenThrow(new TException("metastore is down"));
+    RequestContext requestContext = new RequestContext("test", "user", "12345678");
+    BatchMetadataRequest batchRequest = new BatchMetadataRequest(requestContext, Arrays.asList(
+        new MetadataRequest(requestContext, "dbExists", createDbExistsRequest("mydb")),
+        new MetadataRequest(requestContext, "dbExists", createDbExistsRequest("otherdb")),
+        new MetadataRequest(requestContext, "dbExists", createDbExistsRequest("baddb"))));
+    return new ByteArrayInputStream(objectMapper.writeValueAsBytes(batchRequest));
+  }
+
+  private DbExistsRequest createDbExistsRequest(String dbName) {
+    DbExistsRequest request = new DbExistsRequest();
+    request.setDbName(dbName);
+    return request;
+  }
+}
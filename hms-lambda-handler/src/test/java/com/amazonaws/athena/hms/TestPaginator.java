@@ -170,6 +170,93 @@ public class TestPaginator {
     assertEquals(original, Paginator.decrypt(encrypted));
   }
 
+  @Test
+  public void testGetAllEntriesWithCursor() throws TException {
+    StringPaginator paginator = new StringPaginator(getData(19));
+    List<String> results = new ArrayList<>();
+    PaginatedResponse<String> result;
+    String nextToken = null;
+    do {
+      result = paginator.paginateByCursor(nextToken, (short) 5);
+      results.addAll(result.getEntries());
+      nextToken = result.getNextToken();
+    } while (nextToken != null);
+    assertEquals(19, results.size());
+    assertEquals(19, new HashSet<>(results).size());
+  }
+
+  @Test
+  public void testCursorWithZeroAndAllEntries() throws TException {
+    StringPaginator paginator = new StringPaginator(getData(9));
+    PaginatedResponse<String> result = paginator.paginateByCursor(null, (short) 4);
+    String cursor = result.getNextToken();
+    assertNotNull(cursor);
+    result = paginator.paginateByCursor(cursor, (short) 0);
+    assertEquals(cursor, result.getNextToken());
+    assertTrue(result.getEntries().isEmpty());
+    result = paginator.paginateByCursor(cursor, (short) -1);
+    assertNull(result.getNextToken());
+    assertEquals(5, result.getEntries().size());
+  }
+
+  @Test
+  public void testCursorResumesAfterRemovedKey() throws TException {
+    Map<String, String> data = getData(9);
+    StringPaginator paginator = new StringPaginator(data);
+    PaginatedResponse<String> result = paginator.paginateByCursor(null, (short) 4);
+    // k3 is the last entry of the first page
+    assertEquals("v3", result.getEntries().get(3));
+    data.remove("k3");
+    result = paginator.paginateByCursor(result.getNextToken(), (short) 4);
+    assertEquals(4, result.getEntries().size());
+    assertEquals("v4", result.getEntries().get(0));
+  }
+
+  @Test
+  public void testCursorAcceptsNameBasedToken() throws TException {
+    StringPaginator paginator = new StringPaginator(getData(9));
+    PaginatedResponse<String> result = paginator.paginateByCursor(Paginator.encrypt("k4"), (short) 4);
+    assertEquals(4, result.getEntries().size());
+    assertEquals("v4", result.getEntries().get(0));
+    assertNotNull(result.getNextToken());
+  }
+
+  @Test
+  public void testCursorReusesCachedNames() throws TException {
+    SortedNamesCache cache = new SortedNamesCache(4, 60000);
+    StringPaginator paginator = new StringPaginator(getData(16), cache);
+    PaginatedResponse<String> result = paginator.paginateByCursor(null, (short) 4);
+    assertEquals(1, paginator.getNamesCalls);
+    Set<String> resultSet = new HashSet<>(result.getEntries());
+    while (result.getNextToken() != null) {
+      result = paginator.paginateByCursor(result.getNextToken(), (short) 4);
+      resultSet.addAll(result.getEntries());
+    }
+    assertEquals(16, resultSet.size());
+    // the following pages are served from the cached snapshot
+    assertEquals(1, paginator.getNamesCalls);
+    assertEquals(1, cache.size());
+    // the first page always refreshes the snapshot
+    paginator.paginateByCursor(null, (short) 4);
+    assertEquals(2, paginator.getNamesCalls);
+  }
+
+  @Test
+  public void testCursorRefetchesNamesForStaleSnapshot() throws TException {
+    SortedNamesCache cache = new SortedNamesCache(4, 60000);
+    Map<String, String> data = getData(8);
+    StringPaginator paginator = new StringPaginator(data, cache);
+    PaginatedResponse<String> result = paginator.paginateByCursor(null, (short) 4);
+    String cursor = result.getNextToken();
+    // another listing replaces the cached snapshot with a different one
+    data.put("k8", "v8");
+    paginator.paginateByCursor(null, (short) 4);
+    assertEquals(2, paginator.getNamesCalls);
+    result = paginator.paginateByCursor(cursor, (short) 8);
+    assertEquals(3, paginator.getNamesCalls);
+    assertEquals(5, result.getEntries().size());
+  }
+
   private Map<String, String> getData(int num) {
     Map<String, String> map = new HashMap<>();
     for (int i = 0; i < num; i++) {
@@ -180,16 +267,28 @@ public class TestPaginator {
 
   static class StringPaginator extends Paginator<String> {
     private final Map<String, String> map;
+    private int getNamesCalls;
 
     public StringPaginator(Map<String, String> map) {
       this.map = map;
     }
 
+    public StringPaginator(Map<String, String> map, SortedNamesCache cache) {
+      super(cache);
+      this.map = map;
+    }
+
     @Override
     protected Collection<String> getNames() throws TException {
+      getNamesCalls++;
       return map.keySet();
     }
 
+    @Override
+    protected String getNamesCacheKey() {
+      return "strings";
+    }
+
     @Override
     protected List<String> getEntriesByNames(List<String> names) throws TException {
       List<String> list = new ArrayList<>();
@@ -19,6 +19,20 @@
  */
 package com.amazonaws.athena.hms;
 
+import java.util.List;
+
 public class AddPartitionsResponse extends ApiResponse
 {
+  // the outcome of every chunk in the bulk write mode, null if the partitions were written in a single call
+  private List<PartitionChunkResult> chunks;
+
+  public List<PartitionChunkResult> getChunks()
+  {
+    return chunks;
+  }
+
+  public void setChunks(List<PartitionChunkResult> chunks)
+  {
+    this.chunks = chunks;
+  }
 }
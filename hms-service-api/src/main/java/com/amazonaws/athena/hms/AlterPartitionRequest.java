@@ -19,7 +19,7 @@
  */
 package com.amazonaws.athena.hms;
 
-public class AlterPartitionRequest extends ApiRequest
+public class AlterPartitionRequest extends ApiRequest implements TableRequest
 {
   private String dbName;
   private String tableName;
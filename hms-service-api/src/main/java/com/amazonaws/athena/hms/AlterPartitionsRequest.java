@@ -21,7 +21,7 @@ package com.amazonaws.athena.hms;
 
 import java.util.List;
 
-public class AlterPartitionsRequest extends ApiRequest
+public class AlterPartitionsRequest extends ApiRequest implements TableRequest
 {
   private String dbName;
   private String tableName;
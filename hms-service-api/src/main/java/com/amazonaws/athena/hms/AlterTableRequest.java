@@ -19,7 +19,7 @@
  */
 package com.amazonaws.athena.hms;
 
-public class AlterTableRequest extends ApiRequest
+public class AlterTableRequest extends ApiRequest implements TableRequest
 {
   private String dbName;
   private String tableName;
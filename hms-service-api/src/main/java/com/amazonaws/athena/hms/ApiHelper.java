@@ -19,7 +19,6 @@
  */
 package com.amazonaws.athena.hms;
 
-import java.lang.reflect.Method;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Set;
@@ -66,19 +65,15 @@ public final class ApiHelper<REQUEST extends ApiRequest, RESPONSE extends ApiRes
     return null;
   }
 
+  // the APIs of HiveMetaStoreService are listed at build time, so there is no reflection at cold start
   private void populateApiContexts()
   {
-    Method[] methods = HiveMetaStoreService.class.getDeclaredMethods();
-    for (Method method : methods) {
-      Class[] requestParameters = method.getParameterTypes();
-      // HiveMetaStoreService APIs always follow request/response format
-      if (requestParameters.length == 1) {
-        Class requestClass = requestParameters[0];
-        ApiContext<REQUEST, RESPONSE> apiContext =
-            new ApiContext(method.getName(), requestParameters[0], method.getReturnType());
-        apiContextMap.put(requestClass, apiContext);
-        apiNameMap.put(apiContext.getApiName(), apiContext);
-      }
+    for (int i = 0; i < HiveMetaStoreServiceApis.API_NAMES.length; i++) {
+      Class requestClass = HiveMetaStoreServiceApis.REQUEST_CLASSES[i];
+      ApiContext<REQUEST, RESPONSE> apiContext =
+          new ApiContext(HiveMetaStoreServiceApis.API_NAMES[i], requestClass, HiveMetaStoreServiceApis.RESPONSE_CLASSES[i]);
+      apiContextMap.put(requestClass, apiContext);
+      apiNameMap.put(apiContext.getApiName(), apiContext);
     }
   }
 
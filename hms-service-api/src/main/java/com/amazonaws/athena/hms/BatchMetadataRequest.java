@@ -0,0 +1,50 @@
+/*-
+ * #%L
+ * hms-service-api
+ * %%
+ * Copyright (C) 2019 Amazon Web Services
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.amazonaws.athena.hms;
+
+import java.util.Collections;
+import java.util.List;
+
+// a MetadataRequest that carries many API requests so that they are executed in a single Lambda invocation,
+// the API requests share the RequestContext and the accepted encoding of the batch, and their responses are
+// returned together in a BatchMetadataResponse
+public class BatchMetadataRequest extends MetadataRequest
+{
+  public static final String BATCH_API_NAME = "batch";
+  public static final String REQUESTS = "requests";
+
+  private final List<MetadataRequest> requests;
+
+  public BatchMetadataRequest(RequestContext context, List<MetadataRequest> requests)
+  {
+    this(context, requests, ThriftEncoding.TJSON);
+  }
+
+  public BatchMetadataRequest(RequestContext context, List<MetadataRequest> requests, ThriftEncoding acceptEncoding)
+  {
+    super(context, BATCH_API_NAME, null, acceptEncoding);
+    this.requests = requests == null ? Collections.emptyList() : Collections.unmodifiableList(requests);
+  }
+
+  public List<MetadataRequest> getRequests()
+  {
+    return requests;
+  }
+}
@@ -0,0 +1,87 @@
+/*-
+ * #%L
+ * hms-service-api
+ * %%
+ * Copyright (C) 2019 Amazon Web Services
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.amazonaws.athena.hms;
+
+import java.util.Collections;
+import java.util.List;
+
+// the API response of a BatchMetadataRequest, with one result per API request in the same order. A failed API
+// request doesn't fail the others, its result carries the error message instead of the API response
+public class BatchMetadataResponse extends ApiResponse
+{
+  public static final String RESPONSES = "responses";
+  public static final String ERROR_MESSAGE = "errorMessage";
+
+  private final List<Result> results;
+
+  public BatchMetadataResponse(List<Result> results)
+  {
+    this.results = results == null ? Collections.emptyList() : Collections.unmodifiableList(results);
+  }
+
+  public List<Result> getResults()
+  {
+    return results;
+  }
+
+  public static class Result
+  {
+    private final String apiName;
+    private final ApiResponse apiResponse;
+    private final String errorMessage;
+
+    public Result(String apiName, ApiResponse apiResponse, String errorMessage)
+    {
+      this.apiName = apiName;
+      this.apiResponse = apiResponse;
+      this.errorMessage = errorMessage;
+    }
+
+    public static Result success(String apiName, ApiResponse apiResponse)
+    {
+      return new Result(apiName, apiResponse, null);
+    }
+
+    public static Result failure(String apiName, String errorMessage)
+    {
+      return new Result(apiName, null, errorMessage);
+    }
+
+    public String getApiName()
+    {
+      return apiName;
+    }
+
+    public ApiResponse getApiResponse()
+    {
+      return apiResponse;
+    }
+
+    public String getErrorMessage()
+    {
+      return errorMessage;
+    }
+
+    public boolean isSuccessful()
+    {
+      return errorMessage == null;
+    }
+  }
+}
@@ -21,11 +21,13 @@ package com.amazonaws.athena.hms;
 
 import java.util.List;
 
-public class DropPartitionsRequest extends ApiRequest
+public class DropPartitionsRequest extends ApiRequest implements TableRequest
 {
   private String dbName;
   private String tableName;
   private List<String> partNames;
+  // resumes a chunked drop after the partitions dropped by the previous invocation
+  private String nextToken;
 
   public String getDbName()
   {
@@ -57,6 +59,16 @@ public class DropPartitionsRequest extends ApiRequest
     this.partNames = partNames;
   }
 
+  public String getNextToken()
+  {
+    return nextToken;
+  }
+
+  public void setNextToken(String nextToken)
+  {
+    this.nextToken = nextToken;
+  }
+
   public DropPartitionsRequest withDbName(String dbName)
   {
     this.dbName = dbName;
@@ -74,4 +86,10 @@ public class DropPartitionsRequest extends ApiRequest
     this.partNames = partNames;
     return this;
   }
+
+  public DropPartitionsRequest withNextToken(String nextToken)
+  {
+    this.nextToken = nextToken;
+    return this;
+  }
 }
@@ -19,9 +19,15 @@
  */
 package com.amazonaws.athena.hms;
 
+import java.util.List;
+
 public class DropPartitionsResponse extends ApiResponse
 {
   private String result;
+  // the outcome of every chunk in the chunked mode, null if the partitions were dropped in a single call
+  private List<PartitionChunkResult> chunks;
+  // set if the chunked mode ran out of time, pass it in the next request to drop the remaining partitions
+  private String nextToken;
 
   public String getResult()
   {
@@ -32,4 +38,24 @@ public class DropPartitionsResponse extends ApiResponse
   {
     this.result = result;
   }
+
+  public List<PartitionChunkResult> getChunks()
+  {
+    return chunks;
+  }
+
+  public void setChunks(List<PartitionChunkResult> chunks)
+  {
+    this.chunks = chunks;
+  }
+
+  public String getNextToken()
+  {
+    return nextToken;
+  }
+
+  public void setNextToken(String nextToken)
+  {
+    this.nextToken = nextToken;
+  }
 }
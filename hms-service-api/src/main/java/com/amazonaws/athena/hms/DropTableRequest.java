@@ -19,7 +19,7 @@
  */
 package com.amazonaws.athena.hms;
 
-public class DropTableRequest extends ApiRequest
+public class DropTableRequest extends ApiRequest implements TableRequest
 {
   private String dbName;
   private String tableName;
@@ -19,7 +19,7 @@
  */
 package com.amazonaws.athena.hms;
 
-public class GetPartitionNamesRequest extends ApiRequest
+public class GetPartitionNamesRequest extends ApiRequest implements TableRequest
 {
   private String dbName;
   private String tableName;
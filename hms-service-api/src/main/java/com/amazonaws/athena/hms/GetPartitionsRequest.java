@@ -19,7 +19,7 @@
  */
 package com.amazonaws.athena.hms;
 
-public class GetPartitionsRequest extends ApiRequest
+public class GetPartitionsRequest extends ApiRequest implements TableRequest
 {
   private String dbName;
   private String tableName;
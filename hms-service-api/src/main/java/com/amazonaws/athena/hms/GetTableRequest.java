@@ -19,7 +19,7 @@
  */
 package com.amazonaws.athena.hms;
 
-public class GetTableRequest extends ApiRequest
+public class GetTableRequest extends ApiRequest implements TableRequest
 {
   private String dbName;
   private String tableName;
@@ -19,9 +19,13 @@
  */
 package com.amazonaws.athena.hms;
 
+import com.amazonaws.athena.hms.processor.GenerateApiRegistry;
+
 // An API interface to wrap Hive MetaStore APIs into Request and Response objects so that
 // we could use a generic way to handle/serialize/deserialize them and we don't need to
-// deal with different types and different numbers of parameters and returning variables
+// deal with different types and different numbers of parameters and returning variables.
+// The APIs are listed in the generated HiveMetaStoreServiceApis at build time
+@GenerateApiRegistry
 public interface HiveMetaStoreService
 {
   // HMS API:  Partition addPartition(Partition partition) throws TException;
@@ -19,7 +19,7 @@
  */
 package com.amazonaws.athena.hms;
 
-public class ListPartitionsRequest extends ApiRequest
+public class ListPartitionsRequest extends ApiRequest implements TableRequest
 {
   private String dbName;
   private String tableName;
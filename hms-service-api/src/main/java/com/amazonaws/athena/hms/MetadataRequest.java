@@ -24,6 +24,7 @@ public class MetadataRequest implements AutoCloseable
   public static final String REQUEST_CONTEXT = "requestContext";
   public static final String API_NAME = "apiName";
   public static final String API_REQUEST = "apiRequest";
+  public static final String ACCEPT_ENCODING = "acceptEncoding";
 
   private final RequestContext context;
 
@@ -32,11 +33,20 @@ public class MetadataRequest implements AutoCloseable
 
   private final ApiRequest apiRequest;
 
+  // the encoding of Thrift objects that the client prefers in the response
+  private final ThriftEncoding acceptEncoding;
+
   public MetadataRequest(RequestContext context, String apiName, ApiRequest apiRequest)
+  {
+    this(context, apiName, apiRequest, ThriftEncoding.TJSON);
+  }
+
+  public MetadataRequest(RequestContext context, String apiName, ApiRequest apiRequest, ThriftEncoding acceptEncoding)
   {
     this.context = context;
     this.apiName = apiName;
     this.apiRequest = apiRequest;
+    this.acceptEncoding = acceptEncoding == null ? ThriftEncoding.TJSON : acceptEncoding;
   }
 
   public RequestContext getContext()
@@ -54,6 +64,11 @@ public class MetadataRequest implements AutoCloseable
     return apiRequest;
   }
 
+  public ThriftEncoding getAcceptEncoding()
+  {
+    return acceptEncoding;
+  }
+
   @Override
   public void close() throws Exception
   {
@@ -25,6 +25,8 @@ public class MetadataResponse implements AutoCloseable
   public static final String IS_SPILLED = "spilled";
   public static final String SPILL_PATH = "spillPath";
   public static final String API_RESPONSE = "apiResponse";
+  public static final String THRIFT_ENCODING = "thriftEncoding";
+  public static final String SPILL_ENCODING = "spillEncoding";
 
   private final String apiName;
 
@@ -39,12 +41,32 @@ public class MetadataResponse implements AutoCloseable
 
   private final ApiResponse apiResponse;
 
+  // the encoding of the Thrift objects in the API response
+  private final ThriftEncoding thriftEncoding;
+
+  // how the spilled response is encoded in s3
+  private final SpillEncoding spillEncoding;
+
   public MetadataResponse(String apiName, boolean spilled, String spillPath, ApiResponse apiResponse)
+  {
+    this(apiName, spilled, spillPath, apiResponse, ThriftEncoding.TJSON);
+  }
+
+  public MetadataResponse(String apiName, boolean spilled, String spillPath, ApiResponse apiResponse,
+                          ThriftEncoding thriftEncoding)
+  {
+    this(apiName, spilled, spillPath, apiResponse, thriftEncoding, SpillEncoding.IDENTITY);
+  }
+
+  public MetadataResponse(String apiName, boolean spilled, String spillPath, ApiResponse apiResponse,
+                          ThriftEncoding thriftEncoding, SpillEncoding spillEncoding)
   {
     this.apiName = apiName;
     this.spilled = spilled;
     this.spillPath = spillPath;
     this.apiResponse = apiResponse;
+    this.thriftEncoding = thriftEncoding == null ? ThriftEncoding.TJSON : thriftEncoding;
+    this.spillEncoding = spillEncoding == null ? SpillEncoding.IDENTITY : spillEncoding;
   }
 
   public String getApiName()
@@ -67,6 +89,16 @@ public class MetadataResponse implements AutoCloseable
     return apiResponse;
   }
 
+  public ThriftEncoding getThriftEncoding()
+  {
+    return thriftEncoding;
+  }
+
+  public SpillEncoding getSpillEncoding()
+  {
+    return spillEncoding;
+  }
+
   @Override
   public void close() throws Exception
   {
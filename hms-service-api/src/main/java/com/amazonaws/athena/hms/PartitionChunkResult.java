@@ -0,0 +1,95 @@
+/*-
+ * #%L
+ * hms-service-api
+ * %%
+ * Copyright (C) 2019 Amazon Web Services
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.amazonaws.athena.hms;
+
+// the outcome of one chunk of a bulk partition write, the chunk covers the partitions
+// [offset, offset + count) of the request and was written in its own metastore transaction. For a chunked
+// drop the offset is into the partition names sorted by name
+public class PartitionChunkResult
+{
+  private int offset;
+  private int count;
+  private boolean success;
+  private String errorMessage;
+
+  public int getOffset()
+  {
+    return offset;
+  }
+
+  public void setOffset(int offset)
+  {
+    this.offset = offset;
+  }
+
+  public int getCount()
+  {
+    return count;
+  }
+
+  public void setCount(int count)
+  {
+    this.count = count;
+  }
+
+  public boolean isSuccess()
+  {
+    return success;
+  }
+
+  public void setSuccess(boolean success)
+  {
+    this.success = success;
+  }
+
+  public String getErrorMessage()
+  {
+    return errorMessage;
+  }
+
+  public void setErrorMessage(String errorMessage)
+  {
+    this.errorMessage = errorMessage;
+  }
+
+  public PartitionChunkResult withOffset(int offset)
+  {
+    this.offset = offset;
+    return this;
+  }
+
+  public PartitionChunkResult withCount(int count)
+  {
+    this.count = count;
+    return this;
+  }
+
+  public PartitionChunkResult withSuccess(boolean success)
+  {
+    this.success = success;
+    return this;
+  }
+
+  public PartitionChunkResult withErrorMessage(String errorMessage)
+  {
+    this.errorMessage = errorMessage;
+    return this;
+  }
+}
@@ -19,7 +19,7 @@
  */
 package com.amazonaws.athena.hms;
 
-public class PartitionsByExprRequest extends ApiRequest
+public class PartitionsByExprRequest extends ApiRequest implements TableRequest
 {
     private String dbName;
     private String tableName;
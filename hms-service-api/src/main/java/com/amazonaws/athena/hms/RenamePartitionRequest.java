@@ -21,7 +21,7 @@ package com.amazonaws.athena.hms;
 
 import java.util.List;
 
-public class RenamePartitionRequest extends ApiRequest
+public class RenamePartitionRequest extends ApiRequest implements TableRequest
 {
     private String dbName;
     private String tableName;
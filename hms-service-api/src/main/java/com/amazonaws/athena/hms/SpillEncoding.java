@@ -0,0 +1,51 @@
+/*-
+ * #%L
+ * hms-service-api
+ * %%
+ * Copyright (C) 2019 Amazon Web Services
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.amazonaws.athena.hms;
+
+import java.io.IOException;
+
+// How a spilled API response is encoded in S3. The Lambda function tells which encoding it used in
+// MetadataResponse so that the client could decode the spilled response transparently
+public enum SpillEncoding
+{
+  // the plain JSON bytes of the API response, the default
+  IDENTITY,
+  // gzip compressed JSON bytes, partition metadata usually compresses more than 10x
+  GZIP;
+
+  /*
+   * get the encoding by its name
+   *
+   * @return SpillEncoding or IDENTITY if the name is null
+   * @throws IOException if the encoding is unknown to this version, the spilled bytes couldn't be decoded
+   */
+  public static SpillEncoding fromName(String name) throws IOException
+  {
+    if (name == null) {
+      return IDENTITY;
+    }
+    for (SpillEncoding encoding : values()) {
+      if (encoding.name().equals(name)) {
+        return encoding;
+      }
+    }
+    throw new IOException("Unsupported spill encoding " + name);
+  }
+}
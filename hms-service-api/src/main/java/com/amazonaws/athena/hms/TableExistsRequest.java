@@ -19,7 +19,7 @@
  */
 package com.amazonaws.athena.hms;
 
-public class TableExistsRequest extends ApiRequest
+public class TableExistsRequest extends ApiRequest implements TableRequest
 {
   private String dbName;
   private String tableName;
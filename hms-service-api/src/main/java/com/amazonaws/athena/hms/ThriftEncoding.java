@@ -0,0 +1,51 @@
+/*-
+ * #%L
+ * hms-service-api
+ * %%
+ * Copyright (C) 2019 Amazon Web Services
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.amazonaws.athena.hms;
+
+// How Thrift objects such as Table and Partition are encoded as strings in API requests and responses.
+// A client that understands a more compact encoding asks for it in MetadataRequest and the Lambda function
+// tells which encoding it actually used in MetadataResponse, old clients keep getting TJSON
+public enum ThriftEncoding
+{
+  // TJSONProtocol strings, the default
+  TJSON,
+  // base64 encoded TCompactProtocol bytes, usually 2-3x smaller than TJSON once escaped in the JSON envelope
+  TCOMPACT_BASE64,
+  // the TJSON structure embedded in the response as a JSON value instead of an escaped string, only used
+  // on the wire, the deserializer hands the objects out as TJSON strings again
+  TJSON_EMBEDDED;
+
+  /*
+   * get the encoding by its name
+   *
+   * @return ThriftEncoding or TJSON if the name is null or unknown to this version
+   */
+  public static ThriftEncoding fromName(String name)
+  {
+    if (name != null) {
+      for (ThriftEncoding encoding : values()) {
+        if (encoding.name().equals(name)) {
+          return encoding;
+        }
+      }
+    }
+    return TJSON;
+  }
+}
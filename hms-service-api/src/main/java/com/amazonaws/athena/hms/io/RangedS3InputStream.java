@@ -0,0 +1,199 @@
+/*-
+ * #%L
+ * hms-service-api
+ * %%
+ * Copyright (C) 2019 Amazon Web Services
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.amazonaws.athena.hms.io;
+
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.AmazonS3Exception;
+import com.amazonaws.services.s3.model.GetObjectRequest;
+import com.amazonaws.services.s3.model.S3Object;
+import com.amazonaws.util.IOUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+// an input stream over an s3 object that reads it with ranged GETs. The first range is streamed right away
+// and tells the object size, so small objects take a single request. The following ranges of a large object
+// are fetched in parallel ahead of the reader, so that the memory used is bounded by the range size times
+// the parallelism instead of the object size
+public class RangedS3InputStream extends InputStream
+{
+  // s3 returns 416 for a ranged GET of an empty object
+  private static final int RANGE_NOT_SATISFIABLE = 416;
+
+  private final AmazonS3 s3Client;
+  private final String bucket;
+  private final String key;
+  private final int rangeSize;
+  private final int parallelism;
+  private final Deque<Future<byte[]>> prefetched = new ArrayDeque<>();
+  private ExecutorService executor;
+  private InputStream current;
+  private long objectSize = -1;
+  private long nextRangeStart;
+  private boolean closed;
+
+  public RangedS3InputStream(AmazonS3 s3Client, String bucket, String key, int rangeSize, int parallelism)
+  {
+    this.s3Client = s3Client;
+    this.bucket = bucket;
+    this.key = key;
+    this.rangeSize = rangeSize;
+    this.parallelism = Math.max(parallelism, 1);
+  }
+
+  // the size of the s3 object, or -1 if nothing has been read yet
+  public long getObjectSize()
+  {
+    return objectSize;
+  }
+
+  @Override
+  public int read() throws IOException
+  {
+    byte[] b = new byte[1];
+    int n = read(b, 0, 1);
+    return n < 0 ? -1 : b[0] & 0xff;
+  }
+
+  @Override
+  public int read(byte[] b, int off, int len) throws IOException
+  {
+    if (closed) {
+      throw new IOException("Stream is closed");
+    }
+    if (len == 0) {
+      return 0;
+    }
+    if (current == null) {
+      openFirstRange();
+    }
+    while (true) {
+      int n = current.read(b, off, len);
+      if (n >= 0) {
+        return n;
+      }
+      if (!nextRange()) {
+        return -1;
+      }
+    }
+  }
+
+  @Override
+  public void close() throws IOException
+  {
+    if (closed) {
+      return;
+    }
+    closed = true;
+    if (executor != null) {
+      executor.shutdownNow();
+    }
+    prefetched.clear();
+    if (current != null) {
+      current.close();
+    }
+  }
+
+  private void openFirstRange() throws IOException
+  {
+    try {
+      S3Object object = s3Client.getObject(new GetObjectRequest(bucket, key).withRange(0, rangeSize - 1));
+      objectSize = object.getObjectMetadata().getInstanceLength();
+      current = object.getObjectContent();
+    }
+    catch (AmazonS3Exception e) {
+      if (e.getStatusCode() != RANGE_NOT_SATISFIABLE) {
+        throw e;
+      }
+      objectSize = 0;
+      current = new ByteArrayInputStream(new byte[0]);
+    }
+    nextRangeStart = Math.min(rangeSize, objectSize);
+    if (parallelism > 1 && nextRangeStart < objectSize) {
+      executor = Executors.newFixedThreadPool(parallelism, runnable -> {
+        Thread thread = new Thread(runnable, "s3-ranged-reader");
+        thread.setDaemon(true);
+        return thread;
+      });
+      for (int i = 0; i < parallelism; i++) {
+        prefetchNextRange();
+      }
+    }
+  }
+
+  // move to the next range, returns false if the end of the object is reached
+  private boolean nextRange() throws IOException
+  {
+    current.close();
+    if (executor == null) {
+      if (nextRangeStart >= objectSize) {
+        return false;
+      }
+      current = getRange(nextRangeStart).getObjectContent();
+      nextRangeStart = Math.min(nextRangeStart + rangeSize, objectSize);
+      return true;
+    }
+    Future<byte[]> next = prefetched.poll();
+    if (next == null) {
+      return false;
+    }
+    try {
+      current = new ByteArrayInputStream(next.get());
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while reading s3://" + bucket + "/" + key);
+    }
+    catch (ExecutionException e) {
+      throw new IOException("Failed to read s3://" + bucket + "/" + key, e.getCause());
+    }
+    // keep the same number of ranges in flight
+    prefetchNextRange();
+    return true;
+  }
+
+  private void prefetchNextRange()
+  {
+    if (nextRangeStart >= objectSize) {
+      return;
+    }
+    long start = nextRangeStart;
+    nextRangeStart = Math.min(nextRangeStart + rangeSize, objectSize);
+    prefetched.add(executor.submit(() -> {
+      try (InputStream in = getRange(start).getObjectContent()) {
+        return IOUtils.toByteArray(in);
+      }
+    }));
+  }
+
+  private S3Object getRange(long start)
+  {
+    long end = Math.min(start + rangeSize, objectSize) - 1;
+    return s3Client.getObject(new GetObjectRequest(bucket, key).withRange(start, end));
+  }
+}
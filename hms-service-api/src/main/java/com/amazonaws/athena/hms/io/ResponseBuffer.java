@@ -0,0 +1,41 @@
+/*-
+ * #%L
+ * hms-service-api
+ * %%
+ * Copyright (C) 2019 Amazon Web Services
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.amazonaws.athena.hms.io;
+
+import java.io.ByteArrayOutputStream;
+
+// an in-memory buffer that a response is serialized into exactly once. It keeps track of the
+// number of bytes written so that we don't need to materialize the response as a String just
+// to get its size, and its content could be flushed to the Lambda output stream without copying
+// the underlying byte array
+public class ResponseBuffer extends ByteArrayOutputStream
+{
+  private static final int DEFAULT_INITIAL_SIZE = 64 * 1024;
+
+  public ResponseBuffer()
+  {
+    super(DEFAULT_INITIAL_SIZE);
+  }
+
+  public ResponseBuffer(int initialSize)
+  {
+    super(initialSize);
+  }
+}
@@ -19,24 +19,41 @@
  */
 package com.amazonaws.athena.hms.io;
 
+import com.amazonaws.athena.hms.SpillEncoding;
 import com.amazonaws.services.s3.AmazonS3;
 import com.amazonaws.services.s3.AmazonS3URI;
-import com.amazonaws.services.s3.model.GetObjectRequest;
+import com.amazonaws.util.IOUtils;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStreamReader;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPInputStream;
 
 public class S3Helper
 {
+  public static final int DEFAULT_READ_RANGE_SIZE = 8 * 1024 * 1024;
+  public static final int DEFAULT_READ_PARALLELISM = 4;
+  private static final int GZIP_BUFFER_SIZE = 64 * 1024;
+
   private final AmazonS3 s3Client;
   private final ObjectMapper objectMapper;
+  // the size of each ranged GET when reading a spilled response
+  private final int readRangeSize;
+  // the max number of ranged GETs in flight when reading a large spilled response
+  private final int readParallelism;
 
   public S3Helper(AmazonS3 s3Client)
+  {
+    this(s3Client, DEFAULT_READ_RANGE_SIZE, DEFAULT_READ_PARALLELISM);
+  }
+
+  public S3Helper(AmazonS3 s3Client, int readRangeSize, int readParallelism)
   {
     this.s3Client = s3Client;
     this.objectMapper = new ObjectMapper();
+    this.readRangeSize = readRangeSize;
+    this.readParallelism = readParallelism;
   }
 
   public void saveResponseToS3(String s3Path, String responseAsString)
@@ -47,30 +64,65 @@ public class S3Helper
     s3Client.putObject(bucket, key, responseAsString);
   }
 
-  public String getResponseFromS3(String s3Path) throws IOException
+  /*
+   * open a stream that encodes the response and uploads it to s3 in parts while it is being written
+   *
+   * @return SpillOutputStream, the upload completes when the stream is closed
+   */
+  public SpillOutputStream openResponseStream(String s3Path, SpillEncoding encoding) throws IOException
+  {
+    AmazonS3URI s3URI = new AmazonS3URI(s3Path);
+    return new SpillOutputStream(new S3MultipartOutputStream(s3Client, s3URI.getBucket(), s3URI.getKey()), encoding);
+  }
+
+  /*
+   * open a stream over a spilled response that decodes it based on the SpillEncoding
+   *
+   * @return InputStream of the plain JSON bytes of the response
+   */
+  public InputStream openResponseInputStream(String s3Path, SpillEncoding encoding) throws IOException
   {
     if (s3Path == null) {
       throw new IOException("S3 path is null");
     }
     AmazonS3URI s3URI = new AmazonS3URI(s3Path);
-    String bucket = s3URI.getBucket();
-    String key = s3URI.getKey();
-    BufferedReader br = new BufferedReader(new InputStreamReader(
-        s3Client.getObject(new GetObjectRequest(bucket, key)).getObjectContent()));
-
-    String line;
-    StringBuilder sb = new StringBuilder();
-    // read the files until it reaches the end of the file
-    while ((line = br.readLine()) != null) {
-      sb.append(line);
+    InputStream in = new RangedS3InputStream(s3Client, s3URI.getBucket(), s3URI.getKey(), readRangeSize, readParallelism);
+    if (encoding == SpillEncoding.GZIP) {
+      try {
+        return new GZIPInputStream(in, GZIP_BUFFER_SIZE);
+      }
+      catch (IOException | RuntimeException e) {
+        in.close();
+        throw e;
+      }
     }
+    return in;
+  }
 
-    return sb.toString();
+  public String getResponseFromS3(String s3Path) throws IOException
+  {
+    try (InputStream in = openResponseInputStream(s3Path, SpillEncoding.IDENTITY)) {
+      return new String(IOUtils.toByteArray(in), StandardCharsets.UTF_8);
+    }
   }
 
   public <T> T getResponseFromS3As(Class<T> clazz, String s3Path) throws IOException
   {
-    String responseAsString = getResponseFromS3(s3Path);
-    return objectMapper.readValue(responseAsString, clazz);
+    return getResponseFromS3As(clazz, s3Path, SpillEncoding.IDENTITY);
+  }
+
+  // parse the response directly from the s3 stream without materializing it as a String
+  public <T> T getResponseFromS3As(Class<T> clazz, String s3Path, SpillEncoding encoding) throws IOException
+  {
+    return getResponseFromS3As(objectMapper, clazz, s3Path, encoding);
+  }
+
+  // parse the response with the given mapper, for responses that need custom deserializers
+  public <T> T getResponseFromS3As(ObjectMapper mapper, Class<T> clazz, String s3Path, SpillEncoding encoding)
+      throws IOException
+  {
+    try (InputStream in = openResponseInputStream(s3Path, encoding)) {
+      return mapper.readValue(in, clazz);
+    }
   }
 }
@@ -0,0 +1,184 @@
+/*-
+ * #%L
+ * hms-service-api
+ * %%
+ * Copyright (C) 2019 Amazon Web Services
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.amazonaws.athena.hms.io;
+
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.AbortMultipartUploadRequest;
+import com.amazonaws.services.s3.model.CompleteMultipartUploadRequest;
+import com.amazonaws.services.s3.model.InitiateMultipartUploadRequest;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.model.PartETag;
+import com.amazonaws.services.s3.model.UploadPartRequest;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+// an output stream that uploads its content to s3 while it is being written. The content is buffered
+// one part at a time and uploaded as a multipart upload, so the memory used is bounded by the part
+// size instead of the object size. Content smaller than one part is uploaded with a single putObject
+public class S3MultipartOutputStream extends OutputStream
+{
+  // s3 requires all the parts but the last one to be at least 5MB
+  public static final int MIN_PART_SIZE = 5 * 1024 * 1024;
+  public static final int DEFAULT_PART_SIZE = 8 * 1024 * 1024;
+
+  private final AmazonS3 s3Client;
+  private final String bucket;
+  private final String key;
+  private final byte[] part;
+  private final List<PartETag> partETags = new ArrayList<>();
+  private int partLength;
+  private String uploadId;
+  private long bytesWritten;
+  // the time spent in the s3 calls
+  private long uploadNanos;
+  private boolean closed;
+
+  public S3MultipartOutputStream(AmazonS3 s3Client, String bucket, String key)
+  {
+    this(s3Client, bucket, key, DEFAULT_PART_SIZE);
+  }
+
+  public S3MultipartOutputStream(AmazonS3 s3Client, String bucket, String key, int partSize)
+  {
+    this.s3Client = s3Client;
+    this.bucket = bucket;
+    this.key = key;
+    this.part = new byte[Math.max(partSize, MIN_PART_SIZE)];
+  }
+
+  public long getBytesWritten()
+  {
+    return bytesWritten;
+  }
+
+  public long getUploadNanos()
+  {
+    return uploadNanos;
+  }
+
+  @Override
+  public void write(int b) throws IOException
+  {
+    checkOpen();
+    if (partLength == part.length) {
+      uploadPart();
+    }
+    part[partLength++] = (byte) b;
+    bytesWritten++;
+  }
+
+  @Override
+  public void write(byte[] b, int off, int len) throws IOException
+  {
+    checkOpen();
+    while (len > 0) {
+      if (partLength == part.length) {
+        uploadPart();
+      }
+      int length = Math.min(len, part.length - partLength);
+      System.arraycopy(b, off, part, partLength, length);
+      partLength += length;
+      bytesWritten += length;
+      off += length;
+      len -= length;
+    }
+  }
+
+  @Override
+  public void close() throws IOException
+  {
+    if (closed) {
+      return;
+    }
+    closed = true;
+    try {
+      if (uploadId == null) {
+        ObjectMetadata metadata = new ObjectMetadata();
+        metadata.setContentLength(partLength);
+        long start = System.nanoTime();
+        s3Client.putObject(bucket, key, new ByteArrayInputStream(part, 0, partLength), metadata);
+        uploadNanos += System.nanoTime() - start;
+      }
+      else {
+        uploadPart();
+        long start = System.nanoTime();
+        s3Client.completeMultipartUpload(new CompleteMultipartUploadRequest(bucket, key, uploadId, partETags));
+        uploadNanos += System.nanoTime() - start;
+        uploadId = null;
+      }
+    }
+    catch (RuntimeException e) {
+      abort();
+      throw new IOException("Failed to upload s3://" + bucket + "/" + key, e);
+    }
+  }
+
+  // abort the upload so that no incomplete parts are left behind, used when writing the content failed
+  public void abort()
+  {
+    closed = true;
+    if (uploadId != null) {
+      try {
+        s3Client.abortMultipartUpload(new AbortMultipartUploadRequest(bucket, key, uploadId));
+      }
+      catch (RuntimeException e) {
+        // best effort, the bucket lifecycle rule cleans up incomplete multipart uploads
+      }
+      uploadId = null;
+    }
+  }
+
+  private void uploadPart() throws IOException
+  {
+    long start = System.nanoTime();
+    try {
+      if (uploadId == null) {
+        uploadId = s3Client.initiateMultipartUpload(new InitiateMultipartUploadRequest(bucket, key)).getUploadId();
+      }
+      UploadPartRequest request = new UploadPartRequest()
+          .withBucketName(bucket)
+          .withKey(key)
+          .withUploadId(uploadId)
+          .withPartNumber(partETags.size() + 1)
+          .withInputStream(new ByteArrayInputStream(part, 0, partLength))
+          .withPartSize(partLength);
+      partETags.add(s3Client.uploadPart(request).getPartETag());
+      partLength = 0;
+    }
+    catch (RuntimeException e) {
+      abort();
+      throw new IOException("Failed to upload part " + (partETags.size() + 1) + " of s3://" + bucket + "/" + key, e);
+    }
+    finally {
+      uploadNanos += System.nanoTime() - start;
+    }
+  }
+
+  private void checkOpen() throws IOException
+  {
+    if (closed) {
+      throw new IOException("Stream is closed");
+    }
+  }
+}
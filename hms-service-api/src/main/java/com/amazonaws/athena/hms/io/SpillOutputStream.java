@@ -0,0 +1,88 @@
+/*-
+ * #%L
+ * hms-service-api
+ * %%
+ * Copyright (C) 2019 Amazon Web Services
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.amazonaws.athena.hms.io;
+
+import com.amazonaws.athena.hms.SpillEncoding;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.GZIPOutputStream;
+
+// the stream that a response is spilled to, it encodes the content based on the SpillEncoding
+// and uploads the encoded bytes to s3 while they are being written
+public class SpillOutputStream extends FilterOutputStream
+{
+  private static final int GZIP_BUFFER_SIZE = 64 * 1024;
+
+  private final S3MultipartOutputStream upload;
+  private final SpillEncoding encoding;
+
+  public SpillOutputStream(S3MultipartOutputStream upload, SpillEncoding encoding) throws IOException
+  {
+    super(encode(upload, encoding));
+    this.upload = upload;
+    this.encoding = encoding;
+  }
+
+  private static OutputStream encode(OutputStream out, SpillEncoding encoding) throws IOException
+  {
+    if (encoding == SpillEncoding.GZIP) {
+      return new GZIPOutputStream(out, GZIP_BUFFER_SIZE);
+    }
+    return out;
+  }
+
+  public SpillEncoding getEncoding()
+  {
+    return encoding;
+  }
+
+  // the number of encoded bytes uploaded to s3
+  public long getBytesUploaded()
+  {
+    return upload.getBytesWritten();
+  }
+
+  // the time spent uploading to s3
+  public long getUploadNanos()
+  {
+    return upload.getUploadNanos();
+  }
+
+  @Override
+  public void write(byte[] b, int off, int len) throws IOException
+  {
+    // FilterOutputStream writes one byte at a time by default
+    out.write(b, off, len);
+  }
+
+  @Override
+  public void close() throws IOException
+  {
+    // finish the encoding and complete the upload
+    out.close();
+  }
+
+  public void abort()
+  {
+    upload.abort();
+  }
+}
@@ -0,0 +1,174 @@
+/*-
+ * #%L
+ * hms-service-api
+ * %%
+ * Copyright (C) 2019 Amazon Web Services
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.amazonaws.athena.hms.io;
+
+import java.io.IOException;
+import java.util.function.IntToLongFunction;
+
+// a ResponseBuffer that moves a slice of the response, the API response, to a spill stream as soon as
+// the slice reaches the spill threshold. The rest of the slice is written to the spill stream directly,
+// so that a huge response is spilled while it is still being serialized instead of being held in memory
+public class SpillableResponseBuffer extends ResponseBuffer
+{
+  // the slice starts at the next value written, its offset isn't known yet
+  private static final int SLICE_AT_NEXT_VALUE = -2;
+
+  private long spillThreshold;
+  private final SpillTarget spillTarget;
+  private int sliceStart = -1;
+  // the spill threshold of a slice that starts at the next value, given the offset of the value
+  private IntToLongFunction valueSpillThreshold;
+  private boolean sliceEnded;
+  private long sliceSize;
+  private SpillOutputStream spillStream;
+
+  // open the stream to spill to
+  public interface SpillTarget
+  {
+    SpillOutputStream open() throws IOException;
+  }
+
+  public SpillableResponseBuffer(long spillThreshold, SpillTarget spillTarget)
+  {
+    this.spillThreshold = spillThreshold;
+    this.spillTarget = spillTarget;
+  }
+
+  // start the slice at the given offset, which could be ahead of the bytes written so far
+  public void startSlice(int offset)
+  {
+    this.sliceStart = offset;
+  }
+
+  // start the slice at the next value written, i.e., after the field separator and the whitespace that the
+  // generator writes before the value, whatever their size. The spill threshold is given the offset of the value
+  public void startSliceAtNextValue(IntToLongFunction spillThreshold)
+  {
+    this.sliceStart = SLICE_AT_NEXT_VALUE;
+    this.valueSpillThreshold = spillThreshold;
+  }
+
+  // end the slice and close the spill stream if the slice was spilled, bytes written afterwards stay in the buffer
+  public void endSlice() throws IOException
+  {
+    if (spillStream != null) {
+      spillStream.close();
+    }
+    else if (sliceStart >= 0) {
+      sliceSize = Math.max(count - sliceStart, 0);
+    }
+    sliceEnded = true;
+  }
+
+  public boolean isSpilled()
+  {
+    return spillStream != null;
+  }
+
+  // the stream the slice was spilled to, or null if it was not spilled
+  public SpillOutputStream getSpillStream()
+  {
+    return spillStream;
+  }
+
+  // abort the spill if writing the response failed halfway
+  public void abortSpill()
+  {
+    if (spillStream != null) {
+      spillStream.abort();
+    }
+  }
+
+  // the number of bytes in the slice, either in the buffer or spilled
+  public long getSliceSize()
+  {
+    return sliceSize;
+  }
+
+  @Override
+  public synchronized void write(int b)
+  {
+    write(new byte[] {(byte) b}, 0, 1);
+  }
+
+  @Override
+  public synchronized void write(byte[] b, int off, int len)
+  {
+    try {
+      if (isSpilling()) {
+        spillStream.write(b, off, len);
+        sliceSize += len;
+        return;
+      }
+      int start = count;
+      super.write(b, off, len);
+      if (sliceStart == SLICE_AT_NEXT_VALUE) {
+        findValueStart(start);
+      }
+      if (sliceStart >= 0 && !sliceEnded && count >= sliceStart && count - sliceStart >= spillThreshold) {
+        spill();
+      }
+    }
+    catch (IOException e) {
+      // ByteArrayOutputStream doesn't declare IOException, callers such as the JsonGenerator will rethrow it
+      throw new SpillException(e);
+    }
+  }
+
+  private void findValueStart(int start)
+  {
+    for (int i = start; i < count; i++) {
+      if (buf[i] != ':' && !Character.isWhitespace(buf[i])) {
+        sliceStart = i;
+        spillThreshold = valueSpillThreshold.applyAsLong(i);
+        return;
+      }
+    }
+  }
+
+  private boolean isSpilling()
+  {
+    return spillStream != null && !sliceEnded;
+  }
+
+  private void spill() throws IOException
+  {
+    spillStream = spillTarget.open();
+    sliceSize = count - sliceStart;
+    spillStream.write(buf, sliceStart, count - sliceStart);
+    // drop the spilled bytes from the buffer
+    count = sliceStart;
+  }
+
+  // an unchecked wrapper of the IOException thrown by the spill stream
+  public static class SpillException extends RuntimeException
+  {
+    public SpillException(IOException cause)
+    {
+      super(cause.getMessage(), cause);
+    }
+
+    @Override
+    public synchronized IOException getCause()
+    {
+      return (IOException) super.getCause();
+    }
+  }
+}
@@ -0,0 +1,105 @@
+/*-
+ * #%L
+ * hms-service-api
+ * %%
+ * Copyright (C) 2019 Amazon Web Services
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.amazonaws.athena.hms.serde;
+
+import com.amazonaws.athena.hms.ApiHelper;
+import com.amazonaws.athena.hms.ApiResponse;
+import com.amazonaws.athena.hms.BatchMetadataResponse;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.deser.std.StdDeserializer;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.amazonaws.athena.hms.BatchMetadataResponse.ERROR_MESSAGE;
+import static com.amazonaws.athena.hms.BatchMetadataResponse.RESPONSES;
+import static com.amazonaws.athena.hms.MetadataResponse.API_NAME;
+import static com.amazonaws.athena.hms.MetadataResponse.API_RESPONSE;
+
+public class BatchMetadataResponseDeserializer extends StdDeserializer<BatchMetadataResponse>
+{
+  private final ApiHelper apiHelper;
+
+  protected BatchMetadataResponseDeserializer(ApiHelper apiHelper)
+  {
+    super(BatchMetadataResponse.class);
+    this.apiHelper = apiHelper;
+  }
+
+  @Override
+  public BatchMetadataResponse deserialize(JsonParser jsonParser, DeserializationContext deserializationContext)
+      throws IOException
+  {
+    if (jsonParser.getCurrentToken() != JsonToken.START_OBJECT) {
+      throw new IOException("Expected start object.");
+    }
+    List<BatchMetadataResponse.Result> results = new ArrayList<>();
+    while (jsonParser.nextToken() == JsonToken.FIELD_NAME) {
+      // move to field value
+      jsonParser.nextToken();
+      if (!RESPONSES.equals(jsonParser.getCurrentName())) {
+        jsonParser.skipChildren();
+        continue;
+      }
+      if (jsonParser.getCurrentToken() != JsonToken.START_ARRAY) {
+        throw new IOException("Expected start array.");
+      }
+      while (jsonParser.nextToken() == JsonToken.START_OBJECT) {
+        results.add(readResult(jsonParser, deserializationContext));
+      }
+    }
+    return new BatchMetadataResponse(results);
+  }
+
+  private BatchMetadataResponse.Result readResult(JsonParser jsonParser, DeserializationContext deserializationContext)
+      throws IOException
+  {
+    String apiName = null;
+    ApiResponse apiResponse = null;
+    String errorMessage = null;
+    while (jsonParser.nextToken() == JsonToken.FIELD_NAME) {
+      String fieldName = jsonParser.getCurrentName();
+      // move to field value
+      jsonParser.nextToken();
+      switch (fieldName) {
+        case API_NAME:
+          apiName = jsonParser.getValueAsString();
+          break;
+        case API_RESPONSE:
+          Class<?> responseClass = apiHelper.getResponseClass(apiName);
+          if (responseClass == null) {
+            throw new IOException("Cannot find response class for " + apiName);
+          }
+          // read with the context of the mapper the envelope picked, e.g., the one for embedded Thrift objects
+          apiResponse = (ApiResponse) deserializationContext.readValue(jsonParser, responseClass);
+          break;
+        case ERROR_MESSAGE:
+          errorMessage = jsonParser.getValueAsString();
+          break;
+        default:
+          jsonParser.skipChildren();
+      }
+    }
+    return new BatchMetadataResponse.Result(apiName, apiResponse, errorMessage);
+  }
+}
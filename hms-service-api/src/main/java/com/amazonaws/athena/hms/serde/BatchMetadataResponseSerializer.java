@@ -0,0 +1,62 @@
+/*-
+ * #%L
+ * hms-service-api
+ * %%
+ * Copyright (C) 2019 Amazon Web Services
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.amazonaws.athena.hms.serde;
+
+import com.amazonaws.athena.hms.BatchMetadataResponse;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+
+import java.io.IOException;
+
+import static com.amazonaws.athena.hms.BatchMetadataResponse.ERROR_MESSAGE;
+import static com.amazonaws.athena.hms.BatchMetadataResponse.RESPONSES;
+import static com.amazonaws.athena.hms.MetadataResponse.API_NAME;
+import static com.amazonaws.athena.hms.MetadataResponse.API_RESPONSE;
+
+public class BatchMetadataResponseSerializer extends StdSerializer<BatchMetadataResponse>
+{
+  protected BatchMetadataResponseSerializer()
+  {
+    super(BatchMetadataResponse.class);
+  }
+
+  @Override
+  public void serialize(BatchMetadataResponse batchResponse, JsonGenerator jsonGenerator,
+                        SerializerProvider serializerProvider) throws IOException
+  {
+    jsonGenerator.writeStartObject();
+    jsonGenerator.writeArrayFieldStart(RESPONSES);
+    for (BatchMetadataResponse.Result result : batchResponse.getResults()) {
+      jsonGenerator.writeStartObject();
+      // the api name must come first to know the response class when deserializing
+      jsonGenerator.writeStringField(API_NAME, result.getApiName());
+      if (result.isSuccessful()) {
+        jsonGenerator.writeObjectField(API_RESPONSE, result.getApiResponse());
+      }
+      else {
+        jsonGenerator.writeStringField(ERROR_MESSAGE, result.getErrorMessage());
+      }
+      jsonGenerator.writeEndObject();
+    }
+    jsonGenerator.writeEndArray();
+    jsonGenerator.writeEndObject();
+  }
+}
@@ -0,0 +1,48 @@
+/*-
+ * #%L
+ * hms-service-api
+ * %%
+ * Copyright (C) 2019 Amazon Web Services
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.amazonaws.athena.hms.serde;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.deser.std.StdScalarDeserializer;
+import com.fasterxml.jackson.databind.deser.std.StringDeserializer;
+
+import java.io.IOException;
+
+// deserialize a String value that could also be a Thrift object embedded as TJSON structure, which is
+// handed out as its TJSON string so that clients decode it the same way as a TJSON encoded object
+public class EmbeddedThriftDeserializer extends StdScalarDeserializer<String>
+{
+  public EmbeddedThriftDeserializer()
+  {
+    super(String.class);
+  }
+
+  @Override
+  public String deserialize(JsonParser jsonParser, DeserializationContext deserializationContext) throws IOException
+  {
+    JsonToken token = jsonParser.getCurrentToken();
+    if (token == JsonToken.START_OBJECT || token == JsonToken.START_ARRAY) {
+      return jsonParser.readValueAsTree().toString();
+    }
+    return StringDeserializer.instance.deserialize(jsonParser, deserializationContext);
+  }
+}
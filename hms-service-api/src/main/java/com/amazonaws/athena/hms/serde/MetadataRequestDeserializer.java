@@ -21,8 +21,10 @@ package com.amazonaws.athena.hms.serde;
 
 import com.amazonaws.athena.hms.ApiHelper;
 import com.amazonaws.athena.hms.ApiRequest;
+import com.amazonaws.athena.hms.BatchMetadataRequest;
 import com.amazonaws.athena.hms.MetadataRequest;
 import com.amazonaws.athena.hms.RequestContext;
+import com.amazonaws.athena.hms.ThriftEncoding;
 import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.core.JsonToken;
@@ -30,7 +32,11 @@ import com.fasterxml.jackson.databind.DeserializationContext;
 import com.fasterxml.jackson.databind.deser.std.StdDeserializer;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 
+import static com.amazonaws.athena.hms.BatchMetadataRequest.REQUESTS;
+import static com.amazonaws.athena.hms.MetadataRequest.ACCEPT_ENCODING;
 import static com.amazonaws.athena.hms.MetadataRequest.API_NAME;
 import static com.amazonaws.athena.hms.MetadataRequest.API_REQUEST;
 import static com.amazonaws.athena.hms.MetadataRequest.REQUEST_CONTEXT;
@@ -56,6 +62,8 @@ public class MetadataRequestDeserializer extends StdDeserializer<MetadataRequest
     RequestContext context = null;
     String apiName = null;
     ApiRequest request = null;
+    ThriftEncoding acceptEncoding = ThriftEncoding.TJSON;
+    List<MetadataRequest> batchRequests = null;
     while (jsonParser.nextToken() != JsonToken.END_OBJECT) {
       switch (jsonParser.getCurrentName()) {
         case REQUEST_CONTEXT:
@@ -71,17 +79,70 @@ public class MetadataRequestDeserializer extends StdDeserializer<MetadataRequest
         case API_REQUEST:
           // move to field value
           jsonParser.nextToken();
-          // get the request class type
-          Class requestClass = apiHelper.getRequestClass(apiName);
-          if (requestClass == null) {
-            throw new IOException("Cannot find request class for " + apiName);
-          }
-          // deserialize value based on the request class type
-          request = (ApiRequest) jsonParser.readValueAs(requestClass);
+          request = readApiRequest(jsonParser, apiName);
+          break;
+        case REQUESTS:
+          // move to field value
+          jsonParser.nextToken();
+          batchRequests = readBatchRequests(jsonParser);
+          break;
+        case ACCEPT_ENCODING:
+          // move to field value
+          jsonParser.nextToken();
+          acceptEncoding = ThriftEncoding.fromName(jsonParser.getValueAsString());
           break;
       }
     }
 
-    return new MetadataRequest(context, apiName, request);
+    if (BatchMetadataRequest.BATCH_API_NAME.equals(apiName)) {
+      // the API requests share the request context and the accepted encoding of the batch
+      List<MetadataRequest> requests = new ArrayList<>();
+      if (batchRequests != null) {
+        for (MetadataRequest batchRequest : batchRequests) {
+          requests.add(new MetadataRequest(context, batchRequest.getApiName(), batchRequest.getApiRequest(), acceptEncoding));
+        }
+      }
+      return new BatchMetadataRequest(context, requests, acceptEncoding);
+    }
+    return new MetadataRequest(context, apiName, request, acceptEncoding);
+  }
+
+  private ApiRequest readApiRequest(JsonParser jsonParser, String apiName) throws IOException
+  {
+    // get the request class type
+    Class requestClass = apiHelper.getRequestClass(apiName);
+    if (requestClass == null) {
+      throw new IOException("Cannot find request class for " + apiName);
+    }
+    // deserialize value based on the request class type
+    return (ApiRequest) jsonParser.readValueAs(requestClass);
+  }
+
+  private List<MetadataRequest> readBatchRequests(JsonParser jsonParser) throws IOException
+  {
+    if (jsonParser.getCurrentToken() != JsonToken.START_ARRAY) {
+      throw new IOException("Expected start array.");
+    }
+    List<MetadataRequest> requests = new ArrayList<>();
+    while (jsonParser.nextToken() == JsonToken.START_OBJECT) {
+      String apiName = null;
+      ApiRequest request = null;
+      while (jsonParser.nextToken() == JsonToken.FIELD_NAME) {
+        String fieldName = jsonParser.getCurrentName();
+        // move to field value
+        jsonParser.nextToken();
+        if (API_NAME.equals(fieldName)) {
+          apiName = jsonParser.getValueAsString();
+        }
+        else if (API_REQUEST.equals(fieldName)) {
+          request = readApiRequest(jsonParser, apiName);
+        }
+        else {
+          jsonParser.skipChildren();
+        }
+      }
+      requests.add(new MetadataRequest(null, apiName, request));
+    }
+    return requests;
   }
 }
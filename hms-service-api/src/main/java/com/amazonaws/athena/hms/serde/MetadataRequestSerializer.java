@@ -20,13 +20,17 @@
 package com.amazonaws.athena.hms.serde;
 
 import com.amazonaws.athena.hms.ApiHelper;
+import com.amazonaws.athena.hms.BatchMetadataRequest;
 import com.amazonaws.athena.hms.MetadataRequest;
+import com.amazonaws.athena.hms.ThriftEncoding;
 import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.databind.SerializerProvider;
 import com.fasterxml.jackson.databind.ser.std.StdSerializer;
 
 import java.io.IOException;
 
+import static com.amazonaws.athena.hms.BatchMetadataRequest.REQUESTS;
+import static com.amazonaws.athena.hms.MetadataRequest.ACCEPT_ENCODING;
 import static com.amazonaws.athena.hms.MetadataRequest.API_NAME;
 import static com.amazonaws.athena.hms.MetadataRequest.API_REQUEST;
 import static com.amazonaws.athena.hms.MetadataRequest.REQUEST_CONTEXT;
@@ -51,7 +55,27 @@ public class MetadataRequestSerializer extends StdSerializer<MetadataRequest>
     jsonGenerator.writeStartObject();
     jsonGenerator.writeObjectField(REQUEST_CONTEXT, metadataRequest.getContext());
     jsonGenerator.writeStringField(API_NAME, apiName);
-    jsonGenerator.writeObjectField(API_REQUEST, metadataRequest.getApiRequest());
+    if (metadataRequest instanceof BatchMetadataRequest) {
+      // the API requests of a batch share the request context and the accepted encoding
+      jsonGenerator.writeArrayFieldStart(REQUESTS);
+      for (MetadataRequest request : ((BatchMetadataRequest) metadataRequest).getRequests()) {
+        if (request.getApiName() == null) {
+          throw new IOException("ApiName cannot be null");
+        }
+        jsonGenerator.writeStartObject();
+        jsonGenerator.writeStringField(API_NAME, request.getApiName());
+        jsonGenerator.writeObjectField(API_REQUEST, request.getApiRequest());
+        jsonGenerator.writeEndObject();
+      }
+      jsonGenerator.writeEndArray();
+    }
+    else {
+      jsonGenerator.writeObjectField(API_REQUEST, metadataRequest.getApiRequest());
+    }
+    // only write the non-default encoding so that older Lambda functions see the same request as before
+    if (metadataRequest.getAcceptEncoding() != ThriftEncoding.TJSON) {
+      jsonGenerator.writeStringField(ACCEPT_ENCODING, metadataRequest.getAcceptEncoding().name());
+    }
     jsonGenerator.writeEndObject();
   }
 }
@@ -21,12 +21,17 @@ package com.amazonaws.athena.hms.serde;
 
 import com.amazonaws.athena.hms.ApiHelper;
 import com.amazonaws.athena.hms.ApiResponse;
+import com.amazonaws.athena.hms.BatchMetadataRequest;
+import com.amazonaws.athena.hms.BatchMetadataResponse;
 import com.amazonaws.athena.hms.MetadataResponse;
+import com.amazonaws.athena.hms.SpillEncoding;
+import com.amazonaws.athena.hms.ThriftEncoding;
 import com.amazonaws.athena.hms.io.S3Helper;
 import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.deser.std.StdDeserializer;
 
 import java.io.IOException;
@@ -34,7 +39,9 @@ import java.io.IOException;
 import static com.amazonaws.athena.hms.MetadataRequest.API_NAME;
 import static com.amazonaws.athena.hms.MetadataResponse.API_RESPONSE;
 import static com.amazonaws.athena.hms.MetadataResponse.IS_SPILLED;
+import static com.amazonaws.athena.hms.MetadataResponse.SPILL_ENCODING;
 import static com.amazonaws.athena.hms.MetadataResponse.SPILL_PATH;
+import static com.amazonaws.athena.hms.MetadataResponse.THRIFT_ENCODING;
 
 public class MetadataResponseDeserializer extends StdDeserializer<MetadataResponse>
 {
@@ -42,12 +49,15 @@ public class MetadataResponseDeserializer extends StdDeserializer<MetadataRespon
   private static final String STACK_TRACE = "stackTrace";
   private final ApiHelper apiHelper;
   private final S3Helper s3Helper;
+  // the mapper for API responses with embedded Thrift objects
+  private final ObjectMapper embeddedThriftMapper;
 
-  protected MetadataResponseDeserializer(ApiHelper apiHelper, S3Helper s3Helper)
+  protected MetadataResponseDeserializer(ApiHelper apiHelper, S3Helper s3Helper, ObjectMapper embeddedThriftMapper)
   {
     super(MetadataResponse.class);
     this.apiHelper = apiHelper;
     this.s3Helper = s3Helper;
+    this.embeddedThriftMapper = embeddedThriftMapper;
   }
 
   @Override
@@ -64,6 +74,8 @@ public class MetadataResponseDeserializer extends StdDeserializer<MetadataRespon
     boolean isSpilled = false;
     String spillPath = null;
     ApiResponse apiResponse = null;
+    ThriftEncoding thriftEncoding = ThriftEncoding.TJSON;
+    SpillEncoding spillEncoding = SpillEncoding.IDENTITY;
     while (jsonParser.nextToken() != JsonToken.END_OBJECT) {
       if (jsonParser.getCurrentName() == null) {
         // for error message currentName() could return null at the end
@@ -94,21 +106,39 @@ public class MetadataResponseDeserializer extends StdDeserializer<MetadataRespon
           jsonParser.nextToken();
           spillPath = jsonParser.getValueAsString();
           break;
+        case THRIFT_ENCODING:
+          // move to field value
+          jsonParser.nextToken();
+          thriftEncoding = ThriftEncoding.fromName(jsonParser.getValueAsString());
+          break;
+        case SPILL_ENCODING:
+          // move to field value
+          jsonParser.nextToken();
+          spillEncoding = SpillEncoding.fromName(jsonParser.getValueAsString());
+          break;
         case API_RESPONSE:
           // move to field value
           jsonParser.nextToken();
           // get the request class type
-          Class responseClass = apiHelper.getResponseClass(apiName);
+          Class responseClass = BatchMetadataRequest.BATCH_API_NAME.equals(apiName) ?
+              BatchMetadataResponse.class : apiHelper.getResponseClass(apiName);
           if (responseClass == null) {
             throw new IOException("Cannot find response class for " + apiName);
           }
+          // the embedded objects are handed out as TJSON strings
+          ObjectMapper mapper = thriftEncoding == ThriftEncoding.TJSON_EMBEDDED ?
+              embeddedThriftMapper : (ObjectMapper) jsonParser.getCodec();
+          if (thriftEncoding == ThriftEncoding.TJSON_EMBEDDED) {
+            thriftEncoding = ThriftEncoding.TJSON;
+          }
           if (isSpilled) {
-            // Need to read from s3 and convert the String content into the response object
-            apiResponse = (ApiResponse) s3Helper.getResponseFromS3As(responseClass, spillPath);
+            // Need to read from s3 and parse the content into the response object, with the same mapper
+            // so that nested responses such as a batch are supported
+            apiResponse = (ApiResponse) s3Helper.getResponseFromS3As(mapper, responseClass, spillPath, spillEncoding);
           }
           else {
             // deserialize value based on the response class type
-            apiResponse = (ApiResponse) jsonParser.readValueAs(responseClass);
+            apiResponse = (ApiResponse) mapper.readValue(jsonParser, responseClass);
           }
           break;
       }
@@ -118,6 +148,6 @@ public class MetadataResponseDeserializer extends StdDeserializer<MetadataRespon
       throw new IOException(errorMessage, new Throwable(stackTrace));
     }
 
-    return new MetadataResponse(apiName, isSpilled, spillPath, apiResponse);
+    return new MetadataResponse(apiName, isSpilled, spillPath, apiResponse, thriftEncoding, spillEncoding);
   }
 }
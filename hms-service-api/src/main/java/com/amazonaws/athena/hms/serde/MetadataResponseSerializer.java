@@ -21,6 +21,8 @@ package com.amazonaws.athena.hms.serde;
 
 import com.amazonaws.athena.hms.ApiHelper;
 import com.amazonaws.athena.hms.MetadataResponse;
+import com.amazonaws.athena.hms.SpillEncoding;
+import com.amazonaws.athena.hms.ThriftEncoding;
 import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.databind.SerializerProvider;
 import com.fasterxml.jackson.databind.ser.std.StdSerializer;
@@ -30,7 +32,9 @@ import java.io.IOException;
 import static com.amazonaws.athena.hms.MetadataResponse.API_NAME;
 import static com.amazonaws.athena.hms.MetadataResponse.API_RESPONSE;
 import static com.amazonaws.athena.hms.MetadataResponse.IS_SPILLED;
+import static com.amazonaws.athena.hms.MetadataResponse.SPILL_ENCODING;
 import static com.amazonaws.athena.hms.MetadataResponse.SPILL_PATH;
+import static com.amazonaws.athena.hms.MetadataResponse.THRIFT_ENCODING;
 
 public class MetadataResponseSerializer extends StdSerializer<MetadataResponse>
 {
@@ -44,12 +48,28 @@ public class MetadataResponseSerializer extends StdSerializer<MetadataResponse>
 
   @Override
   public void serialize(MetadataResponse metadataResponse, JsonGenerator jsonGenerator, SerializerProvider serializerProvider) throws IOException
+  {
+    writeEnvelopeStart(metadataResponse, jsonGenerator);
+    jsonGenerator.writeObject(metadataResponse.getApiResponse());
+    jsonGenerator.writeEndObject();
+  }
+
+  // write the envelope up to the API response field name, the caller writes the API response and ends the object.
+  // The handler streams the API response through the same prefix, so that both write the same envelope
+  public static void writeEnvelopeStart(MetadataResponse metadataResponse, JsonGenerator jsonGenerator) throws IOException
   {
     jsonGenerator.writeStartObject();
     jsonGenerator.writeStringField(API_NAME, metadataResponse.getApiName());
     jsonGenerator.writeBooleanField(IS_SPILLED, metadataResponse.isSpilled());
     jsonGenerator.writeStringField(SPILL_PATH, metadataResponse.getSpillPath());
-    jsonGenerator.writeObjectField(API_RESPONSE, metadataResponse.getApiResponse());
-    jsonGenerator.writeEndObject();
+    // only write the non-default encoding, which is only used when the client asked for it
+    if (metadataResponse.getThriftEncoding() != ThriftEncoding.TJSON) {
+      jsonGenerator.writeStringField(THRIFT_ENCODING, metadataResponse.getThriftEncoding().name());
+    }
+    // the spill encoding must come before the API response, which is read from s3 right away
+    if (metadataResponse.getSpillEncoding() != SpillEncoding.IDENTITY) {
+      jsonGenerator.writeStringField(SPILL_ENCODING, metadataResponse.getSpillEncoding().name());
+    }
+    jsonGenerator.writeFieldName(API_RESPONSE);
   }
 }
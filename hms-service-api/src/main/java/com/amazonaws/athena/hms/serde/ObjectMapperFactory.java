@@ -20,6 +20,7 @@
 package com.amazonaws.athena.hms.serde;
 
 import com.amazonaws.athena.hms.ApiHelper;
+import com.amazonaws.athena.hms.BatchMetadataResponse;
 import com.amazonaws.athena.hms.MetadataRequest;
 import com.amazonaws.athena.hms.MetadataResponse;
 import com.amazonaws.athena.hms.io.S3Helper;
@@ -35,13 +36,26 @@ public class ObjectMapperFactory
   }
 
   public static ObjectMapper create(ApiHelper helper, S3Helper s3Helper)
+  {
+    // API responses with embedded Thrift objects are parsed by a mapper that reads them back as TJSON strings
+    ObjectMapper embeddedThriftMapper = create(helper, s3Helper, null);
+    return create(helper, s3Helper, embeddedThriftMapper);
+  }
+
+  private static ObjectMapper create(ApiHelper helper, S3Helper s3Helper, ObjectMapper embeddedThriftMapper)
   {
     ObjectMapper objectMapper = new ObjectMapper();
     SimpleModule module = new SimpleModule();
     module.addSerializer(MetadataRequest.class, new MetadataRequestSerializer(helper));
     module.addDeserializer(MetadataRequest.class, new MetadataRequestDeserializer(helper));
     module.addSerializer(MetadataResponse.class, new MetadataResponseSerializer(helper));
-    module.addDeserializer(MetadataResponse.class, new MetadataResponseDeserializer(helper, s3Helper));
+    module.addDeserializer(MetadataResponse.class, new MetadataResponseDeserializer(helper, s3Helper,
+        embeddedThriftMapper == null ? objectMapper : embeddedThriftMapper));
+    module.addSerializer(BatchMetadataResponse.class, new BatchMetadataResponseSerializer());
+    module.addDeserializer(BatchMetadataResponse.class, new BatchMetadataResponseDeserializer(helper));
+    if (embeddedThriftMapper == null) {
+      module.addDeserializer(String.class, new EmbeddedThriftDeserializer());
+    }
     objectMapper.registerModule(module)
         .disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES)
         .disable(SerializationFeature.FAIL_ON_EMPTY_BEANS)
@@ -21,6 +21,8 @@ package com.amazonaws.athena.hms;
 
 import org.junit.Test;
 
+import java.lang.reflect.Method;
+
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
@@ -80,4 +82,19 @@ public class TestApiHelper
     assertNotNull(helper.getResponseClass("listDatabases"));
     assertTrue(helper.getResponseClass("listDatabases").isAssignableFrom(ListDatabasesResponse.class));
   }
+
+  @Test
+  public void testGeneratedApisMatchService()
+  {
+    ApiHelper helper = new ApiHelper();
+    int apis = 0;
+    for (Method method : HiveMetaStoreService.class.getDeclaredMethods()) {
+      if (method.getParameterTypes().length == 1) {
+        apis++;
+        assertEquals(method.getParameterTypes()[0], helper.getRequestClass(method.getName()));
+        assertEquals(method.getReturnType(), helper.getResponseClass(method.getName()));
+      }
+    }
+    assertEquals(apis, helper.getApiNames().size());
+  }
 }
@@ -0,0 +1,204 @@
+/*-
+ * #%L
+ * hms-service-api
+ * %%
+ * Copyright (C) 2019 Amazon Web Services
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.amazonaws.athena.hms.io;
+
+import com.amazonaws.athena.hms.SpillEncoding;
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.Headers;
+import com.amazonaws.services.s3.model.AmazonS3Exception;
+import com.amazonaws.services.s3.model.GetObjectRequest;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.model.S3Object;
+import com.amazonaws.util.IOUtils;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class RangedS3InputStreamTest
+{
+  @Test
+  public void testSmallObjectIsReadWithSingleRequest() throws IOException
+  {
+    byte[] content = "hello world".getBytes(StandardCharsets.UTF_8);
+    AmazonS3 s3Client = mockS3(content, null);
+    try (RangedS3InputStream in = new RangedS3InputStream(s3Client, "bucket", "key", 1024, 4)) {
+      assertArrayEquals(content, IOUtils.toByteArray(in));
+      assertEquals(content.length, in.getObjectSize());
+    }
+    verify(s3Client, times(1)).getObject(any(GetObjectRequest.class));
+  }
+
+  @Test
+  public void testLargeObjectIsReadWithParallelRanges() throws IOException
+  {
+    byte[] content = createContent(1000);
+    Map<Long, Integer> requestedRanges = new TreeMap<>();
+    AmazonS3 s3Client = mockS3(content, requestedRanges);
+    try (RangedS3InputStream in = new RangedS3InputStream(s3Client, "bucket", "key", 64, 3)) {
+      assertArrayEquals(content, IOUtils.toByteArray(in));
+    }
+    // 15 full ranges and a last one of 40 bytes, each fetched exactly once
+    assertEquals(16, requestedRanges.size());
+    for (Map.Entry<Long, Integer> range : requestedRanges.entrySet()) {
+      assertEquals(0, range.getKey() % 64);
+      assertEquals(1, (int) range.getValue());
+    }
+  }
+
+  @Test
+  public void testLargeObjectIsReadSequentially() throws IOException
+  {
+    byte[] content = createContent(200);
+    AmazonS3 s3Client = mockS3(content, null);
+    try (RangedS3InputStream in = new RangedS3InputStream(s3Client, "bucket", "key", 64, 1)) {
+      byte[] read = new byte[content.length];
+      int offset = 0;
+      int b;
+      while ((b = in.read()) >= 0) {
+        read[offset++] = (byte) b;
+      }
+      assertEquals(content.length, offset);
+      assertArrayEquals(content, read);
+    }
+    verify(s3Client, times(4)).getObject(any(GetObjectRequest.class));
+  }
+
+  @Test
+  public void testEmptyObject() throws IOException
+  {
+    AmazonS3 s3Client = mock(AmazonS3.class);
+    AmazonS3Exception rangeNotSatisfiable = new AmazonS3Exception("InvalidRange");
+    rangeNotSatisfiable.setStatusCode(416);
+    when(s3Client.getObject(any(GetObjectRequest.class))).thenThrow(rangeNotSatisfiable);
+    try (RangedS3InputStream in = new RangedS3InputStream(s3Client, "bucket", "key", 64, 4)) {
+      assertEquals(-1, in.read());
+      assertEquals(0, in.getObjectSize());
+    }
+  }
+
+  @Test
+  public void testFailedRangeIsReported() throws IOException
+  {
+    byte[] content = createContent(200);
+    AmazonS3 s3Client = mock(AmazonS3.class);
+    when(s3Client.getObject(any(GetObjectRequest.class))).thenAnswer(invocation -> {
+      GetObjectRequest request = invocation.getArgument(0);
+      if (request.getRange()[0] > 0) {
+        throw new AmazonS3Exception("SlowDown");
+      }
+      return createRange(content, request.getRange());
+    });
+    try (RangedS3InputStream in = new RangedS3InputStream(s3Client, "bucket", "key", 64, 2)) {
+      IOUtils.toByteArray(in);
+      fail("Expected the failed range to be reported");
+    }
+    catch (IOException e) {
+      assertEquals(AmazonS3Exception.class, e.getCause().getClass());
+    }
+  }
+
+  @Test
+  public void testCompressedResponseIsParsedFromRanges() throws IOException
+  {
+    StringBuilder json = new StringBuilder("{\"names\":[");
+    for (int i = 0; i < 500; i++) {
+      json.append(i == 0 ? "" : ",").append("\"table_").append(i).append("\"");
+    }
+    json.append("],\"comment\":\"line1\\nline2\"}");
+    ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+    try (GZIPOutputStream out = new GZIPOutputStream(compressed)) {
+      out.write(json.toString().getBytes(StandardCharsets.UTF_8));
+    }
+    AmazonS3 s3Client = mockS3(compressed.toByteArray(), null);
+    S3Helper s3Helper = new S3Helper(s3Client, 128, 4);
+    Names names = s3Helper.getResponseFromS3As(Names.class, "s3://bucket/key", SpillEncoding.GZIP);
+    assertEquals(500, names.names.size());
+    assertEquals("table_499", names.names.get(499));
+    assertEquals("line1\nline2", names.comment);
+  }
+
+  @Test
+  public void testResponseKeepsNewLines() throws IOException
+  {
+    AmazonS3 s3Client = mockS3("line1\nline2\n".getBytes(StandardCharsets.UTF_8), null);
+    assertEquals("line1\nline2\n", new S3Helper(s3Client).getResponseFromS3("s3://bucket/key"));
+  }
+
+  public static class Names
+  {
+    public List<String> names;
+    public String comment;
+  }
+
+  private static byte[] createContent(int size)
+  {
+    byte[] content = new byte[size];
+    for (int i = 0; i < size; i++) {
+      content[i] = (byte) i;
+    }
+    return content;
+  }
+
+  // an s3 client that serves ranged GETs of the given content and counts the requests by range start
+  private static AmazonS3 mockS3(byte[] content, Map<Long, Integer> requestedRanges)
+  {
+    AmazonS3 s3Client = mock(AmazonS3.class);
+    when(s3Client.getObject(any(GetObjectRequest.class))).thenAnswer(invocation -> {
+      GetObjectRequest request = invocation.getArgument(0);
+      if (requestedRanges != null) {
+        synchronized (requestedRanges) {
+          requestedRanges.merge(request.getRange()[0], 1, Integer::sum);
+        }
+      }
+      return createRange(content, request.getRange());
+    });
+    return s3Client;
+  }
+
+  private static S3Object createRange(byte[] content, long[] range)
+  {
+    int start = (int) range[0];
+    int end = (int) Math.min(range[1], content.length - 1);
+    ObjectMetadata metadata = new ObjectMetadata();
+    metadata.setHeader(Headers.CONTENT_RANGE, "bytes " + start + "-" + end + "/" + content.length);
+    metadata.setContentLength(end - start + 1);
+    S3Object object = new S3Object();
+    object.setObjectMetadata(metadata);
+    object.setObjectContent(new ByteArrayInputStream(Arrays.copyOfRange(content, start, end + 1)));
+    return object;
+  }
+}
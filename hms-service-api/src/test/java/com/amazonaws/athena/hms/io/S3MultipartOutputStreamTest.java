@@ -0,0 +1,118 @@
+/*-
+ * #%L
+ * hms-service-api
+ * %%
+ * Copyright (C) 2019 Amazon Web Services
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.amazonaws.athena.hms.io;
+
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.AbortMultipartUploadRequest;
+import com.amazonaws.services.s3.model.CompleteMultipartUploadRequest;
+import com.amazonaws.services.s3.model.InitiateMultipartUploadRequest;
+import com.amazonaws.services.s3.model.InitiateMultipartUploadResult;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.model.UploadPartRequest;
+import com.amazonaws.services.s3.model.UploadPartResult;
+import com.amazonaws.util.IOUtils;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class S3MultipartOutputStreamTest
+{
+  @Test
+  public void testSmallContentIsUploadedWithPutObject() throws IOException
+  {
+    AmazonS3 s3Client = mock(AmazonS3.class);
+    try (S3MultipartOutputStream out = new S3MultipartOutputStream(s3Client, "bucket", "key")) {
+      out.write("hello".getBytes());
+    }
+    ArgumentCaptor<InputStream> content = ArgumentCaptor.forClass(InputStream.class);
+    ArgumentCaptor<ObjectMetadata> metadata = ArgumentCaptor.forClass(ObjectMetadata.class);
+    verify(s3Client).putObject(eq("bucket"), eq("key"), content.capture(), metadata.capture());
+    assertEquals("hello", new String(IOUtils.toByteArray(content.getValue())));
+    assertEquals(5, metadata.getValue().getContentLength());
+    verify(s3Client, never()).initiateMultipartUpload(any());
+  }
+
+  @Test
+  public void testLargeContentIsUploadedInParts() throws IOException
+  {
+    AmazonS3 s3Client = mock(AmazonS3.class);
+    InitiateMultipartUploadResult initiateResult = new InitiateMultipartUploadResult();
+    initiateResult.setUploadId("upload-1");
+    when(s3Client.initiateMultipartUpload(any(InitiateMultipartUploadRequest.class))).thenReturn(initiateResult);
+    List<byte[]> parts = new ArrayList<>();
+    when(s3Client.uploadPart(any(UploadPartRequest.class))).thenAnswer(invocation -> {
+      UploadPartRequest request = invocation.getArgument(0);
+      parts.add(IOUtils.toByteArray(request.getInputStream()));
+      UploadPartResult result = new UploadPartResult();
+      result.setPartNumber(request.getPartNumber());
+      result.setETag("etag-" + request.getPartNumber());
+      return result;
+    });
+    byte[] content = new byte[2 * S3MultipartOutputStream.MIN_PART_SIZE + 10];
+    Arrays.fill(content, (byte) 'a');
+    try (S3MultipartOutputStream out = new S3MultipartOutputStream(s3Client, "bucket", "key", 0)) {
+      out.write(content, 0, 10);
+      out.write(content, 10, content.length - 10);
+      assertEquals(content.length, out.getBytesWritten());
+    }
+    assertEquals(3, parts.size());
+    assertEquals(S3MultipartOutputStream.MIN_PART_SIZE, parts.get(0).length);
+    assertEquals(S3MultipartOutputStream.MIN_PART_SIZE, parts.get(1).length);
+    assertArrayEquals(new byte[] {'a', 'a', 'a', 'a', 'a', 'a', 'a', 'a', 'a', 'a'}, parts.get(2));
+    ArgumentCaptor<CompleteMultipartUploadRequest> complete = ArgumentCaptor.forClass(CompleteMultipartUploadRequest.class);
+    verify(s3Client).completeMultipartUpload(complete.capture());
+    assertEquals("upload-1", complete.getValue().getUploadId());
+    assertEquals(3, complete.getValue().getPartETags().size());
+  }
+
+  @Test
+  public void testFailedPartAbortsTheUpload()
+  {
+    AmazonS3 s3Client = mock(AmazonS3.class);
+    InitiateMultipartUploadResult initiateResult = new InitiateMultipartUploadResult();
+    initiateResult.setUploadId("upload-1");
+    when(s3Client.initiateMultipartUpload(any(InitiateMultipartUploadRequest.class))).thenReturn(initiateResult);
+    when(s3Client.uploadPart(any(UploadPartRequest.class))).thenThrow(new RuntimeException("throttled"));
+    try (S3MultipartOutputStream out = new S3MultipartOutputStream(s3Client, "bucket", "key", 0)) {
+      out.write(new byte[S3MultipartOutputStream.MIN_PART_SIZE + 1]);
+      fail("Expected IOException");
+    }
+    catch (IOException e) {
+      // expected
+    }
+    verify(s3Client).abortMultipartUpload(any(AbortMultipartUploadRequest.class));
+    verify(s3Client, never()).completeMultipartUpload(any());
+  }
+}
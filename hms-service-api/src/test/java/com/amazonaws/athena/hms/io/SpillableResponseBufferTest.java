@@ -0,0 +1,110 @@
+/*-
+ * #%L
+ * hms-service-api
+ * %%
+ * Copyright (C) 2019 Amazon Web Services
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.amazonaws.athena.hms.io;
+
+import com.amazonaws.athena.hms.SpillEncoding;
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.util.IOUtils;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+public class SpillableResponseBufferTest
+{
+  @Test
+  public void testSliceBelowThresholdStaysInBuffer() throws IOException
+  {
+    SpillableResponseBuffer buffer = new SpillableResponseBuffer(100, () -> {
+      throw new IOException("should not spill");
+    });
+    buffer.write("{\"r\":".getBytes(StandardCharsets.UTF_8));
+    buffer.startSlice(buffer.size());
+    buffer.write("[1,2,3]".getBytes(StandardCharsets.UTF_8));
+    buffer.endSlice();
+    buffer.write('}');
+    assertFalse(buffer.isSpilled());
+    assertEquals(7, buffer.getSliceSize());
+    assertEquals("{\"r\":[1,2,3]}", buffer.toString("UTF-8"));
+  }
+
+  @Test
+  public void testSliceIsSpilledOnceItReachesThreshold() throws IOException
+  {
+    AmazonS3 s3Client = mock(AmazonS3.class);
+    SpillableResponseBuffer buffer = new SpillableResponseBuffer(4, () ->
+        new SpillOutputStream(new S3MultipartOutputStream(s3Client, "bucket", "key"), SpillEncoding.GZIP));
+    buffer.write("{\"r\":".getBytes(StandardCharsets.UTF_8));
+    buffer.startSlice(buffer.size());
+    buffer.write("[1,".getBytes(StandardCharsets.UTF_8));
+    assertFalse(buffer.isSpilled());
+    buffer.write("2,".getBytes(StandardCharsets.UTF_8));
+    assertTrue(buffer.isSpilled());
+    buffer.write("3]".getBytes(StandardCharsets.UTF_8));
+    buffer.endSlice();
+    assertEquals(7, buffer.getSliceSize());
+    // the spilled bytes are dropped from the buffer
+    assertEquals("{\"r\":", buffer.toString("UTF-8"));
+
+    ArgumentCaptor<InputStream> content = ArgumentCaptor.forClass(InputStream.class);
+    verify(s3Client).putObject(eq("bucket"), eq("key"), content.capture(), any(ObjectMetadata.class));
+    String spilled = new String(IOUtils.toByteArray(new GZIPInputStream(content.getValue())), StandardCharsets.UTF_8);
+    assertEquals("[1,2,3]", spilled);
+  }
+
+  @Test
+  public void testSliceStartsAtNextValue() throws IOException
+  {
+    AmazonS3 s3Client = mock(AmazonS3.class);
+    SpillableResponseBuffer buffer = new SpillableResponseBuffer(100, () ->
+        new SpillOutputStream(new S3MultipartOutputStream(s3Client, "bucket", "key"), SpillEncoding.IDENTITY));
+    buffer.write("{\"r\"".getBytes(StandardCharsets.UTF_8));
+    int[] valueOffset = new int[1];
+    buffer.startSliceAtNextValue(offset -> {
+      valueOffset[0] = offset;
+      return 4;
+    });
+    // a pretty printer writes more than the ':' before the value
+    buffer.write(" : ".getBytes(StandardCharsets.UTF_8));
+    assertFalse(buffer.isSpilled());
+    buffer.write("[1,2,3]".getBytes(StandardCharsets.UTF_8));
+    assertTrue(buffer.isSpilled());
+    buffer.endSlice();
+    assertEquals(7, valueOffset[0]);
+    assertEquals(7, buffer.getSliceSize());
+    assertEquals("{\"r\" : ", buffer.toString("UTF-8"));
+
+    ArgumentCaptor<InputStream> content = ArgumentCaptor.forClass(InputStream.class);
+    verify(s3Client).putObject(eq("bucket"), eq("key"), content.capture(), any(ObjectMetadata.class));
+    assertEquals("[1,2,3]", new String(IOUtils.toByteArray(content.getValue()), StandardCharsets.UTF_8));
+  }
+}
@@ -22,11 +22,17 @@ package com.amazonaws.athena.hms.serde;
 import com.amazonaws.athena.hms.AlterTableRequest;
 import com.amazonaws.athena.hms.AlterTableResponse;
 import com.amazonaws.athena.hms.ApiHelper;
+import com.amazonaws.athena.hms.BatchMetadataRequest;
+import com.amazonaws.athena.hms.BatchMetadataResponse;
 import com.amazonaws.athena.hms.DbExistsRequest;
 import com.amazonaws.athena.hms.DbExistsResponse;
+import com.amazonaws.athena.hms.GetTablesResponse;
+import com.amazonaws.athena.hms.ListPartitionsResponse;
 import com.amazonaws.athena.hms.RequestContext;
 import com.amazonaws.athena.hms.MetadataRequest;
 import com.amazonaws.athena.hms.MetadataResponse;
+import com.amazonaws.athena.hms.SpillEncoding;
+import com.amazonaws.athena.hms.ThriftEncoding;
 import com.amazonaws.athena.hms.io.S3Helper;
 import com.amazonaws.services.s3.AmazonS3;
 import com.amazonaws.services.s3.model.S3Object;
@@ -36,7 +42,9 @@ import org.junit.Test;
 
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -46,6 +54,7 @@ import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
@@ -119,6 +128,34 @@ public class MetadataSerializationTest
     assertEquals("mydb", resultRequest.getDbName());
   }
 
+  @Test
+  public void testThriftEncodingNegotiation() throws IOException
+  {
+    ApiHelper helper = new ApiHelper();
+    ObjectMapper mapper = ObjectMapperFactory.create(helper, mock(S3Helper.class));
+    DbExistsRequest dbExistsRequest = new DbExistsRequest();
+    dbExistsRequest.setDbName("mydb");
+    RequestContext context = new RequestContext("test", "user1", "12345678");
+    String payload = mapper.writeValueAsString(new MetadataRequest(context, "dbExists", dbExistsRequest));
+    assertFalse(payload.contains(MetadataRequest.ACCEPT_ENCODING));
+    assertEquals(ThriftEncoding.TJSON, mapper.readValue(payload, MetadataRequest.class).getAcceptEncoding());
+    payload = mapper.writeValueAsString(new MetadataRequest(context, "dbExists", dbExistsRequest, ThriftEncoding.TCOMPACT_BASE64));
+    assertEquals(ThriftEncoding.TCOMPACT_BASE64, mapper.readValue(payload, MetadataRequest.class).getAcceptEncoding());
+    // an encoding unknown to this version falls back to the default
+    payload = payload.replace(ThriftEncoding.TCOMPACT_BASE64.name(), "UNKNOWN");
+    assertEquals(ThriftEncoding.TJSON, mapper.readValue(payload, MetadataRequest.class).getAcceptEncoding());
+
+    DbExistsResponse apiResponse = new DbExistsResponse();
+    apiResponse.setExists(true);
+    payload = mapper.writeValueAsString(new MetadataResponse("dbExists", false, null, apiResponse));
+    assertFalse(payload.contains(MetadataResponse.THRIFT_ENCODING));
+    assertEquals(ThriftEncoding.TJSON, mapper.readValue(payload, MetadataResponse.class).getThriftEncoding());
+    payload = mapper.writeValueAsString(new MetadataResponse("dbExists", false, null, apiResponse, ThriftEncoding.TCOMPACT_BASE64));
+    MetadataResponse result = mapper.readValue(payload, MetadataResponse.class);
+    assertEquals(ThriftEncoding.TCOMPACT_BASE64, result.getThriftEncoding());
+    assertTrue(((DbExistsResponse) result.getApiResponse()).isExists());
+  }
+
   @Test
   public void testMetadataResponseDirect() throws IOException
   {
@@ -164,6 +201,138 @@ public class MetadataSerializationTest
     assertTrue(resultResponse.isExists());
   }
 
+  @Test
+  public void testSpilledMetadataResponseWithEmbeddedThriftObjects() throws IOException
+  {
+    AmazonS3 s3Client = mock(AmazonS3.class);
+    S3Object s3Object = new S3Object();
+    String spilled = "{\"partitions\":[{\"1\":{\"lst\":[\"str\",1,\"a\"]}},\"{\\\"1\\\":{}}\"],\"nextToken\":\"t\"}";
+    s3Object.setObjectContent(new ByteArrayInputStream(spilled.getBytes(StandardCharsets.UTF_8)));
+    when(s3Client.getObject(any())).thenReturn(s3Object);
+    ApiHelper helper = new ApiHelper();
+    ObjectMapper mapper = ObjectMapperFactory.create(helper, new S3Helper(s3Client));
+    MetadataResponse response = new MetadataResponse("listPartitions", true, "s3://mybucket/lambda/functions/spill",
+        null, ThriftEncoding.TJSON_EMBEDDED, SpillEncoding.IDENTITY);
+    MetadataResponse result = mapper.readValue(mapper.writeValueAsString(response), MetadataResponse.class);
+    // the embedded objects are handed out as TJSON strings, strings are kept as they are
+    assertEquals(ThriftEncoding.TJSON, result.getThriftEncoding());
+    ListPartitionsResponse resultResponse = (ListPartitionsResponse) result.getApiResponse();
+    assertEquals(Arrays.asList("{\"1\":{\"lst\":[\"str\",1,\"a\"]}}", "{\"1\":{}}"), resultResponse.getPartitions());
+    assertEquals("t", resultResponse.getNextToken());
+  }
+
+  @Test
+  public void testBatchMetadataRequest() throws IOException
+  {
+    ApiHelper helper = new ApiHelper();
+    ObjectMapper mapper = ObjectMapperFactory.create(helper, mock(S3Helper.class));
+    DbExistsRequest dbExistsRequest = new DbExistsRequest();
+    dbExistsRequest.setDbName("mydb");
+    AlterTableRequest alterTableRequest = new AlterTableRequest();
+    alterTableRequest.setDbName("mydb");
+    alterTableRequest.setTableName("mytable");
+    RequestContext context = new RequestContext("test", "user1", "12345678");
+    BatchMetadataRequest request = new BatchMetadataRequest(context, Arrays.asList(
+        new MetadataRequest(context, "dbExists", dbExistsRequest),
+        new MetadataRequest(context, "alterTable", alterTableRequest)), ThriftEncoding.TCOMPACT_BASE64);
+    MetadataRequest result = mapper.readValue(mapper.writeValueAsString(request), MetadataRequest.class);
+    assertTrue(result instanceof BatchMetadataRequest);
+    assertEquals(BatchMetadataRequest.BATCH_API_NAME, result.getApiName());
+    List<MetadataRequest> requests = ((BatchMetadataRequest) result).getRequests();
+    assertEquals(2, requests.size());
+    assertEquals("dbExists", requests.get(0).getApiName());
+    assertEquals("mydb", ((DbExistsRequest) requests.get(0).getApiRequest()).getDbName());
+    assertEquals("alterTable", requests.get(1).getApiName());
+    assertEquals("mytable", ((AlterTableRequest) requests.get(1).getApiRequest()).getTableName());
+    // the API requests share the context and the accepted encoding of the batch
+    for (MetadataRequest apiRequest : requests) {
+      assertEquals("test", apiRequest.getContext().getId());
+      assertEquals(ThriftEncoding.TCOMPACT_BASE64, apiRequest.getAcceptEncoding());
+    }
+  }
+
+  @Test
+  public void testBatchMetadataResponse() throws IOException
+  {
+    ApiHelper helper = new ApiHelper();
+    ObjectMapper mapper = ObjectMapperFactory.create(helper, mock(S3Helper.class));
+    DbExistsResponse dbExistsResponse = new DbExistsResponse();
+    dbExistsResponse.setExists(true);
+    BatchMetadataResponse apiResponse = new BatchMetadataResponse(Arrays.asList(
+        BatchMetadataResponse.Result.success("dbExists", dbExistsResponse),
+        BatchMetadataResponse.Result.failure("alterTable", "NoSuchObjectException(message:mytable)")));
+    MetadataResponse response = new MetadataResponse(BatchMetadataRequest.BATCH_API_NAME, false, null, apiResponse);
+    MetadataResponse result = mapper.readValue(mapper.writeValueAsString(response), MetadataResponse.class);
+    assertEquals(BatchMetadataRequest.BATCH_API_NAME, result.getApiName());
+    List<BatchMetadataResponse.Result> results = ((BatchMetadataResponse) result.getApiResponse()).getResults();
+    assertEquals(2, results.size());
+    assertTrue(results.get(0).isSuccessful());
+    assertEquals("dbExists", results.get(0).getApiName());
+    assertTrue(((DbExistsResponse) results.get(0).getApiResponse()).isExists());
+    assertFalse(results.get(1).isSuccessful());
+    assertEquals("alterTable", results.get(1).getApiName());
+    assertNull(results.get(1).getApiResponse());
+    assertEquals("NoSuchObjectException(message:mytable)", results.get(1).getErrorMessage());
+  }
+
+  @Test
+  public void testBatchMetadataResponseWithEmbeddedThriftObjects() throws IOException
+  {
+    ApiHelper helper = new ApiHelper();
+    ObjectMapper mapper = ObjectMapperFactory.create(helper, mock(S3Helper.class));
+    String json = "{\"apiName\":\"" + BatchMetadataRequest.BATCH_API_NAME + "\",\"spilled\":false,"
+        + "\"thriftEncoding\":\"TJSON_EMBEDDED\",\"apiResponse\":{\"responses\":["
+        + "{\"apiName\":\"getTables\",\"apiResponse\":{\"tables\":[{\"1\":{\"str\":\"t\"}},\"{\\\"1\\\":{}}\"]}},"
+        + "{\"apiName\":\"dbExists\",\"apiResponse\":{\"exists\":true}}]}}";
+    MetadataResponse result = mapper.readValue(json, MetadataResponse.class);
+    assertEquals(ThriftEncoding.TJSON, result.getThriftEncoding());
+    List<BatchMetadataResponse.Result> results = ((BatchMetadataResponse) result.getApiResponse()).getResults();
+    assertEquals(2, results.size());
+    // the embedded objects of every API response are handed out as TJSON strings, strings are kept as they are
+    assertEquals(Arrays.asList("{\"1\":{\"str\":\"t\"}}", "{\"1\":{}}"),
+        ((GetTablesResponse) results.get(0).getApiResponse()).getTables());
+    assertTrue(((DbExistsResponse) results.get(1).getApiResponse()).isExists());
+  }
+
+  @Test
+  public void testSpilledBatchMetadataResponse() throws IOException
+  {
+    AmazonS3 s3Client = mock(AmazonS3.class);
+    S3Object s3Object = new S3Object();
+    String spilled = "{\"responses\":[{\"apiName\":\"dbExists\",\"apiResponse\":{\"exists\":true}},"
+        + "{\"apiName\":\"dbExists\",\"errorMessage\":\"failed\"}]}";
+    s3Object.setObjectContent(new ByteArrayInputStream(spilled.getBytes(StandardCharsets.UTF_8)));
+    when(s3Client.getObject(any())).thenReturn(s3Object);
+    ApiHelper helper = new ApiHelper();
+    ObjectMapper mapper = ObjectMapperFactory.create(helper, new S3Helper(s3Client));
+    MetadataResponse response = new MetadataResponse(BatchMetadataRequest.BATCH_API_NAME, true,
+        "s3://mybucket/lambda/functions/spill", null);
+    MetadataResponse result = mapper.readValue(mapper.writeValueAsString(response), MetadataResponse.class);
+    assertTrue(result.isSpilled());
+    List<BatchMetadataResponse.Result> results = ((BatchMetadataResponse) result.getApiResponse()).getResults();
+    assertEquals(2, results.size());
+    assertTrue(((DbExistsResponse) results.get(0).getApiResponse()).isExists());
+    assertEquals("failed", results.get(1).getErrorMessage());
+  }
+
+  @Test
+  public void testUnsupportedSpillEncodingIsRejected() throws IOException
+  {
+    ApiHelper helper = new ApiHelper();
+    ObjectMapper mapper = ObjectMapperFactory.create(helper, mock(S3Helper.class));
+    String payload = "{\"apiName\":\"dbExists\",\"spilled\":true,\"spillPath\":\"s3://mybucket/spill\","
+        + "\"spillEncoding\":\"ZSTD\"}";
+    try {
+      mapper.readValue(payload, MetadataResponse.class);
+      fail("Expected IOException");
+    }
+    catch (IOException e) {
+      assertTrue(e.getMessage().contains("ZSTD"));
+    }
+    payload = "{\"apiName\":\"dbExists\",\"spilled\":false,\"apiResponse\":{\"exists\":true}}";
+    assertEquals(SpillEncoding.IDENTITY, mapper.readValue(payload, MetadataResponse.class).getSpillEncoding());
+  }
+
   @Test(expected = IOException.class)
   public void testMetadataResponseWithErrorMessage() throws IOException
   {